@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores freshly computed values in the cache on a background thread, so a
+ * miss returns to its caller as soon as the value is copied rather than
+ * after it's been put in the cache (and whatever evictions that causes).
+ * Set on {@link CacheAspect} or {@link com.googlecode.easiest.cache.ever.memoize.Memoizer}.
+ * Only caches which can copy values ahead of time
+ * ({@link com.googlecode.easiest.cache.ever.caches.CopyingCacheService}) are
+ * stored in the background: the copy is made on the caller's thread, so the
+ * caller is free to change its value.
+ * 
+ * The entry stays in flight (see {@link InFlightLoads}) until it's stored, so
+ * other callers missing on it wait for the stored value instead of computing
+ * it again. Every store which was queued is run, even when closing, so
+ * no entry is left in flight.
+ * 
+ * The queue of values waiting to be stored is bounded. When it's full, the
+ * caller stores its value itself, as if there were no background thread.
+ * 
+ * @author Brad Cupit
+ */
+public class BackgroundPopulator {
+    private static final Logger logger = Logger.getLogger(BackgroundPopulator.class.getName());
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int BATCH_SIZE = 64;
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<Runnable> pending;
+    private final Thread storingThread;
+    /** submitting shares the lock, closing takes it, so nothing is queued once closed */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    public BackgroundPopulator() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity how many values may wait to be stored
+     */
+    public BackgroundPopulator(int capacity) {
+        this.pending = new ArrayBlockingQueue<Runnable>(capacity);
+
+        this.storingThread = new Thread("easiest-cache-ever background populator") {
+            @Override
+            public void run() {
+                storeUntilClosed();
+            }
+        };
+        storingThread.setDaemon(true);
+        storingThread.start();
+    }
+
+    /**
+     * @return false if the store wasn't queued (the queue is full, or this
+     *         is closed), and the caller must run it itself
+     */
+    boolean submit(Runnable store) {
+        closeLock.readLock().lock();
+        try {
+            return !closed && pending.offer(store);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many values are waiting to be stored
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * stores whatever is waiting and stops
+     */
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            storingThread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        // anything submitted while closing
+        final List<Runnable> batch = new ArrayList<Runnable>(BATCH_SIZE);
+        while (!pending.isEmpty()) {
+            storeBatch(batch, null);
+        }
+    }
+
+    private void storeUntilClosed() {
+        final List<Runnable> batch = new ArrayList<Runnable>(BATCH_SIZE);
+
+        while (!closed || !pending.isEmpty()) {
+            final Runnable first;
+
+            try {
+                first = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                continue;
+            }
+
+            if (first != null) {
+                storeBatch(batch, first);
+            }
+        }
+    }
+
+    private void storeBatch(List<Runnable> batch, Runnable first) {
+        if (first != null) {
+            batch.add(first);
+        }
+
+        pending.drainTo(batch, BATCH_SIZE - batch.size());
+
+        for (Runnable store : batch) {
+            try {
+                store.run();
+            } catch (Throwable throwable) {
+                // carry on, so the rest of the batch (and the queue) is stored
+                logger.log(Level.WARNING, "unable to store a cached value", throwable);
+            }
+        }
+
+        batch.clear();
+    }
+}
@@ -1,163 +1,743 @@
-/*
- * Copyright 2010 Brad Cupit
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * 
- *     http://www.apache.org/licenses/LICENSE-2.0
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.googlecode.easiest.cache.ever;
-
-import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.annotation.Around;
-import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Pointcut;
-import org.aspectj.lang.reflect.MethodSignature;
-
-import com.googlecode.easiest.cache.ever.caches.CacheService;
-import com.googlecode.easiest.cache.ever.caches.CachedValue;
-import com.googlecode.easiest.cache.ever.keys.KeyGenerator;
-
-/**
- * AOP implementation for adding caching to methods/classes
- * containing the {@link CacheReturnValue @CacheReturnValue} annotation. 
- * 
- * @author Brad Cupit
- */
-@Aspect
-public class CacheAspect {
-    private CacheService cacheService;
-    private KeyGenerator keyGenerator;
-    private int defaultMaxSize = 1024;
-    private int defaultExpirationTime = CacheConstants.NO_EXPIRATION;
-    private Time defaultUnit = Time.DAYS;
-
-    public void setCacheService(CacheService cache) {
-        this.cacheService = cache;
-    }
-
-    public void setKeyGenerator(KeyGenerator keyGenerator) {
-        this.keyGenerator = keyGenerator;
-    }
-
-    /**
-     * see documentation in {@link CacheReturnValue#maxSize()}
-     */
-    public void setDefaultMaxSize(int maxSize) {
-        this.defaultMaxSize = maxSize;
-    }
-
-    /**
-     * see documentation in {@link CacheReturnValue#expirationTime()}
-     */
-    public void setDefaultExpirationTime(int expirationTime) {
-        this.defaultExpirationTime = expirationTime;
-    }
-
-    /**
-     * Unit/measurement for the duration specified in {@link #setDefaultExpirationTime(int)}
-     */
-    public void setDefaultUnit(Time unit) {
-        this.defaultUnit = unit;
-    }
-
-    @Around("annotatedMethod(methodAnnotation) && methodWithReturnValue()")
-    public Object aroundAdviceForMethodAnnotation(ProceedingJoinPoint joinPoint, CacheReturnValue methodAnnotation)
-                throws Throwable {
-        return aroundAdvice(joinPoint, methodAnnotation);
-    }
-
-    @Around("annotatedClass(classAnnotation) && methodNotAnnotated() && publicMethod() && methodWithReturnValue()")
-    public Object aroundAdviceForClassAnnotation(ProceedingJoinPoint joinPoint, CacheReturnValue classAnnotation)
-                throws Throwable {
-        return aroundAdvice(joinPoint, classAnnotation);
-    }
-
-    private Object aroundAdvice(ProceedingJoinPoint joinPoint, CacheReturnValue cacheAnnotation) throws Throwable {
-        final MethodCall methodCall = buildMethodCall(joinPoint);
-        final String cacheId = keyGenerator.generateMethodKey(methodCall);
-        final String key = keyGenerator.generateParameterKey(methodCall.getParameters());
-
-        final CacheConfig cacheConfig = buildCacheConfig(cacheAnnotation, methodCall.getParameters().size());
-        cacheService.createCacheIfNecessary(cacheId, cacheConfig);
-
-        final CachedValue cachedValue = cacheService.retrieve(cacheId, key);
-
-        if (cachedValue.wasFound()) {
-            return cachedValue.value();
-        } else {
-            final Object returnValue = joinPoint.proceed();
-            cacheService.add(cacheId, key, returnValue);
-            return returnValue;
-        }
-    }
-
-    @Pointcut("execution(!void *(..))")
-    protected void methodWithReturnValue() {
-    }
-
-    @Pointcut("execution(public * *(..))")
-    protected void publicMethod() {
-    }
-
-    @Pointcut("@within(classAnnotation)")
-    protected void annotatedClass(CacheReturnValue classAnnotation) {
-    }
-
-    @Pointcut("@annotation(methodAnnotation)")
-    protected void annotatedMethod(CacheReturnValue methodAnnotation) {
-    }
-
-    @Pointcut("!@annotation(com.googlecode.easiest.cache.ever.CacheReturnValue)")
-    protected void methodNotAnnotated() {
-    }
-
-    private MethodCall buildMethodCall(ProceedingJoinPoint joinPoint) {
-        final MethodSignature methodSignature;
-
-        if (joinPoint.getSignature() instanceof MethodSignature) {
-            methodSignature = (MethodSignature) joinPoint.getSignature();
-        } else {
-            throw new RuntimeException("Spring can only join on methods, so casting to MethodSignature should always work.");
-        }
-
-        final String concreteClassName = joinPoint.getTarget().getClass().getName();
-
-        return new MethodCall(concreteClassName, methodSignature.getName(), methodSignature.getParameterTypes(),
-                    joinPoint.getArgs());
-    }
-
-    private CacheConfig buildCacheConfig(CacheReturnValue cacheAnnotation, int numParameters) {
-        final int maxSize;
-        if (numParameters == 0) {
-            maxSize = 1;
-        } else if (cacheAnnotation.maxSize() == CacheConstants.UNSET_MAX_SIZE) {
-            maxSize = defaultMaxSize;
-        } else {
-            maxSize = cacheAnnotation.maxSize();
-        }
-
-        final int expirationTime;
-        if (cacheAnnotation.expirationTime() == CacheConstants.UNSET_EXPIRATION_TIME) {
-            expirationTime = defaultExpirationTime;
-        } else {
-            expirationTime = cacheAnnotation.expirationTime();
-        }
-
-        final Time unit;
-        if (cacheAnnotation.unit() == Time.UNSET) {
-            unit = defaultUnit;
-        } else {
-            unit = cacheAnnotation.unit();
-        }
-
-        return new CacheConfig(maxSize, expirationTime, unit);
-    }
-}
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+
+import com.googlecode.easiest.cache.ever.CachingInvoker.Invocation;
+import com.googlecode.easiest.cache.ever.CachingInvoker.MeasuredInvocation;
+import com.googlecode.easiest.cache.ever.caches.CacheService;
+import com.googlecode.easiest.cache.ever.caches.EvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.TaggingCacheService;
+import com.googlecode.easiest.cache.ever.cluster.InvalidationBus;
+import com.googlecode.easiest.cache.ever.keys.GeneratedKeyBuilder;
+import com.googlecode.easiest.cache.ever.keys.GeneratedKeyBuilders;
+import com.googlecode.easiest.cache.ever.keys.KeyGenerator;
+import com.googlecode.easiest.cache.ever.trace.CacheMonitor;
+import com.googlecode.easiest.cache.ever.trace.TraceRecorder;
+
+/**
+ * AOP implementation for adding caching to methods/classes
+ * containing the {@link CacheReturnValue @CacheReturnValue} annotation. 
+ * 
+ * Concurrent misses on the same cache entry only invoke the
+ * method once, see {@link CachingInvoker}.
+ * 
+ * Everything which doesn't change between calls of the same method
+ * (cache id, cache settings, how to build keys) is worked out on the
+ * first call and kept in a {@link CachedMethod}, including which
+ * arguments make up the key ({@link CacheKey @CacheKey} and
+ * {@link CacheIgnore @CacheIgnore}). That work can be done ahead of
+ * time with {@link #prepare(Class)}. Keys are built by the
+ * builder generated at compile time by the
+ * {@link com.googlecode.easiest.cache.ever.processor.CacheKeyProcessor}
+ * when there is one, and by the {@link KeyGenerator} otherwise.
+ * 
+ * Methods where caching doesn't pay off can be detected and
+ * called directly, see {@link #setAdaptiveBypass(boolean)}.
+ * 
+ * Methods which change what a cached method returns can evict its
+ * entries with {@link EvictCache @EvictCache}, or replace them with
+ * {@link UpdateCache @UpdateCache}.
+ * 
+ * @author Brad Cupit
+ */
+@Aspect
+public class CacheAspect {
+    /** types which an unmodifiable view can stand in for */
+    private static final List<Class<?>> UNMODIFIABLE_RETURN_TYPES = Arrays.<Class<?>> asList(Collection.class,
+                List.class, Set.class, SortedSet.class, Map.class, SortedMap.class);
+
+    private CacheService cacheService;
+    private KeyGenerator keyGenerator;
+    private InvalidationBus invalidationBus;
+    private CacheMonitor cacheMonitor;
+    private int defaultMaxSize = 1024;
+    private int defaultExpirationTime = CacheConstants.NO_EXPIRATION;
+    private Time defaultUnit = Time.DAYS;
+    private boolean useGeneratedKeys = true;
+    private boolean adaptiveBypass = false;
+    private int bypassMinSamples = 1000;
+    private int bypassSeconds = 300;
+    private final CachingInvoker cachingInvoker = new CachingInvoker();
+    private final GeneratedKeyBuilders generatedKeyBuilders = new GeneratedKeyBuilders();
+    private final ConcurrentMap<TargetMethod, CachedMethod> cachedMethods = new ConcurrentHashMap<TargetMethod, CachedMethod>();
+    private final ConcurrentMap<TargetMethod, CacheTarget> evictTargets = new ConcurrentHashMap<TargetMethod, CacheTarget>();
+    private final ConcurrentMap<TargetMethod, CacheTarget> updateTargets = new ConcurrentHashMap<TargetMethod, CacheTarget>();
+    private final CacheNamespaces namespaces = new CacheNamespaces();
+
+    public void setCacheService(CacheService cache) {
+        this.cacheService = cache;
+        this.cachingInvoker.setCacheService(cache);
+    }
+
+    public void setKeyGenerator(KeyGenerator keyGenerator) {
+        this.keyGenerator = keyGenerator;
+    }
+
+    /**
+     * Optional. Records every hit and miss, to be replayed by the
+     * {@link com.googlecode.easiest.cache.ever.trace.TraceSimulator}
+     * when choosing cache sizes. Off (null) by default.
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.cachingInvoker.setTraceRecorder(traceRecorder);
+    }
+
+    /**
+     * Optional. Told how long every hit, miss, load and key generation took,
+     * see {@link CacheMonitor}. Off (null) by default.
+     */
+    public void setCacheMonitor(CacheMonitor cacheMonitor) {
+        this.cacheMonitor = cacheMonitor;
+        this.cachingInvoker.setCacheMonitor(cacheMonitor);
+    }
+
+    /**
+     * Optional. Stores the values of misses in the background, so the caller
+     * gets its value without waiting for it to be cached. Off (null) by default.
+     */
+    public void setBackgroundPopulator(BackgroundPopulator backgroundPopulator) {
+        this.cachingInvoker.setBackgroundPopulator(backgroundPopulator);
+    }
+
+    /**
+     * how long a miss waits for another thread computing the same value
+     * before computing it too. Defaults to 10 seconds
+     */
+    public void setLoadWaitMillis(long loadWaitMillis) {
+        this.cachingInvoker.setLoadWaitMillis(loadWaitMillis);
+    }
+
+    /**
+     * Optional. Tells the other nodes of a cluster about the values changed by
+     * {@link EvictCache @EvictCache} and {@link UpdateCache @UpdateCache} methods,
+     * so they drop their copies. Off (null) by default.
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * see documentation in {@link CacheReturnValue#maxSize()}
+     */
+    public void setDefaultMaxSize(int maxSize) {
+        this.defaultMaxSize = maxSize;
+    }
+
+    /**
+     * see documentation in {@link CacheReturnValue#expirationTime()}
+     */
+    public void setDefaultExpirationTime(int expirationTime) {
+        this.defaultExpirationTime = expirationTime;
+    }
+
+    /**
+     * Unit/measurement for the duration specified in {@link #setDefaultExpirationTime(int)}
+     */
+    public void setDefaultUnit(Time unit) {
+        this.defaultUnit = unit;
+    }
+
+    /**
+     * Whether to use key builders generated at compile time (see
+     * {@link com.googlecode.easiest.cache.ever.processor.CacheKeyProcessor}) when they
+     * exist. Defaults to true. Set to false if a custom {@link KeyGenerator} must build
+     * every parameter key.
+     */
+    public void setUseGeneratedKeys(boolean useGeneratedKeys) {
+        this.useGeneratedKeys = useGeneratedKeys;
+    }
+
+    /**
+     * Does the work which is otherwise done on the first call of each cached method
+     * of the class: working out its {@link CachedMethod}, creating its cache, and letting
+     * the {@link KeyGenerator} and {@link CacheService} look at the parameter and return
+     * types (when they are {@link Preparable}).
+     * 
+     * Covers the public methods of the class, which are the ones Spring's proxies intercept.
+     * Safe to call from multiple threads at once, and more than once.
+     */
+    public void prepare(Class<?> targetClass) {
+        for (Method method : targetClass.getMethods()) {
+            CacheReturnValue cacheAnnotation = method.getAnnotation(CacheReturnValue.class);
+
+            if (cacheAnnotation == null) {
+                cacheAnnotation = method.getDeclaringClass().getAnnotation(CacheReturnValue.class);
+            }
+
+            if (cacheAnnotation == null || method.getReturnType() == void.class) {
+                continue;
+            }
+
+            CachedMethod cachedMethod = cachedMethods.get(new TargetMethod(targetClass, method));
+
+            if (cachedMethod == null) {
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                MethodCall methodCall = new MethodCall(targetClass.getName(), method.getName(), parameterTypes,
+                            new Object[parameterTypes.length]);
+
+                cachedMethod = addCachedMethod(targetClass, method, methodCall, cacheAnnotation);
+            }
+
+            cacheService.createCacheIfNecessary(cachedMethod.getCacheId(), cachedMethod.getCacheConfig());
+
+            if (keyGenerator instanceof Preparable) {
+                for (Class<?> parameterType : method.getParameterTypes()) {
+                    ((Preparable) keyGenerator).prepare(parameterType);
+                }
+            }
+
+            if (cacheService instanceof Preparable) {
+                ((Preparable) cacheService).prepare(method.getReturnType());
+            }
+        }
+    }
+
+    /**
+     * When true, methods where caching costs more time than it saves (cheap methods,
+     * or values which are rarely found in the cache) are called directly, without the
+     * cache, see {@link CacheBypass}. Defaults to false.
+     */
+    public void setAdaptiveBypass(boolean adaptiveBypass) {
+        this.adaptiveBypass = adaptiveBypass;
+    }
+
+    /**
+     * number of measured calls (1 in 8 calls are measured) needed to decide
+     * whether to bypass a method's cache. Defaults to 1000.
+     */
+    public void setBypassMinSamples(int bypassMinSamples) {
+        this.bypassMinSamples = bypassMinSamples;
+    }
+
+    /**
+     * how long a method's cache is bypassed before caching is measured again. Defaults to 300.
+     */
+    public void setBypassSeconds(int bypassSeconds) {
+        this.bypassSeconds = bypassSeconds;
+    }
+
+    /**
+     * @return the cache ids of the methods currently being called without the cache
+     */
+    public List<String> getBypassedCacheIds() {
+        List<String> bypassedCacheIds = new ArrayList<String>();
+
+        for (CachedMethod cachedMethod : cachedMethods.values()) {
+            if (cachedMethod.getCacheBypass() != null && cachedMethod.getCacheBypass().isBypassing()) {
+                bypassedCacheIds.add(cachedMethod.getCacheId());
+            }
+        }
+
+        return bypassedCacheIds;
+    }
+
+    /**
+     * Removes every cached return value tagged with the tag (see {@link CacheTag}
+     * and {@link CacheReturnValue#tagExtractor()}), whichever method it came from.
+     * 
+     * @throws UnsupportedOperationException if the {@link CacheService} can't tag entries
+     */
+    public void removeTagged(String tag) {
+        if (!(cacheService instanceof TaggingCacheService)) {
+            throw new UnsupportedOperationException(cacheService.getClass().getName() + " can't tag entries");
+        }
+
+        ((TaggingCacheService) cacheService).removeTagged(tag);
+    }
+
+    /**
+     * Invalidates the cached values of every method of the class, without touching
+     * the caches: the values are simply never found again, and make room for new
+     * ones as they're evicted or expire. Takes constant time, however big the caches are.
+     * 
+     * @param type the class of the object whose methods are cached
+     */
+    public void invalidateNamespace(Class<?> type) {
+        namespaces.invalidateClass(type.getName());
+    }
+
+    /**
+     * Same as {@link #invalidateNamespace(Class)}, for the class's methods with the name
+     * (including overloads).
+     */
+    public void invalidateNamespace(Class<?> type, String methodName) {
+        namespaces.invalidateMethod(type.getName(), methodName);
+    }
+
+    @Around("annotatedMethod(methodAnnotation) && methodWithReturnValue()")
+    public Object aroundAdviceForMethodAnnotation(ProceedingJoinPoint joinPoint, CacheReturnValue methodAnnotation)
+                throws Throwable {
+        return aroundAdvice(joinPoint, methodAnnotation);
+    }
+
+    @Around("annotatedClass(classAnnotation) && methodNotAnnotated() && publicMethod() && methodWithReturnValue()")
+    public Object aroundAdviceForClassAnnotation(ProceedingJoinPoint joinPoint, CacheReturnValue classAnnotation)
+                throws Throwable {
+        return aroundAdvice(joinPoint, classAnnotation);
+    }
+
+    @Around("evictingMethod(evictCache)")
+    public Object aroundAdviceForEvictCache(ProceedingJoinPoint joinPoint, EvictCache evictCache) throws Throwable {
+        final EvictingCacheService evictingCacheService = evictingCacheService(joinPoint, "@EvictCache");
+        final Object returnValue = joinPoint.proceed();
+        final CacheTarget cacheTarget = cacheTargetFor(evictTargets, joinPoint, evictCache.type(), evictCache
+                    .method(), evictCache.parameterTypes());
+        final String cacheId = cacheTarget.getCachedMethod().getCacheId();
+
+        if (evictCache.allEntries()) {
+            evictingCacheService.removeAll(cacheId);
+
+            if (invalidationBus != null) {
+                invalidationBus.publishAll(cacheId);
+            }
+        } else {
+            final String key = cacheTarget.generateParameterKey(joinPoint.getArgs());
+            evictingCacheService.remove(cacheId, key);
+
+            if (invalidationBus != null) {
+                invalidationBus.publish(cacheId, key);
+            }
+        }
+
+        return returnValue;
+    }
+
+    @Around("updatingMethod(updateCache)")
+    public Object aroundAdviceForUpdateCache(ProceedingJoinPoint joinPoint, UpdateCache updateCache) throws Throwable {
+        if (methodSignature(joinPoint).getReturnType() == void.class) {
+            throw new IllegalArgumentException("@UpdateCache caches the return value of " + methodSignature(joinPoint)
+                        + ", so it can't be void");
+        }
+
+        // removes the old value when the new one isn't cached
+        evictingCacheService(joinPoint, "@UpdateCache");
+
+        final Object returnValue = joinPoint.proceed();
+        final CacheTarget cacheTarget = cacheTargetFor(updateTargets, joinPoint, updateCache.type(), updateCache
+                    .method(), updateCache.parameterTypes());
+        final CachedMethod cachedMethod = cacheTarget.getCachedMethod();
+
+        final String key = cacheTarget.generateParameterKey(joinPoint.getArgs());
+
+        cacheService.createCacheIfNecessary(cachedMethod.getCacheId(), cachedMethod.getCacheConfig());
+        cachingInvoker.put(cacheTarget, key, returnValue, joinPoint.getArgs());
+
+        if (invalidationBus != null) {
+            // the other nodes load the new value themselves
+            invalidationBus.publish(cachedMethod.getCacheId(), key);
+        }
+
+        return returnValue;
+    }
+
+    private Object aroundAdvice(final ProceedingJoinPoint joinPoint, CacheReturnValue cacheAnnotation) throws Throwable {
+        final CachedMethod cachedMethod = cachedMethodFor(joinPoint, cacheAnnotation);
+        final CacheBypass cacheBypass = cachedMethod.getCacheBypass();
+        final Invocation invocation = new Invocation() {
+            public Object proceed() throws Throwable {
+                return joinPoint.proceed();
+            }
+        };
+
+        if (cacheBypass == null) {
+            return invokeWithCache(cachedMethod, joinPoint.getArgs(), invocation);
+        } else if (cacheBypass.shouldBypass()) {
+            return joinPoint.proceed();
+        } else if (cacheBypass.shouldMeasure()) {
+            return invokeWithCacheAndMeasure(cachedMethod, joinPoint.getArgs(), invocation, cacheBypass);
+        } else {
+            return invokeWithCache(cachedMethod, joinPoint.getArgs(), invocation);
+        }
+    }
+
+    private Object invokeWithCache(CachedMethod cachedMethod, Object[] arguments, Invocation invocation)
+                throws Throwable {
+        final String cacheId = cachedMethod.getCacheId();
+        final String key = generateParameterKey(cachedMethod, arguments);
+
+        cacheService.createCacheIfNecessary(cacheId, cachedMethod.getCacheConfig());
+
+        return cachingInvoker.invoke(cachedMethod, key, arguments, invocation);
+    }
+
+    private String generateParameterKey(CachedMethod cachedMethod, Object[] arguments) {
+        if (cacheMonitor == null) {
+            return cachedMethod.generateParameterKey(arguments);
+        }
+
+        final long start = System.nanoTime();
+        final String key = cachedMethod.generateParameterKey(arguments);
+        cacheMonitor.keyGenerated(cachedMethod.getCacheId(), System.nanoTime() - start, key == null ? 0 : key
+                    .length());
+
+        return key;
+    }
+
+    private Object invokeWithCacheAndMeasure(CachedMethod cachedMethod, Object[] arguments,
+                final Invocation invocation, CacheBypass cacheBypass) throws Throwable {
+        final long start = System.nanoTime();
+        final long[] loadNanos = { -1 };
+        final long[] waitNanos = { -1 };
+
+        final Object returnValue = invokeWithCache(cachedMethod, arguments, new MeasuredInvocation() {
+            public Object proceed() throws Throwable {
+                final long loadStart = System.nanoTime();
+                final Object loaded = invocation.proceed();
+                loadNanos[0] = System.nanoTime() - loadStart;
+                return loaded;
+            }
+
+            public void waited(long nanos) {
+                waitNanos[0] = nanos;
+            }
+        });
+
+        final boolean loaded = loadNanos[0] >= 0;
+        final boolean waited = waitNanos[0] >= 0;
+
+        // the value another thread loaded while we waited was neither in the cache nor
+        // loaded by us, and that thread's own call already counts the load
+        if (waited && !loaded) {
+            return returnValue;
+        }
+
+        // time spent in the method itself (or waiting for it) isn't overhead
+        final long overheadNanos = System.nanoTime() - start - Math.max(0, loadNanos[0]) - Math.max(0, waitNanos[0]);
+        cacheBypass.record(!loaded, overheadNanos, loadNanos[0]);
+
+        return returnValue;
+    }
+
+    @Pointcut("execution(!void *(..))")
+    protected void methodWithReturnValue() {
+    }
+
+    @Pointcut("execution(public * *(..))")
+    protected void publicMethod() {
+    }
+
+    @Pointcut("@within(classAnnotation)")
+    protected void annotatedClass(CacheReturnValue classAnnotation) {
+    }
+
+    @Pointcut("@annotation(methodAnnotation)")
+    protected void annotatedMethod(CacheReturnValue methodAnnotation) {
+    }
+
+    @Pointcut("!@annotation(com.googlecode.easiest.cache.ever.CacheReturnValue)")
+    protected void methodNotAnnotated() {
+    }
+
+    @Pointcut("@annotation(evictCache)")
+    protected void evictingMethod(EvictCache evictCache) {
+    }
+
+    @Pointcut("@annotation(updateCache)")
+    protected void updatingMethod(UpdateCache updateCache) {
+    }
+
+    private CachedMethod cachedMethodFor(ProceedingJoinPoint joinPoint, CacheReturnValue cacheAnnotation) {
+        final Class<?> targetClass = joinPoint.getTarget().getClass();
+        final Method method = methodSignature(joinPoint).getMethod();
+        final CachedMethod cachedMethod = cachedMethods.get(new TargetMethod(targetClass, method));
+
+        if (cachedMethod != null) {
+            return cachedMethod;
+        }
+
+        // JDK proxies hand us the interface's Method, while prepare(..) and @EvictCache / @UpdateCache
+        // find the class's. Work with the class's, then remember it under the Method we were given
+        final Method classMethod = classMethod(targetClass, method);
+        CachedMethod classCachedMethod = cachedMethods.get(new TargetMethod(targetClass, classMethod));
+
+        if (classCachedMethod == null) {
+            classCachedMethod = addCachedMethod(targetClass, classMethod, buildMethodCall(joinPoint), cacheAnnotation);
+        }
+
+        final CachedMethod existing = cachedMethods.putIfAbsent(new TargetMethod(targetClass, method),
+                    classCachedMethod);
+
+        return existing == null ? classCachedMethod : existing;
+    }
+
+    /**
+     * the public method of the target class which the (possibly interface) method resolves to
+     */
+    private Method classMethod(Class<?> targetClass, Method method) {
+        if (method == null || method.getDeclaringClass() == targetClass) {
+            return method;
+        }
+
+        try {
+            return targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException exception) {
+            return method;
+        }
+    }
+
+    private CachedMethod addCachedMethod(Class<?> targetClass, Method method, MethodCall methodCall,
+                CacheReturnValue cacheAnnotation) {
+        final String cacheId = keyGenerator.generateMethodKey(methodCall);
+        final KeyParameters keyParameters = KeyParameters.forMethod(method);
+        final CacheConfig cacheConfig = buildCacheConfig(cacheAnnotation, keyParameters.count(methodCall.getParameters()
+                    .size()), method == null ? null : method.getReturnType());
+        final GeneratedKeyBuilder generatedKeyBuilder = useGeneratedKeys ? generatedKeyBuilders.find(targetClass,
+                    cacheId) : null;
+
+        final CacheBypass cacheBypass = adaptiveBypass ? new CacheBypass(cacheId, bypassMinSamples, bypassSeconds)
+                    : null;
+
+        final CachedMethod cachedMethod = new CachedMethod(cacheId, cacheConfig, keyParameters, generatedKeyBuilder,
+                    keyGenerator, cacheBypass, buildExpiryPolicy(cacheAnnotation), buildExceptionCaching(cacheAnnotation),
+                    CacheTags.forMethod(method, instantiate(cacheAnnotation.tagExtractor(), TagExtractor.class)),
+                    namespaces.forMethod(methodCall.getClassName(), methodCall.getMethodName()));
+        final CachedMethod existing = cachedMethods.putIfAbsent(new TargetMethod(targetClass, method), cachedMethod);
+
+        return existing == null ? cachedMethod : existing;
+    }
+
+    private CacheTarget cacheTargetFor(ConcurrentMap<TargetMethod, CacheTarget> cacheTargets,
+                ProceedingJoinPoint joinPoint, Class<?> type, String methodName, Class<?>[] parameterTypes) {
+        final Class<?> targetClass = joinPoint.getTarget().getClass();
+        final Method changingMethod = methodSignature(joinPoint).getMethod();
+        final TargetMethod targetMethod = new TargetMethod(targetClass, changingMethod);
+        final CacheTarget cacheTarget = cacheTargets.get(targetMethod);
+
+        if (cacheTarget != null) {
+            return cacheTarget;
+        }
+
+        final Class<?> cachedClass = cachedClass(type, targetClass, changingMethod);
+        final Method method = findCachedMethod(cachedClass, methodName, parameterTypes, changingMethod);
+        CacheReturnValue cacheAnnotation = method.getAnnotation(CacheReturnValue.class);
+
+        if (cacheAnnotation == null) {
+            cacheAnnotation = method.getDeclaringClass().getAnnotation(CacheReturnValue.class);
+        }
+
+        if (cacheAnnotation == null) {
+            throw new IllegalArgumentException(changingMethod + " refers to " + method
+                        + ", which isn't annotated with @CacheReturnValue");
+        }
+
+        CachedMethod cachedMethod = cachedMethods.get(new TargetMethod(cachedClass, method));
+
+        if (cachedMethod == null) {
+            final Class<?>[] cachedParameterTypes = method.getParameterTypes();
+            final MethodCall methodCall = new MethodCall(cachedClass.getName(), method.getName(),
+                        cachedParameterTypes, new Object[cachedParameterTypes.length]);
+
+            cachedMethod = addCachedMethod(cachedClass, method, methodCall, cacheAnnotation);
+        }
+
+        final CacheTarget newCacheTarget = new CacheTarget(cachedMethod, KeyParameters.forMethod(changingMethod));
+        final CacheTarget existing = cacheTargets.putIfAbsent(targetMethod, newCacheTarget);
+
+        return existing == null ? newCacheTarget : existing;
+    }
+
+    /**
+     * cache ids are named after the bean's concrete class, so an interface (or abstract
+     * class) only works as the type when it's the changing method's own bean
+     * 
+     * @throws IllegalArgumentException if the type is an interface of another bean
+     */
+    private Class<?> cachedClass(Class<?> type, Class<?> targetClass, Method changingMethod) {
+        if (type == void.class) {
+            return targetClass;
+        } else if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+            return type;
+        } else if (type.isAssignableFrom(targetClass)) {
+            return targetClass;
+        } else {
+            throw new IllegalArgumentException(changingMethod + " refers to " + type.getName()
+                        + ", which isn't a concrete class. Set type to the class of the bean with the cached method.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException unless exactly one public method matches
+     */
+    private Method findCachedMethod(Class<?> cachedClass, String methodName, Class<?>[] parameterTypes,
+                Method changingMethod) {
+        Method found = null;
+
+        for (Method method : cachedClass.getMethods()) {
+            if (!method.getName().equals(methodName)
+                        || (parameterTypes.length > 0 && !Arrays.equals(parameterTypes, method.getParameterTypes()))) {
+                continue;
+            }
+
+            if (found != null) {
+                throw new IllegalArgumentException(changingMethod + " refers to " + cachedClass.getName() + "."
+                            + methodName + ", which is overloaded. Set parameterTypes to pick one.");
+            }
+
+            found = method;
+        }
+
+        if (found == null) {
+            throw new IllegalArgumentException(changingMethod + " refers to " + cachedClass.getName() + "."
+                        + methodName + ", which doesn't exist (or isn't public)");
+        }
+
+        return found;
+    }
+
+    private ExpiryPolicy buildExpiryPolicy(CacheReturnValue cacheAnnotation) {
+        final ExpiryPolicy expiryPolicy = instantiate(cacheAnnotation.expiryPolicy(), ExpiryPolicy.class);
+
+        if (cacheAnnotation.emptyResultExpirationSeconds() == CacheConstants.UNSET_EXPIRATION_TIME) {
+            return expiryPolicy;
+        }
+
+        return new EmptyResultExpiryPolicy(cacheAnnotation.emptyResultExpirationSeconds(), expiryPolicy);
+    }
+
+    /**
+     * @return null if the annotation left the class at its default, the interface itself
+     */
+    private <T> T instantiate(Class<? extends T> implementationClass, Class<T> interfaceClass) {
+        if (implementationClass == null || implementationClass == interfaceClass) {
+            return null;
+        }
+
+        try {
+            return implementationClass.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("could not create " + implementationClass.getName() + ". "
+                        + interfaceClass.getSimpleName() + " implementations need a public no-arg constructor.", e);
+        }
+    }
+
+    private ExceptionCaching buildExceptionCaching(CacheReturnValue cacheAnnotation) {
+        final Class<? extends Throwable>[] cachedExceptions = cacheAnnotation.cacheExceptions();
+
+        if (cachedExceptions == null || cachedExceptions.length == 0) {
+            return null;
+        }
+
+        return new ExceptionCaching(cachedExceptions, cacheAnnotation.exceptionExpirationSeconds());
+    }
+
+    /**
+     * checked before the method runs, so a misconfigured cache service doesn't leave a stale value behind
+     * 
+     * @throws UnsupportedOperationException if the {@link CacheService} can't remove entries
+     */
+    private EvictingCacheService evictingCacheService(ProceedingJoinPoint joinPoint, String annotation) {
+        if (!(cacheService instanceof EvictingCacheService)) {
+            throw new UnsupportedOperationException(cacheService.getClass().getName() + " can't remove entries, so "
+                        + annotation + " on " + methodSignature(joinPoint) + " can't be supported");
+        }
+
+        return (EvictingCacheService) cacheService;
+    }
+
+    private MethodSignature methodSignature(ProceedingJoinPoint joinPoint) {
+        if (joinPoint.getSignature() instanceof MethodSignature) {
+            return (MethodSignature) joinPoint.getSignature();
+        } else {
+            throw new RuntimeException("Spring can only join on methods, so casting to MethodSignature should always work.");
+        }
+    }
+
+    private MethodCall buildMethodCall(ProceedingJoinPoint joinPoint) {
+        final MethodSignature methodSignature = methodSignature(joinPoint);
+        final String concreteClassName = joinPoint.getTarget().getClass().getName();
+
+        return new MethodCall(concreteClassName, methodSignature.getName(), methodSignature.getParameterTypes(),
+                    joinPoint.getArgs());
+    }
+
+    private CacheConfig buildCacheConfig(CacheReturnValue cacheAnnotation, int numParameters, Class<?> returnType) {
+        final int maxSize;
+        if (numParameters == 0) {
+            maxSize = 1;
+        } else if (cacheAnnotation.maxSize() == CacheConstants.UNSET_MAX_SIZE) {
+            maxSize = defaultMaxSize;
+        } else {
+            maxSize = cacheAnnotation.maxSize();
+        }
+
+        final int expirationTime;
+        if (cacheAnnotation.expirationTime() == CacheConstants.UNSET_EXPIRATION_TIME) {
+            expirationTime = defaultExpirationTime;
+        } else {
+            expirationTime = cacheAnnotation.expirationTime();
+        }
+
+        final Time unit;
+        if (cacheAnnotation.unit() == Time.UNSET) {
+            unit = defaultUnit;
+        } else {
+            unit = cacheAnnotation.unit();
+        }
+
+        return new CacheConfig(maxSize, expirationTime, unit, cacheAnnotation.nearCacheMaxSize(),
+                    cacheAnnotation.nearCacheExpirationMillis(), cacheAnnotation.compressAboveBytes(),
+                    cacheAnnotation.unmodifiableCollections() && UNMODIFIABLE_RETURN_TYPES.contains(returnType));
+    }
+
+    /**
+     * a method on a concrete class. With JDK proxies the {@link Method} comes from
+     * the interface, so the target class is needed to tell implementations apart.
+     */
+    private static class TargetMethod {
+        private final Class<?> targetClass;
+        private final Method method;
+
+        private TargetMethod(Class<?> targetClass, Method method) {
+            this.targetClass = targetClass;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof TargetMethod)) {
+                return false;
+            }
+
+            TargetMethod other = (TargetMethod) object;
+            return targetClass.equals(other.targetClass)
+                        && (method == null ? other.method == null : method.equals(other.method));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * targetClass.hashCode() + (method == null ? 0 : method.hashCode());
+        }
+    }
+}
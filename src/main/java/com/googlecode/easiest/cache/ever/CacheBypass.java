@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Decides whether caching one method is worth it. A sample of the calls
+ * measure how long caching takes (building the key, looking it up, cloning,
+ * adding misses), how long the method takes, and how often the value is
+ * found. Once enough calls have been measured, caching is compared with simply
+ * calling the method every time:
+ * 
+ * <pre>
+ * with caching:    overhead + (1 - hit ratio) * method time
+ * without caching: method time
+ * </pre>
+ * 
+ * If caching costs more, the method is called directly (bypassing the cache)
+ * for a while, then caching is tried (and measured) again, in case things
+ * changed. Every switch is logged.
+ * 
+ * @author Brad Cupit
+ */
+public class CacheBypass {
+    private static final Logger logger = Logger.getLogger(CacheBypass.class.getName());
+
+    /**
+     * measure 1 in this many calls (a power of two)
+     */
+    private static final int SAMPLE_EVERY = 8;
+
+    private final String cacheId;
+    private final int minSamples;
+    private final long bypassNanos;
+    private final Lock lock = new ReentrantLock();
+
+    // written without synchronization: a lost increment only shifts which call is sampled
+    private int calls;
+
+    private volatile boolean bypassing;
+    private volatile long bypassUntilNanos;
+
+    // the current measurement window, guarded by lock
+    private long samples;
+    private long hits;
+    private long overheadNanos;
+    private long loadNanos;
+
+    // results of the last completed window
+    private volatile double lastHitRatio;
+    private volatile long lastAverageOverheadNanos;
+    private volatile long lastAverageLoadNanos;
+
+    /**
+     * @param minSamples    how many measured calls to decide on
+     * @param bypassSeconds how long to bypass the cache before trying it again
+     */
+    public CacheBypass(String cacheId, int minSamples, int bypassSeconds) {
+        this.cacheId = cacheId;
+        this.minSamples = minSamples;
+        this.bypassNanos = TimeUnit.SECONDS.toNanos(bypassSeconds);
+    }
+
+    /**
+     * @return true if this call should skip the cache and call the method directly
+     */
+    public boolean shouldBypass() {
+        if (!bypassing) {
+            return false;
+        }
+
+        if (System.nanoTime() - bypassUntilNanos < 0) {
+            return true;
+        }
+
+        lock.lock();
+        try {
+            if (bypassing) {
+                bypassing = false;
+                resetWindow();
+                logger.info("trying the cache again for " + cacheId);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if this call should be measured, and passed to {@link #record(boolean, long, long)}
+     */
+    public boolean shouldMeasure() {
+        return (++calls & (SAMPLE_EVERY - 1)) == 0;
+    }
+
+    /**
+     * @param hit           whether the value was found in the cache
+     * @param overheadNanos time spent caching, not counting the method itself
+     * @param loadNanos     time spent in the method, for misses
+     */
+    public void record(boolean hit, long overheadNanos, long loadNanos) {
+        // never make a caller wait for the statistics
+        if (!lock.tryLock()) {
+            return;
+        }
+
+        try {
+            samples++;
+            this.overheadNanos += overheadNanos;
+
+            if (hit) {
+                hits++;
+            } else {
+                this.loadNanos += loadNanos;
+            }
+
+            if (samples >= minSamples) {
+                decide();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isBypassing() {
+        return bypassing;
+    }
+
+    /**
+     * hit ratio of the last completed measurement
+     */
+    public double getLastHitRatio() {
+        return lastHitRatio;
+    }
+
+    /**
+     * average time spent caching per call, in the last completed measurement
+     */
+    public long getLastAverageOverheadNanos() {
+        return lastAverageOverheadNanos;
+    }
+
+    /**
+     * average time spent in the method per miss, in the last completed measurement
+     */
+    public long getLastAverageLoadNanos() {
+        return lastAverageLoadNanos;
+    }
+
+    private void decide() {
+        long misses = samples - hits;
+
+        // without a single miss there's nothing to compare against, caching is clearly working
+        if (misses > 0) {
+            lastHitRatio = (double) hits / samples;
+            lastAverageOverheadNanos = overheadNanos / samples;
+            lastAverageLoadNanos = loadNanos / misses;
+
+            double withCaching = lastAverageOverheadNanos + (1 - lastHitRatio) * lastAverageLoadNanos;
+
+            if (withCaching > lastAverageLoadNanos) {
+                // bypassing is volatile: set it last, so whoever sees it also sees the deadline
+                bypassUntilNanos = System.nanoTime() + bypassNanos;
+                bypassing = true;
+                logger.info("bypassing the cache for " + cacheId + ": hit ratio " + format(lastHitRatio)
+                            + ", caching takes " + lastAverageOverheadNanos + "ns per call, the method takes "
+                            + lastAverageLoadNanos + "ns");
+            }
+        } else {
+            lastHitRatio = 1;
+            lastAverageOverheadNanos = overheadNanos / samples;
+        }
+
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        samples = 0;
+        hits = 0;
+        overheadNanos = 0;
+        loadNanos = 0;
+    }
+
+    private String format(double ratio) {
+        return String.format("%.3f", ratio);
+    }
+}
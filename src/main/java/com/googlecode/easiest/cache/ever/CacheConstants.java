@@ -1,30 +1,35 @@
-/*
- * Copyright 2010 Brad Cupit
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * 
- *     http://www.apache.org/licenses/LICENSE-2.0
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.googlecode.easiest.cache.ever;
-
-/**
- * constants used in this project
- * 
- * @author Brad Cupit
- */
-public class CacheConstants {
-    private CacheConstants() {
-    }
-
-    public static final int NO_EXPIRATION = -1;
-    public static final int UNSET_MAX_SIZE = -1000;
-    public static final int UNSET_EXPIRATION_TIME = -1001;
-}
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+/**
+ * constants used in this project
+ * 
+ * @author Brad Cupit
+ */
+public class CacheConstants {
+    private CacheConstants() {
+    }
+
+    public static final int NO_EXPIRATION = -1;
+    public static final int DONT_CACHE = 0;
+    public static final int UNSET_MAX_SIZE = -1000;
+    public static final int UNSET_EXPIRATION_TIME = -1001;
+    public static final int NO_NEAR_CACHE = 0;
+    public static final int DEFAULT_NEAR_CACHE_EXPIRATION_MILLIS = 1000;
+    public static final int DEFAULT_EXCEPTION_EXPIRATION_SECONDS = 10;
+    public static final int NO_COMPRESSION = 0;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Leaves a parameter of a {@link CacheReturnValue @CacheReturnValue} method
+ * out of the cache key. Useful for arguments which don't affect the return value,
+ * like loggers, request contexts or tracing objects, which are expensive
+ * to turn into a key and make every key unique. Example:
+ * <code>
+ * 	@CacheReturnValue
+ * 	public Account findAccount(String accountNumber, @CacheIgnore RequestContext context) { ... }
+ * </code>
+ * 
+ * @see CacheKey
+ * 
+ * @author Brad Cupit
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheIgnore {
+}
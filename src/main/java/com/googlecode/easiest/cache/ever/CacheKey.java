@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a parameter of a {@link CacheReturnValue @CacheReturnValue} method
+ * as part of the cache key. Once any parameter of a method is annotated
+ * with @CacheKey, only the @CacheKey parameters make up the key, and
+ * the rest are left out. Example:
+ * <code>
+ * 	@CacheReturnValue
+ * 	public Account findAccount(@CacheKey String accountNumber, RequestContext context) { ... }
+ * </code>
+ * 
+ * A property path can pick just part of the argument. Each
+ * segment is read with a getter (getX() or isX()) or else the field
+ * of that name. If any value along the path is null, the key part is null:
+ * <code>
+ * 	@CacheReturnValue
+ * 	public List<Order> findOrders(@CacheKey("customer.id") Order example) { ... }
+ * </code>
+ * 
+ * Two calls are only given the same cached value when their keys are equal,
+ * so every parameter which affects the return value must be part of the key.
+ * 
+ * @see CacheIgnore
+ * 
+ * @author Brad Cupit
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheKey {
+    /**
+     * dot separated property path within the argument, or empty (the default)
+     * to use the whole argument
+     */
+    String value() default "";
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generation counters for the namespaces cached values live in: a class,
+ * and within it a method name (covering all of its overloads). A namespace's
+ * generations are mixed into the keys of its values, so invalidating a namespace
+ * only bumps a counter. Values cached under the old generation are never looked
+ * up again, and are evicted or expire like any other unused value.
+ * 
+ * As long as nothing has been invalidated, keys are left exactly as they are.
+ * 
+ * @author Brad Cupit
+ */
+public class CacheNamespaces {
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * the namespace of a method's values, resolved once per method
+     */
+    public Namespace forMethod(String className, String methodName) {
+        return new Namespace(generation(className), generation(methodNamespace(className, methodName)));
+    }
+
+    /**
+     * invalidates the values of every method of the class
+     */
+    public void invalidateClass(String className) {
+        generation(className).incrementAndGet();
+    }
+
+    /**
+     * invalidates the values of the class's methods with the name
+     */
+    public void invalidateMethod(String className, String methodName) {
+        generation(methodNamespace(className, methodName)).incrementAndGet();
+    }
+
+    /**
+     * the parameter key a {@link Namespace#key(String) namespaced key} was made from.
+     * Namespaces are local to each JVM, so this is what other nodes know a key by
+     */
+    public static String withoutNamespace(String key) {
+        if (key == null || !key.startsWith("#")) {
+            return key;
+        }
+
+        final int end = key.indexOf('#', 1);
+        return end < 0 ? key : key.substring(end + 1);
+    }
+
+    private AtomicLong generation(String namespace) {
+        AtomicLong generation = generations.get(namespace);
+
+        if (generation == null) {
+            final AtomicLong newGeneration = new AtomicLong();
+            generation = generations.putIfAbsent(namespace, newGeneration);
+
+            if (generation == null) {
+                generation = newGeneration;
+            }
+        }
+
+        return generation;
+    }
+
+    private static String methodNamespace(String className, String methodName) {
+        // '#' can't be part of a class name, so this never clashes with another class
+        return className + "#" + methodName;
+    }
+
+    /**
+     * the current generations of a class and one of its methods
+     */
+    public static class Namespace {
+        private final AtomicLong classGeneration;
+        private final AtomicLong methodGeneration;
+
+        private Namespace(AtomicLong classGeneration, AtomicLong methodGeneration) {
+            this.classGeneration = classGeneration;
+            this.methodGeneration = methodGeneration;
+        }
+
+        /**
+         * Prefixes the parameter key with the current generations, unless
+         * nothing has been invalidated. Generated parameter keys are XML,
+         * so they can't be mistaken for a prefixed key.
+         */
+        public String key(String parameterKey) {
+            final long classes = classGeneration.get();
+            final long methods = methodGeneration.get();
+
+            if (classes == 0 && methods == 0) {
+                return parameterKey;
+            }
+
+            return "#" + classes + "." + methods + "#" + parameterKey;
+        }
+    }
+}
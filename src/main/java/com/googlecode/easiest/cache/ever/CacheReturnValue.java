@@ -1,112 +1,203 @@
-/*
- * Copyright 2010 Brad Cupit
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * 
- *     http://www.apache.org/licenses/LICENSE-2.0
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.googlecode.easiest.cache.ever;
-
-import java.lang.annotation.ElementType;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-import java.lang.annotation.Target;
-
-/**
- * Annotation to signal the return value of the method
- * should be cached.
- * 
- * If the annotation is applied to a method, the return
- * value of that method will be cached.
- * 
- * If the annotation is applied to a class, then every
- * public, non-void method in the class will have it's results
- * cached.
- * 
- * If the annotation is applied to a method and a class,
- * the annotation settings on the method take precedence
- * just for that annotated method. For the rest of the methods,
- * the class annotation settings are used. 
- * 
- * When the annotation is applied to a class, the settings
- * ({@link #maxSize()}, {@link #expirationTime()}, etc.)
- * are applied individually to each method. Meaning,
- * <code>
- * 	@CacheReturnValue(maxSize=12)
- * 	public class MyClass { ... }
- * </code>
- * Results in an individual {@link #maxSize()} of 12 per method.
- * Not a {@link #maxSize()} of 12 which all methods share.
- * 
- * Configuration
- * -------------
- * Values specified on the annotation itself will always take precedence. Example:
- * @CacheReturnValue(maxSize = 50)
- * maxSize will always be 50.
- * 
- * If no values are specified, the cache will use the default settings,
- * specified in a Spring xml config file. Example:
- * @CacheReturnValue
- * Here, maxSize will be the value set in the Spring xml config file:
- * 
- *	<bean class="com.googlecode.easiest.cache.ever.CacheAspect" scope="singleton">
- *		<property name="defaultMaxSize" value="100"/>
- *		<property name="defaultExpirationTime" value="1"/>
- *		<property name="defaultUnit" value="WEEKS"/>
- *		...
- *      <!-- or, for no expiration -->
- *		<property name="defaultExpirationTime">
- *			<util:constant static-field="com.googlecode.easiest.cache.ever.CacheConstants.NO_EXPIRATION"/>
- *		</property>
- *	</bean> 
- *
- * If defaults are not set in a Spring xml config file,
- * the hardcoded defaults in {@link CacheAspect} are used.
- * 
- * @author Brad Cupit
- * 
- * TODO: ideas for supporting absolute expiration time (meaning, expire every day at 4:30 am)
- * 
- * @Cache(maxSize = 10, hours = 1, minutes = 30,
- *        expiresAt = @Time(year = ALL, month = ALL, day = 25, hour = 17, minute = 59, second = 0, millisecond = 0),
- *        advanced = @Advanced(cacheNulls = true))
- * or
- * 
- * @Cache(maxSize = 10,
- *        expiresAfter = @Duration(hours = 1, minutes = 30),
- *        expiresAt = @Time(year = ALL, month = ALL, day = 25, hour = 17, minute = 59, second = 0, millisecond = 0),
- *        advanced = @Advanced(cacheNulls = true))
- */
-@Retention(RetentionPolicy.RUNTIME)
-@Target( { ElementType.METHOD, ElementType.TYPE })
-public @interface CacheReturnValue {
-    /**
-     * The maximum number of elements to cache.
-     * If this limit is reached, the Least Recently
-     * Used element will be pushed out of the cache.
-     */
-    int maxSize() default CacheConstants.UNSET_MAX_SIZE; // NOTE: the real default value is configured in a spring xml file
-
-    /**
-     * Amount of time that passes before the
-     * element is expired and removed from
-     * the cache. See {@link #unit()} for
-     * the units this time is in.
-     * 
-     * when set to {@link CacheConstants#NO_EXPIRATION}, the elements do not expire.
-     */
-    int expirationTime() default CacheConstants.UNSET_EXPIRATION_TIME; // NOTE: the real default value is configured in a spring xml file
-
-    /**
-     * units/measurement for duration specified in {@link #expirationTime()}
-     */
-    Time unit() default Time.UNSET; // NOTE: the real default value is configured in a spring xml file
-}
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to signal the return value of the method
+ * should be cached.
+ * 
+ * If the annotation is applied to a method, the return
+ * value of that method will be cached.
+ * 
+ * If the annotation is applied to a class, then every
+ * public, non-void method in the class will have it's results
+ * cached.
+ * 
+ * If the annotation is applied to a method and a class,
+ * the annotation settings on the method take precedence
+ * just for that annotated method. For the rest of the methods,
+ * the class annotation settings are used. 
+ * 
+ * When the annotation is applied to a class, the settings
+ * ({@link #maxSize()}, {@link #expirationTime()}, etc.)
+ * are applied individually to each method. Meaning,
+ * <code>
+ * 	@CacheReturnValue(maxSize=12)
+ * 	public class MyClass { ... }
+ * </code>
+ * Results in an individual {@link #maxSize()} of 12 per method.
+ * Not a {@link #maxSize()} of 12 which all methods share.
+ * 
+ * Configuration
+ * -------------
+ * Values specified on the annotation itself will always take precedence. Example:
+ * @CacheReturnValue(maxSize = 50)
+ * maxSize will always be 50.
+ * 
+ * If no values are specified, the cache will use the default settings,
+ * specified in a Spring xml config file. Example:
+ * @CacheReturnValue
+ * Here, maxSize will be the value set in the Spring xml config file:
+ * 
+ *	<bean class="com.googlecode.easiest.cache.ever.CacheAspect" scope="singleton">
+ *		<property name="defaultMaxSize" value="100"/>
+ *		<property name="defaultExpirationTime" value="1"/>
+ *		<property name="defaultUnit" value="WEEKS"/>
+ *		...
+ *      <!-- or, for no expiration -->
+ *		<property name="defaultExpirationTime">
+ *			<util:constant static-field="com.googlecode.easiest.cache.ever.CacheConstants.NO_EXPIRATION"/>
+ *		</property>
+ *	</bean> 
+ *
+ * If defaults are not set in a Spring xml config file,
+ * the hardcoded defaults in {@link CacheAspect} are used.
+ * 
+ * @author Brad Cupit
+ * 
+ * TODO: ideas for supporting absolute expiration time (meaning, expire every day at 4:30 am)
+ * 
+ * @Cache(maxSize = 10, hours = 1, minutes = 30,
+ *        expiresAt = @Time(year = ALL, month = ALL, day = 25, hour = 17, minute = 59, second = 0, millisecond = 0),
+ *        advanced = @Advanced(cacheNulls = true))
+ * or
+ * 
+ * @Cache(maxSize = 10,
+ *        expiresAfter = @Duration(hours = 1, minutes = 30),
+ *        expiresAt = @Time(year = ALL, month = ALL, day = 25, hour = 17, minute = 59, second = 0, millisecond = 0),
+ *        advanced = @Advanced(cacheNulls = true))
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target( { ElementType.METHOD, ElementType.TYPE })
+public @interface CacheReturnValue {
+    /**
+     * The maximum number of elements to cache.
+     * If this limit is reached, the Least Recently
+     * Used element will be pushed out of the cache.
+     */
+    int maxSize() default CacheConstants.UNSET_MAX_SIZE; // NOTE: the real default value is configured in a spring xml file
+
+    /**
+     * Amount of time that passes before the
+     * element is expired and removed from
+     * the cache. See {@link #unit()} for
+     * the units this time is in.
+     * 
+     * when set to {@link CacheConstants#NO_EXPIRATION}, the elements do not expire.
+     */
+    int expirationTime() default CacheConstants.UNSET_EXPIRATION_TIME; // NOTE: the real default value is configured in a spring xml file
+
+    /**
+     * units/measurement for duration specified in {@link #expirationTime()}
+     */
+    Time unit() default Time.UNSET; // NOTE: the real default value is configured in a spring xml file
+
+    /**
+     * Maximum number of elements each thread keeps in its own
+     * near cache, in front of the shared cache. Only worth enabling
+     * for a handful of extremely hot keys: hits on the near cache
+     * skip the shared cache (and its contention) entirely.
+     * 
+     * Near cache entries are dropped as soon as the shared entry
+     * changes, or after {@link #nearCacheExpirationMillis()},
+     * whichever comes first.
+     * 
+     * when set to {@link CacheConstants#NO_NEAR_CACHE}, there is no near cache.
+     * Ignored unless the cache service is a
+     * {@link com.googlecode.easiest.cache.ever.caches.NearCacheService}.
+     */
+    int nearCacheMaxSize() default CacheConstants.NO_NEAR_CACHE;
+
+    /**
+     * Milliseconds an element stays in a thread's near cache
+     * (see {@link #nearCacheMaxSize()}). Keep this short.
+     */
+    int nearCacheExpirationMillis() default CacheConstants.DEFAULT_NEAR_CACHE_EXPIRATION_MILLIS;
+
+    /**
+     * Decides how long each returned value is cached (or whether it's
+     * cached at all), overriding {@link #expirationTime()} value by value.
+     * 
+     * The default, {@link ExpiryPolicy} itself, means every value
+     * is cached for {@link #expirationTime()}.
+     */
+    Class<? extends ExpiryPolicy> expiryPolicy() default ExpiryPolicy.class;
+
+    /**
+     * Seconds that null and empty results (empty strings, collections,
+     * maps and arrays) are cached for, usually shorter than
+     * {@link #expirationTime()} so ids which don't exist yet aren't
+     * looked up on every call, but show up soon once they do.
+     * {@link CacheConstants#DONT_CACHE} doesn't cache empty results at all.
+     * 
+     * when set to {@link CacheConstants#UNSET_EXPIRATION_TIME}, empty results
+     * are treated like any other result.
+     */
+    int emptyResultExpirationSeconds() default CacheConstants.UNSET_EXPIRATION_TIME;
+
+    /**
+     * Exceptions (including subclasses) which are cached when the method
+     * throws them. Until they expire (see {@link #exceptionExpirationSeconds()}),
+     * calls with the same parameters rethrow the same exception instance without
+     * calling the method, which keeps load off a failing dependency.
+     * 
+     * By default, no exceptions are cached.
+     */
+    Class<? extends Throwable>[] cacheExceptions() default {};
+
+    /**
+     * Seconds that exceptions listed in {@link #cacheExceptions()} are cached for
+     */
+    int exceptionExpirationSeconds() default CacheConstants.DEFAULT_EXCEPTION_EXPIRATION_SECONDS;
+
+    /**
+     * Tags each cached value with what it returns, in addition to its
+     * {@link CacheTag @CacheTag} arguments. Tagged values can be removed
+     * with {@link CacheAspect#removeTagged(String)}.
+     * 
+     * The default, {@link TagExtractor} itself, means no tags are extracted.
+     */
+    Class<? extends TagExtractor> tagExtractor() default TagExtractor.class;
+
+    /**
+     * Values which serialize to at least this many bytes are kept serialized
+     * and compressed rather than as live objects, and are rebuilt on every hit.
+     * Worth it for big, repetitive results like long lists and reports, which
+     * often shrink several times over. Values which aren't serializable are
+     * kept as usual.
+     * 
+     * when set to {@link CacheConstants#NO_COMPRESSION}, nothing is compressed.
+     */
+    int compressAboveBytes() default CacheConstants.NO_COMPRESSION;
+
+    /**
+     * Returned Lists, Sets and Maps are copied once, when they're cached,
+     * and every hit gets the same unmodifiable view of that copy instead
+     * of a copy of its own. Changing the view throws an
+     * UnsupportedOperationException.
+     * 
+     * Only use this when the elements themselves are immutable (Strings,
+     * numbers, immutable value objects), since every caller shares them.
+     * Only applies to methods declared to return Collection, List, Set,
+     * SortedSet, Map or SortedMap.
+     */
+    boolean unmodifiableCollections() default false;
+}
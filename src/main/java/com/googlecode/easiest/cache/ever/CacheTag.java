@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Tags the cached value of a {@link CacheReturnValue @CacheReturnValue}
+ * method with the annotated argument, so every value which depends on it
+ * can be removed at once, across methods. The tag is the annotation's
+ * value, a colon and the argument. Example:
+ * <code>
+ * 	@CacheReturnValue
+ * 	public List<Order> findOrders(@CacheTag("customer") long customerId) { ... }
+ * 
+ * 	@CacheReturnValue
+ * 	public Invoice findLatestInvoice(@CacheTag("customer") long customerId) { ... }
+ * </code>
+ * Both values cached for customer 42 are removed by
+ * {@link CacheAspect#removeTagged(String) removeTagged("customer:42")}.
+ * 
+ * Tags can also come from the returned value, see {@link TagExtractor}.
+ * 
+ * @author Brad Cupit
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheTag {
+    /**
+     * what the argument is, for example "customer"
+     */
+    String value();
+}
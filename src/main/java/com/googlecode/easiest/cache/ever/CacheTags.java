@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The tags of a cached method's values: its {@link CacheTag @CacheTag}
+ * arguments plus whatever its {@link TagExtractor} finds. The annotations
+ * are read once per method.
+ * 
+ * @author Brad Cupit
+ */
+public class CacheTags {
+    private final int[] indexes;
+    private final String[] names;
+    private final TagExtractor tagExtractor;
+
+    private CacheTags(int[] indexes, String[] names, TagExtractor tagExtractor) {
+        this.indexes = indexes;
+        this.names = names;
+        this.tagExtractor = tagExtractor;
+    }
+
+    /**
+     * reads the {@link CacheTag} annotations of the method's parameters
+     * 
+     * @param tagExtractor may be null
+     * @return null if the method's values have no tags
+     */
+    public static CacheTags forMethod(Method method, TagExtractor tagExtractor) {
+        final List<Integer> indexes = new ArrayList<Integer>();
+        final List<String> names = new ArrayList<String>();
+
+        if (method != null) {
+            final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                for (Annotation annotation : parameterAnnotations[i]) {
+                    if (annotation instanceof CacheTag) {
+                        indexes.add(i);
+                        names.add(((CacheTag) annotation).value());
+                    }
+                }
+            }
+        }
+
+        if (indexes.isEmpty() && tagExtractor == null) {
+            return null;
+        }
+
+        final int[] indexArray = new int[indexes.size()];
+        for (int i = 0; i < indexArray.length; i++) {
+            indexArray[i] = indexes.get(i);
+        }
+
+        return new CacheTags(indexArray, names.toArray(new String[names.size()]), tagExtractor);
+    }
+
+    public static String tag(String name, Object argument) {
+        return name + ":" + argument;
+    }
+
+    public Collection<String> tagsFor(Object returnValue, Object[] arguments) {
+        return tagsFor(returnValue, arguments, null);
+    }
+
+    /**
+     * @param knownArguments which arguments are known, or null if all of them are.
+     *        {@link CacheTag} parameters whose argument isn't known aren't tagged
+     */
+    public Collection<String> tagsFor(Object returnValue, Object[] arguments, boolean[] knownArguments) {
+        final List<String> tags = new ArrayList<String>(indexes.length);
+
+        for (int i = 0; i < indexes.length; i++) {
+            if (knownArguments == null || (indexes[i] < knownArguments.length && knownArguments[indexes[i]])) {
+                tags.add(tag(names[i], arguments[indexes[i]]));
+            }
+        }
+
+        if (tagExtractor != null) {
+            tags.addAll(tagExtractor.tags(returnValue, arguments));
+        }
+
+        return tags;
+    }
+}
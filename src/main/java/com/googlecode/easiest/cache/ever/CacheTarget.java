@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The cached method an {@link EvictCache @EvictCache} or
+ * {@link UpdateCache @UpdateCache} method changes, and how to build
+ * that method's keys from the changing method's arguments.
+ * Worked out once, on the changing method's first call.
+ * 
+ * @author Brad Cupit
+ */
+public class CacheTarget {
+    private final CachedMethod cachedMethod;
+    private final KeyParameters keyParameters;
+    private final boolean[] knownArguments;
+
+    /**
+     * @param keyParameters the arguments of the changing method which make up the key
+     */
+    public CacheTarget(CachedMethod cachedMethod, KeyParameters keyParameters) {
+        this.cachedMethod = cachedMethod;
+        this.keyParameters = keyParameters;
+        this.knownArguments = cachedMethod.getKeyParameters().placedArguments();
+    }
+
+    public CachedMethod getCachedMethod() {
+        return cachedMethod;
+    }
+
+    /**
+     * the cached method's parameter key, built from the changing method's arguments
+     * the same way the cached method builds it (with its generated key builder, if any)
+     */
+    public String generateParameterKey(Object[] arguments) {
+        return cachedMethod.generateParameterKeyFromKeyValues(keyParameters.select(arguments));
+    }
+
+    /**
+     * the changing method's arguments, moved to where the cached method takes them,
+     * for the cached method's {@link ExpiryPolicy} and {@link CacheTags}. Only the
+     * cached method's key arguments are known; the rest are null.
+     */
+    public Object[] cachedMethodArguments(Object[] arguments) {
+        return cachedMethod.getKeyParameters().placeArguments(keyParameters.select(arguments));
+    }
+
+    /**
+     * the cached method's tags for the value, leaving out {@link CacheTag @CacheTag}
+     * parameters whose argument the changing method can't supply
+     * 
+     * @param cachedMethodArguments as returned by {@link #cachedMethodArguments(Object[])}
+     */
+    public Collection<String> tagsFor(Object value, Object[] cachedMethodArguments) {
+        if (cachedMethod.getCacheTags() == null) {
+            return Collections.emptyList();
+        }
+
+        return cachedMethod.getCacheTags().tagsFor(value, cachedMethodArguments, knownArguments);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.Arrays;
+
+import com.googlecode.easiest.cache.ever.CacheNamespaces.Namespace;
+import com.googlecode.easiest.cache.ever.keys.GeneratedKeyBuilder;
+import com.googlecode.easiest.cache.ever.keys.KeyGenerator;
+
+/**
+ * Everything about a cached method which doesn't change from
+ * call to call, worked out once on the method's first call:
+ * its cache id, its cache settings and how to build its keys
+ * (including which arguments make up the key, see {@link KeyParameters}).
+ * 
+ * @author Brad Cupit
+ */
+public class CachedMethod {
+    private final String cacheId;
+    private final CacheConfig cacheConfig;
+    private final KeyParameters keyParameters;
+    private final GeneratedKeyBuilder generatedKeyBuilder;
+    private final KeyGenerator keyGenerator;
+    private final CacheBypass cacheBypass;
+    private final ExpiryPolicy expiryPolicy;
+    private final ExceptionCaching exceptionCaching;
+    private final CacheTags cacheTags;
+    private final Namespace namespace;
+
+    /**
+     * @param generatedKeyBuilder builder generated at compile time, or null to fall back to the keyGenerator
+     * @param cacheBypass         decides when to skip the cache, or null to always cache
+     * @param expiryPolicy        decides how long each value is cached, or null to use the cacheConfig's expiration
+     * @param exceptionCaching    decides which exceptions are cached, or null to cache no exceptions
+     * @param cacheTags           the tags of each value, or null if values aren't tagged
+     * @param namespace           generations mixed into every key, or null if the keys are never invalidated
+     */
+    public CachedMethod(String cacheId, CacheConfig cacheConfig, KeyParameters keyParameters,
+                GeneratedKeyBuilder generatedKeyBuilder, KeyGenerator keyGenerator, CacheBypass cacheBypass,
+                ExpiryPolicy expiryPolicy, ExceptionCaching exceptionCaching, CacheTags cacheTags, Namespace namespace) {
+        this.cacheId = cacheId;
+        this.cacheConfig = cacheConfig;
+        this.keyParameters = keyParameters;
+        this.generatedKeyBuilder = generatedKeyBuilder;
+        this.keyGenerator = keyGenerator;
+        this.cacheBypass = cacheBypass;
+        this.expiryPolicy = expiryPolicy;
+        this.exceptionCaching = exceptionCaching;
+        this.cacheTags = cacheTags;
+        this.namespace = namespace;
+    }
+
+    public String getCacheId() {
+        return cacheId;
+    }
+
+    public CacheConfig getCacheConfig() {
+        return cacheConfig;
+    }
+
+    /**
+     * @return null if the method is always cached
+     */
+    public CacheBypass getCacheBypass() {
+        return cacheBypass;
+    }
+
+    /**
+     * @return null if every value is cached for the cacheConfig's expiration time
+     */
+    public ExpiryPolicy getExpiryPolicy() {
+        return expiryPolicy;
+    }
+
+    /**
+     * @return null if exceptions are never cached
+     */
+    public ExceptionCaching getExceptionCaching() {
+        return exceptionCaching;
+    }
+
+    /**
+     * which of the method's arguments make up its keys
+     */
+    public KeyParameters getKeyParameters() {
+        return keyParameters;
+    }
+
+    /**
+     * @return null if values aren't tagged
+     */
+    public CacheTags getCacheTags() {
+        return cacheTags;
+    }
+
+    /**
+     * generates the parameter key for this invocation, preferring the builder
+     * generated at compile time (no reflection) over the runtime {@link KeyGenerator}.
+     * Generated builders select the key arguments themselves.
+     */
+    public String generateParameterKey(Object[] arguments) {
+        if (generatedKeyBuilder != null) {
+            return inNamespace(generatedKeyBuilder.parameterKey(arguments));
+        } else {
+            return inNamespace(keyGenerator.generateParameterKey(Arrays.asList(keyParameters.select(arguments))));
+        }
+    }
+
+    /**
+     * generates the parameter key from the values which make up the key, already
+     * picked out of some arguments (as {@link KeyParameters#select(Object[])} does).
+     * Builds the same key as {@link #generateParameterKey(Object[])} would for those arguments.
+     */
+    public String generateParameterKeyFromKeyValues(Object[] keyValues) {
+        if (generatedKeyBuilder != null) {
+            // generated builders are only for methods without property paths
+            return inNamespace(generatedKeyBuilder.parameterKey(keyParameters.place(keyValues)));
+        } else {
+            return inNamespace(keyGenerator.generateParameterKey(Arrays.asList(keyValues)));
+        }
+    }
+
+    /**
+     * mixes the method's current namespace generations into the parameter key
+     */
+    public String inNamespace(String parameterKey) {
+        return namespace == null ? parameterKey : namespace.key(parameterKey);
+    }
+}
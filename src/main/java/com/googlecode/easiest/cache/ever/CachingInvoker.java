@@ -0,0 +1,353 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import com.googlecode.easiest.cache.ever.InFlightLoads.InFlightLoad;
+import com.googlecode.easiest.cache.ever.caches.CacheService;
+import com.googlecode.easiest.cache.ever.caches.CachedException;
+import com.googlecode.easiest.cache.ever.caches.CachedValue;
+import com.googlecode.easiest.cache.ever.caches.CopyingCacheService;
+import com.googlecode.easiest.cache.ever.caches.CostAwareCacheService;
+import com.googlecode.easiest.cache.ever.caches.EntrySizes;
+import com.googlecode.easiest.cache.ever.caches.EvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.ExpiringCacheService;
+import com.googlecode.easiest.cache.ever.caches.TaggingCacheService;
+import com.googlecode.easiest.cache.ever.trace.CacheMonitor;
+import com.googlecode.easiest.cache.ever.trace.TraceRecorder;
+
+/**
+ * The read-through logic shared by every way of caching a call
+ * ({@link CacheAspect}, {@link com.googlecode.easiest.cache.ever.memoize.Memoizer}):
+ * return the cached value if there is one, otherwise invoke the call
+ * and cache its result.
+ * 
+ * Concurrent misses on the same cache entry only invoke the
+ * call once, see {@link InFlightLoads}. A caller which has waited
+ * {@link #setLoadWaitMillis(long) loadWaitMillis} for another's load
+ * invokes the call itself. The miss is computed on the
+ * calling thread, so it runs on a virtual thread whenever the caller is one.
+ * 
+ * Every hit and miss can be recorded with a {@link TraceRecorder}, and
+ * measured with a {@link CacheMonitor}.
+ * 
+ * How long each miss took to compute is handed to the cache
+ * if it's a {@link CostAwareCacheService}. An {@link ExpiryPolicy} can
+ * decide how long each value is cached, if the cache is an
+ * {@link ExpiringCacheService}, or that it isn't cached at all.
+ * 
+ * Exceptions can be cached too (see {@link ExceptionCaching}): they're
+ * stored as a {@link CachedException} and rethrown on every hit.
+ * 
+ * Entries are tagged (see {@link CacheTags}) if the cache is a
+ * {@link TaggingCacheService}.
+ * 
+ * With a {@link BackgroundPopulator}, misses return as soon as the value is
+ * copied (if the cache is a {@link CopyingCacheService}), and the copy is
+ * stored in the background.
+ * 
+ * @author Brad Cupit
+ */
+public class CachingInvoker {
+    private static final long DEFAULT_LOAD_WAIT_MILLIS = 10000;
+
+    private CacheService cacheService;
+    private TraceRecorder traceRecorder;
+    private CacheMonitor cacheMonitor;
+    private BackgroundPopulator backgroundPopulator;
+    private long loadWaitMillis = DEFAULT_LOAD_WAIT_MILLIS;
+    private final InFlightLoads inFlightLoads = new InFlightLoads();
+
+    public void setCacheService(CacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * optional, null (the default) records nothing
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    /**
+     * optional, null (the default) measures nothing
+     */
+    public void setCacheMonitor(CacheMonitor cacheMonitor) {
+        this.cacheMonitor = cacheMonitor;
+    }
+
+    /**
+     * optional, null (the default) stores values on the calling thread
+     */
+    public void setBackgroundPopulator(BackgroundPopulator backgroundPopulator) {
+        this.backgroundPopulator = backgroundPopulator;
+    }
+
+    /**
+     * how long a miss waits for another thread loading the same entry before
+     * loading it too. Defaults to 10 seconds
+     */
+    public void setLoadWaitMillis(long loadWaitMillis) {
+        this.loadWaitMillis = loadWaitMillis;
+    }
+
+    /**
+     * returns the value cached under cacheId and key, invoking (and caching
+     * the result of) the invocation if nothing is cached yet. The cache
+     * must already have been created.
+     */
+    public Object invoke(String cacheId, String key, Invocation invocation) throws Throwable {
+        return invoke(cacheId, key, invocation, null, null);
+    }
+
+    /**
+     * same as {@link #invoke(String, String, Invocation)} for the cachedMethod's
+     * cache, also applying its {@link ExpiryPolicy}, {@link ExceptionCaching}
+     * and {@link CacheTags} (if it has them)
+     */
+    public Object invoke(CachedMethod cachedMethod, String key, Object[] arguments, Invocation invocation)
+                throws Throwable {
+        return invoke(cachedMethod.getCacheId(), key, invocation, cachedMethod, arguments);
+    }
+
+    /**
+     * caches the value as if the cacheTarget's cached method had returned it. The
+     * method's {@link ExpiryPolicy} (if it has one) decides how long it's cached,
+     * or whether it's cached at all (if not, the value cached before is removed,
+     * when the {@link CacheService} can remove entries). The policy and the method's {@link CacheTags}
+     * see the changing method's arguments where the cached method takes them.
+     * 
+     * @param arguments the changing method's arguments
+     */
+    public void put(CacheTarget cacheTarget, String key, Object value, Object[] arguments) {
+        final CachedMethod cachedMethod = cacheTarget.getCachedMethod();
+        final Object[] cachedMethodArguments = cacheTarget.cachedMethodArguments(arguments);
+        final int timeToLiveSeconds = timeToLiveSeconds(cachedMethod, value, cachedMethodArguments);
+
+        if (timeToLiveSeconds != CacheConstants.DONT_CACHE) {
+            add(cachedMethod.getCacheId(), key, value, 0, timeToLiveSeconds, cacheTarget.tagsFor(value,
+                        cachedMethodArguments));
+        } else if (cacheService instanceof EvictingCacheService) {
+            // the old value would otherwise still be returned
+            ((EvictingCacheService) cacheService).remove(cachedMethod.getCacheId(), key);
+        }
+    }
+
+    private Object invoke(String cacheId, String key, Invocation invocation, CachedMethod cachedMethod,
+                Object[] arguments) throws Throwable {
+        final CachedValue cachedValue = retrieve(cacheId, key);
+
+        if (cachedValue.wasFound()) {
+            recordHit(cacheId, key);
+            return valueOrThrow(cachedValue.value());
+        }
+
+        final InFlightLoad inFlightLoad = inFlightLoads.begin(cacheId, key);
+
+        if (!inFlightLoad.isOwner()) {
+            final long waitStart = System.nanoTime();
+            final boolean completed = inFlightLoad.awaitCompletion(loadWaitMillis);
+
+            if (invocation instanceof MeasuredInvocation) {
+                ((MeasuredInvocation) invocation).waited(System.nanoTime() - waitStart);
+            }
+
+            if (completed) {
+                final CachedValue loadedByOtherThread = retrieve(cacheId, key);
+
+                if (loadedByOtherThread.wasFound()) {
+                    recordHit(cacheId, key);
+                    return valueOrThrow(loadedByOtherThread.value());
+                }
+            }
+
+            // the other thread failed, is taking too long, or its value is already gone, so load it ourselves
+            return proceedAndCache(cacheId, key, invocation, cachedMethod, arguments, null);
+        }
+
+        return proceedAndCache(cacheId, key, invocation, cachedMethod, arguments, inFlightLoad);
+    }
+
+    /**
+     * completes the in-flight load (if there is one) once the value is stored,
+     * which may be later, in the background
+     */
+    private Object proceedAndCache(String cacheId, String key, Invocation invocation, CachedMethod cachedMethod,
+                Object[] arguments, InFlightLoad inFlightLoad) throws Throwable {
+        boolean storingInBackground = false;
+
+        try {
+            final long start = System.nanoTime();
+            final Object returnValue;
+
+            try {
+                returnValue = invocation.proceed();
+            } catch (Throwable exception) {
+                final ExceptionCaching exceptionCaching = cachedMethod == null ? null : cachedMethod
+                            .getExceptionCaching();
+
+                if (exceptionCaching != null) {
+                    final int timeToLiveSeconds = exceptionCaching.timeToLiveSeconds(exception);
+
+                    if (timeToLiveSeconds != CacheConstants.DONT_CACHE) {
+                        add(cacheId, key, new CachedException(exception), System.nanoTime() - start,
+                                    timeToLiveSeconds, tags(cachedMethod, null, arguments));
+                    }
+                }
+
+                throw exception;
+            }
+
+            final long loadNanos = System.nanoTime() - start;
+
+            if (traceRecorder != null) {
+                traceRecorder.recordMiss(cacheId, key, loadNanos, returnValue);
+            }
+
+            if (cacheMonitor != null) {
+                cacheMonitor.load(cacheId, loadNanos, EntrySizes.estimate(returnValue));
+            }
+
+            final int timeToLiveSeconds = timeToLiveSeconds(cachedMethod, returnValue, arguments);
+
+            if (timeToLiveSeconds != CacheConstants.DONT_CACHE) {
+                storingInBackground = store(cacheId, key, returnValue, loadNanos, timeToLiveSeconds, tags(
+                            cachedMethod, returnValue, arguments), inFlightLoad);
+            }
+
+            return returnValue;
+        } finally {
+            if (inFlightLoad != null && !storingInBackground) {
+                inFlightLoad.complete();
+            }
+        }
+    }
+
+    private int timeToLiveSeconds(CachedMethod cachedMethod, Object value, Object[] arguments) {
+        if (cachedMethod == null || cachedMethod.getExpiryPolicy() == null) {
+            return CacheConstants.UNSET_EXPIRATION_TIME;
+        }
+
+        return cachedMethod.getExpiryPolicy().timeToLiveSeconds(value, arguments);
+    }
+
+    private Collection<String> tags(CachedMethod cachedMethod, Object value, Object[] arguments) {
+        if (cachedMethod == null || cachedMethod.getCacheTags() == null) {
+            return Collections.emptyList();
+        }
+
+        return cachedMethod.getCacheTags().tagsFor(value, arguments);
+    }
+
+    /**
+     * adds the value, or hands a copy of it to the {@link BackgroundPopulator} to add.
+     * The copy is made here, so the caller may change its value once this returns
+     * 
+     * @return true if the value is being stored in the background, which completes
+     *         the in-flight load once it's stored
+     */
+    private boolean store(final String cacheId, final String key, Object value, final long loadNanos,
+                final int timeToLiveSeconds, final Collection<String> tags, final InFlightLoad inFlightLoad) {
+        if (backgroundPopulator == null || inFlightLoad == null || !(cacheService instanceof CopyingCacheService)) {
+            add(cacheId, key, value, loadNanos, timeToLiveSeconds, tags);
+            return false;
+        }
+
+        final Object copy = ((CopyingCacheService) cacheService).copyForAdd(cacheId, value);
+        final boolean submitted = backgroundPopulator.submit(new Runnable() {
+            public void run() {
+                try {
+                    add(cacheId, key, copy, loadNanos, timeToLiveSeconds, tags);
+                } finally {
+                    inFlightLoad.complete();
+                }
+            }
+        });
+
+        if (!submitted) {
+            // full or closed
+            add(cacheId, key, copy, loadNanos, timeToLiveSeconds, tags);
+        }
+
+        return submitted;
+    }
+
+    private void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds,
+                Collection<String> tags) {
+        if (!tags.isEmpty() && cacheService instanceof TaggingCacheService) {
+            ((TaggingCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds, tags);
+        } else if (cacheService instanceof ExpiringCacheService) {
+            ((ExpiringCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds);
+        } else if (cacheService instanceof CostAwareCacheService) {
+            ((CostAwareCacheService) cacheService).add(cacheId, key, value, loadNanos);
+        } else {
+            cacheService.add(cacheId, key, value);
+        }
+    }
+
+    private CachedValue retrieve(String cacheId, String key) {
+        if (cacheMonitor == null) {
+            return cacheService.retrieve(cacheId, key);
+        }
+
+        final long start = System.nanoTime();
+        final CachedValue cachedValue = cacheService.retrieve(cacheId, key);
+        final long lookupNanos = System.nanoTime() - start;
+
+        if (cachedValue.wasFound()) {
+            cacheMonitor.hit(cacheId, lookupNanos);
+        } else {
+            cacheMonitor.miss(cacheId, lookupNanos);
+        }
+
+        return cachedValue;
+    }
+
+    private Object valueOrThrow(Object cachedValue) throws Throwable {
+        if (cachedValue instanceof CachedException) {
+            throw ((CachedException) cachedValue).getException();
+        }
+
+        return cachedValue;
+    }
+
+    private void recordHit(String cacheId, String key) {
+        if (traceRecorder != null) {
+            traceRecorder.recordHit(cacheId, key);
+        }
+    }
+
+    /**
+     * the call whose result is being cached
+     */
+    public interface Invocation {
+        Object proceed() throws Throwable;
+    }
+
+    /**
+     * an {@link Invocation} which is also told when the call waited
+     * for another thread loading the same entry
+     */
+    public interface MeasuredInvocation extends Invocation {
+        /**
+         * called after the wait, before the value is looked up again
+         * (or loaded, if the other thread didn't store it in time)
+         */
+        void waited(long waitNanos);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link ExpiryPolicy} which gives null and empty results (empty strings,
+ * collections, maps and arrays) their own time to live, and leaves
+ * everything else to another policy (or the method's expiration time).
+ * See {@link CacheReturnValue#emptyResultExpirationSeconds()}.
+ * 
+ * @author Brad Cupit
+ */
+public class EmptyResultExpiryPolicy implements ExpiryPolicy {
+    private final int emptyResultSeconds;
+    private final ExpiryPolicy otherResults;
+
+    /**
+     * @param otherResults decides for results which aren't empty, or null to use the method's expiration time
+     */
+    public EmptyResultExpiryPolicy(int emptyResultSeconds, ExpiryPolicy otherResults) {
+        this.emptyResultSeconds = emptyResultSeconds;
+        this.otherResults = otherResults;
+    }
+
+    public int timeToLiveSeconds(Object returnValue, Object[] arguments) {
+        if (isEmpty(returnValue)) {
+            return emptyResultSeconds;
+        } else if (otherResults != null) {
+            return otherResults.timeToLiveSeconds(returnValue, arguments);
+        } else {
+            return CacheConstants.UNSET_EXPIRATION_TIME;
+        }
+    }
+
+    private boolean isEmpty(Object returnValue) {
+        if (returnValue == null) {
+            return true;
+        } else if (returnValue instanceof CharSequence) {
+            return ((CharSequence) returnValue).length() == 0;
+        } else if (returnValue instanceof Collection<?>) {
+            return ((Collection<?>) returnValue).isEmpty();
+        } else if (returnValue instanceof Map<?, ?>) {
+            return ((Map<?, ?>) returnValue).isEmpty();
+        } else if (returnValue.getClass().isArray()) {
+            return Array.getLength(returnValue) == 0;
+        } else {
+            return false;
+        }
+    }
+}
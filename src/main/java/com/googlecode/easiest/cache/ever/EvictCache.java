@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Evicts the cached value of a {@link CacheReturnValue @CacheReturnValue}
+ * method once the annotated method returns (not if it throws). Put it on
+ * methods which change what the cached method would return:
+ * <code>
+ * 	@CacheReturnValue
+ * 	public User findUser(String userId) { ... }
+ * 
+ * 	@EvictCache(method = "findUser")
+ * 	public void renameUser(@CacheKey String userId, @CacheIgnore String newName) { ... }
+ * </code>
+ * 
+ * The arguments of the annotated method (narrowed down with
+ * {@link CacheKey @CacheKey} and {@link CacheIgnore @CacheIgnore}, as
+ * for cached methods) must make up the same key as the cached method's
+ * arguments, in the same order.
+ * 
+ * @see UpdateCache
+ * 
+ * @author Brad Cupit
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EvictCache {
+    /**
+     * name of the cached method
+     */
+    String method();
+
+    /**
+     * parameter types of the cached method, only needed if the method name is overloaded
+     */
+    Class<?>[] parameterTypes() default {};
+
+    /**
+     * concrete class of the bean with the cached method, since cache ids are named
+     * after it. Defaults to the class of the annotated method.
+     */
+    Class<?> type() default void.class;
+
+    /**
+     * evict every cached value of the method, rather than just the one for these arguments
+     */
+    boolean allEntries() default false;
+}
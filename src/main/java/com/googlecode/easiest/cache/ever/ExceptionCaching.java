@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+/**
+ * Which exceptions thrown by a cached method are cached (and rethrown
+ * on the following calls), and for how long. See
+ * {@link CacheReturnValue#cacheExceptions()}.
+ * 
+ * @author Brad Cupit
+ */
+public class ExceptionCaching {
+    private final Class<? extends Throwable>[] exceptionTypes;
+    private final int timeToLiveSeconds;
+
+    public ExceptionCaching(Class<? extends Throwable>[] exceptionTypes, int timeToLiveSeconds) {
+        this.exceptionTypes = exceptionTypes.clone();
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    /**
+     * @return how long to cache the exception, or {@link CacheConstants#DONT_CACHE}
+     *         if it isn't one of the cached types
+     */
+    public int timeToLiveSeconds(Throwable exception) {
+        for (Class<? extends Throwable> exceptionType : exceptionTypes) {
+            if (exceptionType.isInstance(exception)) {
+                return timeToLiveSeconds;
+            }
+        }
+
+        return CacheConstants.DONT_CACHE;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+/**
+ * Decides how long each value returned by a cached method stays
+ * in the cache, based on the value itself (and the arguments it was
+ * computed from). Useful when the value knows its own freshness, like
+ * a token with an expiry date, or when some results (say, "not found")
+ * should expire sooner than the rest.
+ * 
+ * Set with {@link CacheReturnValue#expiryPolicy()}. Implementations need
+ * a public no-arg constructor, and must be thread safe.
+ * 
+ * @author Brad Cupit
+ */
+public interface ExpiryPolicy {
+    /**
+     * @return seconds the value stays in the cache, or one of:
+     *         {@link CacheConstants#NO_EXPIRATION} to keep the value until it's evicted,
+     *         {@link CacheConstants#DONT_CACHE} to not cache the value at all,
+     *         {@link CacheConstants#UNSET_EXPIRATION_TIME} to use the method's
+     *         {@link CacheReturnValue#expirationTime()}
+     */
+    int timeToLiveSeconds(Object returnValue, Object[] arguments);
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of cache misses which are currently being loaded,
+ * so concurrent misses for the same cache entry only invoke
+ * the underlying method once (single-flight). The first thread to
+ * miss owns the load, every other thread waits for it to finish
+ * and then reads the freshly cached value.
+ * 
+ * Waiting uses a {@link CountDownLatch} rather than a monitor,
+ * so waiting virtual threads unmount instead of pinning their carrier.
+ * 
+ * @author Brad Cupit
+ */
+public class InFlightLoads {
+    private final ConcurrentMap<EntryKey, InFlightLoad> inFlight = new ConcurrentHashMap<EntryKey, InFlightLoad>();
+
+    /**
+     * Registers a load for the given cache entry. If no other thread is
+     * loading that entry, the returned {@link InFlightLoad} is owned by the caller,
+     * who must call {@link InFlightLoad#complete()} when done (in a finally block).
+     * Otherwise the caller should {@link InFlightLoad#awaitCompletion(long)}.
+     */
+    public InFlightLoad begin(String cacheId, String key) {
+        final EntryKey entryKey = new EntryKey(cacheId, key);
+        final InFlightLoad newLoad = new InFlightLoad(entryKey, true);
+        final InFlightLoad existingLoad = inFlight.putIfAbsent(entryKey, newLoad);
+
+        if (existingLoad == null) {
+            return newLoad;
+        } else {
+            return existingLoad.asWaiter();
+        }
+    }
+
+    /**
+     * a single load of a cache entry, as seen by one thread.
+     */
+    public class InFlightLoad {
+        private final EntryKey entryKey;
+        private final boolean owner;
+        private final CountDownLatch completed;
+
+        private InFlightLoad(EntryKey entryKey, boolean owner) {
+            this(entryKey, owner, new CountDownLatch(1));
+        }
+
+        private InFlightLoad(EntryKey entryKey, boolean owner, CountDownLatch completed) {
+            this.entryKey = entryKey;
+            this.owner = owner;
+            this.completed = completed;
+        }
+
+        /**
+         * true if the current thread is the one responsible for loading the entry
+         */
+        public boolean isOwner() {
+            return owner;
+        }
+
+        /**
+         * blocks until the owning thread calls {@link #complete()}, or the time is up.
+         * Not interruptible, but the thread's interrupt status is preserved.
+         * 
+         * @return false if the load still hadn't completed when the time was up
+         */
+        public boolean awaitCompletion(long timeoutMillis) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            boolean interrupted = false;
+            boolean done;
+
+            while (true) {
+                try {
+                    done = completed.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    break;
+                } catch (InterruptedException exception) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            return done;
+        }
+
+        /**
+         * called by the owner when the load has finished, successfully or not.
+         */
+        public void complete() {
+            if (!owner) {
+                throw new IllegalStateException("only the owner of an in-flight load can complete it");
+            }
+
+            inFlight.remove(entryKey, this);
+            completed.countDown();
+        }
+
+        private InFlightLoad asWaiter() {
+            return new InFlightLoad(entryKey, false, completed);
+        }
+    }
+
+    /**
+     * (cacheId, key) pair. The key can be null (zero parameter methods).
+     */
+    private static class EntryKey {
+        private final String cacheId;
+        private final String key;
+
+        private EntryKey(String cacheId, String key) {
+            this.cacheId = cacheId;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof EntryKey)) {
+                return false;
+            }
+
+            EntryKey other = (EntryKey) object;
+            return cacheId.equals(other.cacheId) && (key == null ? other.key == null : key.equals(other.key));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cacheId.hashCode() + (key == null ? 0 : key.hashCode());
+        }
+    }
+}
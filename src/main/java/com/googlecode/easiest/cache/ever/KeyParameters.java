@@ -0,0 +1,308 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Which arguments of a cached method (or which properties of them) make up
+ * its cache key, as declared with {@link CacheKey @CacheKey} and
+ * {@link CacheIgnore @CacheIgnore}. The annotations are read once per method.
+ * 
+ * @author Brad Cupit
+ */
+public class KeyParameters {
+    private static final KeyParameters ALL = new KeyParameters(null, null, 0);
+
+    /**
+     * indexes of the arguments in the key, or null for all of them
+     */
+    private final int[] indexes;
+    private final PropertyPath[] paths;
+    private final int parameterCount;
+
+    private KeyParameters(int[] indexes, PropertyPath[] paths, int parameterCount) {
+        this.indexes = indexes;
+        this.paths = paths;
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * reads the {@link CacheKey} and {@link CacheIgnore} annotations of
+     * the method's parameters. A null method keeps every argument.
+     * 
+     * @throws IllegalArgumentException if a parameter is annotated with both
+     */
+    public static KeyParameters forMethod(Method method) {
+        if (method == null) {
+            return ALL;
+        }
+
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        List<Integer> keyIndexes = new ArrayList<Integer>();
+        List<Integer> notIgnoredIndexes = new ArrayList<Integer>();
+        List<PropertyPath> keyPaths = new ArrayList<PropertyPath>();
+
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            CacheKey cacheKey = null;
+            boolean ignored = false;
+
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof CacheKey) {
+                    cacheKey = (CacheKey) annotation;
+                } else if (annotation instanceof CacheIgnore) {
+                    ignored = true;
+                }
+            }
+
+            if (cacheKey != null && ignored) {
+                throw new IllegalArgumentException("parameter " + i + " of " + method
+                            + " can't be annotated with both @CacheKey and @CacheIgnore");
+            }
+
+            if (cacheKey != null) {
+                keyIndexes.add(i);
+                keyPaths.add(cacheKey.value().length() == 0 ? null : new PropertyPath(cacheKey.value()));
+            }
+
+            if (!ignored) {
+                notIgnoredIndexes.add(i);
+            }
+        }
+
+        if (!keyIndexes.isEmpty()) {
+            return new KeyParameters(toArray(keyIndexes), keyPaths.toArray(new PropertyPath[keyPaths.size()]),
+                        parameterAnnotations.length);
+        } else if (notIgnoredIndexes.size() < parameterAnnotations.length) {
+            return new KeyParameters(toArray(notIgnoredIndexes), new PropertyPath[notIgnoredIndexes.size()],
+                        parameterAnnotations.length);
+        } else {
+            return new KeyParameters(null, null, parameterAnnotations.length);
+        }
+    }
+
+    /**
+     * @return true if every argument makes up the key as-is
+     */
+    public boolean isAllArguments() {
+        return indexes == null;
+    }
+
+    /**
+     * @return the number of values {@link #select(Object[])} returns
+     *         for a method with the given number of parameters
+     */
+    public int count(int numParameters) {
+        return indexes == null ? numParameters : indexes.length;
+    }
+
+    /**
+     * @return the values which make up the key, in parameter order
+     */
+    public Object[] select(Object[] arguments) {
+        if (indexes == null) {
+            return arguments;
+        }
+
+        Object[] selected = new Object[indexes.length];
+
+        for (int i = 0; i < indexes.length; i++) {
+            Object argument = arguments[indexes[i]];
+            selected[i] = paths[i] == null ? argument : paths[i].read(argument);
+        }
+
+        return selected;
+    }
+
+    /**
+     * the reverse of {@link #select(Object[])}, for methods without property paths:
+     * puts the key values where the method's arguments would be. The arguments
+     * which aren't part of the key are null
+     */
+    public Object[] place(Object[] keyValues) {
+        if (indexes == null) {
+            return keyValues;
+        }
+
+        Object[] arguments = new Object[parameterCount];
+
+        for (int i = 0; i < indexes.length; i++) {
+            arguments[indexes[i]] = keyValues[i];
+        }
+
+        return arguments;
+    }
+
+    /**
+     * Like {@link #place(Object[])}, but only keeps key values which are whole
+     * arguments: a value read through a property path isn't the argument, so its
+     * place stays null, same as the arguments which aren't part of the key.
+     * Always returns an array as long as the method's parameter list.
+     */
+    public Object[] placeArguments(Object[] keyValues) {
+        Object[] arguments = new Object[parameterCount];
+
+        if (indexes == null) {
+            System.arraycopy(keyValues, 0, arguments, 0, Math.min(keyValues.length, parameterCount));
+            return arguments;
+        }
+
+        for (int i = 0; i < indexes.length && i < keyValues.length; i++) {
+            if (paths[i] == null) {
+                arguments[indexes[i]] = keyValues[i];
+            }
+        }
+
+        return arguments;
+    }
+
+    /**
+     * @return for each of the method's parameters, whether {@link #placeArguments(Object[])} fills it in
+     */
+    public boolean[] placedArguments() {
+        boolean[] placed = new boolean[parameterCount];
+
+        for (int i = 0; i < parameterCount; i++) {
+            placed[i] = indexes == null;
+        }
+
+        if (indexes != null) {
+            for (int i = 0; i < indexes.length; i++) {
+                placed[indexes[i]] = paths[i] == null;
+            }
+        }
+
+        return placed;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+
+        return array;
+    }
+
+    /**
+     * a dot separated property path like "customer.address.zip".
+     * How to read each segment is looked up once per class.
+     */
+    private static class PropertyPath {
+        private final String path;
+        private final String[] segments;
+        private final List<ConcurrentMap<Class<?>, PropertyReader>> readers = new ArrayList<ConcurrentMap<Class<?>, PropertyReader>>();
+
+        private PropertyPath(String path) {
+            this.path = path;
+            this.segments = path.split("\\.");
+
+            for (int i = 0; i < segments.length; i++) {
+                readers.add(new ConcurrentHashMap<Class<?>, PropertyReader>());
+            }
+        }
+
+        private Object read(Object argument) {
+            Object value = argument;
+
+            for (int i = 0; i < segments.length && value != null; i++) {
+                PropertyReader reader = readers.get(i).get(value.getClass());
+
+                if (reader == null) {
+                    reader = createReader(value.getClass(), segments[i]);
+                    readers.get(i).putIfAbsent(value.getClass(), reader);
+                }
+
+                value = reader.read(value);
+            }
+
+            return value;
+        }
+
+        private PropertyReader createReader(Class<?> type, String property) {
+            String capitalized = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+
+            for (String getterName : new String[] { "get" + capitalized, "is" + capitalized }) {
+                try {
+                    Method getter = type.getMethod(getterName);
+                    getter.setAccessible(true);
+                    return new GetterReader(getter);
+                } catch (NoSuchMethodException exception) {
+                    // try the next option
+                }
+            }
+
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                try {
+                    Field field = current.getDeclaredField(property);
+                    field.setAccessible(true);
+                    return new FieldReader(field);
+                } catch (NoSuchFieldException exception) {
+                    // try the superclass
+                }
+            }
+
+            throw new IllegalArgumentException("no getter or field named '" + property + "' on " + type.getName()
+                        + " for @CacheKey(\"" + path + "\")");
+        }
+    }
+
+    private interface PropertyReader {
+        Object read(Object target);
+    }
+
+    private static class GetterReader implements PropertyReader {
+        private final Method getter;
+
+        private GetterReader(Method getter) {
+            this.getter = getter;
+        }
+
+        public Object read(Object target) {
+            try {
+                return getter.invoke(target);
+            } catch (IllegalAccessException exception) {
+                throw new RuntimeException("getter was made accessible, so this should never happen", exception);
+            } catch (InvocationTargetException exception) {
+                throw new RuntimeException("unable to read " + getter + " for @CacheKey", exception.getCause());
+            }
+        }
+    }
+
+    private static class FieldReader implements PropertyReader {
+        private final Field field;
+
+        private FieldReader(Field field) {
+            this.field = field;
+        }
+
+        public Object read(Object target) {
+            try {
+                return field.get(target);
+            } catch (IllegalAccessException exception) {
+                throw new RuntimeException("field was made accessible, so this should never happen", exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+/**
+ * Implemented by {@link com.googlecode.easiest.cache.ever.keys.KeyGenerator}s and
+ * {@link com.googlecode.easiest.cache.ever.caches.CacheService}s which work out
+ * (and keep) information about the classes they see, so that work can be done
+ * at startup rather than on the first call of each cached method.
+ * See {@link CacheAspect#prepare(Class)}.
+ * 
+ * @author Brad Cupit
+ */
+public interface Preparable {
+    /**
+     * works out whatever is kept about the class, for a parameter type
+     * (key generators) or a return type (cache services). Failing to do so
+     * is not an error: the class will simply be handled on first use.
+     */
+    void prepare(Class<?> type);
+}
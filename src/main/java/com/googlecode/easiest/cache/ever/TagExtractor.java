@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.util.Collection;
+
+/**
+ * Works out tags for a cached value from the value itself (and the
+ * arguments it was computed from), when the tags aren't simply
+ * arguments (see {@link CacheTag @CacheTag}). For example, an order's
+ * customer, when orders are looked up by order id.
+ * 
+ * Set with {@link CacheReturnValue#tagExtractor()}. Implementations need
+ * a public no-arg constructor, and must be thread safe.
+ * 
+ * @author Brad Cupit
+ */
+public interface TagExtractor {
+    /**
+     * @param returnValue the value being cached, or null when an exception is being cached
+     * @return the value's tags (may be empty, never null)
+     */
+    Collection<String> tags(Object returnValue, Object[] arguments);
+}
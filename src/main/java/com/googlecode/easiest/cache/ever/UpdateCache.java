@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the return value of the annotated method as the value of a
+ * {@link CacheReturnValue @CacheReturnValue} method, once the annotated
+ * method returns. Put it on methods which save and return the new
+ * version of what the cached method returns:
+ * <code>
+ * 	@CacheReturnValue
+ * 	public User findUser(String userId) { ... }
+ * 
+ * 	@UpdateCache(method = "findUser")
+ * 	public User renameUser(@CacheKey String userId, @CacheIgnore String newName) { ... }
+ * </code>
+ * 
+ * The key is built the same way as for {@link EvictCache}. The cached
+ * method's {@link ExpiryPolicy} and {@link CacheTag @CacheTag} parameters
+ * see the annotated method's key arguments in the cached method's parameter
+ * positions; the cached method's other arguments are null (and aren't tagged).
+ * 
+ * @author Brad Cupit
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface UpdateCache {
+    /**
+     * name of the cached method
+     */
+    String method();
+
+    /**
+     * parameter types of the cached method, only needed if the method name is overloaded
+     */
+    Class<?>[] parameterTypes() default {};
+
+    /**
+     * concrete class of the bean with the cached method, since cache ids are named
+     * after it. Defaults to the class of the annotated method.
+     */
+    Class<?> type() default void.class;
+}
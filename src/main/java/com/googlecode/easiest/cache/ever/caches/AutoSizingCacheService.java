@@ -0,0 +1,413 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.trace.SimulatedPolicy;
+import com.googlecode.easiest.cache.ever.trace.SimulatedPolicy.SimulatedCache;
+
+/**
+ * {@link CacheService} which tunes the size of each cache while the application
+ * runs, in front of a {@link ResizableCacheService}.
+ * 
+ * Each cache starts at the maxSize it was configured with, and may shrink
+ * to {@link #setMinScale(double) minScale} or grow to {@link #setMaxScale(double) maxScale}
+ * times that size. The total of all sizes stays within the total of the configured sizes,
+ * so entries are moved from caches where they save little to caches where they save the most.
+ * 
+ * How much a cache would gain from growing (or lose from shrinking) is estimated with
+ * shadow caches: a sample of the keys (1 in {@link #setSampleRate(int) sampleRate}) is
+ * replayed against LRU caches of half, the same and double the current size (scaled down
+ * by the sample rate), which only hold key hashes. The difference in their hits, times the
+ * average time it takes to load a value, is the time the extra entries would save.
+ * Load times are the loadNanos passed to {@link #add(String, String, Object, long)} (and
+ * the adds which take a time to live and tags); values added without one don't count.
+ * 
+ * @author Brad Cupit
+ */
+public class AutoSizingCacheService implements TaggingCacheService {
+    private ResizableCacheService cacheService;
+    private double minScale = 0.25;
+    private double maxScale = 4;
+    private int sampleRate = 16;
+    private int tuningIntervalSeconds = 60;
+    private final ConcurrentMap<String, Region> regions = new ConcurrentHashMap<String, Region>();
+    private final AtomicBoolean tunerStarted = new AtomicBoolean();
+    private final Lock tuneLock = new ReentrantLock();
+
+    /**
+     * the cache service whose caches are resized
+     */
+    public void setCacheService(ResizableCacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * smallest size, as a multiple of the configured maxSize. Defaults to 0.25
+     */
+    public void setMinScale(double minScale) {
+        this.minScale = minScale;
+    }
+
+    /**
+     * largest size, as a multiple of the configured maxSize. Defaults to 4.
+     * The underlying caches are created this big (entries are trimmed to the
+     * current size), so don't make it needlessly large.
+     */
+    public void setMaxScale(double maxScale) {
+        this.maxScale = maxScale;
+    }
+
+    /**
+     * 1 in how many keys are replayed against the shadow caches (rounded
+     * up to a power of two). Defaults to 16.
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Integer.highestOneBit(Math.max(1, sampleRate * 2 - 1));
+    }
+
+    /**
+     * how often sizes are tuned in the background. 0 turns off background
+     * tuning ({@link #tune()} can still be called). Defaults to 60.
+     */
+    public void setTuningIntervalSeconds(int tuningIntervalSeconds) {
+        this.tuningIntervalSeconds = tuningIntervalSeconds;
+    }
+
+    public void createCacheIfNecessary(String cacheId, CacheConfig cacheConfig) {
+        if (!regions.containsKey(cacheId)) {
+            int maxSize = scaled(cacheConfig.getMaxSize(), maxScale);
+            cacheService.createCacheIfNecessary(cacheId, new CacheConfig(maxSize, cacheConfig.getExpirationTime(),
+                        cacheConfig.getUnit(), cacheConfig.getNearCacheMaxSize(), cacheConfig
+                                    .getNearCacheExpirationMillis(), cacheConfig.getCompressAboveBytes(), cacheConfig
+                                    .isUnmodifiableCollections()));
+
+            Region region = new Region(cacheId, cacheConfig.getMaxSize(), scaled(cacheConfig.getMaxSize(), minScale),
+                        maxSize);
+            if (regions.putIfAbsent(cacheId, region) == null) {
+                cacheService.resize(cacheId, region.size);
+            }
+
+            startTunerIfNecessary();
+        } else {
+            cacheService.createCacheIfNecessary(cacheId, cacheConfig);
+        }
+    }
+
+    public void add(String cacheId, String key, Object value) {
+        cacheService.add(cacheId, key, value);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos) {
+        add(cacheId, key, value, loadNanos, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        add(cacheId, key, value, loadNanos, timeToLiveSeconds, null);
+    }
+
+    /**
+     * the cost, time to live and tags are passed on to the underlying cache service, as far as it supports them
+     */
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds,
+                Collection<String> tags) {
+        if (tags != null && !tags.isEmpty() && cacheService instanceof TaggingCacheService) {
+            ((TaggingCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds, tags);
+        } else if (cacheService instanceof ExpiringCacheService) {
+            ((ExpiringCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds);
+        } else if (cacheService instanceof CostAwareCacheService) {
+            ((CostAwareCacheService) cacheService).add(cacheId, key, value, loadNanos);
+        } else {
+            cacheService.add(cacheId, key, value);
+        }
+
+        Region region = regions.get(cacheId);
+        if (region != null && loadNanos > 0) {
+            region.recordLoad(loadNanos);
+        }
+    }
+
+    public CachedValue retrieve(String cacheId, String key) {
+        CachedValue cachedValue = cacheService.retrieve(cacheId, key);
+        Region region = regions.get(cacheId);
+
+        if (region != null) {
+            int hash = hash(key);
+
+            if ((hash & (sampleRate - 1)) == 0) {
+                region.sample(hash);
+            }
+        }
+
+        return cachedValue;
+    }
+
+    public void remove(String cacheId, String key) {
+        evictingCacheService().remove(cacheId, key);
+    }
+
+    public void removeAll(String cacheId) {
+        evictingCacheService().removeAll(cacheId);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the underlying cache service can't tag entries
+     */
+    public void removeTagged(String tag) {
+        if (!(cacheService instanceof TaggingCacheService)) {
+            throw new UnsupportedOperationException(cacheService.getClass().getName() + " can't tag entries");
+        }
+
+        ((TaggingCacheService) cacheService).removeTagged(tag);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the underlying cache service can't remove entries
+     */
+    private EvictingCacheService evictingCacheService() {
+        if (!(cacheService instanceof EvictingCacheService)) {
+            throw new UnsupportedOperationException(cacheService.getClass().getName() + " can't remove entries");
+        }
+
+        return (EvictingCacheService) cacheService;
+    }
+
+    /**
+     * Moves entries from the caches which would lose the least by shrinking to the
+     * caches which would gain the most by growing, then starts new measurements.
+     * Called periodically in the background; public so it can be called on demand.
+     */
+    public void tune() {
+        tuneLock.lock();
+        try {
+            tuneRegions(new ArrayList<Region>(regions.values()));
+        } finally {
+            tuneLock.unlock();
+        }
+    }
+
+    /**
+     * @return the current size of the cache, or -1 if it isn't sized by this service
+     */
+    public int getSize(String cacheId) {
+        Region region = regions.get(cacheId);
+        return region == null ? -1 : region.size;
+    }
+
+    private void tuneRegions(List<Region> allRegions) {
+        long budget = 0;
+        long used = 0;
+
+        for (Region region : allRegions) {
+            region.estimate();
+            budget += region.configuredSize;
+            used += region.size;
+        }
+
+        // keep moving capacity while it's worth it, at most one step per cache per round
+        List<Region> growers = new ArrayList<Region>(allRegions);
+        List<Region> shrinkers = new ArrayList<Region>(allRegions);
+
+        while (!growers.isEmpty()) {
+            Region grower = best(growers, true);
+            if (grower == null || grower.gainPerEntry <= 0) {
+                break;
+            }
+            growers.remove(grower);
+
+            int step = Math.min(grower.maxSize - grower.size, Math.max(1, grower.size / 2));
+
+            if (used + step <= budget) {
+                grower.newSize = grower.size + step;
+                used += step;
+                continue;
+            }
+
+            shrinkers.remove(grower);
+            Region shrinker = best(shrinkers, false);
+            if (shrinker == null || shrinker.lossPerEntry >= grower.gainPerEntry) {
+                break;
+            }
+            shrinkers.remove(shrinker);
+            growers.remove(shrinker);
+
+            step = Math.min(step, shrinker.size - shrinker.minSize);
+            shrinker.newSize = shrinker.size - step;
+            grower.newSize = grower.size + step;
+        }
+
+        for (Region region : allRegions) {
+            if (region.newSize != region.size) {
+                cacheService.resize(region.cacheId, region.newSize);
+            }
+
+            region.reset(region.newSize, sampleRate);
+        }
+    }
+
+    private Region best(List<Region> candidates, boolean highestGain) {
+        Region best = null;
+
+        for (Region candidate : candidates) {
+            if (highestGain) {
+                if (candidate.size < candidate.maxSize && (best == null || candidate.gainPerEntry > best.gainPerEntry)) {
+                    best = candidate;
+                }
+            } else if (candidate.size > candidate.minSize
+                        && (best == null || candidate.lossPerEntry < best.lossPerEntry)) {
+                best = candidate;
+            }
+        }
+
+        return best;
+    }
+
+    private void startTunerIfNecessary() {
+        if (tuningIntervalSeconds > 0 && tunerStarted.compareAndSet(false, true)) {
+            ScheduledExecutorService tuner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "easiest-cache-ever auto sizing");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            tuner.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    tune();
+                }
+            }, tuningIntervalSeconds, tuningIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private int scaled(int size, double scale) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(size * scale)));
+    }
+
+    private int hash(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        // spread the bits, so sampling on the low bits doesn't follow the key's structure
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * sizing state of one cache
+     */
+    private class Region {
+        private final String cacheId;
+        private final int configuredSize;
+        private final int minSize;
+        private final int maxSize;
+        private final Lock shadowLock = new ReentrantLock();
+        private final AtomicLong loads = new AtomicLong();
+        private final AtomicLong loadNanos = new AtomicLong();
+        private volatile int size;
+        private SimulatedCache smaller;
+        private SimulatedCache current;
+        private SimulatedCache larger;
+        private long smallerHits;
+        private long currentHits;
+        private long largerHits;
+
+        // results of the last estimate(), only used by tune()
+        private int newSize;
+        private double gainPerEntry;
+        private double lossPerEntry;
+
+        private Region(String cacheId, int configuredSize, int minSize, int maxSize) {
+            this.cacheId = cacheId;
+            this.configuredSize = configuredSize;
+            this.minSize = Math.min(minSize, configuredSize);
+            this.maxSize = Math.max(maxSize, configuredSize);
+            reset(configuredSize, sampleRate);
+        }
+
+        private void sample(int hash) {
+            // never make a caller wait, a skipped sample is fine
+            if (shadowLock.tryLock()) {
+                try {
+                    if (smaller.access(hash)) {
+                        smallerHits++;
+                    }
+                    if (current.access(hash)) {
+                        currentHits++;
+                    }
+                    if (larger.access(hash)) {
+                        largerHits++;
+                    }
+                } finally {
+                    shadowLock.unlock();
+                }
+            }
+        }
+
+        private void recordLoad(long nanos) {
+            loads.incrementAndGet();
+            loadNanos.addAndGet(nanos);
+        }
+
+        private void estimate() {
+            shadowLock.lock();
+            try {
+                long loadCount = loads.get();
+                double averageLoadNanos = loadCount == 0 ? 1 : (double) loadNanos.get() / loadCount;
+                int extraEntries = Math.max(1, size);
+                int fewerEntries = Math.max(1, size - size / 2);
+
+                // sampled hits stand for sampleRate times as many real hits
+                gainPerEntry = (largerHits - currentHits) * sampleRate * averageLoadNanos / extraEntries;
+                lossPerEntry = (currentHits - smallerHits) * sampleRate * averageLoadNanos / fewerEntries;
+                newSize = size;
+            } finally {
+                shadowLock.unlock();
+            }
+        }
+
+        private void reset(int newSize, int sampleRate) {
+            shadowLock.lock();
+            try {
+                this.size = newSize;
+                this.newSize = newSize;
+                this.smaller = SimulatedPolicy.LRU.create(Math.max(1, newSize / 2 / sampleRate));
+                this.current = SimulatedPolicy.LRU.create(Math.max(1, newSize / sampleRate));
+                this.larger = SimulatedPolicy.LRU.create(Math.max(1, newSize * 2 / sampleRate));
+                this.smallerHits = 0;
+                this.currentHits = 0;
+                this.largerHits = 0;
+                loads.set(0);
+                loadNanos.set(0);
+            } finally {
+                shadowLock.unlock();
+            }
+        }
+    }
+}
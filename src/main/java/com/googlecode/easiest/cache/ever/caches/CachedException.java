@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.io.Serializable;
+
+/**
+ * An exception thrown by a cached method, cached in place of a return
+ * value so the next call rethrows it instead of calling the method again.
+ * 
+ * Cache services hand out the same instance every time rather than
+ * cloning it: exceptions are treated as immutable. Serializable so it
+ * can be cached on another node, as long as the exception is.
+ * 
+ * @author Brad Cupit
+ */
+public final class CachedException implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Throwable exception;
+
+    public CachedException(Throwable exception) {
+        this.exception = exception;
+    }
+
+    public Throwable getException() {
+        return exception;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+/**
+ * A {@link CacheService} which keeps its own copy of every value, and can make
+ * that copy ahead of the add: on the caller's thread, when the add itself
+ * happens later on another one. The caller is then free to change its value
+ * as soon as the copy is made.
+ * 
+ * @author Brad Cupit
+ */
+public interface CopyingCacheService extends CacheService {
+    /**
+     * @return the value as the cache will keep it, to add in place of the value.
+     *         Adding it to the same cache doesn't copy it again
+     */
+    Object copyForAdd(String cacheId, Object value);
+}
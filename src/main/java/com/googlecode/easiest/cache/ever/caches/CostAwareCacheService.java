@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+/**
+ * A {@link CacheService} which can be told how long a value took to
+ * compute, so it can keep the values which are expensive to recompute.
+ * 
+ * @author Brad Cupit
+ */
+public interface CostAwareCacheService extends CacheService {
+    /**
+     * Same as {@link #add(String, String, Object)}, but also records how
+     * long it took to compute the value, in nanoseconds.
+     */
+    void add(String cacheId, String key, Object value, long loadNanos);
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import net.sf.ehcache.Element;
+
+/**
+ * An Ehcache {@link Element} which remembers how long its value took to
+ * compute and roughly how big it is, for {@link GreedyDualSizePolicy}.
+ * 
+ * @author Brad Cupit
+ */
+public class CostedElement extends Element {
+    private static final long serialVersionUID = 1L;
+
+    private final long loadNanos;
+    private final long size;
+    private volatile double priority;
+
+    public CostedElement(Object key, Object value, long loadNanos, long size) {
+        super(key, value);
+        this.loadNanos = loadNanos;
+        this.size = Math.max(1, size);
+    }
+
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * estimated size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public double getPriority() {
+        return priority;
+    }
+
+    void setPriority(double priority) {
+        this.priority = priority;
+    }
+}
@@ -1,183 +1,842 @@
-/*
- * Copyright 2010 Brad Cupit
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * 
- *     http://www.apache.org/licenses/LICENSE-2.0
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.googlecode.easiest.cache.ever.caches;
-
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
-
-import com.googlecode.easiest.cache.ever.CacheConfig;
-import com.googlecode.easiest.cache.ever.CacheConstants;
-import com.rits.cloning.Cloner;
-
-/**
- * The default, out-of-the-box {@link CacheService}
- * implementation.
- * 
- * @author Brad Cupit
- */
-public class DefaultCacheService implements CacheService {
-    protected static final boolean OVERFLOW_TO_DISK = false;
-    protected static final boolean DISK_PERSISTENT = false;
-    private static final int EHCACHE_NO_EXPIRATION = 0;
-    private static final int EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS = 1;
-    private static final Object NULL_KEY = new Object();
-
-    private Cloner cloner;
-    private CacheManager ehcacheManager;
-    private final Object addNewCacheLock = new Object();
-
-    public void setCloner(Cloner cloner) {
-        this.cloner = cloner;
-    }
-
-    public void setEhcacheManager(CacheManager ehCacheManager) {
-        this.ehcacheManager = ehCacheManager;
-    }
-
-    /**
-     * 
-     * Creates a new cache which can be configured separately
-     * from all other caches.
-     * 
-     * Think of the {@link CacheService} as a Map of Maps: Map<cacheId, Map<key, value>>
-     */
-    public void createCacheIfNecessary(String cacheId, CacheConfig cacheConfig) {
-        // Most of the time, the cache will already exist. Avoid the
-        // synchronization bottleneck by checking for existence first
-        if (!ehcacheManager.cacheExists(cacheId)) {
-            boolean eternal = isEternal(cacheConfig);
-            long timeToLiveSeconds = getTimeToLiveInSeconds(cacheConfig);
-
-            // synchronize to avoid ObjectExistsException, thrown when the same cache
-            // is added twice. See CacheManager#addCacheNoCheck(Ehcache)
-            //
-            // Without the synchronization, two threads could check if
-            // the cache exists, both receive 'false', then both try to add
-            // the same cache id, and an exception is thrown for one of the threads.
-            //
-            // With synchronization, the first thread would add the cache while
-            // the other waits. When the original thread releases the synchronization,
-            // the cache has been added and calls to CacheManager#cacheExists(..)
-            // for the same cache id return true. The 2nd thread does not create
-            // the cache and safely returns;
-            synchronized (addNewCacheLock) {
-                // This may look like double-checked locking, but it's different.
-                // Double-checked locking is problematic with non-volatile fields.
-                // We're not using a field, we're putting a value in a
-                // synchronized Map (which Ehcache manages internally).
-                //
-                // Double-checked locking can be fixed by synchronizing reads.
-                // We have synchronized reads since the Ehcache internal
-                // Map uses synchronization.
-                if (!ehcacheManager.cacheExists(cacheId)) {
-                    Ehcache ehcache = new Cache(cacheId, cacheConfig.getMaxSize(), MemoryStoreEvictionPolicy.LRU,
-                                OVERFLOW_TO_DISK, null, eternal, timeToLiveSeconds, 0, DISK_PERSISTENT, 0, null);
-
-                    ehcacheManager.addCache(ehcache);
-                }
-            }
-        }
-    }
-
-    /**
-     * Add an object to the cache. The object does not need to be serializable.
-     * 
-     * @param cacheId name of the cache to add the object to. If the cache were a Map of Maps,
-     *                this would be the key in the first map. Example: a fully qualified method name.
-     * @param key     a unique key for the corresponding value. If the cache were a Map of Maps,
-     *                this would be the key in the second map. Example: serialized parameters to a method,
-     *                uniquely identifying that invocation of the method.
-     * @param value   the object to be cached.
-     */
-    public void add(String cacheId, String key, Object value) {
-        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
-
-        final Object convertedKey = convertNullKey(key);
-        final Object threadSafeValue = makeThreadSafe(value);
-
-        ehcache.put(new Element(convertedKey, threadSafeValue));
-    }
-
-    /**
-     * Gets an object from the cache.
-     * 
-     * @param cacheId name of the cache to get the object from. If the cache were a Map of Maps,
-     *                this would be the key in the first map. Example: a fully qualified method name.
-     * @param key     a unique key for the cached-object-to-return. If the cache were a Map of Maps,
-     *                this would be the key in the second map. Example: serialized parameters to a method,
-     *                uniquely identifying that invocation of the method.
-     * @return instance of {@link CachedValue}, which wraps the cached object and provides a method signaling
-     *         if the object was found in the cache.
-     */
-    public CachedValue retrieve(String cacheId, String key) {
-        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
-
-        if (ehcache == null) {
-            return null;
-        }
-
-        Element element = ehcache.get(convertNullKey(key));
-
-        if (element == null) {
-            return CachedValue.notFound();
-        }
-
-        Object rawCachedValue = element.getObjectValue();
-        return CachedValue.create(makeThreadSafe(rawCachedValue));
-    }
-
-    private Object makeThreadSafe(Object value) {
-        return cloner.deepClone(value);
-    }
-
-    private long getTimeToLiveInSeconds(CacheConfig cacheConfig) {
-        if (cacheConfig.getExpirationTime() <= 0) {
-            return EHCACHE_NO_EXPIRATION;
-        } else {
-            long seconds = cacheConfig.getUnit().toSeconds(cacheConfig.getExpirationTime());
-            if (seconds < EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS) {
-                seconds = EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS;
-            }
-
-            return seconds;
-        }
-    }
-
-    private boolean isEternal(CacheConfig cacheConfig) {
-        if (cacheConfig.getExpirationTime() == CacheConstants.NO_EXPIRATION) {
-            return true;
-        } else {
-            return false;
-        }
-    }
-
-    /**
-     * Trick Ehcache into supporting null keys.
-     * Use a unique Object representing null,
-     * and use this method to consistently
-     * convert null to our unique Object.
-     */
-    private Object convertNullKey(String stringKey) {
-        if (stringKey == null) {
-            return NULL_KEY;
-        } else {
-            return stringKey;
-        }
-    }
-}
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import net.sf.ehcache.store.Policy;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.Preparable;
+import com.googlecode.easiest.cache.ever.caches.TagIndex.TaggedKey;
+import com.googlecode.easiest.cache.ever.trace.CacheMonitor;
+import com.rits.cloning.Cloner;
+
+/**
+ * The default, out-of-the-box {@link CacheService}
+ * implementation.
+ * 
+ * Only {@link java.util.concurrent.locks} are used for coordination (never
+ * <code>synchronized</code>) so a virtual thread blocked on this class does
+ * not pin its carrier thread. Ehcache's own memory store puts are
+ * <code>synchronized</code>, so puts are funneled through a per-cache
+ * {@link Lock}, which means Ehcache's monitor is never contended.
+ * 
+ * Ehcache fixes a cache's size when it's created, so caches shrunk with
+ * {@link #resize(String, int)} are trimmed by this class: once a put takes
+ * the cache a little past its new size, the least recently used entries
+ * are removed.
+ * 
+ * With {@link #setCostAwareEviction(boolean)} turned on, caches evict
+ * with a {@link GreedyDualSizePolicy} instead of LRU: values which took
+ * a long time to compute and take up little room are kept the longest.
+ * 
+ * Entries can be given their own time to live with
+ * {@link #add(String, String, Object, long, int)}.
+ * 
+ * Tagged entries are kept in a {@link TagIndex}, which is told
+ * by Ehcache whenever a tagged cache's entries are evicted, expire
+ * or are removed.
+ * 
+ * Entries evicted to make room can be handed to an {@link EvictionListener},
+ * for instance to move them down to a slower tier
+ * (see {@link TieredCacheService}).
+ * 
+ * Caches configured with {@link CacheConfig#getCompressAboveBytes()} keep their
+ * big values serialized and compressed. Rebuilding a value on every hit
+ * makes a copy anyway, so those values are never cloned.
+ * 
+ * Caches configured with {@link CacheConfig#isUnmodifiableCollections()} copy
+ * each List, Set and Map once, when it's added, and hand out an unmodifiable
+ * view of that copy on every hit.
+ * 
+ * The copy can be made ahead of the add, with {@link #copyForAdd(String, Object)}.
+ * 
+ * @author Brad Cupit
+ */
+public class DefaultCacheService implements ResizableCacheService, TaggingCacheService, KeyHashEvictingCacheService,
+            EvictionNotifyingCacheService, CopyingCacheService, Preparable {
+    protected static final boolean OVERFLOW_TO_DISK = false;
+    protected static final boolean DISK_PERSISTENT = false;
+    private static final int EHCACHE_NO_EXPIRATION = 0;
+    private static final int EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS = 1;
+    private static final Object NULL_KEY = new Object();
+    private static final Logger logger = Logger.getLogger(DefaultCacheService.class.getName());
+
+    private Cloner cloner;
+    private CacheManager ehcacheManager;
+    private boolean costAwareEviction = false;
+    private final Lock addNewCacheLock = new ReentrantLock();
+    private final ConcurrentMap<String, Lock> putLocks = new ConcurrentHashMap<String, Lock>();
+    private final ConcurrentMap<String, Integer> resizedMaxSizes = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<String, GreedyDualSizePolicy> costPolicies = new ConcurrentHashMap<String, GreedyDualSizePolicy>();
+    private final TagIndex tagIndex = new TagIndex();
+    private final ConcurrentMap<String, Boolean> taggedCaches = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentMap<String, ValueCompressor> compressors = new ConcurrentHashMap<String, ValueCompressor>();
+    private final ConcurrentMap<String, KeyEncoder> keyEncoders = new ConcurrentHashMap<String, KeyEncoder>();
+    private final ConcurrentMap<String, Boolean> unmodifiableCaches = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentMap<String, KeyHashIndex> keyHashIndexes = new ConcurrentHashMap<String, KeyHashIndex>();
+    private final Lock addKeyHashIndexLock = new ReentrantLock();
+    private EvictionListener evictionListener;
+    private CacheMonitor cacheMonitor;
+    private boolean compressionDictionaries = true;
+    private boolean compactKeys = false;
+
+    public void setCloner(Cloner cloner) {
+        this.cloner = cloner;
+    }
+
+    public void setEhcacheManager(CacheManager ehCacheManager) {
+        this.ehcacheManager = ehCacheManager;
+    }
+
+    public void setEvictionListener(EvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * optional, told how long clones took and about evictions and expiries (see
+     * {@link CacheMonitor}). Evictions and expiries are only reported for caches
+     * created afterwards. Defaults to null, which measures nothing.
+     */
+    public void setCacheMonitor(CacheMonitor cacheMonitor) {
+        this.cacheMonitor = cacheMonitor;
+    }
+
+    /**
+     * train a compression dictionary for each cache which compresses its values.
+     * Only affects caches created afterwards. Defaults to true.
+     */
+    public void setCompressionDictionaries(boolean compressionDictionaries) {
+        this.compressionDictionaries = compressionDictionaries;
+    }
+
+    /**
+     * keep parameter keys as {@link KeyEncoder.CompactKey}s rather than Strings,
+     * which saves memory at the cost of encoding the key on every lookup.
+     * Only affects caches created afterwards. Defaults to false.
+     */
+    public void setCompactKeys(boolean compactKeys) {
+        this.compactKeys = compactKeys;
+    }
+
+    /**
+     * evict by cost to recompute and size ({@link GreedyDualSizePolicy})
+     * rather than by least recent use. Only affects caches created afterwards.
+     * Defaults to false.
+     */
+    public void setCostAwareEviction(boolean costAwareEviction) {
+        this.costAwareEviction = costAwareEviction;
+    }
+
+    /**
+     * 
+     * Creates a new cache which can be configured separately
+     * from all other caches.
+     * 
+     * Think of the {@link CacheService} as a Map of Maps: Map<cacheId, Map<key, value>>
+     */
+    public void createCacheIfNecessary(String cacheId, CacheConfig cacheConfig) {
+        // Most of the time, the cache will already exist. Avoid the
+        // locking bottleneck by checking for existence first
+        if (!ehcacheManager.cacheExists(cacheId)) {
+            boolean eternal = isEternal(cacheConfig);
+            long timeToLiveSeconds = getTimeToLiveInSeconds(cacheConfig);
+
+            // lock to avoid ObjectExistsException, thrown when the same cache
+            // is added twice. See CacheManager#addCacheNoCheck(Ehcache)
+            //
+            // Without the lock, two threads could check if
+            // the cache exists, both receive 'false', then both try to add
+            // the same cache id, and an exception is thrown for one of the threads.
+            //
+            // With the lock, the first thread would add the cache while
+            // the other waits. When the original thread releases the lock,
+            // the cache has been added and calls to CacheManager#cacheExists(..)
+            // for the same cache id return true. The 2nd thread does not create
+            // the cache and safely returns;
+            //
+            // A ReentrantLock (rather than synchronized) lets waiting virtual
+            // threads unmount instead of pinning their carrier.
+            addNewCacheLock.lock();
+            try {
+                // This may look like double-checked locking, but it's different.
+                // Double-checked locking is problematic with non-volatile fields.
+                // We're not using a field, we're putting a value in a
+                // concurrent Map (which Ehcache manages internally).
+                //
+                // Double-checked locking is safe here since the Ehcache internal
+                // Map is a ConcurrentHashMap, which guarantees the visibility
+                // of the newly added cache.
+                if (!ehcacheManager.cacheExists(cacheId)) {
+                    Ehcache ehcache = new Cache(cacheId, cacheConfig.getMaxSize(), MemoryStoreEvictionPolicy.LRU,
+                                OVERFLOW_TO_DISK, null, eternal, timeToLiveSeconds, 0, DISK_PERSISTENT, 0, null);
+
+                    if (cacheConfig.isUnmodifiableCollections()) {
+                        unmodifiableCaches.put(cacheId, Boolean.TRUE);
+                    }
+
+                    if (compactKeys) {
+                        keyEncoders.put(cacheId, new KeyEncoder());
+                    }
+
+                    if (cacheConfig.getCompressAboveBytes() > CacheConstants.NO_COMPRESSION) {
+                        compressors.put(cacheId, new ValueCompressor(cacheConfig.getCompressAboveBytes(),
+                                    compressionDictionaries));
+                    }
+
+                    ehcacheManager.addCache(ehcache);
+
+                    if (evictionListener != null || cacheMonitor != null) {
+                        ehcache.getCacheEventNotificationService().registerListener(new EventForwarder());
+                    }
+
+                    if (costAwareEviction) {
+                        GreedyDualSizePolicy policy = new GreedyDualSizePolicy();
+                        costPolicies.put(cacheId, policy);
+                        // the memory store only exists once the cache has been added
+                        ((Cache) ehcache).setMemoryStoreEvictionPolicy(policy);
+                    }
+                }
+            } finally {
+                addNewCacheLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Add an object to the cache. The object does not need to be serializable.
+     * 
+     * @param cacheId name of the cache to add the object to. If the cache were a Map of Maps,
+     *                this would be the key in the first map. Example: a fully qualified method name.
+     * @param key     a unique key for the corresponding value. If the cache were a Map of Maps,
+     *                this would be the key in the second map. Example: serialized parameters to a method,
+     *                uniquely identifying that invocation of the method.
+     * @param value   the object to be cached.
+     */
+    public void add(String cacheId, String key, Object value) {
+        add(cacheId, key, value, 0);
+    }
+
+    /**
+     * Same as {@link #add(String, String, Object)}. If the cache evicts by
+     * cost, loadNanos is the value's cost to recompute.
+     */
+    public void add(String cacheId, String key, Object value, long loadNanos) {
+        add(cacheId, key, value, loadNanos, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    /**
+     * Same as {@link #add(String, String, Object, long)}, but the entry expires after
+     * timeToLiveSeconds (or never, if {@link CacheConstants#NO_EXPIRATION}) instead
+     * of when the cache's expiration time says.
+     */
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        add(cacheId, key, value, loadNanos, timeToLiveSeconds, null);
+    }
+
+    /**
+     * Same as {@link #add(String, String, Object, long, int)}, and tags the entry.
+     */
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds,
+                Collection<String> tags) {
+        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
+
+        final Object convertedKey = convertKey(cacheId, key);
+        final Object threadSafeValue = storable(cacheId, value);
+        final GreedyDualSizePolicy costPolicy = costPolicies.get(cacheId);
+        final Element element = costPolicy == null ? new Element(convertedKey, threadSafeValue) : costPolicy
+                    .newElement(convertedKey, threadSafeValue, loadNanos);
+
+        if (timeToLiveSeconds == CacheConstants.NO_EXPIRATION) {
+            element.setEternal(true);
+        } else if (timeToLiveSeconds != CacheConstants.UNSET_EXPIRATION_TIME) {
+            element.setTimeToLive(Math.max(EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS, timeToLiveSeconds));
+        }
+
+        // Ehcache's MemoryStore#put(..) is synchronized. Only ever let
+        // one thread in at a time, so nobody blocks on its monitor
+        final Lock putLock = putLockFor(cacheId);
+        putLock.lock();
+        try {
+            if (tags != null && !tags.isEmpty()) {
+                listenForRemovals(ehcache);
+                // tag before the put, so the entry can't leave the cache before it's tagged
+                tagIndex.add(cacheId, element, tags);
+            }
+
+            try {
+                ehcache.put(element);
+            } catch (RuntimeException exception) {
+                tagIndex.removed(cacheId, element);
+                throw exception;
+            }
+
+            final Integer resizedMaxSize = resizedMaxSizes.get(cacheId);
+            // allow some slack, so trimming (which sorts the whole cache) is rare
+            if (resizedMaxSize != null && ehcache.getMemoryStoreSize() > resizedMaxSize + resizedMaxSize / 8) {
+                trim(ehcache, resizedMaxSize, costPolicy);
+            }
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    /**
+     * Gets an object from the cache.
+     * 
+     * @param cacheId name of the cache to get the object from. If the cache were a Map of Maps,
+     *                this would be the key in the first map. Example: a fully qualified method name.
+     * @param key     a unique key for the cached-object-to-return. If the cache were a Map of Maps,
+     *                this would be the key in the second map. Example: serialized parameters to a method,
+     *                uniquely identifying that invocation of the method.
+     * @return instance of {@link CachedValue}, which wraps the cached object and provides a method signaling
+     *         if the object was found in the cache.
+     */
+    public CachedValue retrieve(String cacheId, String key) {
+        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
+
+        if (ehcache == null) {
+            return null;
+        }
+
+        Element element = ehcache.get(convertKey(cacheId, key));
+
+        if (element == null) {
+            return CachedValue.notFound();
+        }
+
+        if (element instanceof CostedElement) {
+            costPolicies.get(cacheId).touch(element);
+        }
+
+        Object rawCachedValue = element.getObjectValue();
+
+        final int timeToLiveSeconds = timeToLiveSeconds(element);
+
+        if (rawCachedValue instanceof ValueCompressor.Compressed) {
+            try {
+                return CachedValue.create(ValueCompressor.decompress((ValueCompressor.Compressed) rawCachedValue),
+                            timeToLiveSeconds);
+            } catch (IOException exception) {
+                logger.log(Level.FINE, "unable to read compressed value of " + cacheId, exception);
+                ehcache.remove(element.getObjectKey());
+                return CachedValue.notFound();
+            }
+        }
+
+        if (isUnmodifiableView(cacheId, rawCachedValue)) {
+            return CachedValue.create(rawCachedValue, timeToLiveSeconds);
+        }
+
+        return CachedValue.create(makeThreadSafe(cacheId, rawCachedValue), timeToLiveSeconds);
+    }
+
+    public void remove(String cacheId, String key) {
+        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
+
+        if (ehcache != null) {
+            ehcache.remove(convertKey(cacheId, key));
+        }
+    }
+
+    public void removeAll(String cacheId) {
+        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
+
+        if (ehcache != null) {
+            ehcache.removeAll();
+        }
+    }
+
+    /**
+     * The first call for a cache walks its keys once, to index them by hash
+     * (see {@link KeyHashIndex}). From then on only the keys with the hashes are looked at.
+     */
+    public void removeKeyHashes(String cacheId, Set<Long> keyHashes) {
+        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
+
+        if (ehcache == null || keyHashes.isEmpty()) {
+            return;
+        }
+
+        // the index hears about the removals
+        for (Object key : keyHashIndexFor(ehcache).keysFor(keyHashes)) {
+            ehcache.remove(key);
+        }
+    }
+
+    public void removeTagged(String tag) {
+        for (TaggedKey taggedKey : tagIndex.keysFor(tag)) {
+            Ehcache ehcache = ehcacheManager.getEhcache(taggedKey.cacheId);
+
+            if (ehcache != null) {
+                // the cache tells the tag index, which untags the entry
+                ehcache.remove(taggedKey.key);
+            }
+        }
+    }
+
+    public void resize(String cacheId, int maxSize) {
+        Ehcache ehcache = ehcacheManager.getEhcache(cacheId);
+
+        if (ehcache == null) {
+            return;
+        }
+
+        final int createdMaxSize = ehcache.getCacheConfiguration().getMaxElementsInMemory();
+        final int newMaxSize = Math.max(1, Math.min(maxSize, createdMaxSize));
+
+        final Lock putLock = putLockFor(cacheId);
+        putLock.lock();
+        try {
+            if (newMaxSize == createdMaxSize) {
+                resizedMaxSizes.remove(cacheId);
+            } else {
+                resizedMaxSizes.put(cacheId, newMaxSize);
+                trim(ehcache, newMaxSize, costPolicies.get(cacheId));
+            }
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    /**
+     * Clones a blank instance of the return type, so the {@link Cloner}
+     * looks up the class's fields before the first value is cached.
+     */
+    public void prepare(Class<?> returnType) {
+        if (returnType.isPrimitive() || returnType.isArray() || returnType.isInterface()
+                    || Modifier.isAbstract(returnType.getModifiers())) {
+            return;
+        }
+
+        try {
+            cloner.deepClone(cloner.newInstance(returnType));
+        } catch (RuntimeException exception) {
+            // nothing lost, the class will be looked at on first use
+        }
+    }
+
+    private void listenForRemovals(Ehcache ehcache) {
+        if (!taggedCaches.containsKey(ehcache.getName())
+                    && taggedCaches.putIfAbsent(ehcache.getName(), Boolean.TRUE) == null) {
+            ehcache.getCacheEventNotificationService().registerListener(new TagIndexUpdater());
+        }
+    }
+
+    private KeyHashIndex keyHashIndexFor(Ehcache ehcache) {
+        final KeyHashIndex keyHashIndex = keyHashIndexes.get(ehcache.getName());
+
+        if (keyHashIndex != null) {
+            return keyHashIndex;
+        }
+
+        addKeyHashIndexLock.lock();
+        try {
+            if (keyHashIndexes.containsKey(ehcache.getName())) {
+                return keyHashIndexes.get(ehcache.getName());
+            }
+
+            final KeyHashIndex newKeyHashIndex = new KeyHashIndex();
+
+            // listen first, so keys added during the walk aren't missed
+            ehcache.getCacheEventNotificationService().registerListener(new KeyHashIndexUpdater(newKeyHashIndex));
+            for (Object key : ehcache.getKeys()) {
+                newKeyHashIndex.add(keyHash(ehcache.getName(), key), key);
+            }
+
+            // only published once it's complete
+            keyHashIndexes.put(ehcache.getName(), newKeyHashIndex);
+            return newKeyHashIndex;
+        } finally {
+            addKeyHashIndexLock.unlock();
+        }
+    }
+
+    private long keyHash(String cacheId, Object key) {
+        return KeyHashes.hashWithoutNamespace(parameterKey(cacheId, key));
+    }
+
+    private Lock putLockFor(String cacheId) {
+        Lock putLock = putLocks.get(cacheId);
+
+        if (putLock == null) {
+            Lock newPutLock = new ReentrantLock();
+            putLock = putLocks.putIfAbsent(cacheId, newPutLock);
+
+            if (putLock == null) {
+                putLock = newPutLock;
+            }
+        }
+
+        return putLock;
+    }
+
+    /**
+     * removes the least recently used entries (or the lowest priority entries,
+     * if the cache evicts by cost) until only maxSize are left
+     */
+    private void trim(Ehcache ehcache, int maxSize, final Policy costPolicy) {
+        final List<?> keys = ehcache.getKeys();
+
+        if (keys.size() <= maxSize) {
+            return;
+        }
+
+        final List<Element> elements = new ArrayList<Element>(keys.size());
+        for (Object key : keys) {
+            Element element = ehcache.getQuiet(key);
+
+            if (element != null) {
+                elements.add(element);
+            }
+        }
+
+        Collections.sort(elements, new Comparator<Element>() {
+            public int compare(Element first, Element second) {
+                if (costPolicy != null) {
+                    return costPolicy.compare(second, first) ? -1 : (costPolicy.compare(first, second) ? 1 : 0);
+                }
+
+                long firstUsed = lastUsed(first);
+                long secondUsed = lastUsed(second);
+                return firstUsed < secondUsed ? -1 : (firstUsed == secondUsed ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < elements.size() - maxSize; i++) {
+            Element element = elements.get(i);
+
+            // Ehcache sees a removal, but to everyone else it's an eviction
+            if (ehcache.remove(element.getObjectKey()) && (evictionListener != null || cacheMonitor != null)) {
+                evicted(ehcache, element);
+            }
+        }
+    }
+
+    private void evicted(Ehcache ehcache, Element element) {
+        if (cacheMonitor != null) {
+            cacheMonitor.evicted(ehcache.getName(), EntrySizes.estimate(element.getObjectValue()));
+        }
+
+        if (evictionListener == null) {
+            return;
+        }
+
+        final Object key = element.getObjectKey();
+        int timeToLiveSeconds = timeToLiveSeconds(element);
+
+        if (timeToLiveSeconds != CacheConstants.NO_EXPIRATION) {
+            if (element.getExpirationTime() <= System.currentTimeMillis()) {
+                return;
+            }
+
+            timeToLiveSeconds = Math.max(EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS, timeToLiveSeconds);
+        }
+
+        Object value = element.getObjectValue();
+
+        if (value instanceof ValueCompressor.Compressed) {
+            try {
+                value = ValueCompressor.decompress((ValueCompressor.Compressed) value);
+            } catch (IOException exception) {
+                return;
+            }
+        }
+
+        evictionListener.evicted(ehcache.getName(), parameterKey(ehcache.getName(), key), value, timeToLiveSeconds);
+    }
+
+    /**
+     * whole seconds the element has left (never negative), or {@link CacheConstants#NO_EXPIRATION}
+     */
+    private int timeToLiveSeconds(Element element) {
+        if (element.isEternal() || element.getExpirationTime() == Long.MAX_VALUE) {
+            return CacheConstants.NO_EXPIRATION;
+        }
+
+        final long millisLeft = element.getExpirationTime() - System.currentTimeMillis();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, millisLeft / 1000));
+    }
+
+    private long lastUsed(Element element) {
+        return Math.max(element.getLastAccessTime(), element.getLatestOfCreationAndUpdateTime());
+    }
+
+    /**
+     * makes the clone (or compressed copy, or view) the cache keeps
+     */
+    public Object copyForAdd(String cacheId, Object value) {
+        return new StorableCopy(storable(cacheId, value));
+    }
+
+    /**
+     * the value as it's kept in the cache: an unmodifiable view, compressed, or a clone
+     */
+    private Object storable(String cacheId, Object value) {
+        if (value instanceof StorableCopy) {
+            return ((StorableCopy) value).value;
+        }
+
+        if (isUnmodifiableView(cacheId, value)) {
+            return UnmodifiableViews.of(makeThreadSafe(cacheId, value));
+        }
+
+        final ValueCompressor compressor = compressors.get(cacheId);
+
+        if (compressor != null) {
+            final ValueCompressor.Compressed compressed = compressor.compress(value);
+
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+
+        return makeThreadSafe(cacheId, value);
+    }
+
+    /**
+     * @return true if the value is (or will be kept as) a view which can be shared
+     */
+    private boolean isUnmodifiableView(String cacheId, Object value) {
+        return UnmodifiableViews.canView(value) && unmodifiableCaches.containsKey(cacheId);
+    }
+
+    private Object makeThreadSafe(String cacheId, Object value) {
+        if (value instanceof CachedException) {
+            // exceptions are treated as immutable, so don't pay to clone them
+            return value;
+        }
+
+        if (cacheMonitor == null) {
+            return cloner.deepClone(value);
+        }
+
+        final long start = System.nanoTime();
+        final Object clone = cloner.deepClone(value);
+        cacheMonitor.cloned(cacheId, System.nanoTime() - start, EntrySizes.estimate(clone));
+
+        return clone;
+    }
+
+    private long getTimeToLiveInSeconds(CacheConfig cacheConfig) {
+        if (cacheConfig.getExpirationTime() <= 0) {
+            return EHCACHE_NO_EXPIRATION;
+        } else {
+            long seconds = cacheConfig.getUnit().toSeconds(cacheConfig.getExpirationTime());
+            if (seconds < EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS) {
+                seconds = EHCACHE_SMALLEST_TIMEOUT_IN_SECONDS;
+            }
+
+            return seconds;
+        }
+    }
+
+    private boolean isEternal(CacheConfig cacheConfig) {
+        if (cacheConfig.getExpirationTime() == CacheConstants.NO_EXPIRATION) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * keeps the {@link TagIndex} in step with a tagged cache
+     */
+    private class TagIndexUpdater implements CacheEventListener {
+        public void notifyElementPut(Ehcache ehcache, Element element) {
+            // an untagged entry replacing a tagged one
+            tagIndex.replaced(ehcache.getName(), element);
+        }
+
+        public void notifyElementUpdated(Ehcache ehcache, Element element) {
+            tagIndex.replaced(ehcache.getName(), element);
+        }
+
+        public void notifyElementRemoved(Ehcache ehcache, Element element) {
+            tagIndex.removed(ehcache.getName(), element);
+        }
+
+        public void notifyElementExpired(Ehcache ehcache, Element element) {
+            tagIndex.removed(ehcache.getName(), element);
+        }
+
+        public void notifyElementEvicted(Ehcache ehcache, Element element) {
+            tagIndex.removed(ehcache.getName(), element);
+        }
+
+        public void notifyRemoveAll(Ehcache ehcache) {
+            tagIndex.removedAll(ehcache.getName());
+        }
+
+        public void dispose() {
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            throw new CloneNotSupportedException("one updater per cache");
+        }
+    }
+
+    /**
+     * keeps a cache's {@link KeyHashIndex} in step with it
+     */
+    private class KeyHashIndexUpdater implements CacheEventListener {
+        private final KeyHashIndex keyHashIndex;
+
+        private KeyHashIndexUpdater(KeyHashIndex keyHashIndex) {
+            this.keyHashIndex = keyHashIndex;
+        }
+
+        public void notifyElementPut(Ehcache ehcache, Element element) {
+            keyHashIndex.add(keyHash(ehcache.getName(), element.getObjectKey()), element.getObjectKey());
+        }
+
+        public void notifyElementUpdated(Ehcache ehcache, Element element) {
+        }
+
+        public void notifyElementRemoved(Ehcache ehcache, Element element) {
+            removed(ehcache, element);
+        }
+
+        public void notifyElementExpired(Ehcache ehcache, Element element) {
+            removed(ehcache, element);
+        }
+
+        public void notifyElementEvicted(Ehcache ehcache, Element element) {
+            removed(ehcache, element);
+        }
+
+        public void notifyRemoveAll(Ehcache ehcache) {
+            keyHashIndex.removedAll();
+        }
+
+        public void dispose() {
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            throw new CloneNotSupportedException("one updater per cache");
+        }
+
+        private void removed(Ehcache ehcache, Element element) {
+            final Object key = element.getObjectKey();
+
+            // unless the key has been put again since
+            if (!ehcache.isKeyInCache(key)) {
+                keyHashIndex.removed(keyHash(ehcache.getName(), key), key);
+            }
+        }
+    }
+
+    /**
+     * hands entries Ehcache evicts to the {@link EvictionListener},
+     * and tells the {@link CacheMonitor} about evictions and expiries
+     */
+    private class EventForwarder implements CacheEventListener {
+        public void notifyElementEvicted(Ehcache ehcache, Element element) {
+            evicted(ehcache, element);
+        }
+
+        public void notifyElementPut(Ehcache ehcache, Element element) {
+        }
+
+        public void notifyElementUpdated(Ehcache ehcache, Element element) {
+        }
+
+        public void notifyElementRemoved(Ehcache ehcache, Element element) {
+        }
+
+        public void notifyElementExpired(Ehcache ehcache, Element element) {
+            if (cacheMonitor != null) {
+                cacheMonitor.expired(ehcache.getName(), EntrySizes.estimate(element.getObjectValue()));
+            }
+        }
+
+        public void notifyRemoveAll(Ehcache ehcache) {
+        }
+
+        public void dispose() {
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            throw new CloneNotSupportedException("one forwarder per cache");
+        }
+    }
+
+    /**
+     * Trick Ehcache into supporting null keys.
+     * Use a unique Object representing null,
+     * and use this method to consistently
+     * convert null to our unique Object.
+     * 
+     * Caches with compact keys get a {@link KeyEncoder.CompactKey}
+     * rather than the String.
+     */
+    private Object convertKey(String cacheId, String stringKey) {
+        if (stringKey == null) {
+            return NULL_KEY;
+        }
+
+        final KeyEncoder keyEncoder = keyEncoders.get(cacheId);
+        return keyEncoder == null ? stringKey : keyEncoder.encode(stringKey);
+    }
+
+    /**
+     * the reverse of {@link #convertKey(String, String)}
+     */
+    private String parameterKey(String cacheId, Object key) {
+        if (key == NULL_KEY) {
+            return null;
+        } else if (key instanceof KeyEncoder.CompactKey) {
+            return keyEncoders.get(cacheId).decode((KeyEncoder.CompactKey) key);
+        } else {
+            return (String) key;
+        }
+    }
+
+    /**
+     * a value already made storable by {@link DefaultCacheService#copyForAdd(String, Object)}
+     */
+    private static final class StorableCopy {
+        private final Object value;
+
+        private StorableCopy(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cheap, rough estimates of how many bytes a cached value takes up.
+ * Strings and primitive arrays are measured by their length. Collections, maps
+ * and object arrays are measured by their length times the average size of a
+ * few sampled elements; elements more than {@value #MAX_DEPTH} levels down are
+ * assumed to be small. Everything else is measured by its number of fields.
+ * At most a few dozen objects are looked at, so estimating is fast enough
+ * to do on every add.
+ * 
+ * @author Brad Cupit
+ */
+public final class EntrySizes {
+    private static final int OBJECT_HEADER = 16;
+    private static final int REFERENCE = 8;
+    private static final int ENTRY_OVERHEAD = 32;
+    private static final int ASSUMED_ELEMENT_SIZE = 32;
+    private static final int SAMPLED_ELEMENTS = 8;
+    private static final int MAX_DEPTH = 2;
+
+    private static final ConcurrentMap<Class<?>, Integer> shallowSizes = new ConcurrentHashMap<Class<?>, Integer>();
+
+    private EntrySizes() {
+    }
+
+    public static long estimate(Object value) {
+        return estimate(value, 0);
+    }
+
+    private static long estimate(Object value, int depth) {
+        if (value == null) {
+            return REFERENCE;
+        } else if (value instanceof CharSequence) {
+            return OBJECT_HEADER * 2 + ((CharSequence) value).length() * 2L;
+        } else if (value instanceof ValueCompressor.Compressed) {
+            return OBJECT_HEADER * 2 + ((ValueCompressor.Compressed) value).size();
+        } else if (value.getClass().isArray()) {
+            return estimateArray(value, depth);
+        } else if (value instanceof Collection<?>) {
+            final Collection<?> collection = (Collection<?>) value;
+            return OBJECT_HEADER * 2 + collection.size() * (ENTRY_OVERHEAD + averageSize(collection, depth));
+        } else if (value instanceof Map<?, ?>) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            return OBJECT_HEADER * 4 + map.size()
+                        * (ENTRY_OVERHEAD + averageSize(map.keySet(), depth) + averageSize(map.values(), depth));
+        } else {
+            return shallowSize(value.getClass());
+        }
+    }
+
+    private static long estimateArray(Object array, int depth) {
+        Class<?> componentType = array.getClass().getComponentType();
+        long length = Array.getLength(array);
+
+        if (componentType == byte.class || componentType == boolean.class) {
+            return OBJECT_HEADER + length;
+        } else if (componentType == char.class || componentType == short.class) {
+            return OBJECT_HEADER + length * 2;
+        } else if (componentType == int.class || componentType == float.class) {
+            return OBJECT_HEADER + length * 4;
+        } else if (componentType.isPrimitive()) {
+            return OBJECT_HEADER + length * 8;
+        } else {
+            return OBJECT_HEADER + length * (REFERENCE + averageSize((Object[]) array, depth));
+        }
+    }
+
+    /**
+     * average estimate of the first few elements, one level further down
+     */
+    private static long averageSize(Collection<?> elements, int depth) {
+        if (depth >= MAX_DEPTH || elements.isEmpty()) {
+            return ASSUMED_ELEMENT_SIZE;
+        }
+
+        long total = 0;
+        int sampled = 0;
+
+        try {
+            for (Iterator<?> iterator = elements.iterator(); iterator.hasNext() && sampled < SAMPLED_ELEMENTS; sampled++) {
+                total += estimate(iterator.next(), depth + 1);
+            }
+        } catch (ConcurrentModificationException exception) {
+            // changed by its owner while we looked, a guess will do
+        }
+
+        return sampled == 0 ? ASSUMED_ELEMENT_SIZE : total / sampled;
+    }
+
+    /**
+     * average estimate of a few elements spread over the array, one level further down
+     */
+    private static long averageSize(Object[] elements, int depth) {
+        if (depth >= MAX_DEPTH || elements.length == 0) {
+            return ASSUMED_ELEMENT_SIZE;
+        }
+
+        final int step = Math.max(1, elements.length / SAMPLED_ELEMENTS);
+        long total = 0;
+        int sampled = 0;
+
+        for (int i = 0; i < elements.length && sampled < SAMPLED_ELEMENTS; i += step, sampled++) {
+            total += estimate(elements[i], depth + 1);
+        }
+
+        return total / sampled;
+    }
+    private static int shallowSize(Class<?> type) {
+        Integer size = shallowSizes.get(type);
+
+        if (size == null) {
+            int fields = 0;
+            for (Class<?> current = type; current != null && current != Object.class; current = current
+                        .getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        fields++;
+                    }
+                }
+            }
+
+            size = OBJECT_HEADER + fields * REFERENCE;
+            shallowSizes.putIfAbsent(type, size);
+        }
+
+        return size;
+    }
+}
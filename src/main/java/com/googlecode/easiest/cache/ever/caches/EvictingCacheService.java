@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+/**
+ * A {@link CacheService} whose entries can be removed before they're evicted
+ * or expire. {@link com.googlecode.easiest.cache.ever.EvictCache} and
+ * {@link com.googlecode.easiest.cache.ever.UpdateCache} need one.
+ * 
+ * @author Brad Cupit
+ */
+public interface EvictingCacheService extends CacheService {
+    /**
+     * Removes an object from the cache, if it's there.
+     * 
+     * @param cacheId name of the cache to remove the object from
+     * @param key     the key the object was added with
+     */
+    void remove(String cacheId, String key);
+
+    /**
+     * Removes every object from the cache, if the cache exists.
+     * The cache itself (and its configuration) stays.
+     */
+    void removeAll(String cacheId);
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+/**
+ * Told about each entry a {@link EvictionNotifyingCacheService} evicts
+ * to make room, while the entry's value is still at hand.
+ * 
+ * @author Brad Cupit
+ */
+public interface EvictionListener {
+    /**
+     * @param timeToLiveSeconds how long the entry had left to live, or
+     *        {@link com.googlecode.easiest.cache.ever.CacheConstants#NO_EXPIRATION}
+     */
+    void evicted(String cacheId, String key, Object value, int timeToLiveSeconds);
+}
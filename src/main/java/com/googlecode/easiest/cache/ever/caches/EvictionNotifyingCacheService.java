@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+/**
+ * A {@link CacheService} which says which entries it evicts to make room.
+ * Entries which expire or are removed are not evictions.
+ * 
+ * @author Brad Cupit
+ */
+public interface EvictionNotifyingCacheService extends CacheService {
+    /**
+     * the listener is called on the thread which caused the eviction.
+     * Only caches created afterwards are listened to.
+     */
+    void setEvictionListener(EvictionListener evictionListener);
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+/**
+ * A {@link CacheService} whose entries can each have their
+ * own time to live, rather than the one configured for the whole cache.
+ * 
+ * @author Brad Cupit
+ */
+public interface ExpiringCacheService extends CostAwareCacheService {
+    /**
+     * Same as {@link #add(String, String, Object, long)}, but the value expires
+     * after timeToLiveSeconds. {@link com.googlecode.easiest.cache.ever.CacheConstants#NO_EXPIRATION}
+     * means the value never expires, and {@link com.googlecode.easiest.cache.ever.CacheConstants#UNSET_EXPIRATION_TIME}
+     * means the cache's own expiration time applies.
+     */
+    void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds);
+}
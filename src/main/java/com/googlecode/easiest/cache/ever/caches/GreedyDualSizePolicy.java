@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.store.Policy;
+
+/**
+ * A GreedyDual-Size eviction {@link Policy}: every entry's priority is
+ * its cost to recompute divided by its size, plus an inflation value.
+ * The entry with the lowest priority is evicted, and its priority becomes
+ * the new inflation value, so entries which haven't been used in a while
+ * age out even if they were expensive. An entry's priority is refreshed
+ * with the current inflation value each time it's retrieved.
+ * 
+ * Entries added without a measured cost (anything not a
+ * {@link CostedElement}) have the lowest possible priority and are
+ * evicted first.
+ * 
+ * @author Brad Cupit
+ */
+public class GreedyDualSizePolicy implements Policy {
+    public static final String NAME = "GDS";
+
+    // only written while an entry is being put (and evicted), which
+    // DefaultCacheService does one thread at a time per cache
+    private volatile double inflation;
+
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * picks the sampled element with the lowest priority, never the element which was just added
+     */
+    public Element selectedBasedOnPolicy(Element[] sampledElements, Element justAdded) {
+        Element lowest = null;
+
+        for (Element element : sampledElements) {
+            if (element == null || element.equals(justAdded)) {
+                continue;
+            }
+
+            if (lowest == null || compare(lowest, element)) {
+                lowest = element;
+            }
+        }
+
+        if (lowest != null) {
+            inflation = Math.max(inflation, priorityOf(lowest));
+        }
+
+        return lowest;
+    }
+
+    /**
+     * true if element2 should be evicted before element1
+     */
+    public boolean compare(Element element1, Element element2) {
+        return priorityOf(element2) < priorityOf(element1);
+    }
+
+    /**
+     * creates an element whose priority is based on the given cost and the value's estimated size
+     */
+    public CostedElement newElement(Object key, Object value, long loadNanos) {
+        CostedElement element = new CostedElement(key, value, Math.max(0, loadNanos), EntrySizes.estimate(value));
+        touch(element);
+        return element;
+    }
+
+    /**
+     * refreshes the element's priority, called whenever it is used
+     */
+    public void touch(Element element) {
+        if (element instanceof CostedElement) {
+            CostedElement costedElement = (CostedElement) element;
+            costedElement.setPriority(inflation + (double) costedElement.getLoadNanos() / costedElement.getSize());
+        }
+    }
+
+    public double priorityOf(Element element) {
+        if (element instanceof CostedElement) {
+            return ((CostedElement) element).getPriority();
+        } else {
+            return 0;
+        }
+    }
+
+    public double getInflation() {
+        return inflation;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Turns one cache's parameter keys into {@link CompactKey}s, which take a
+ * fraction of the memory of the key Strings.
+ * 
+ * Keys are XML written by {@link com.googlecode.easiest.cache.ever.keys.DefaultKeyGenerator},
+ * and the same long element names (mostly fully qualified class names) show up
+ * in every key. Each element name is given a number the first time it's seen,
+ * and written as that number from then on. Everything else is written one byte
+ * per character for ASCII, and as in UTF-8 for the rest.
+ * 
+ * Once a name has a number it keeps it, so a key is always encoded the same
+ * way and keys can be compared by their bytes. When the dictionary is full,
+ * new names are written out in full.
+ * 
+ * @author Brad Cupit
+ */
+class KeyEncoder {
+    static final int MAX_NAMES = 4096;
+
+    /** never the first byte of a UTF-8 character, so it can mark a name's number */
+    private static final int NAME_MARKER = 0xFF;
+    private static final int SHORTEST_NAME = 4;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private final AtomicReferenceArray<String> names = new AtomicReferenceArray<String>(MAX_NAMES);
+    private final Lock addNameLock = new ReentrantLock();
+    private volatile int nameCount = 0;
+
+    CompactKey encode(String key) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(key.length());
+
+        int i = 0;
+        while (i < key.length()) {
+            final char c = key.charAt(i);
+            writeChar(c, bytes);
+            i++;
+
+            if (c == '<') {
+                if (i < key.length() && key.charAt(i) == '/') {
+                    writeChar('/', bytes);
+                    i++;
+                }
+
+                final int nameEnd = nameEnd(key, i);
+                final Integer id = nameEnd - i < SHORTEST_NAME ? null : idFor(key.substring(i, nameEnd));
+
+                if (id != null) {
+                    bytes.write(NAME_MARKER);
+                    writeVarInt(id.intValue(), bytes);
+                    i = nameEnd;
+                }
+            }
+        }
+
+        return new CompactKey(bytes.toByteArray());
+    }
+
+    String decode(CompactKey compactKey) {
+        final byte[] bytes = compactKey.bytes;
+        final StringBuilder key = new StringBuilder(bytes.length + bytes.length / 2);
+
+        int i = 0;
+        while (i < bytes.length) {
+            final int b = bytes[i++] & 0xFF;
+
+            if (b == NAME_MARKER) {
+                int id = 0;
+                int shift = 0;
+                int next;
+                do {
+                    next = bytes[i++] & 0xFF;
+                    id |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while ((next & 0x80) != 0);
+
+                key.append(names.get(id));
+            } else if (b < 0x80) {
+                key.append((char) b);
+            } else if (b < 0xE0) {
+                key.append((char) (((b & 0x1F) << 6) | (bytes[i++] & 0x3F)));
+            } else {
+                key.append((char) (((b & 0x0F) << 12) | ((bytes[i++] & 0x3F) << 6) | (bytes[i++] & 0x3F)));
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * how many element names have a number
+     */
+    int size() {
+        return ids.size();
+    }
+
+    private Integer idFor(String name) {
+        final Integer id = ids.get(name);
+
+        if (id != null || nameCount >= MAX_NAMES) {
+            return id;
+        }
+
+        addNameLock.lock();
+        try {
+            final Integer existingId = ids.get(name);
+
+            if (existingId != null || nameCount >= MAX_NAMES) {
+                return existingId;
+            }
+
+            final Integer newId = Integer.valueOf(nameCount);
+            // the name must be there to decode before any key uses its number
+            names.set(nameCount, name);
+            nameCount++;
+            ids.put(name, newId);
+            return newId;
+        } finally {
+            addNameLock.unlock();
+        }
+    }
+
+    private static int nameEnd(String key, int start) {
+        int end = start;
+
+        while (end < key.length()) {
+            char c = key.charAt(end);
+
+            if (c == '>' || c == '/' || c == ' ' || c == '<') {
+                break;
+            }
+
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * like UTF-8, but each char is written on its own, so
+     * unpaired surrogates survive the round trip
+     */
+    private static void writeChar(char c, ByteArrayOutputStream bytes) {
+        if (c < 0x80) {
+            bytes.write(c);
+        } else if (c < 0x800) {
+            bytes.write(0xC0 | (c >> 6));
+            bytes.write(0x80 | (c & 0x3F));
+        } else {
+            bytes.write(0xE0 | (c >> 12));
+            bytes.write(0x80 | ((c >> 6) & 0x3F));
+            bytes.write(0x80 | (c & 0x3F));
+        }
+    }
+
+    private static void writeVarInt(int value, ByteArrayOutputStream bytes) {
+        while (value >= 0x80) {
+            bytes.write(0x80 | (value & 0x7F));
+            value >>>= 7;
+        }
+
+        bytes.write(value);
+    }
+
+    /**
+     * a parameter key as it's kept in the cache. Equality and hash
+     * code come straight from the bytes, without decoding them.
+     */
+    static final class CompactKey {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        private CompactKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        /**
+         * encoded size in bytes
+         */
+        int size() {
+            return bytes.length;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+
+            if (!(object instanceof CompactKey)) {
+                return false;
+            }
+
+            final CompactKey other = (CompactKey) object;
+            return hashCode == other.hashCode && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return "CompactKey[" + bytes.length + " bytes]";
+        }
+    }
+}
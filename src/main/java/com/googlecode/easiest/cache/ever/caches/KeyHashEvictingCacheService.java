@@ -0,0 +1,34 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.Set;
+
+/**
+ * An {@link EvictingCacheService} which can also remove entries knowing only the
+ * hashes of their keys, which is all the other nodes of a cluster are sent.
+ * {@link com.googlecode.easiest.cache.ever.cluster.InvalidationBus} needs one.
+ * 
+ * @author Brad Cupit
+ */
+public interface KeyHashEvictingCacheService extends EvictingCacheService {
+    /**
+     * Removes every object whose key, without its namespace, has one of the hashes
+     * (see {@link KeyHashes#hashWithoutNamespace(String)}), for when only the hashes
+     * of the keys are known. Every generation of a namespaced key is removed.
+     */
+    void removeKeyHashes(String cacheId, Set<Long> keyHashes);
+}
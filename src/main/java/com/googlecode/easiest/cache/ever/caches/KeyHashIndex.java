@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index from {@link KeyHashes#hashWithoutNamespace(String) key hash} to the
+ * (Ehcache) keys with that hash, for one cache of {@link DefaultCacheService}, so
+ * {@link KeyHashEvictingCacheService#removeKeyHashes(String, Set)} costs as much as the number
+ * of hashes rather than the size of the cache. A hash can have several keys:
+ * one per namespace generation, and the odd collision.
+ * 
+ * Kept in step by the cache's put and removal events, so the index never holds
+ * much more than the cache does.
+ * 
+ * @author Brad Cupit
+ */
+class KeyHashIndex {
+    private final ConcurrentMap<Long, ConcurrentMap<Object, Boolean>> keysByHash = new ConcurrentHashMap<Long, ConcurrentMap<Object, Boolean>>();
+
+    void add(long keyHash, Object key) {
+        while (true) {
+            ConcurrentMap<Object, Boolean> keys = keysByHash.get(keyHash);
+
+            if (keys == null) {
+                final ConcurrentMap<Object, Boolean> newKeys = new ConcurrentHashMap<Object, Boolean>(2);
+                keys = keysByHash.putIfAbsent(keyHash, newKeys);
+
+                if (keys == null) {
+                    keys = newKeys;
+                }
+            }
+
+            keys.put(key, Boolean.TRUE);
+
+            // if the set was emptied and dropped in the meantime, add to its replacement
+            if (keysByHash.get(keyHash) == keys) {
+                return;
+            }
+        }
+    }
+
+    void removed(long keyHash, Object key) {
+        final ConcurrentMap<Object, Boolean> keys = keysByHash.get(keyHash);
+
+        if (keys != null) {
+            keys.remove(key);
+
+            if (keys.isEmpty() && keysByHash.remove(keyHash, keys)) {
+                // a key may have been added between the check and the removal
+                for (Object lateKey : keys.keySet()) {
+                    add(keyHash, lateKey);
+                }
+            }
+        }
+    }
+
+    void removedAll() {
+        keysByHash.clear();
+    }
+
+    /**
+     * @return the keys with any of the hashes
+     */
+    List<Object> keysFor(Collection<Long> keyHashes) {
+        final List<Object> found = new ArrayList<Object>();
+
+        for (Long keyHash : keyHashes) {
+            final ConcurrentMap<Object, Boolean> keys = keysByHash.get(keyHash);
+
+            if (keys != null) {
+                found.addAll(keys.keySet());
+            }
+        }
+
+        return found;
+    }
+}
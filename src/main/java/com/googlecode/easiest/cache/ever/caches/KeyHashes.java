@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import com.googlecode.easiest.cache.ever.CacheNamespaces;
+
+/**
+ * 64 bit hashes of parameter keys, for when a key has to be referred to
+ * compactly: in cache traces, and in invalidations sent to other nodes
+ * (which are hashed {@link #hashWithoutNamespace(String) without their namespace}).
+ * 
+ * @author Brad Cupit
+ */
+public final class KeyHashes {
+    private KeyHashes() {
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key. Wider than {@link String#hashCode()}
+     * so different keys practically never collide.
+     */
+    public static long hash(String key) {
+        if (key == null) {
+            return 0;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * the hash of the parameter key without its namespace (see
+     * {@link CacheNamespaces#withoutNamespace(String)}), which is the same on every node.
+     * {@link KeyHashEvictingCacheService#removeKeyHashes(String, java.util.Set)} takes these hashes
+     */
+    public static long hashWithoutNamespace(String key) {
+        return hash(CacheNamespaces.withoutNamespace(key));
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.Preparable;
+import com.rits.cloning.Cloner;
+
+/**
+ * {@link CacheService} which keeps a small, per-thread near cache
+ * in front of another {@link CacheService}. Caches which have not
+ * enabled a near cache (see {@link CacheConfig#getNearCacheMaxSize()})
+ * go straight through to the shared cache.
+ * 
+ * A hit on the near cache never touches the shared cache, so
+ * the hottest keys don't fight over the shared cache's
+ * internal locks and counters.
+ * 
+ * Near cache entries are invalidated with generation counters:
+ * every {@link #add(String, String, Object)} bumps the generation
+ * of the key's stripe, and a near cache entry is only used if it
+ * was read under the current generation. Entries also expire after
+ * a short, fixed time, which bounds staleness if the shared cache
+ * is changed by something other than this class, and never outlive
+ * the time to live the shared cache says the value has left.
+ * 
+ * A near hit saves the shared cache's lookup, not the copy: like the
+ * shared cache, every hit hands out a deep clone (unless the cache uses
+ * unmodifiable collections, see {@link CacheConfig#isUnmodifiableCollections()}).
+ * For big values the clone costs far more than the lookup, so a near cache
+ * mostly pays off for small, very hot values. Near caches are per thread, so
+ * they also need long-lived threads: a virtual thread per request rarely hits.
+ * Not part of the default configuration; wrap the shared cache service to use it.
+ * 
+ * @author Brad Cupit
+ */
+public class NearCacheService implements TaggingCacheService, Preparable {
+    private static final int GENERATION_STRIPES = 64;
+
+    private CacheService cacheService;
+    private Cloner cloner;
+    private final ConcurrentMap<String, NearCacheRegion> regions = new ConcurrentHashMap<String, NearCacheRegion>();
+    private final ThreadLocal<Map<String, NearCache>> nearCaches = new ThreadLocal<Map<String, NearCache>>() {
+        @Override
+        protected Map<String, NearCache> initialValue() {
+            return new HashMap<String, NearCache>();
+        }
+    };
+
+    /**
+     * the shared {@link CacheService} which this near cache sits in front of
+     */
+    public void setCacheService(CacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    public void setCloner(Cloner cloner) {
+        this.cloner = cloner;
+    }
+
+    public void createCacheIfNecessary(String cacheId, CacheConfig cacheConfig) {
+        cacheService.createCacheIfNecessary(cacheId, cacheConfig);
+
+        if (cacheConfig.getNearCacheMaxSize() != CacheConstants.NO_NEAR_CACHE && !regions.containsKey(cacheId)) {
+            regions.putIfAbsent(cacheId, new NearCacheRegion(cacheConfig));
+        }
+    }
+
+    public void add(String cacheId, String key, Object value) {
+        cacheService.add(cacheId, key, value);
+        invalidateNearCaches(cacheId, key);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos) {
+        add(cacheId, key, value, loadNanos, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        add(cacheId, key, value, loadNanos, timeToLiveSeconds, null);
+    }
+
+    /**
+     * the cost, time to live and tags are passed on to the shared {@link CacheService}, as far as it supports them
+     */
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds,
+                Collection<String> tags) {
+        if (tags != null && !tags.isEmpty() && cacheService instanceof TaggingCacheService) {
+            ((TaggingCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds, tags);
+        } else if (cacheService instanceof ExpiringCacheService) {
+            ((ExpiringCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds);
+        } else if (cacheService instanceof CostAwareCacheService) {
+            ((CostAwareCacheService) cacheService).add(cacheId, key, value, loadNanos);
+        } else {
+            cacheService.add(cacheId, key, value);
+        }
+
+        invalidateNearCaches(cacheId, key);
+    }
+
+    /**
+     * passed on to the shared {@link CacheService}, if it is {@link Preparable}
+     */
+    public void prepare(Class<?> returnType) {
+        if (cacheService instanceof Preparable) {
+            ((Preparable) cacheService).prepare(returnType);
+        }
+    }
+
+    public CachedValue retrieve(String cacheId, String key) {
+        NearCacheRegion region = regions.get(cacheId);
+
+        if (region == null) {
+            return cacheService.retrieve(cacheId, key);
+        }
+
+        long generation = region.generation(key);
+        long now = System.nanoTime();
+        NearCache nearCache = nearCacheFor(cacheId, region);
+        NearCacheEntry entry = nearCache.get(key);
+
+        if (entry != null && entry.generation == generation && now - entry.expiresAtNanos < 0) {
+            return CachedValue.create(copy(region, entry.value));
+        }
+
+        // read the generation before the shared cache. If another thread adds
+        // in between, the generation moves on and this entry is never used
+        CachedValue cachedValue = cacheService.retrieve(cacheId, key);
+
+        if (cachedValue.wasFound()) {
+            // the value from the shared cache is already our own copy, so keep it
+            // and hand out a clone, same as the shared cache does
+            Object value = cachedValue.value();
+            if (region.unmodifiableCollections && UnmodifiableViews.canView(value)) {
+                value = UnmodifiableViews.of(value);
+            }
+
+            long expirationNanos = nearExpirationNanos(region, cachedValue.timeToLiveSeconds());
+            if (expirationNanos > 0) {
+                nearCache.put(key, new NearCacheEntry(value, generation, now + expirationNanos));
+            } else {
+                nearCache.remove(key);
+            }
+
+            return CachedValue.create(copy(region, value), cachedValue.timeToLiveSeconds());
+        } else {
+            nearCache.remove(key);
+            return cachedValue;
+        }
+    }
+
+    public void remove(String cacheId, String key) {
+        evictingCacheService().remove(cacheId, key);
+        invalidateNearCaches(cacheId, key);
+    }
+
+    public void removeAll(String cacheId) {
+        evictingCacheService().removeAll(cacheId);
+
+        NearCacheRegion region = regions.get(cacheId);
+
+        if (region != null) {
+            region.invalidateAll();
+        }
+    }
+
+    /**
+     * Removes the tagged entries from the shared {@link CacheService}. The near caches
+     * don't know which of their entries are tagged, so all of them are invalidated.
+     * 
+     * @throws UnsupportedOperationException if the shared {@link CacheService} can't tag entries
+     */
+    public void removeTagged(String tag) {
+        if (!(cacheService instanceof TaggingCacheService)) {
+            throw new UnsupportedOperationException(cacheService.getClass().getName() + " can't tag entries");
+        }
+
+        ((TaggingCacheService) cacheService).removeTagged(tag);
+
+        for (NearCacheRegion region : regions.values()) {
+            region.invalidateAll();
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the underlying cache service can't remove entries
+     */
+    private EvictingCacheService evictingCacheService() {
+        if (!(cacheService instanceof EvictingCacheService)) {
+            throw new UnsupportedOperationException(cacheService.getClass().getName() + " can't remove entries");
+        }
+
+        return (EvictingCacheService) cacheService;
+    }
+
+    /**
+     * the near cache's own expiration, cut short if the entry has less time than that left
+     */
+    private long nearExpirationNanos(NearCacheRegion region, int timeToLiveSeconds) {
+        if (timeToLiveSeconds == CacheConstants.NO_EXPIRATION
+                    || timeToLiveSeconds == CacheConstants.UNSET_EXPIRATION_TIME) {
+            return region.expirationNanos;
+        }
+
+        return Math.min(region.expirationNanos, TimeUnit.SECONDS.toNanos(timeToLiveSeconds));
+    }
+
+    private Object copy(NearCacheRegion region, Object value) {
+        if (value instanceof CachedException) {
+            // exceptions are treated as immutable, same as in the shared cache
+            return value;
+        }
+
+        if (region.unmodifiableCollections && UnmodifiableViews.canView(value)) {
+            // kept as an unmodifiable view, which every caller can share
+            return value;
+        }
+
+        return cloner.deepClone(value);
+    }
+
+    private void invalidateNearCaches(String cacheId, String key) {
+        NearCacheRegion region = regions.get(cacheId);
+
+        if (region != null) {
+            // bump after the shared cache has the new value, so a thread which sees
+            // the new generation is guaranteed to read the new value
+            region.invalidate(key);
+        }
+    }
+
+    private NearCache nearCacheFor(String cacheId, NearCacheRegion region) {
+        Map<String, NearCache> nearCachesForThread = nearCaches.get();
+        NearCache nearCache = nearCachesForThread.get(cacheId);
+
+        if (nearCache == null) {
+            nearCache = new NearCache(region.maxSize);
+            nearCachesForThread.put(cacheId, nearCache);
+        }
+
+        return nearCache;
+    }
+
+    /**
+     * settings and generation counters shared by every thread's
+     * near cache for one cache id.
+     */
+    private static class NearCacheRegion {
+        private final int maxSize;
+        private final long expirationNanos;
+        private final boolean unmodifiableCollections;
+        private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+        private NearCacheRegion(CacheConfig cacheConfig) {
+            this.maxSize = cacheConfig.getNearCacheMaxSize();
+            this.expirationNanos = TimeUnit.MILLISECONDS.toNanos(cacheConfig.getNearCacheExpirationMillis());
+            this.unmodifiableCollections = cacheConfig.isUnmodifiableCollections();
+        }
+
+        private long generation(String key) {
+            return generations.get(stripe(key));
+        }
+
+        private void invalidate(String key) {
+            generations.incrementAndGet(stripe(key));
+        }
+
+        private void invalidateAll() {
+            for (int i = 0; i < GENERATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+        }
+
+        private int stripe(String key) {
+            if (key == null) {
+                return 0;
+            }
+
+            return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+        }
+    }
+
+    /**
+     * one thread's near cache for one cache id. Only ever touched by its
+     * own thread, so it needs no synchronization.
+     */
+    private static class NearCache extends LinkedHashMap<String, NearCacheEntry> {
+        private static final long serialVersionUID = 1L;
+        private static final boolean ACCESS_ORDER = true;
+
+        private final int maxSize;
+
+        private NearCache(int maxSize) {
+            super(16, 0.75f, ACCESS_ORDER);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NearCacheEntry> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class NearCacheEntry {
+        private final Object value;
+        private final long generation;
+        private final long expiresAtNanos;
+
+        private NearCacheEntry(Object value, long generation, long expiresAtNanos) {
+            this.value = value;
+            this.generation = generation;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
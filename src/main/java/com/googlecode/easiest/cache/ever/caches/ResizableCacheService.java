@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+/**
+ * A {@link CacheService} whose caches can change size after they're created.
+ * 
+ * @author Brad Cupit
+ */
+public interface ResizableCacheService extends CacheService {
+    /**
+     * Changes how many entries the cache keeps, evicting the least recently
+     * used entries if it shrinks. The cache can't grow beyond the maxSize
+     * it was created with. Does nothing if the cache doesn't exist.
+     */
+    void resize(String cacheId, int maxSize);
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Java serialization of cached values, for caches which keep values outside
+ * the heap or send them to other processes. Deserializing always makes a new
+ * copy, so the result is safe to hand out without cloning.
+ * 
+ * Bytes from another process over the network are read with an allow-list
+ * of classes (see {@link #deserialize(byte[], Collection)}), so a peer can't
+ * make this JVM instantiate arbitrary serializable classes.
+ * 
+ * @author Brad Cupit
+ */
+public final class Serialization {
+    /**
+     * what {@link #deserialize(byte[], Collection)} always allows: the classes
+     * of java.lang, java.util and java.math (strings, boxed primitives, dates,
+     * collections, big numbers, and the standard exceptions) and cached exceptions
+     */
+    public static final Set<String> STANDARD_CLASSES = Collections.unmodifiableSet(new HashSet<String>(Arrays
+                .asList("java.lang.*", "java.util.*", "java.math.*", CachedException.class.getName())));
+
+    private Serialization() {
+    }
+
+    /**
+     * @return null if the value isn't serializable
+     */
+    public static byte[] serialize(Object value) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try {
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+        } catch (NotSerializableException exception) {
+            return null;
+        } catch (IOException exception) {
+            // can't happen, it's all in memory
+            throw new IllegalStateException(exception);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public static Object deserialize(byte[] bytes) throws IOException {
+        return deserialize(bytes, null);
+    }
+
+    /**
+     * reads bytes which came from another process. Fails with an
+     * {@link InvalidClassException} at the first class which isn't allowed,
+     * before it's instantiated
+     * 
+     * @param allowedClasses class names, or packages as "com.example.orders.*"
+     *                       (not including subpackages), allowed besides the
+     *                       {@link #STANDARD_CLASSES}. Null allows every class
+     */
+    public static Object deserialize(byte[] bytes, Collection<String> allowedClasses) throws IOException {
+        try {
+            return new ContextObjectInputStream(new ByteArrayInputStream(bytes), allowedClasses).readObject();
+        } catch (ClassNotFoundException exception) {
+            IOException ioException = new IOException("unable to read cached value");
+            ioException.initCause(exception);
+            throw ioException;
+        }
+    }
+
+    private static boolean isAllowed(String className, Collection<String> allowedClasses) {
+        String elementClassName = className;
+
+        // arrays are allowed when their elements are
+        while (elementClassName.startsWith("[")) {
+            elementClassName = elementClassName.substring(1);
+        }
+
+        if (elementClassName.startsWith("L") && elementClassName.endsWith(";")) {
+            elementClassName = elementClassName.substring(1, elementClassName.length() - 1);
+        } else if (elementClassName.length() == 1) {
+            // an array of primitives
+            return true;
+        }
+
+        final int lastDot = elementClassName.lastIndexOf('.');
+        final String packageClasses = elementClassName.substring(0, lastDot + 1) + "*";
+
+        return STANDARD_CLASSES.contains(elementClassName) || STANDARD_CLASSES.contains(packageClasses)
+                    || allowedClasses.contains(elementClassName) || allowedClasses.contains(packageClasses);
+    }
+
+    /**
+     * resolves classes with the thread's context class loader, so a webapp's classes are found
+     */
+    private static class ContextObjectInputStream extends ObjectInputStream {
+        /** null allows every class */
+        private final Collection<String> allowedClasses;
+
+        private ContextObjectInputStream(InputStream in, Collection<String> allowedClasses) throws IOException {
+            super(in);
+            this.allowedClasses = allowedClasses;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            if (allowedClasses != null && !isAllowed(description.getName(), allowedClasses)) {
+                throw new InvalidClassException(description.getName(), "not an allowed class");
+            }
+
+            final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+            if (classLoader != null) {
+                try {
+                    return Class.forName(description.getName(), false, classLoader);
+                } catch (ClassNotFoundException exception) {
+                    // fall back to the default lookup
+                }
+            }
+
+            return super.resolveClass(description);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            if (allowedClasses != null) {
+                throw new InvalidClassException("proxy", "proxies aren't allowed");
+            }
+
+            return super.resolveProxyClass(interfaces);
+        }
+    }
+}
@@ -0,0 +1,652 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+
+/**
+ * {@link CacheService} backed by a memory-mapped file, shared by every JVM on the
+ * host which is given the same file. Each value is stored once per host instead of
+ * once per JVM, and survives a restart of the JVMs (not of the host, unless the
+ * operating system has written the file out).
+ * 
+ * The file is a fixed number of fixed-size slots, indexed by open addressing:
+ * a key lives in one of the {@link #PROBES} slots after its hash. When they're
+ * all taken, the one expiring soonest is replaced. Values are Java serialized
+ * (see {@link Serialization}); values which aren't serializable, or don't fit in
+ * a slot, are cached by the local {@link #setCacheService(CacheService) cacheService}.
+ * 
+ * Readers never lock. Each slot has a sequence number which writers make odd while
+ * they write and even when done (a seqlock), and a checksum: a reader retries
+ * when the sequence number was odd or changed, or the checksum doesn't match.
+ * Writers lock the key's slots, with a {@link FileLock} against other processes
+ * and a {@link Lock} per file within this JVM. A slot left odd by a process which
+ * died while writing is simply overwritten.
+ * 
+ * The caches' max sizes don't apply: the file's size does. Expiration times do,
+ * by the wall clock, since other processes share the entries.
+ * 
+ * @author Brad Cupit
+ */
+public class SharedMemoryCacheService implements ExpiringCacheService, EvictingCacheService {
+    /** how many slots a key may be in */
+    public static final int PROBES = 8;
+
+    private static final Logger logger = Logger.getLogger(SharedMemoryCacheService.class.getName());
+    private static final int MAGIC = 0x45435348;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 64;
+    private static final int READ_ATTEMPTS = 4;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    // slot layout
+    private static final int SEQUENCE = 0;
+    private static final int CACHE_ID_HASH = 4;
+    private static final int KEY_HASH = 12;
+    private static final int EXPIRES_AT_MILLIS = 20;
+    /** 0 for an empty slot */
+    private static final int KEY_LENGTH = 28;
+    private static final int VALUE_LENGTH = 32;
+    private static final int CHECKSUM = 36;
+    private static final int SLOT_HEADER_BYTES = 40;
+    /** a MappedByteBuffer is indexed by int */
+    private static final long MAX_SLOT_BYTES = Integer.MAX_VALUE - FILE_HEADER_BYTES;
+
+    /** writers of the same file in this JVM, which FileLocks don't keep apart */
+    private static final ConcurrentMap<String, Lock> writeLocks = new ConcurrentHashMap<String, Lock>();
+
+    private CacheService cacheService;
+    private File file;
+    private int slotCount = 16384;
+    private int slotSize = 1024;
+    private final ConcurrentMap<String, CacheConfig> cacheConfigs = new ConcurrentHashMap<String, CacheConfig>();
+    private final Lock mappingLock = new ReentrantLock();
+    private volatile Mapping mapping;
+
+    /**
+     * where values which can't be shared are cached
+     */
+    public void setCacheService(CacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * the file shared by the JVMs. Created if necessary
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * how many entries the file holds. Ignored if the file already exists. Defaults to 16384.
+     * slotCount * slotSize can't be over 2GB, the most one mapped file can hold
+     */
+    public void setSlotCount(int slotCount) {
+        if (slotCount <= 0 || slotCount > MAX_SLOT_BYTES / (SLOT_HEADER_BYTES + 1)) {
+            throw new IllegalArgumentException("slotCount must be between 1 and "
+                        + MAX_SLOT_BYTES / (SLOT_HEADER_BYTES + 1) + ", not " + slotCount);
+        }
+
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * bytes per entry, including the key and the serialized value. Ignored if
+     * the file already exists. Defaults to 1024. slotCount * slotSize can't be
+     * over 2GB, the most one mapped file can hold
+     */
+    public void setSlotSize(int slotSize) {
+        if (slotSize <= SLOT_HEADER_BYTES || slotSize > MAX_SLOT_BYTES) {
+            throw new IllegalArgumentException("slotSize must be between " + (SLOT_HEADER_BYTES + 1) + " and "
+                        + MAX_SLOT_BYTES + ", not " + slotSize);
+        }
+
+        this.slotSize = slotSize;
+    }
+
+    public void createCacheIfNecessary(String cacheId, CacheConfig cacheConfig) {
+        cacheService.createCacheIfNecessary(cacheId, cacheConfig);
+        cacheConfigs.putIfAbsent(cacheId, cacheConfig);
+    }
+
+    public void add(String cacheId, String key, Object value) {
+        add(cacheId, key, value, 0, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos) {
+        add(cacheId, key, value, loadNanos, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        final Mapping currentMapping = mapping();
+        final byte[] keyBytes = keyBytes(cacheId, key);
+        final byte[] valueBytes = Serialization.serialize(value);
+
+        if (valueBytes == null || SLOT_HEADER_BYTES + keyBytes.length + valueBytes.length > currentMapping.slotSize) {
+            addLocally(cacheId, key, value, loadNanos, timeToLiveSeconds);
+            return;
+        }
+
+        try {
+            currentMapping.put(KeyHashes.hash(cacheId), KeyHashes.hash(key), keyBytes, valueBytes, expiresAtMillis(
+                        cacheId, timeToLiveSeconds));
+        } catch (IOException exception) {
+            logger.log(Level.WARNING, "unable to lock the shared cache file, " + cacheId + " cached locally", exception);
+            addLocally(cacheId, key, value, loadNanos, timeToLiveSeconds);
+            return;
+        }
+
+        // an older local value would come back once the slot is reused
+        if (cacheService instanceof EvictingCacheService) {
+            ((EvictingCacheService) cacheService).remove(cacheId, key);
+        }
+    }
+
+    /**
+     * caches the value with the local cacheService, once the key's slot (if any) is
+     * gone from the file: {@link #retrieve(String, String)} reads the file first, so
+     * an older shared value would hide the new one
+     */
+    private void addLocally(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        try {
+            mapping().remove(KeyHashes.hash(cacheId), KeyHashes.hash(key), keyBytes(cacheId, key));
+        } catch (IOException exception) {
+            logger.log(Level.WARNING, "unable to lock the shared cache file, " + cacheId + " not cached", exception);
+            return;
+        }
+
+        if (cacheService instanceof ExpiringCacheService) {
+            ((ExpiringCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds);
+        } else {
+            cacheService.add(cacheId, key, value);
+        }
+    }
+
+    public CachedValue retrieve(String cacheId, String key) {
+        final Slot slot = mapping().get(KeyHashes.hash(cacheId), KeyHashes.hash(key), keyBytes(cacheId, key));
+
+        if (slot != null) {
+            try {
+                return CachedValue.create(Serialization.deserialize(slot.valueBytes), timeToLiveSeconds(slot));
+            } catch (IOException exception) {
+                logger.log(Level.FINE, "unable to read shared value of " + cacheId, exception);
+            }
+        }
+
+        // values which couldn't be shared
+        return cacheService.retrieve(cacheId, key);
+    }
+
+    public void remove(String cacheId, String key) {
+        final EvictingCacheService localCacheService = evictingCacheService();
+
+        try {
+            mapping().remove(KeyHashes.hash(cacheId), KeyHashes.hash(key), keyBytes(cacheId, key));
+        } catch (IOException exception) {
+            logger.log(Level.WARNING, "unable to lock the shared cache file, " + cacheId + " not removed", exception);
+        }
+
+        localCacheService.remove(cacheId, key);
+    }
+
+    /**
+     * walks every slot of the file
+     */
+    public void removeAll(String cacheId) {
+        final EvictingCacheService localCacheService = evictingCacheService();
+
+        try {
+            mapping().removeAll(KeyHashes.hash(cacheId));
+        } catch (IOException exception) {
+            logger.log(Level.WARNING, "unable to lock the shared cache file, " + cacheId + " not removed", exception);
+        }
+
+        localCacheService.removeAll(cacheId);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the underlying cache service can't remove entries
+     */
+    private EvictingCacheService evictingCacheService() {
+        if (!(cacheService instanceof EvictingCacheService)) {
+            throw new UnsupportedOperationException(cacheService.getClass().getName() + " can't remove entries");
+        }
+
+        return (EvictingCacheService) cacheService;
+    }
+
+    /**
+     * unmaps the file (once the garbage collector gets to it). The entries stay in the file
+     */
+    public void close() throws IOException {
+        mappingLock.lock();
+        try {
+            if (mapping != null) {
+                mapping.channel.close();
+                mapping = null;
+            }
+        } finally {
+            mappingLock.unlock();
+        }
+    }
+
+    private int timeToLiveSeconds(Slot slot) {
+        if (slot.expiresAtMillis == NEVER) {
+            return CacheConstants.NO_EXPIRATION;
+        }
+
+        final long millisLeft = slot.expiresAtMillis - System.currentTimeMillis();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, millisLeft / 1000));
+    }
+
+    private long expiresAtMillis(String cacheId, int timeToLiveSeconds) {
+        long seconds;
+
+        if (timeToLiveSeconds == CacheConstants.NO_EXPIRATION) {
+            return NEVER;
+        } else if (timeToLiveSeconds != CacheConstants.UNSET_EXPIRATION_TIME) {
+            seconds = Math.max(1, timeToLiveSeconds);
+        } else {
+            final CacheConfig cacheConfig = cacheConfigs.get(cacheId);
+
+            if (cacheConfig == null || cacheConfig.getExpirationTime() <= 0 || cacheConfig.getUnit() == null) {
+                return NEVER;
+            }
+
+            seconds = Math.max(1, cacheConfig.getUnit().toSeconds(cacheConfig.getExpirationTime()));
+        }
+
+        return System.currentTimeMillis() + seconds * 1000;
+    }
+
+    private Mapping mapping() {
+        Mapping currentMapping = mapping;
+
+        if (currentMapping == null) {
+            mappingLock.lock();
+            try {
+                currentMapping = mapping;
+
+                if (currentMapping == null) {
+                    checkFileSize(slotCount, slotSize);
+
+                    try {
+                        currentMapping = new Mapping(file, slotCount, slotSize);
+                    } catch (IOException exception) {
+                        throw new IllegalStateException("unable to map " + file, exception);
+                    }
+                    mapping = currentMapping;
+                }
+            } finally {
+                mappingLock.unlock();
+            }
+        }
+
+        return currentMapping;
+    }
+
+    /**
+     * checked once both are known, since either may be set first
+     */
+    private static void checkFileSize(int slotCount, int slotSize) {
+        if ((long) slotCount * slotSize > MAX_SLOT_BYTES) {
+            throw new IllegalArgumentException(slotCount + " slots of " + slotSize + " bytes take more than "
+                        + MAX_SLOT_BYTES + " bytes, the most one mapped file can hold");
+        }
+    }
+
+    private static byte[] keyBytes(String cacheId, String key) {
+        // the marker tells a null key from an empty one
+        final String compositeKey = cacheId + '\0' + (key == null ? "N" : "K" + key);
+
+        try {
+            return compositeKey.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException exception) {
+            // every JVM supports UTF-8
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int checksum(byte[] keyBytes, byte[] valueBytes) {
+        final Adler32 checksum = new Adler32();
+        checksum.update(keyBytes);
+        checksum.update(valueBytes);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * the mapped file
+     */
+    private static class Mapping {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final Lock writeLock;
+        private final int slotCount;
+        private final int slotSize;
+
+        private Mapping(File file, int newSlotCount, int newSlotSize) throws IOException {
+            final String path = file.getCanonicalPath();
+            final Lock newWriteLock = new ReentrantLock();
+            final Lock existingWriteLock = writeLocks.putIfAbsent(path, newWriteLock);
+            this.writeLock = existingWriteLock == null ? newWriteLock : existingWriteLock;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+
+            writeLock.lock();
+            try {
+                final FileLock fileLock = channel.lock();
+                try {
+                    if (channel.size() < FILE_HEADER_BYTES) {
+                        // a new file: the slots start out zeroed, which is empty
+                        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+                        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, newSlotCount).putInt(12, newSlotSize);
+                        channel.write(header, 0);
+                        channel.write(ByteBuffer.allocate(1), FILE_HEADER_BYTES + (long) newSlotCount * newSlotSize - 1);
+                    }
+
+                    final ByteBuffer header = ByteBuffer.allocate(16);
+                    channel.read(header, 0);
+                    if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                        throw new IOException(file + " isn't a shared cache file of this version");
+                    }
+
+                    this.slotCount = header.getInt(8);
+                    this.slotSize = header.getInt(12);
+
+                    if (slotCount <= 0 || slotSize <= SLOT_HEADER_BYTES
+                                || (long) slotCount * slotSize > MAX_SLOT_BYTES) {
+                        throw new IOException(file + " has " + slotCount + " slots of " + slotSize
+                                    + " bytes, which can't be mapped");
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            } catch (IOException exception) {
+                channel.close();
+                throw exception;
+            } finally {
+                writeLock.unlock();
+            }
+
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_BYTES + (long) slotCount
+                        * slotSize);
+        }
+
+        /**
+         * @return the key's slot, or null if it isn't there (or has expired)
+         */
+        private Slot get(long cacheIdHash, long keyHash, byte[] keyBytes) {
+            final int firstSlot = firstSlot(cacheIdHash, keyHash);
+
+            for (int probe = 0; probe < PROBES; probe++) {
+                final int offset = offset((firstSlot + probe) % slotCount);
+
+                for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+                    final int sequence = buffer.getInt(offset + SEQUENCE);
+
+                    if ((sequence & 1) != 0) {
+                        // being written
+                        Thread.yield();
+                        continue;
+                    }
+
+                    final Slot slot = read(offset);
+
+                    if (buffer.getInt(offset + SEQUENCE) != sequence || (slot != null && !slot.isIntact())) {
+                        // changed while we read it
+                        continue;
+                    }
+
+                    if (slot != null && slot.isFor(cacheIdHash, keyHash, keyBytes)) {
+                        return slot.expiresAtMillis > System.currentTimeMillis() ? slot : null;
+                    }
+
+                    break;
+                }
+            }
+
+            return null;
+        }
+
+        private void put(long cacheIdHash, long keyHash, byte[] keyBytes, byte[] valueBytes, long expiresAtMillis)
+                    throws IOException {
+            final int firstSlot = firstSlot(cacheIdHash, keyHash);
+
+            writeLock.lock();
+            try {
+                final FileLock fileLock = lockProbedSlots(firstSlot);
+                try {
+                    final int offset = offset(chooseSlot(firstSlot, cacheIdHash, keyHash, keyBytes));
+                    final int sequence = startWriting(offset);
+                    final ByteBuffer slot = slotBuffer(offset);
+
+                    slot.putLong(CACHE_ID_HASH, cacheIdHash);
+                    slot.putLong(KEY_HASH, keyHash);
+                    slot.putLong(EXPIRES_AT_MILLIS, expiresAtMillis);
+                    slot.putInt(KEY_LENGTH, keyBytes.length);
+                    slot.putInt(VALUE_LENGTH, valueBytes.length);
+                    slot.putInt(CHECKSUM, checksum(keyBytes, valueBytes));
+                    slot.position(SLOT_HEADER_BYTES);
+                    slot.put(keyBytes);
+                    slot.put(valueBytes);
+
+                    buffer.putInt(offset + SEQUENCE, sequence + 2);
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void remove(long cacheIdHash, long keyHash, byte[] keyBytes) throws IOException {
+            final int firstSlot = firstSlot(cacheIdHash, keyHash);
+
+            writeLock.lock();
+            try {
+                final FileLock fileLock = lockProbedSlots(firstSlot);
+                try {
+                    for (int probe = 0; probe < PROBES; probe++) {
+                        final int offset = offset((firstSlot + probe) % slotCount);
+                        final Slot slot = read(offset);
+
+                        if (slot != null && slot.isFor(cacheIdHash, keyHash, keyBytes)) {
+                            empty(offset);
+                        }
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void removeAll(long cacheIdHash) throws IOException {
+            writeLock.lock();
+            try {
+                final FileLock fileLock = channel.lock();
+                try {
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        final int offset = offset(slot);
+
+                        if (buffer.getInt(offset + KEY_LENGTH) != 0
+                                    && buffer.getLong(offset + CACHE_ID_HASH) == cacheIdHash) {
+                            empty(offset);
+                        }
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        /**
+         * the key's own slot, or else an empty or expired one, or else the one expiring soonest
+         */
+        private int chooseSlot(int firstSlot, long cacheIdHash, long keyHash, byte[] keyBytes) {
+            final long now = System.currentTimeMillis();
+            int chosen = -1;
+            long chosenExpiresAt = Long.MAX_VALUE;
+
+            for (int probe = 0; probe < PROBES; probe++) {
+                final int slotIndex = (firstSlot + probe) % slotCount;
+                final Slot slot = read(offset(slotIndex));
+
+                if (slot != null && slot.isFor(cacheIdHash, keyHash, keyBytes)) {
+                    return slotIndex;
+                }
+
+                final long expiresAt = slot == null || slot.expiresAtMillis <= now ? Long.MIN_VALUE
+                            : slot.expiresAtMillis;
+                if (chosen < 0 || expiresAt < chosenExpiresAt) {
+                    chosen = slotIndex;
+                    chosenExpiresAt = expiresAt;
+                }
+            }
+
+            return chosen;
+        }
+
+        /**
+         * @return null if the slot is empty (or was left half written)
+         */
+        private Slot read(int offset) {
+            final int keyLength = buffer.getInt(offset + KEY_LENGTH);
+            final int valueLength = buffer.getInt(offset + VALUE_LENGTH);
+
+            if (keyLength <= 0 || valueLength < 0 || SLOT_HEADER_BYTES + keyLength + valueLength > slotSize) {
+                return null;
+            }
+
+            final ByteBuffer slot = slotBuffer(offset);
+            final byte[] keyBytes = new byte[keyLength];
+            final byte[] valueBytes = new byte[valueLength];
+            slot.position(SLOT_HEADER_BYTES);
+            slot.get(keyBytes);
+            slot.get(valueBytes);
+
+            return new Slot(slot.getLong(CACHE_ID_HASH), slot.getLong(KEY_HASH), slot.getLong(EXPIRES_AT_MILLIS),
+                        slot.getInt(CHECKSUM), keyBytes, valueBytes);
+        }
+
+        private void empty(int offset) {
+            final int sequence = startWriting(offset);
+            buffer.putInt(offset + KEY_LENGTH, 0);
+            buffer.putInt(offset + SEQUENCE, sequence + 2);
+        }
+
+        /**
+         * makes the sequence number odd
+         * 
+         * @return the even sequence number before the write
+         */
+        private int startWriting(int offset) {
+            int sequence = buffer.getInt(offset + SEQUENCE);
+
+            if ((sequence & 1) != 0) {
+                // a process died while writing; we hold the lock, so nobody else is
+                sequence++;
+            }
+
+            buffer.putInt(offset + SEQUENCE, sequence + 1);
+            return sequence;
+        }
+
+        private FileLock lockProbedSlots(int firstSlot) throws IOException {
+            if (firstSlot + PROBES <= slotCount) {
+                return channel.lock(offset(firstSlot), (long) PROBES * slotSize, false);
+            }
+
+            // the slots wrap around the end of the file
+            return channel.lock();
+        }
+
+        private ByteBuffer slotBuffer(int offset) {
+            final ByteBuffer slot = buffer.duplicate();
+            slot.position(offset);
+            slot.limit(offset + slotSize);
+            return slot.slice();
+        }
+
+        private int firstSlot(long cacheIdHash, long keyHash) {
+            return (int) ((mix(cacheIdHash * 31 + keyHash) & Long.MAX_VALUE) % slotCount);
+        }
+
+        /**
+         * slotCount * slotSize is checked to fit, so the long never overflows an int
+         */
+        private int offset(int slot) {
+            return (int) (FILE_HEADER_BYTES + (long) slot * slotSize);
+        }
+    }
+
+    /**
+     * a slot as it was read
+     */
+    private static class Slot {
+        private final long cacheIdHash;
+        private final long keyHash;
+        private final long expiresAtMillis;
+        private final int checksum;
+        private final byte[] keyBytes;
+        private final byte[] valueBytes;
+
+        private Slot(long cacheIdHash, long keyHash, long expiresAtMillis, int checksum, byte[] keyBytes,
+                    byte[] valueBytes) {
+            this.cacheIdHash = cacheIdHash;
+            this.keyHash = keyHash;
+            this.expiresAtMillis = expiresAtMillis;
+            this.checksum = checksum;
+            this.keyBytes = keyBytes;
+            this.valueBytes = valueBytes;
+        }
+
+        private boolean isFor(long otherCacheIdHash, long otherKeyHash, byte[] otherKeyBytes) {
+            return cacheIdHash == otherCacheIdHash && keyHash == otherKeyHash && Arrays.equals(keyBytes, otherKeyBytes);
+        }
+
+        private boolean isIntact() {
+            return checksum == checksum(keyBytes, valueBytes);
+        }
+    }
+}
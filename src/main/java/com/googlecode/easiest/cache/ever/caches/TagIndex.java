@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.ehcache.Element;
+
+/**
+ * Reverse index from tag to the entries tagged with it, for
+ * {@link DefaultCacheService}. Finding the entries for a tag costs
+ * as much as the number of entries found, no matter how big the caches are.
+ * 
+ * Entries are taken out of the index when they leave their cache (the
+ * cache tells {@link #removed(String, Element)} about evictions, expiry
+ * and removals), so the index never holds more than the caches do.
+ * The tags of an entry are remembered with the {@link Element} they
+ * were added with, so news about an element which has since been
+ * replaced doesn't untag its replacement.
+ * 
+ * @author Brad Cupit
+ */
+class TagIndex {
+    private final ConcurrentMap<String, ConcurrentMap<TaggedKey, Boolean>> keysByTag = new ConcurrentHashMap<String, ConcurrentMap<TaggedKey, Boolean>>();
+    private final ConcurrentMap<TaggedKey, TaggedElement> tagsByKey = new ConcurrentHashMap<TaggedKey, TaggedElement>();
+
+    /**
+     * tags the element, replacing the tags of whatever element the key had before
+     */
+    void add(String cacheId, Element element, Collection<String> tags) {
+        final TaggedKey taggedKey = new TaggedKey(cacheId, element.getObjectKey());
+        final TaggedElement previous = tagsByKey.put(taggedKey, new TaggedElement(element, tags));
+
+        if (previous != null) {
+            for (String tag : previous.tags) {
+                if (!tags.contains(tag)) {
+                    untag(tag, taggedKey);
+                }
+            }
+        }
+
+        for (String tag : tags) {
+            tag(tag, taggedKey);
+        }
+    }
+
+    /**
+     * untags the element, if it's still the one the tags were added with
+     */
+    void removed(String cacheId, Element element) {
+        final TaggedKey taggedKey = new TaggedKey(cacheId, element.getObjectKey());
+        final TaggedElement taggedElement = tagsByKey.get(taggedKey);
+
+        if (taggedElement != null && taggedElement.element == element && tagsByKey.remove(taggedKey, taggedElement)) {
+            for (String tag : taggedElement.tags) {
+                untag(tag, taggedKey);
+            }
+        }
+    }
+
+    /**
+     * untags the key if the element replaced a different, tagged element
+     */
+    void replaced(String cacheId, Element element) {
+        final TaggedKey taggedKey = new TaggedKey(cacheId, element.getObjectKey());
+        final TaggedElement taggedElement = tagsByKey.get(taggedKey);
+
+        if (taggedElement != null && taggedElement.element != element && tagsByKey.remove(taggedKey, taggedElement)) {
+            for (String tag : taggedElement.tags) {
+                untag(tag, taggedKey);
+            }
+        }
+    }
+
+    /**
+     * untags every element of the cache
+     */
+    void removedAll(String cacheId) {
+        for (TaggedKey taggedKey : tagsByKey.keySet()) {
+            if (taggedKey.cacheId.equals(cacheId)) {
+                final TaggedElement taggedElement = tagsByKey.remove(taggedKey);
+
+                if (taggedElement != null) {
+                    for (String tag : taggedElement.tags) {
+                        untag(tag, taggedKey);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the entries tagged with the tag, as pairs of cache id and (Ehcache) key
+     */
+    List<TaggedKey> keysFor(String tag) {
+        final ConcurrentMap<TaggedKey, Boolean> taggedKeys = keysByTag.get(tag);
+
+        if (taggedKeys == null) {
+            return new ArrayList<TaggedKey>();
+        }
+
+        return new ArrayList<TaggedKey>(taggedKeys.keySet());
+    }
+
+    int size() {
+        return tagsByKey.size();
+    }
+
+    private void tag(String tag, TaggedKey taggedKey) {
+        while (true) {
+            ConcurrentMap<TaggedKey, Boolean> taggedKeys = keysByTag.get(tag);
+
+            if (taggedKeys == null) {
+                final ConcurrentMap<TaggedKey, Boolean> newTaggedKeys = new ConcurrentHashMap<TaggedKey, Boolean>();
+                taggedKeys = keysByTag.putIfAbsent(tag, newTaggedKeys);
+
+                if (taggedKeys == null) {
+                    taggedKeys = newTaggedKeys;
+                }
+            }
+
+            taggedKeys.put(taggedKey, Boolean.TRUE);
+
+            // if the set was emptied and dropped in the meantime, add to its replacement
+            if (keysByTag.get(tag) == taggedKeys) {
+                return;
+            }
+        }
+    }
+
+    private void untag(String tag, TaggedKey taggedKey) {
+        final ConcurrentMap<TaggedKey, Boolean> taggedKeys = keysByTag.get(tag);
+
+        if (taggedKeys != null) {
+            taggedKeys.remove(taggedKey);
+
+            if (taggedKeys.isEmpty() && keysByTag.remove(tag, taggedKeys)) {
+                // a key may have been tagged between the check and the removal
+                for (TaggedKey lateKey : taggedKeys.keySet()) {
+                    tag(tag, lateKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * a key in a cache
+     */
+    static class TaggedKey {
+        final String cacheId;
+        final Object key;
+
+        private TaggedKey(String cacheId, Object key) {
+            this.cacheId = cacheId;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof TaggedKey)) {
+                return false;
+            }
+
+            TaggedKey other = (TaggedKey) object;
+            return cacheId.equals(other.cacheId) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return cacheId.hashCode() * 31 + key.hashCode();
+        }
+    }
+
+    private static class TaggedElement {
+        private final Element element;
+        private final Collection<String> tags;
+
+        private TaggedElement(Element element, Collection<String> tags) {
+            this.element = element;
+            this.tags = tags;
+        }
+    }
+}
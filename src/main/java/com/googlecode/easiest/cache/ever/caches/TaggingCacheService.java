@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.Collection;
+
+/**
+ * A {@link CacheService} whose entries can be tagged, so every entry with
+ * a tag can be removed at once, whichever cache it's in.
+ * 
+ * @author Brad Cupit
+ */
+public interface TaggingCacheService extends ExpiringCacheService, EvictingCacheService {
+    /**
+     * Same as {@link #add(String, String, Object, long, int)}, and tags the entry
+     * with each of the tags. The entry loses its tags when it leaves the cache.
+     */
+    void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds, Collection<String> tags);
+
+    /**
+     * Removes every entry tagged with the tag, from every cache.
+     */
+    void removeTagged(String tag);
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+
+/**
+ * {@link CacheService} made of a chain of other {@link CacheService}s, fastest
+ * first. For example: a small {@link DefaultCacheService} holding live objects,
+ * then a bigger {@link SharedMemoryCacheService} holding serialized values
+ * off the heap (and, since it's a mapped file, on disk).
+ * 
+ * Values are always added to the first tier. When a tier which is an
+ * {@link EvictionNotifyingCacheService} evicts a value to make room, the value
+ * moves down to the next tier, keeping what was left of its time to live.
+ * Evicted values are queued and moved once the put which evicted them
+ * returns, so a slow tier below (one which locks a file, say) never runs
+ * inside the tier above's put. A value found in a lower tier moves back up
+ * to the first tier, also keeping what was left of its time to live.
+ * If the first tier can't say what it evicts, values found lower down are
+ * copied up rather than moved, and the tiers overlap.
+ * 
+ * Moving a value between tiers never undoes an add or remove of the same
+ * key which happened in the meantime: the move is dropped instead.
+ * 
+ * The maximum size configured for a cache is the first tier's size; each
+ * tier below is {@link #setGrowthFactor(int)} times bigger than the one above.
+ * 
+ * Tiers must not share storage: two {@link DefaultCacheService}s need
+ * their own Ehcache CacheManager.
+ * 
+ * @author Brad Cupit
+ */
+public class TieredCacheService implements ExpiringCacheService, EvictingCacheService {
+    private static final int STRIPES = 256;
+
+    // one lock per group of keys, held while a key moves or changes
+    private final Lock[] stripeLocks = new Lock[STRIPES];
+    // bumped whenever a key in the stripe changes, so a move can tell
+    // the value it's holding has gone stale
+    private final AtomicLongArray stripeVersions = new AtomicLongArray(STRIPES);
+    private final Queue<Demotion> demotions = new ConcurrentLinkedQueue<Demotion>();
+    private List<EvictingCacheService> tiers = Collections.emptyList();
+    private List<TierStatistics> statistics = Collections.emptyList();
+    private int growthFactor = 8;
+    private final AtomicLong misses = new AtomicLong();
+
+    public TieredCacheService() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * the tiers, fastest first. Tiers which are {@link EvictionNotifyingCacheService}s
+     * are given the listener which moves their evicted values down a tier, so set the
+     * tiers before any caches are created.
+     */
+    public void setTiers(List<? extends EvictingCacheService> tiers) {
+        final List<EvictingCacheService> newTiers = new ArrayList<EvictingCacheService>(tiers);
+        final List<TierStatistics> newStatistics = new ArrayList<TierStatistics>(newTiers.size());
+
+        for (int i = 0; i < newTiers.size(); i++) {
+            newStatistics.add(new TierStatistics(i));
+
+            if (i + 1 < newTiers.size() && newTiers.get(i) instanceof EvictionNotifyingCacheService) {
+                ((EvictionNotifyingCacheService) newTiers.get(i)).setEvictionListener(new Demoter(i + 1));
+            }
+        }
+
+        this.tiers = newTiers;
+        this.statistics = Collections.unmodifiableList(newStatistics);
+    }
+
+    /**
+     * how many times bigger each tier is than the one above it. Defaults to 8.
+     */
+    public void setGrowthFactor(int growthFactor) {
+        this.growthFactor = growthFactor;
+    }
+
+    /**
+     * hits, promotions and demotions of each tier, fastest first
+     */
+    public List<TierStatistics> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * lookups which weren't found in any tier
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void createCacheIfNecessary(String cacheId, CacheConfig cacheConfig) {
+        long maxSize = cacheConfig.getMaxSize();
+
+        for (CacheService tier : tiers) {
+            tier.createCacheIfNecessary(cacheId, new CacheConfig((int) maxSize, cacheConfig.getExpirationTime(),
+                        cacheConfig.getUnit(), cacheConfig.getNearCacheMaxSize(), cacheConfig
+                                    .getNearCacheExpirationMillis(), cacheConfig.getCompressAboveBytes(), cacheConfig
+                                    .isUnmodifiableCollections()));
+
+            maxSize = Math.min(Integer.MAX_VALUE, maxSize * growthFactor);
+        }
+    }
+
+    public void add(String cacheId, String key, Object value) {
+        add(cacheId, key, value, 0);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos) {
+        add(cacheId, key, value, loadNanos, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        final int stripe = stripe(cacheId, key);
+        stripeLocks[stripe].lock();
+        try {
+            add(tiers.get(0), cacheId, key, value, loadNanos, timeToLiveSeconds);
+
+            // a stale copy lower down would come back once the new value is evicted
+            for (int i = 1; i < tiers.size(); i++) {
+                tiers.get(i).remove(cacheId, key);
+            }
+        } finally {
+            stripeVersions.incrementAndGet(stripe);
+            stripeLocks[stripe].unlock();
+        }
+
+        demote();
+    }
+
+    /**
+     * A value found below the first tier is promoted to the first tier with
+     * what's left of its time to live, or the cache's own expiration time
+     * if the lower tier can't say.
+     */
+    public CachedValue retrieve(String cacheId, String key) {
+        final int stripe = stripe(cacheId, key);
+        long version = 0;
+
+        for (int i = 0; i < tiers.size(); i++) {
+            if (i == 1) {
+                // before reading lower down, so any change from here on stops the promotion
+                version = stripeVersions.get(stripe);
+            }
+
+            final CachedValue cachedValue = tiers.get(i).retrieve(cacheId, key);
+
+            if (cachedValue != null && cachedValue.wasFound()) {
+                statistics.get(i).hits.incrementAndGet();
+
+                if (i > 0) {
+                    promote(i, stripe, version, cacheId, key, cachedValue);
+                }
+
+                return cachedValue;
+            }
+        }
+
+        misses.incrementAndGet();
+        return CachedValue.notFound();
+    }
+
+    public void remove(String cacheId, String key) {
+        final int stripe = stripe(cacheId, key);
+        stripeLocks[stripe].lock();
+        try {
+            for (EvictingCacheService tier : tiers) {
+                tier.remove(cacheId, key);
+            }
+        } finally {
+            stripeVersions.incrementAndGet(stripe);
+            stripeLocks[stripe].unlock();
+        }
+    }
+
+    public void removeAll(String cacheId) {
+        lockAllStripes();
+        try {
+            for (EvictingCacheService tier : tiers) {
+                tier.removeAll(cacheId);
+            }
+        } finally {
+            unlockAllStripes();
+        }
+    }
+
+    /**
+     * @param version the stripe's version from before the value was read
+     */
+    private void promote(int tier, int stripe, long version, String cacheId, String key, CachedValue cachedValue) {
+        final int timeToLiveSeconds = cachedValue.timeToLiveSeconds();
+
+        if (timeToLiveSeconds == 0) {
+            // expires within the second, not worth moving
+            return;
+        }
+
+        final boolean moved = tiers.get(0) instanceof EvictionNotifyingCacheService;
+        boolean promoted = false;
+
+        stripeLocks[stripe].lock();
+        try {
+            // added or removed since it was read, so the value is stale
+            if (stripeVersions.get(stripe) == version) {
+                // remove first, or the value could be evicted from the first tier
+                // straight back down and then removed
+                if (moved) {
+                    tiers.get(tier).remove(cacheId, key);
+                }
+
+                add(tiers.get(0), cacheId, key, cachedValue.value(), 0, timeToLiveSeconds);
+                stripeVersions.incrementAndGet(stripe);
+                promoted = true;
+            }
+        } finally {
+            stripeLocks[stripe].unlock();
+        }
+
+        if (promoted) {
+            statistics.get(tier).promotions.incrementAndGet();
+            demote();
+        }
+    }
+
+    /**
+     * moves queued evictions down a tier. A demotion whose key changed since
+     * it was evicted is dropped; that includes other keys in the same stripe,
+     * which only costs a miss.
+     */
+    private void demote() {
+        Demotion demotion;
+
+        while ((demotion = demotions.poll()) != null) {
+            final int stripe = stripe(demotion.cacheId, demotion.key);
+
+            stripeLocks[stripe].lock();
+            try {
+                if (stripeVersions.get(stripe) == demotion.version) {
+                    add(tiers.get(demotion.tier), demotion.cacheId, demotion.key, demotion.value, 0,
+                                demotion.timeToLiveSeconds);
+                    statistics.get(demotion.tier).demotions.incrementAndGet();
+                }
+            } finally {
+                stripeLocks[stripe].unlock();
+            }
+        }
+    }
+
+    private int stripe(String cacheId, String key) {
+        int hash = cacheId.hashCode() * 31 + (key == null ? 0 : key.hashCode());
+        hash ^= hash >>> 16;
+        return hash & (STRIPES - 1);
+    }
+
+    private void lockAllStripes() {
+        for (Lock stripeLock : stripeLocks) {
+            stripeLock.lock();
+        }
+    }
+
+    private void unlockAllStripes() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripeVersions.incrementAndGet(i);
+            stripeLocks[i].unlock();
+        }
+    }
+
+    private void add(CacheService tier, String cacheId, String key, Object value, long loadNanos,
+                int timeToLiveSeconds) {
+        if (tier instanceof ExpiringCacheService) {
+            ((ExpiringCacheService) tier).add(cacheId, key, value, loadNanos, timeToLiveSeconds);
+        } else if (tier instanceof CostAwareCacheService) {
+            ((CostAwareCacheService) tier).add(cacheId, key, value, loadNanos);
+        } else {
+            tier.add(cacheId, key, value);
+        }
+    }
+
+    /**
+     * queues values evicted from one tier to move down to the given tier.
+     * It's called inside the evicting put (Ehcache's is synchronized),
+     * so it mustn't touch the tier below itself.
+     */
+    private class Demoter implements EvictionListener {
+        private final int tier;
+
+        private Demoter(int tier) {
+            this.tier = tier;
+        }
+
+        public void evicted(String cacheId, String key, Object value, int timeToLiveSeconds) {
+            demotions.offer(new Demotion(tier, cacheId, key, value, timeToLiveSeconds, stripeVersions.get(stripe(
+                        cacheId, key))));
+        }
+    }
+
+    /**
+     * an evicted value waiting to move down a tier
+     */
+    private static class Demotion {
+        private final int tier;
+        private final String cacheId;
+        private final String key;
+        private final Object value;
+        private final int timeToLiveSeconds;
+        private final long version;
+
+        private Demotion(int tier, String cacheId, String key, Object value, int timeToLiveSeconds, long version) {
+            this.tier = tier;
+            this.cacheId = cacheId;
+            this.key = key;
+            this.value = value;
+            this.timeToLiveSeconds = timeToLiveSeconds;
+            this.version = version;
+        }
+    }
+
+    /**
+     * counts for one tier. Promotions are values found in this tier and moved
+     * (or copied) up to the first tier, demotions are values evicted from the
+     * tier above and moved down to this one.
+     */
+    public static class TierStatistics {
+        private final int tier;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong promotions = new AtomicLong();
+        private final AtomicLong demotions = new AtomicLong();
+
+        TierStatistics(int tier) {
+            this.tier = tier;
+        }
+
+        /**
+         * where the tier is in the chain, 0 being the fastest
+         */
+        public int getTier() {
+            return tier;
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getPromotions() {
+            return promotions.get();
+        }
+
+        public long getDemotions() {
+            return demotions.get();
+        }
+
+        @Override
+        public String toString() {
+            return "tier " + tier + ": " + hits + " hits, " + promotions + " promotions, " + demotions
+                        + " demotions";
+        }
+    }
+}
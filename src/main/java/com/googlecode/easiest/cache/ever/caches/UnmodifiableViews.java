@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * Unmodifiable views of cached Lists, Sets and Maps, which every caller
+ * can share instead of getting a copy of their own.
+ * 
+ * @author Brad Cupit
+ */
+final class UnmodifiableViews {
+    private UnmodifiableViews() {
+    }
+
+    static boolean canView(Object value) {
+        return value instanceof List<?> || value instanceof Set<?> || value instanceof Map<?, ?>;
+    }
+
+    /**
+     * @param copy a List, Set or Map nobody else has, so the view can't change underneath
+     */
+    @SuppressWarnings("unchecked")
+    static Object of(Object copy) {
+        if (copy instanceof List<?>) {
+            // copying also drops the list's unused capacity
+            return Collections.unmodifiableList(new ArrayList<Object>((List<Object>) copy));
+        } else if (copy instanceof SortedSet<?>) {
+            return Collections.unmodifiableSortedSet((SortedSet<Object>) copy);
+        } else if (copy instanceof Set<?>) {
+            return Collections.unmodifiableSet((Set<Object>) copy);
+        } else if (copy instanceof SortedMap<?, ?>) {
+            return Collections.unmodifiableSortedMap((SortedMap<Object, Object>) copy);
+        } else {
+            return Collections.unmodifiableMap((Map<Object, Object>) copy);
+        }
+    }
+}
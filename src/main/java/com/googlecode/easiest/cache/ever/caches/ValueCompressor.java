@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps one cache's big values serialized and compressed. Compression is
+ * Deflate at its fastest level, which still shrinks lists of similar
+ * objects several times over.
+ * 
+ * Java serialization writes every class's description into every value,
+ * so small and medium values are mostly boilerplate. If dictionaries are
+ * enabled, the first few values compressed are used to train a preset
+ * dictionary, which all later values of the cache are compressed against.
+ * 
+ * @author Brad Cupit
+ */
+class ValueCompressor {
+    /** Deflate only looks this far back, so a bigger dictionary is wasted */
+    private static final int MAX_DICTIONARY_BYTES = 32 * 1024;
+    private static final int DICTIONARY_SAMPLES = 8;
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final int thresholdBytes;
+    private final boolean trainDictionary;
+    private final List<byte[]> samples = new ArrayList<byte[]>();
+    private final Lock samplesLock = new ReentrantLock();
+    private volatile byte[] dictionary;
+
+    ValueCompressor(int thresholdBytes, boolean trainDictionary) {
+        this.thresholdBytes = thresholdBytes;
+        this.trainDictionary = trainDictionary;
+    }
+
+    /**
+     * @return null if the value serializes to fewer than the threshold's bytes,
+     *         or can't be serialized, and should be kept as it is
+     */
+    Compressed compress(Object value) {
+        if (value instanceof CachedException) {
+            return null;
+        }
+
+        // the threshold is about what would be stored, so measure exactly that
+        final byte[] serialized = Serialization.serialize(value);
+
+        if (serialized == null || serialized.length < thresholdBytes) {
+            return null;
+        }
+
+        byte[] currentDictionary = dictionary;
+        if (currentDictionary == null && trainDictionary) {
+            currentDictionary = sample(serialized);
+        }
+
+        return new Compressed(deflate(serialized, currentDictionary), serialized.length, currentDictionary);
+    }
+
+    /**
+     * @return a new copy of the value
+     */
+    static Object decompress(Compressed compressed) throws IOException {
+        return Serialization.deserialize(inflate(compressed));
+    }
+
+    /**
+     * @return the dictionary, once enough samples have been seen
+     */
+    private byte[] sample(byte[] serialized) {
+        samplesLock.lock();
+        try {
+            if (dictionary != null) {
+                return dictionary;
+            }
+
+            samples.add(serialized);
+
+            if (samples.size() < DICTIONARY_SAMPLES) {
+                return null;
+            }
+
+            final ByteArrayOutputStream allSamples = new ByteArrayOutputStream();
+            for (byte[] sample : samples) {
+                allSamples.write(sample, 0, sample.length);
+            }
+            samples.clear();
+
+            // Deflate finds matches at the end of the dictionary most cheaply, so keep the end
+            final byte[] sampleBytes = allSamples.toByteArray();
+            final int length = Math.min(MAX_DICTIONARY_BYTES, sampleBytes.length);
+            final byte[] newDictionary = new byte[length];
+            System.arraycopy(sampleBytes, sampleBytes.length - length, newDictionary, 0, length);
+
+            dictionary = newDictionary;
+            return newDictionary;
+        } finally {
+            samplesLock.unlock();
+        }
+    }
+
+    private static byte[] deflate(byte[] bytes, byte[] dictionary) {
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            out.write(buffer, 0, length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(Compressed compressed) throws IOException {
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(compressed.data);
+
+        final byte[] bytes = new byte[compressed.length];
+        int offset = 0;
+
+        try {
+            while (offset < bytes.length) {
+                int length = inflater.inflate(bytes, offset, bytes.length - offset);
+
+                if (length == 0) {
+                    if (inflater.needsDictionary() && compressed.dictionary != null) {
+                        inflater.setDictionary(compressed.dictionary);
+                    } else if (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new IOException("compressed value is truncated");
+                    }
+                }
+
+                offset += length;
+            }
+        } catch (DataFormatException exception) {
+            IOException ioException = new IOException("compressed value is corrupt");
+            ioException.initCause(exception);
+            throw ioException;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * a value as it's kept in the cache. Holds on to the dictionary it was
+     * compressed with, which is shared by every value of the cache.
+     */
+    static final class Compressed {
+        private final byte[] data;
+        private final int length;
+        private final byte[] dictionary;
+
+        private Compressed(byte[] data, int length, byte[] dictionary) {
+            this.data = data;
+            this.length = length;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * compressed size in bytes
+         */
+        int size() {
+            return data.length;
+        }
+    }
+}
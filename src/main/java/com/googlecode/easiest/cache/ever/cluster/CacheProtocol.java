@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary protocol between {@link PartitionedCacheService} and {@link CacheServer}.
+ * Every frame is an int length followed by the body, so many requests can be
+ * in flight on one connection; responses carry the id of their request.
+ * Frames are at most {@link #MAX_FRAME_BYTES}, so a bad length can't make
+ * the reader allocate more than that.
+ * 
+ * <pre>
+ * request:  int request id, byte operation, then
+ *   GET:               string cache id, string key
+ *   PUT:               string cache id, string key, int time to live seconds,
+ *                      int max size, int expiration time, string unit, bytes value
+ *   REMOVE:            string cache id, string key
+ *   REMOVE_ALL:        string cache id
+ *   REMOVE_KEY_HASHES: string cache id, int count, long key hashes
+ * response: int request id, byte status, then bytes value if FOUND
+ * 
+ * string:   int length in UTF-8 bytes (-1 for null), then the bytes
+ * bytes:    int length, then the bytes (values are Java serialized, see
+ *           {@link com.googlecode.easiest.cache.ever.caches.Serialization})
+ * </pre>
+ * 
+ * @author Brad Cupit
+ */
+final class CacheProtocol {
+    static final byte GET = 1;
+    static final byte PUT = 2;
+    static final byte REMOVE = 3;
+    static final byte REMOVE_ALL = 4;
+    static final byte REMOVE_KEY_HASHES = 5;
+
+    static final byte FOUND = 1;
+    static final byte NOT_FOUND = 2;
+    static final byte DONE = 3;
+    static final byte FAILED = 4;
+
+    /** bigger values are cached by the node which computed them */
+    static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    /** request id, status and value length */
+    static final int RESPONSE_HEADER_BYTES = 9;
+
+    private static final String UTF_8 = "UTF-8";
+
+    private CacheProtocol() {
+    }
+
+    /**
+     * starts a frame's body. Write the frame out with {@link #writeFrame(DataOutputStream, ByteArrayOutputStream)}
+     */
+    static DataOutputStream startFrame(ByteArrayOutputStream body, int requestId, byte operationOrStatus)
+                throws IOException {
+        final DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(requestId);
+        out.writeByte(operationOrStatus);
+        return out;
+    }
+
+    /**
+     * @throws IOException if the frame is too big. Nothing is written
+     */
+    static void writeFrame(DataOutputStream out, ByteArrayOutputStream body) throws IOException {
+        checkFrameLength(body.size());
+        out.writeInt(body.size());
+        body.writeTo(out);
+    }
+
+    static DataInputStream readFrame(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        checkFrameLength(length);
+
+        final byte[] body = new byte[length];
+        in.readFully(body);
+        return new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            writeBytes(out, string.getBytes(UTF_8));
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        // in is a frame's body, all in memory
+        if (length > in.available()) {
+            throw new IOException("length " + length + " runs past the end of the frame");
+        }
+
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static boolean fitsInFrame(int length) {
+        return length >= 0 && length <= MAX_FRAME_BYTES;
+    }
+
+    private static void checkFrameLength(int length) throws IOException {
+        if (!fitsInFrame(length)) {
+            throw new IOException("frame of " + length + " bytes, the most is " + MAX_FRAME_BYTES);
+        }
+    }
+}
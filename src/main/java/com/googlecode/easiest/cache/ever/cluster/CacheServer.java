@@ -0,0 +1,274 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.Time;
+import com.googlecode.easiest.cache.ever.caches.CacheService;
+import com.googlecode.easiest.cache.ever.caches.EvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.CachedValue;
+import com.googlecode.easiest.cache.ever.caches.ExpiringCacheService;
+import com.googlecode.easiest.cache.ever.caches.KeyHashEvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.Serialization;
+
+/**
+ * Serves this node's share of a {@link PartitionedCacheService}'s keys to
+ * the other nodes, from a local {@link CacheService} (normally the
+ * {@link com.googlecode.easiest.cache.ever.caches.DefaultCacheService}
+ * behind the {@link PartitionedCacheService}).
+ * 
+ * One thread per connection, and each peer keeps one connection open,
+ * so the number of threads is bounded by the size of the cluster.
+ * Values are Java serialized, and only the {@link #setAllowedClasses(Collection)
+ * allowed classes} are read from the network. Still, only run this on a
+ * trusted network: any peer may read and replace the values.
+ * 
+ * @author Brad Cupit
+ */
+public class CacheServer {
+    private static final Logger logger = Logger.getLogger(CacheServer.class.getName());
+
+    private final EvictingCacheService cacheService;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = new CopyOnWriteArraySet<Socket>();
+    private volatile Collection<String> allowedClasses = Collections.emptySet();
+    private volatile boolean closed;
+
+    /**
+     * listens on the host's own address ({@link InetAddress#getLocalHost()}),
+     * which is normally the one the other nodes know it by
+     */
+    public CacheServer(EvictingCacheService cacheService, int port) throws IOException {
+        this(cacheService, InetAddress.getLocalHost(), port);
+    }
+
+    /**
+     * @param bindAddress the interface to listen on. Pass the wildcard
+     *                    address (0.0.0.0) to listen on every interface
+     * @param port        the port to listen on, or 0 for any free port (see {@link #getPort()})
+     */
+    public CacheServer(EvictingCacheService cacheService, InetAddress bindAddress, int port) throws IOException {
+        if (bindAddress == null) {
+            throw new IllegalArgumentException("bindAddress is required");
+        }
+
+        this.cacheService = cacheService;
+        this.serverSocket = new ServerSocket(port, 50, bindAddress);
+
+        Thread acceptThread = new Thread("easiest-cache-ever cache server") {
+            @Override
+            public void run() {
+                acceptUntilClosed();
+            }
+        };
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * classes, or packages as "com.example.orders.*", of the values other nodes may
+     * store here, besides {@link Serialization#STANDARD_CLASSES}. Values of other
+     * classes aren't cached. Give every node's {@link PartitionedCacheService} the same list
+     */
+    public void setAllowedClasses(Collection<String> allowedClasses) {
+        this.allowedClasses = new HashSet<String>(allowedClasses);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void close() {
+        closed = true;
+
+        try {
+            serverSocket.close();
+        } catch (IOException exception) {
+            // closing anyway
+        }
+
+        for (Socket connection : new HashSet<Socket>(connections)) {
+            closeQuietly(connection);
+        }
+    }
+
+    private void acceptUntilClosed() {
+        while (!closed) {
+            final Socket connection;
+
+            try {
+                connection = serverSocket.accept();
+                connection.setTcpNoDelay(true);
+            } catch (IOException exception) {
+                if (!closed) {
+                    logger.log(Level.WARNING, "unable to accept connections, cache server stopped", exception);
+                }
+                return;
+            }
+
+            connections.add(connection);
+
+            Thread connectionThread = new Thread("easiest-cache-ever cache server connection") {
+                @Override
+                public void run() {
+                    serve(connection);
+                }
+            };
+            connectionThread.setDaemon(true);
+            connectionThread.start();
+        }
+    }
+
+    private void serve(Socket connection) {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            while (!closed) {
+                final ByteArrayOutputStream response = handle(CacheProtocol.readFrame(in));
+                CacheProtocol.writeFrame(out, response);
+
+                // only flush once every pipelined request read so far is answered
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException exception) {
+            // the peer hung up
+        } catch (IOException exception) {
+            if (!closed) {
+                logger.log(Level.FINE, "cache server connection closed", exception);
+            }
+        } finally {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    private ByteArrayOutputStream handle(DataInputStream request) throws IOException {
+        final int requestId = request.readInt();
+        final byte operation = request.readByte();
+        final String cacheId = CacheProtocol.readString(request);
+
+        try {
+            switch (operation) {
+            case CacheProtocol.GET:
+                return get(requestId, cacheId, CacheProtocol.readString(request));
+            case CacheProtocol.PUT:
+                put(cacheId, request);
+                break;
+            case CacheProtocol.REMOVE:
+                cacheService.remove(cacheId, CacheProtocol.readString(request));
+                break;
+            case CacheProtocol.REMOVE_ALL:
+                cacheService.removeAll(cacheId);
+                break;
+            case CacheProtocol.REMOVE_KEY_HASHES:
+                final Set<Long> keyHashes = new HashSet<Long>();
+                for (int count = request.readInt(); count > 0; count--) {
+                    keyHashes.add(request.readLong());
+                }
+                if (cacheService instanceof KeyHashEvictingCacheService) {
+                    ((KeyHashEvictingCacheService) cacheService).removeKeyHashes(cacheId, keyHashes);
+                } else {
+                    // only the hashes are known
+                    cacheService.removeAll(cacheId);
+                }
+                break;
+            default:
+                throw new IOException("unknown operation " + operation);
+            }
+        } catch (IOException exception) {
+            // a malformed request, or a value of an unknown class. The frame was
+            // read completely, so the connection can carry on
+            return failed(requestId, cacheId, exception);
+        } catch (RuntimeException exception) {
+            return failed(requestId, cacheId, exception);
+        }
+
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        CacheProtocol.startFrame(response, requestId, CacheProtocol.DONE);
+        return response;
+    }
+
+    private ByteArrayOutputStream failed(int requestId, String cacheId, Exception exception) throws IOException {
+        logger.log(Level.WARNING, "unable to serve request for " + cacheId, exception);
+
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        CacheProtocol.startFrame(response, requestId, CacheProtocol.FAILED);
+        return response;
+    }
+
+    private ByteArrayOutputStream get(int requestId, String cacheId, String key) throws IOException {
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        final CachedValue cachedValue = cacheService.retrieve(cacheId, key);
+        final byte[] value = cachedValue.wasFound() ? Serialization.serialize(cachedValue.value()) : null;
+
+        // a value too big to send is left for the caller to compute
+        if (value == null || !CacheProtocol.fitsInFrame(value.length + CacheProtocol.RESPONSE_HEADER_BYTES)) {
+            CacheProtocol.startFrame(response, requestId, CacheProtocol.NOT_FOUND);
+        } else {
+            CacheProtocol.writeBytes(CacheProtocol.startFrame(response, requestId, CacheProtocol.FOUND), value);
+        }
+
+        return response;
+    }
+
+    private void put(String cacheId, DataInputStream request) throws IOException {
+        final String key = CacheProtocol.readString(request);
+        final int timeToLiveSeconds = request.readInt();
+        final int maxSize = request.readInt();
+        final int expirationTime = request.readInt();
+        final String unit = CacheProtocol.readString(request);
+        final Object value = Serialization.deserialize(CacheProtocol.readBytes(request), allowedClasses);
+
+        cacheService.createCacheIfNecessary(cacheId, new CacheConfig(maxSize, expirationTime, unit == null ? null
+                    : Time.valueOf(unit)));
+
+        if (timeToLiveSeconds != CacheConstants.UNSET_EXPIRATION_TIME && cacheService instanceof ExpiringCacheService) {
+            ((ExpiringCacheService) cacheService).add(cacheId, key, value, 0, timeToLiveSeconds);
+        } else {
+            cacheService.add(cacheId, key, value);
+        }
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException exception) {
+            // closing anyway
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.googlecode.easiest.cache.ever.caches.KeyHashes;
+
+/**
+ * Assigns keys to nodes by consistent hashing: each node is placed on a ring
+ * of hashes at many points (virtual nodes), and a key belongs to the first node
+ * at or after the key's hash. Adding or removing a node only moves the keys
+ * next to its points, and the virtual nodes spread keys evenly.
+ * 
+ * Every node must be given the same node names, so they all agree on who owns a key.
+ * 
+ * @author Brad Cupit
+ */
+public class ConsistentHashRing {
+    private final TreeMap<Long, String> ring = new TreeMap<Long, String>();
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("the ring needs at least one node");
+        }
+
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(mix(KeyHashes.hash(node + "#" + i)), node);
+            }
+        }
+    }
+
+    /**
+     * the node which owns the cache's key
+     */
+    public String nodeFor(String cacheId, String key) {
+        final SortedMap<Long, String> following = ring.tailMap(mix(KeyHashes.hash(cacheId) * 31 + KeyHashes.hash(key)));
+        return following.isEmpty() ? ring.get(ring.firstKey()) : following.get(following.firstKey());
+    }
+
+    /**
+     * spreads the bits of a hash over the whole ring (MurmurHash3's finalizer)
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.easiest.cache.ever.caches.CacheService;
+import com.googlecode.easiest.cache.ever.caches.KeyHashEvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.KeyHashes;
+
+/**
+ * Tells the other nodes of a cluster, each with its own {@link CacheService},
+ * when a cached value changes, so they drop their copy instead of serving it
+ * until it expires. Set on the {@link com.googlecode.easiest.cache.ever.CacheAspect},
+ * which publishes the changes made by {@link com.googlecode.easiest.cache.ever.EvictCache @EvictCache}
+ * and {@link com.googlecode.easiest.cache.ever.UpdateCache @UpdateCache} methods.
+ * 
+ * Keys are sent as 64 bit hashes (see {@link KeyHashes}), which keeps messages
+ * small; a rare collision only removes an extra value. Invalidations are
+ * coalesced and sent in batches every {@link #setFlushMillis(int) flushMillis},
+ * and received invalidations are batched the same way before they're applied.
+ * Both queues are bounded (see {@link PendingInvalidations}).
+ * 
+ * Namespaces and tags are only invalidated locally.
+ * 
+ * @author Brad Cupit
+ */
+public class InvalidationBus {
+    private static final Logger logger = Logger.getLogger(InvalidationBus.class.getName());
+    private static final int DEFAULT_MAX_PENDING_KEYS = 10000;
+
+    private final InvalidationTransport transport;
+    private final KeyHashEvictingCacheService cacheService;
+    private final long senderId = new SecureRandom().nextLong();
+    private final PendingInvalidations outgoing;
+    private final PendingInvalidations incoming;
+    private final Thread flusherThread;
+    /** one flush at a time, so batches are sent and applied in order */
+    private final Lock flushLock = new ReentrantLock();
+    private volatile int flushMillis = 50;
+    private volatile boolean closed;
+
+    public InvalidationBus(InvalidationTransport transport, KeyHashEvictingCacheService cacheService)
+                throws IOException {
+        this(transport, cacheService, DEFAULT_MAX_PENDING_KEYS);
+    }
+
+    /**
+     * @param cacheService     where invalidations from other nodes are applied. Only the
+     *                         hashes of their keys are known, so it must be able to remove
+     *                         by hash, like the DefaultCacheService or PartitionedCacheService
+     * @param maxPendingKeys   how many key hashes may wait to be sent (and to be applied)
+     *                         before whole caches are invalidated instead
+     */
+    public InvalidationBus(InvalidationTransport transport, KeyHashEvictingCacheService cacheService,
+                int maxPendingKeys) throws IOException {
+        this.transport = transport;
+        this.cacheService = cacheService;
+        this.outgoing = new PendingInvalidations(maxPendingKeys);
+        this.incoming = new PendingInvalidations(maxPendingKeys);
+
+        transport.start(new InvalidationTransport.Receiver() {
+            public void receive(byte[] message) {
+                received(message);
+            }
+        });
+
+        this.flusherThread = new Thread("easiest-cache-ever invalidation bus") {
+            @Override
+            public void run() {
+                flushUntilClosed();
+            }
+        };
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    /**
+     * how long invalidations are collected before they're sent or applied.
+     * Longer means bigger batches but staler values. Defaults to 50.
+     */
+    public void setFlushMillis(int flushMillis) {
+        this.flushMillis = flushMillis;
+    }
+
+    /**
+     * tells the other nodes to remove the key's value. Namespaces are local to
+     * each node, so only the parameter key (without its namespace) is sent
+     */
+    public void publish(String cacheId, String key) {
+        outgoing.add(cacheId, KeyHashes.hashWithoutNamespace(key));
+    }
+
+    /**
+     * tells the other nodes to remove every value of the cache
+     */
+    public void publishAll(String cacheId) {
+        outgoing.addAll(cacheId);
+    }
+
+    /**
+     * Sends the waiting invalidations, and applies the ones received.
+     * Called every flushMillis in the background; public so it can be called on demand.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            send(outgoing.drain());
+            apply(incoming.drain());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * sends whatever is waiting and stops
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(flusherThread);
+
+        try {
+            flusherThread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        transport.close();
+    }
+
+    private void received(byte[] message) {
+        try {
+            InvalidationMessages.decode(message, senderId, incoming);
+        } catch (IOException exception) {
+            logger.log(Level.WARNING, "ignoring malformed invalidation message", exception);
+        }
+    }
+
+    private void send(Map<String, Set<Long>> invalidations) {
+        if (invalidations.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (byte[] message : InvalidationMessages.encode(senderId, invalidations, transport
+                        .getMaxMessageBytes())) {
+                transport.send(message);
+            }
+        } catch (IOException exception) {
+            // the other nodes' values still expire, so carry on
+            logger.log(Level.WARNING, "unable to send invalidations for " + invalidations.keySet(), exception);
+        } catch (RuntimeException exception) {
+            logger.log(Level.WARNING, "unable to send invalidations for " + invalidations.keySet(), exception);
+        }
+    }
+
+    private void apply(Map<String, Set<Long>> invalidations) {
+        for (Map.Entry<String, Set<Long>> invalidation : invalidations.entrySet()) {
+            try {
+                if (invalidation.getValue() == null) {
+                    cacheService.removeAll(invalidation.getKey());
+                } else {
+                    cacheService.removeKeyHashes(invalidation.getKey(), invalidation.getValue());
+                }
+            } catch (RuntimeException exception) {
+                logger.log(Level.WARNING, "unable to invalidate " + invalidation.getKey(), exception);
+            }
+        }
+    }
+
+    private void flushUntilClosed() {
+        while (!closed) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushMillis));
+
+            if (!closed) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The binary format of the messages sent by {@link InvalidationBus}:
+ * 
+ * <pre>
+ * header:  byte VERSION, long sender id, short number of caches
+ * caches:  UTF cache id, int number of key hashes (or ALL_KEYS), then the long key hashes
+ * </pre>
+ * 
+ * A cache's key hashes may be split across several messages, to
+ * keep each message within the transport's limit.
+ * 
+ * @author Brad Cupit
+ */
+final class InvalidationMessages {
+    static final byte VERSION = 1;
+    static final int ALL_KEYS = -1;
+
+    private static final int HEADER_BYTES = 1 + 8 + 2;
+    private static final int KEY_HASH_BYTES = 8;
+    private static final int MAX_CACHES = 0xFFFF;
+
+    private InvalidationMessages() {
+    }
+
+    /**
+     * @param invalidations key hashes by cache id, a null set meaning every key
+     */
+    static List<byte[]> encode(long senderId, Map<String, Set<Long>> invalidations, int maxMessageBytes)
+                throws IOException {
+        final List<byte[]> messages = new ArrayList<byte[]>();
+        Message message = new Message(senderId);
+
+        for (Map.Entry<String, Set<Long>> invalidation : invalidations.entrySet()) {
+            final byte[] cacheId = utf(invalidation.getKey());
+            final int entryBytes = cacheId.length + 4;
+            final Set<Long> keyHashes = invalidation.getValue();
+
+            if (HEADER_BYTES + entryBytes + (keyHashes == null ? 0 : KEY_HASH_BYTES) > maxMessageBytes) {
+                throw new IllegalArgumentException("cache id " + invalidation.getKey() + " doesn't fit in "
+                            + maxMessageBytes + " bytes");
+            }
+
+            if (message.isFull()) {
+                messages.add(message.toBytes());
+                message = new Message(senderId);
+            }
+
+            if (keyHashes == null) {
+                if (message.size() + entryBytes > maxMessageBytes) {
+                    messages.add(message.toBytes());
+                    message = new Message(senderId);
+                }
+
+                message.addAllKeys(cacheId);
+                continue;
+            }
+
+            final Iterator<Long> iterator = keyHashes.iterator();
+            int remaining = keyHashes.size();
+
+            while (remaining > 0) {
+                int room = (maxMessageBytes - message.size() - entryBytes) / KEY_HASH_BYTES;
+
+                if (room <= 0) {
+                    messages.add(message.toBytes());
+                    message = new Message(senderId);
+                    continue;
+                }
+
+                int count = Math.min(room, remaining);
+                message.addKeyHashes(cacheId, iterator, count);
+                remaining -= count;
+            }
+        }
+
+        if (!message.isEmpty()) {
+            messages.add(message.toBytes());
+        }
+
+        return messages;
+    }
+
+    /**
+     * adds the message's invalidations to the pending ones, unless this node sent it
+     * 
+     * @return false if the message was ignored
+     */
+    static boolean decode(byte[] message, long ownSenderId, PendingInvalidations pending) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+
+        if (in.readByte() != VERSION || in.readLong() == ownSenderId) {
+            return false;
+        }
+
+        final int cacheCount = in.readUnsignedShort();
+        for (int i = 0; i < cacheCount; i++) {
+            final String cacheId = in.readUTF();
+            final int keyCount = in.readInt();
+
+            if (keyCount == ALL_KEYS) {
+                pending.addAll(cacheId);
+            } else {
+                for (int j = 0; j < keyCount; j++) {
+                    pending.add(cacheId, in.readLong());
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] utf(String string) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(string);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * a message being written
+     */
+    private static class Message {
+        private final long senderId;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream body = new DataOutputStream(bytes);
+        private int cacheCount;
+
+        private Message(long senderId) {
+            this.senderId = senderId;
+        }
+
+        private void addAllKeys(byte[] cacheId) throws IOException {
+            body.write(cacheId);
+            body.writeInt(ALL_KEYS);
+            cacheCount++;
+        }
+
+        private void addKeyHashes(byte[] cacheId, Iterator<Long> keyHashes, int count) throws IOException {
+            body.write(cacheId);
+            body.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                body.writeLong(keyHashes.next());
+            }
+            cacheCount++;
+        }
+
+        private int size() {
+            return HEADER_BYTES + body.size();
+        }
+
+        private boolean isEmpty() {
+            return cacheCount == 0;
+        }
+
+        private boolean isFull() {
+            return cacheCount == MAX_CACHES;
+        }
+
+        private byte[] toBytes() throws IOException {
+            final ByteArrayOutputStream message = new ByteArrayOutputStream(size());
+            final DataOutputStream out = new DataOutputStream(message);
+            out.writeByte(VERSION);
+            out.writeLong(senderId);
+            out.writeShort(cacheCount);
+            bytes.writeTo(out);
+            out.flush();
+            return message.toByteArray();
+        }
+    }
+}
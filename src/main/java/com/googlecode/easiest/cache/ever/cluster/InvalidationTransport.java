@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.IOException;
+
+/**
+ * Carries {@link InvalidationBus} messages between nodes. Delivery is best
+ * effort: a lost message means another node serves a stale value until it
+ * expires, same as without the bus.
+ * 
+ * @author Brad Cupit
+ */
+public interface InvalidationTransport {
+    /**
+     * starts delivering messages sent by other nodes to the receiver
+     */
+    void start(Receiver receiver) throws IOException;
+
+    /**
+     * sends the message to every other node
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * the largest message this transport can send
+     */
+    int getMaxMessageBytes();
+
+    void close();
+
+    /**
+     * called with each message from another node, on the transport's thread
+     */
+    interface Receiver {
+        void receive(byte[] message);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link InvalidationTransport} between nodes in the same JVM, for tests
+ * and for applications which run several independent caches side by side.
+ * Every transport created with the same {@link Network} receives the
+ * messages sent by the others, synchronously.
+ * 
+ * @author Brad Cupit
+ */
+public class LoopbackTransport implements InvalidationTransport {
+    private final Network network;
+    private volatile Receiver receiver;
+
+    public LoopbackTransport(Network network) {
+        this.network = network;
+    }
+
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        network.transports.add(this);
+    }
+
+    public void send(byte[] message) {
+        for (LoopbackTransport transport : network.transports) {
+            if (transport != this) {
+                // every node gets its own copy, same as over a real network
+                transport.receiver.receive(message.clone());
+            }
+        }
+    }
+
+    public int getMaxMessageBytes() {
+        return 64 * 1024;
+    }
+
+    public void close() {
+        network.transports.remove(this);
+    }
+
+    /**
+     * the transports which can reach each other
+     */
+    public static class Network {
+        private final List<LoopbackTransport> transports = new CopyOnWriteArrayList<LoopbackTransport>();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link InvalidationTransport} over UDP multicast: every node joins the same
+ * group and port, and each message is one datagram. Nothing is retransmitted,
+ * so keep expiration times as a backstop for the odd lost datagram.
+ * 
+ * Messages are kept under a typical network's MTU, so datagrams aren't fragmented.
+ * 
+ * @author Brad Cupit
+ */
+public class MulticastTransport implements InvalidationTransport {
+    private static final Logger logger = Logger.getLogger(MulticastTransport.class.getName());
+    private static final int MAX_MESSAGE_BYTES = 1400;
+
+    private final InetAddress group;
+    private final int port;
+    private int timeToLive = 1;
+    private MulticastSocket socket;
+    private Thread receiverThread;
+    private volatile boolean closed;
+
+    /**
+     * @param group a multicast address, for example 239.255.42.99
+     */
+    public MulticastTransport(String group, int port) throws IOException {
+        this.group = InetAddress.getByName(group);
+        this.port = port;
+
+        if (!this.group.isMulticastAddress()) {
+            throw new IllegalArgumentException(group + " isn't a multicast address");
+        }
+    }
+
+    /**
+     * how many routers a message may cross. Defaults to 1 (the local network)
+     */
+    public void setTimeToLive(int timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public void start(final Receiver receiver) throws IOException {
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(timeToLive);
+        socket.joinGroup(group);
+
+        receiverThread = new Thread("easiest-cache-ever invalidation receiver") {
+            @Override
+            public void run() {
+                receiveUntilClosed(receiver);
+            }
+        };
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    public void send(byte[] message) throws IOException {
+        socket.send(new DatagramPacket(message, message.length, group, port));
+    }
+
+    public int getMaxMessageBytes() {
+        return MAX_MESSAGE_BYTES;
+    }
+
+    public void close() {
+        closed = true;
+
+        if (socket != null) {
+            // unblocks the receiver thread
+            socket.close();
+        }
+    }
+
+    private void receiveUntilClosed(Receiver receiver) {
+        final byte[] buffer = new byte[64 * 1024];
+
+        while (!closed) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+            try {
+                socket.receive(packet);
+            } catch (IOException exception) {
+                if (!closed) {
+                    logger.log(Level.WARNING, "unable to receive invalidations, receiving stopped", exception);
+                }
+                return;
+            }
+
+            final byte[] message = new byte[packet.getLength()];
+            System.arraycopy(packet.getData(), packet.getOffset(), message, 0, message.length);
+            receiver.receive(message);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.caches.CacheService;
+import com.googlecode.easiest.cache.ever.caches.CachedValue;
+import com.googlecode.easiest.cache.ever.caches.CostAwareCacheService;
+import com.googlecode.easiest.cache.ever.caches.EvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.ExpiringCacheService;
+import com.googlecode.easiest.cache.ever.caches.KeyHashEvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.Serialization;
+
+/**
+ * {@link CacheService} which spreads values over the nodes of a cluster, so each
+ * value is computed and stored once, on the node which owns its key (see
+ * {@link ConsistentHashRing}), and the cluster caches as much as all its nodes together.
+ * Each node runs a {@link CacheServer} for the keys it owns, in front of the same
+ * local {@link CacheService} this class is given.
+ * 
+ * Keys owned by other nodes are fetched with a timeout. When the owner is slow or
+ * down, it's treated as a miss: the value is computed here and cached locally.
+ * Values which aren't serializable are also cached locally, as are the values of
+ * keys this node owns.
+ * 
+ * @author Brad Cupit
+ */
+public class PartitionedCacheService implements ExpiringCacheService, KeyHashEvictingCacheService {
+    private static final Logger logger = Logger.getLogger(PartitionedCacheService.class.getName());
+
+    private EvictingCacheService cacheService;
+    private String localNode;
+    private List<String> nodes;
+    private int virtualNodes = 160;
+    private int timeoutMillis = 50;
+    private Collection<String> allowedClasses = Collections.emptySet();
+    private final ConcurrentMap<String, CacheConfig> cacheConfigs = new ConcurrentHashMap<String, CacheConfig>();
+    private final Lock peersLock = new ReentrantLock();
+    private volatile ConsistentHashRing ring;
+    private volatile Map<String, PeerClient> peers;
+
+    /**
+     * the local cache service: for keys this node owns, and for values which can't be sent to their owner
+     */
+    public void setCacheService(EvictingCacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * this node's host:port, as it appears in {@link #setNodes(List) nodes}
+     */
+    public void setLocalNode(String localNode) {
+        this.localNode = localNode;
+    }
+
+    /**
+     * host:port of every node's {@link CacheServer}, including this one.
+     * Every node must be given the same list.
+     */
+    public void setNodes(List<String> nodes) {
+        this.nodes = new ArrayList<String>(nodes);
+    }
+
+    /**
+     * points per node on the hash ring. More spreads keys more evenly. Defaults to 160
+     */
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * how long to wait for another node before computing the value here. Defaults to 50
+     */
+    public void setTimeoutMillis(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * classes, or packages as "com.example.orders.*", of the values which may be
+     * read from other nodes, besides {@link Serialization#STANDARD_CLASSES}. Values
+     * of other classes are computed here. Every node's {@link CacheServer} should
+     * be given the same list
+     */
+    public void setAllowedClasses(Collection<String> allowedClasses) {
+        this.allowedClasses = new HashSet<String>(allowedClasses);
+    }
+
+    public void createCacheIfNecessary(String cacheId, CacheConfig cacheConfig) {
+        cacheService.createCacheIfNecessary(cacheId, cacheConfig);
+        cacheConfigs.putIfAbsent(cacheId, cacheConfig);
+    }
+
+    public void add(String cacheId, String key, Object value) {
+        add(cacheId, key, value, 0, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos) {
+        add(cacheId, key, value, loadNanos, CacheConstants.UNSET_EXPIRATION_TIME);
+    }
+
+    public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        final PeerClient owner = ownerOf(cacheId, key);
+        final CacheConfig cacheConfig = cacheConfigs.get(cacheId);
+
+        if (owner != null && cacheConfig != null) {
+            final byte[] bytes = Serialization.serialize(value);
+
+            if (bytes != null) {
+                try {
+                    final ByteArrayOutputStream request = new ByteArrayOutputStream();
+                    final DataOutputStream out = CacheProtocol.startFrame(request, owner.nextRequestId(),
+                                CacheProtocol.PUT);
+                    CacheProtocol.writeString(out, cacheId);
+                    CacheProtocol.writeString(out, key);
+                    out.writeInt(timeToLiveSeconds);
+                    out.writeInt(cacheConfig.getMaxSize());
+                    out.writeInt(cacheConfig.getExpirationTime());
+                    CacheProtocol.writeString(out, cacheConfig.getUnit() == null ? null : cacheConfig.getUnit().name());
+                    CacheProtocol.writeBytes(out, bytes);
+
+                    owner.send(request);
+                    return;
+                } catch (IOException exception) {
+                    // the owner is unreachable, keep the value here
+                }
+            }
+        }
+
+        addLocally(cacheId, key, value, loadNanos, timeToLiveSeconds);
+    }
+
+    public CachedValue retrieve(String cacheId, String key) {
+        final PeerClient owner = ownerOf(cacheId, key);
+
+        if (owner != null) {
+            final CachedValue remoteValue = retrieveRemotely(owner, cacheId, key);
+
+            if (remoteValue.wasFound()) {
+                return remoteValue;
+            }
+        }
+
+        // also covers values kept here because they couldn't be sent to their owner
+        return cacheService.retrieve(cacheId, key);
+    }
+
+    public void remove(String cacheId, String key) {
+        final PeerClient owner = ownerOf(cacheId, key);
+
+        if (owner != null) {
+            sendQuietly(owner, CacheProtocol.REMOVE, cacheId, key, null);
+        }
+
+        cacheService.remove(cacheId, key);
+    }
+
+    public void removeAll(String cacheId) {
+        for (PeerClient peer : peers().values()) {
+            sendQuietly(peer, CacheProtocol.REMOVE_ALL, cacheId, null, null);
+        }
+
+        cacheService.removeAll(cacheId);
+    }
+
+    /**
+     * the hashes don't say which node owns the keys, so every node is asked. A local
+     * cache service which can't remove key hashes has the whole cache cleared instead
+     */
+    public void removeKeyHashes(String cacheId, Set<Long> keyHashes) {
+        for (PeerClient peer : peers().values()) {
+            sendQuietly(peer, CacheProtocol.REMOVE_KEY_HASHES, cacheId, null, keyHashes);
+        }
+
+        if (cacheService instanceof KeyHashEvictingCacheService) {
+            ((KeyHashEvictingCacheService) cacheService).removeKeyHashes(cacheId, keyHashes);
+        } else {
+            cacheService.removeAll(cacheId);
+        }
+    }
+
+    /**
+     * closes the connections to the other nodes
+     */
+    public void close() {
+        if (peers != null) {
+            for (PeerClient peer : peers.values()) {
+                peer.close();
+            }
+        }
+    }
+
+    private CachedValue retrieveRemotely(PeerClient owner, String cacheId, String key) {
+        try {
+            final int requestId = owner.nextRequestId();
+            final ByteArrayOutputStream request = new ByteArrayOutputStream();
+            final DataOutputStream out = CacheProtocol.startFrame(request, requestId, CacheProtocol.GET);
+            CacheProtocol.writeString(out, cacheId);
+            CacheProtocol.writeString(out, key);
+
+            final PeerClient.Response response = owner.call(requestId, request);
+
+            if (response != null && response.getStatus() == CacheProtocol.FOUND) {
+                // deserializing made our own copy, so it's safe to hand out
+                return CachedValue.create(Serialization.deserialize(response.getValue(), allowedClasses));
+            }
+        } catch (IOException exception) {
+            logger.log(Level.FINE, "unable to read value from another node for " + cacheId, exception);
+        }
+
+        return CachedValue.notFound();
+    }
+
+    private void sendQuietly(PeerClient peer, byte operation, String cacheId, String key, Set<Long> keyHashes) {
+        try {
+            final ByteArrayOutputStream request = new ByteArrayOutputStream();
+            final DataOutputStream out = CacheProtocol.startFrame(request, peer.nextRequestId(), operation);
+            CacheProtocol.writeString(out, cacheId);
+
+            if (operation == CacheProtocol.REMOVE) {
+                CacheProtocol.writeString(out, key);
+            } else if (operation == CacheProtocol.REMOVE_KEY_HASHES) {
+                out.writeInt(keyHashes.size());
+                for (Long keyHash : keyHashes) {
+                    out.writeLong(keyHash);
+                }
+            }
+
+            peer.send(request);
+        } catch (IOException exception) {
+            // an unreachable node's values expire there
+            logger.log(Level.FINE, "unable to remove values of " + cacheId + " from another node", exception);
+        }
+    }
+
+    private void addLocally(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+        if (cacheService instanceof ExpiringCacheService) {
+            ((ExpiringCacheService) cacheService).add(cacheId, key, value, loadNanos, timeToLiveSeconds);
+        } else if (cacheService instanceof CostAwareCacheService) {
+            ((CostAwareCacheService) cacheService).add(cacheId, key, value, loadNanos);
+        } else {
+            cacheService.add(cacheId, key, value);
+        }
+    }
+
+    /**
+     * @return null if this node owns the key
+     */
+    private PeerClient ownerOf(String cacheId, String key) {
+        final Map<String, PeerClient> currentPeers = peers();
+        final String owner = ring.nodeFor(cacheId, key);
+        return currentPeers.get(owner);
+    }
+
+    private Map<String, PeerClient> peers() {
+        Map<String, PeerClient> currentPeers = peers;
+
+        if (currentPeers == null) {
+            peersLock.lock();
+            try {
+                currentPeers = peers;
+
+                if (currentPeers == null) {
+                    if (!nodes.contains(localNode)) {
+                        throw new IllegalStateException("localNode " + localNode + " isn't one of the nodes " + nodes);
+                    }
+
+                    currentPeers = new HashMap<String, PeerClient>();
+                    for (String node : nodes) {
+                        if (!node.equals(localNode)) {
+                            currentPeers.put(node, new PeerClient(node, timeoutMillis));
+                        }
+                    }
+
+                    // the ring is published by the volatile write of the peers
+                    ring = new ConsistentHashRing(nodes, virtualNodes);
+                    peers = currentPeers;
+                }
+            } finally {
+                peersLock.unlock();
+            }
+        }
+
+        return currentPeers;
+    }
+}
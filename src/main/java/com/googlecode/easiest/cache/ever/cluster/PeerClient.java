@@ -0,0 +1,289 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One connection to a {@link CacheServer}, shared by every thread. Requests
+ * are pipelined: each thread writes its request and waits for the response
+ * with its request id, while others' requests are in flight.
+ * 
+ * If the peer can't be reached, it isn't tried again for a second, so callers
+ * fall back to computing values themselves instead of waiting on timeouts.
+ * Nor does a stalled peer hold up every caller: a caller waits at most the
+ * timeout for another's write, and a write which has taken longer than that
+ * is abandoned by closing the connection.
+ * 
+ * @author Brad Cupit
+ */
+class PeerClient {
+    private static final long RETRY_MILLIS = 1000;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final ConcurrentMap<Integer, Response> responses = new ConcurrentHashMap<Integer, Response>();
+    /** guards connecting, writing and disconnecting */
+    private final Lock lock = new ReentrantLock();
+    private volatile Socket socket;
+    private DataOutputStream out;
+    private long retryAtMillis;
+    /** the socket being written to, or null */
+    private volatile Socket writingSocket;
+    private volatile long writeStartedNanos;
+
+    /**
+     * @param node host:port of the peer's {@link CacheServer}
+     */
+    PeerClient(String node, int timeoutMillis) {
+        final int colon = node.lastIndexOf(':');
+
+        if (colon < 0) {
+            throw new IllegalArgumentException("expected host:port, not " + node);
+        }
+
+        this.host = node.substring(0, colon);
+        this.port = Integer.parseInt(node.substring(colon + 1));
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    int nextRequestId() {
+        return requestIds.incrementAndGet();
+    }
+
+    /**
+     * sends the request and waits for its response
+     * 
+     * @return null if the peer didn't answer in time
+     */
+    Response call(int requestId, ByteArrayOutputStream request) {
+        final Response response = new Response();
+        responses.put(requestId, response);
+
+        try {
+            send(request);
+            return response.await(timeoutMillis) ? response : null;
+        } catch (IOException exception) {
+            return null;
+        } finally {
+            responses.remove(requestId);
+        }
+    }
+
+    /**
+     * sends the request without waiting for the response
+     * 
+     * @throws IOException if the request is too big, the peer is unreachable,
+     *                     or another thread's write didn't finish in time
+     */
+    void send(ByteArrayOutputStream request) throws IOException {
+        if (!CacheProtocol.fitsInFrame(request.size())) {
+            throw new IOException("request of " + request.size() + " bytes is too big to send");
+        }
+
+        if (!tryLock()) {
+            abortStalledWrite();
+            throw new IOException(host + ":" + port + " is busy");
+        }
+
+        try {
+            final DataOutputStream output = output();
+
+            writeStartedNanos = System.nanoTime();
+            writingSocket = socket;
+            try {
+                CacheProtocol.writeFrame(output, request);
+                output.flush();
+            } catch (IOException exception) {
+                disconnect(exception);
+                throw exception;
+            } finally {
+                writingSocket = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        final Socket currentSocket = socket;
+
+        // unblocks a stalled write, which is holding the lock
+        if (currentSocket != null) {
+            closeQuietly(currentSocket);
+        }
+
+        lock.lock();
+        try {
+            if (socket != null) {
+                disconnect(null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryLock() throws InterruptedIOException {
+        try {
+            return lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting to send to " + host + ":" + port);
+        }
+    }
+
+    /**
+     * closes the connection if a write has been blocked (on a full send buffer)
+     * for longer than the timeout. The writer gets an IOException and disconnects
+     */
+    private void abortStalledWrite() {
+        final Socket stalledSocket = writingSocket;
+
+        if (stalledSocket != null
+                    && System.nanoTime() - writeStartedNanos > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+            closeQuietly(stalledSocket);
+        }
+    }
+
+    private DataOutputStream output() throws IOException {
+        if (socket != null) {
+            return out;
+        }
+
+        if (System.currentTimeMillis() < retryAtMillis) {
+            throw new IOException(host + ":" + port + " is unreachable");
+        }
+
+        final Socket newSocket = new Socket();
+        try {
+            newSocket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            newSocket.setTcpNoDelay(true);
+        } catch (IOException exception) {
+            newSocket.close();
+            retryAtMillis = System.currentTimeMillis() + RETRY_MILLIS;
+            throw exception;
+        }
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+        socket = newSocket;
+        out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+
+        Thread readerThread = new Thread("easiest-cache-ever peer " + host + ":" + port) {
+            @Override
+            public void run() {
+                readUntilDisconnected(newSocket, in);
+            }
+        };
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        return out;
+    }
+
+    private void readUntilDisconnected(Socket readSocket, DataInputStream in) {
+        try {
+            while (true) {
+                final DataInputStream frame = CacheProtocol.readFrame(in);
+                final Response response = responses.get(frame.readInt());
+
+                // nobody waits for the responses to puts and removes, or for late responses
+                if (response != null) {
+                    response.complete(frame);
+                }
+            }
+        } catch (IOException exception) {
+            lock.lock();
+            try {
+                if (socket == readSocket) {
+                    disconnect(exception);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void disconnect(IOException cause) {
+        closeQuietly(socket);
+        socket = null;
+        out = null;
+
+        if (cause != null) {
+            retryAtMillis = System.currentTimeMillis() + RETRY_MILLIS;
+        }
+    }
+
+    private static void closeQuietly(Socket closingSocket) {
+        try {
+            closingSocket.close();
+        } catch (IOException exception) {
+            // closing anyway
+        }
+    }
+
+    /**
+     * a response being waited for
+     */
+    static class Response {
+        private final CountDownLatch received = new CountDownLatch(1);
+        private volatile byte status;
+        private volatile byte[] value;
+
+        byte getStatus() {
+            return status;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        private void complete(DataInputStream frame) throws IOException {
+            status = frame.readByte();
+
+            if (status == CacheProtocol.FOUND) {
+                value = CacheProtocol.readBytes(frame);
+            }
+
+            received.countDown();
+        }
+
+        private boolean await(int timeoutMillis) {
+            try {
+                return received.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Invalidations waiting to be sent or applied, coalesced by cache:
+ * the same key invalidated many times is only sent (or removed) once.
+ * 
+ * Bounded: once more than maxKeys key hashes are waiting, the cache
+ * being invalidated is invalidated completely instead, which replaces
+ * its key hashes. So a burst of invalidations costs at most one
+ * {@link com.googlecode.easiest.cache.ever.caches.EvictingCacheService#removeAll(String)}
+ * per cache, never unbounded memory.
+ * 
+ * @author Brad Cupit
+ */
+class PendingInvalidations {
+    private final int maxKeys;
+    private final Lock lock = new ReentrantLock();
+    /** a null set means every key */
+    private Map<String, Set<Long>> pending = new HashMap<String, Set<Long>>();
+    private int keyCount;
+
+    PendingInvalidations(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    void add(String cacheId, long keyHash) {
+        lock.lock();
+        try {
+            Set<Long> keyHashes = pending.get(cacheId);
+
+            if (keyHashes == null) {
+                if (pending.containsKey(cacheId)) {
+                    // the whole cache is already invalidated
+                    return;
+                }
+
+                keyHashes = new HashSet<Long>();
+                pending.put(cacheId, keyHashes);
+            }
+
+            if (keyCount >= maxKeys) {
+                addAll(cacheId);
+            } else if (keyHashes.add(keyHash)) {
+                keyCount++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void addAll(String cacheId) {
+        lock.lock();
+        try {
+            Set<Long> keyHashes = pending.put(cacheId, null);
+
+            if (keyHashes != null) {
+                keyCount -= keyHashes.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return everything waiting, by cache id (a null set means every key of the cache)
+     */
+    Map<String, Set<Long>> drain() {
+        lock.lock();
+        try {
+            Map<String, Set<Long>> drained = pending;
+            pending = new HashMap<String, Set<Long>>();
+            keyCount = 0;
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return pending.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.keys;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+
+/**
+ * Writes parameter keys by walking each parameter's fields, in the same
+ * spirit as XStream, but the structure of each class is only worked out once:
+ * the first time a class is seen, a {@link ValueWriter} is built for it
+ * (fields collected up the class hierarchy, made accessible, and given a
+ * writer specialized for their type) and cached. Every later call just runs
+ * the cached writer, instead of XStream's per-call converter lookup.
+ * 
+ * The keys are not byte-for-byte XStream's, but they carry the same
+ * information, so two arguments produce equal keys exactly when their
+ * XStream keys would be equal:
+ * <ul>
+ * <li>simple types (primitives, wrappers, Strings, enums) are written
+ * exactly like XStream writes them, see {@link SimpleKeys}</li>
+ * <li>other objects are written as their class name plus every non-static,
+ * non-transient field with a non-null value, including inherited fields.
+ * Fields hidden by a subclass field of the same name are qualified with
+ * their declaring class</li>
+ * <li>an object seen earlier in the same key (shared or cyclic references)
+ * is written as a reference to its first occurrence</li>
+ * <li>JDK collections and maps are written as their class name plus their
+ * contents (and comparator, for sorted ones), JDK value types with their
+ * string form</li>
+ * <li>any class which can't be walked (for example, JDK classes with
+ * inaccessible fields) is handed to XStream</li>
+ * </ul>
+ * 
+ * @author Brad Cupit
+ */
+public class FieldWalkers {
+    private static final String NULL = "<null/>";
+    private static final Set<Class<?>> TO_STRING_TYPES = new HashSet<Class<?>>();
+
+    static {
+        Class<?>[] toStringTypes = { BigDecimal.class, BigInteger.class, URL.class, URI.class, File.class,
+                    Locale.class, UUID.class, Currency.class, StringBuilder.class, StringBuffer.class, Class.class };
+
+        for (Class<?> toStringType : toStringTypes) {
+            TO_STRING_TYPES.add(toStringType);
+        }
+    }
+
+    private final ConcurrentMap<Class<?>, ValueWriter> writers = new ConcurrentHashMap<Class<?>, ValueWriter>();
+    private final XStream xstream;
+
+    /**
+     * @param xstream used for classes which can't be walked
+     */
+    public FieldWalkers(XStream xstream) {
+        this.xstream = xstream;
+    }
+
+    /**
+     * appends the key for a single value (which may be null) to the key
+     */
+    public void write(Object value, StringBuilder key) {
+        new Walk(key).write(value);
+    }
+
+    /**
+     * appends the key for multiple values, the same way XStream writes
+     * an <code>Object[]</code>. References can point across values.
+     */
+    public void writeAll(List<?> values, StringBuilder key) {
+        Walk walk = new Walk(key);
+
+        SimpleKeys.startArray(key);
+        for (Object value : values) {
+            walk.write(value);
+        }
+        SimpleKeys.endArray(key);
+    }
+
+    /**
+     * builds and caches the writers for the class, its fields' classes
+     * and so on, ahead of the first key. Interfaces and abstract classes
+     * are skipped, since the class of their values isn't known yet.
+     */
+    public void prepare(Class<?> type) {
+        if (type.isArray()) {
+            prepare(type.getComponentType());
+        } else if (!type.isPrimitive() && !type.isInterface() && !Modifier.isAbstract(type.getModifiers())
+                    && !writers.containsKey(type)) {
+            ValueWriter writer = writerFor(type);
+
+            if (writer instanceof FieldsWriter) {
+                for (Field field : ((FieldsWriter) writer).fields) {
+                    prepare(field.getType());
+                }
+            }
+        }
+    }
+
+    private ValueWriter writerFor(Class<?> type) {
+        ValueWriter writer = writers.get(type);
+
+        if (writer == null) {
+            writer = createWriter(type);
+            writers.putIfAbsent(type, writer);
+        }
+
+        return writer;
+    }
+
+    private ValueWriter createWriter(Class<?> type) {
+        if (type == String.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendString(walk.key, (String) value);
+                }
+            };
+        } else if (type == Integer.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendInteger(walk.key, (Integer) value);
+                }
+            };
+        } else if (type == Long.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendLong(walk.key, (Long) value);
+                }
+            };
+        } else if (type == Short.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendShort(walk.key, (Short) value);
+                }
+            };
+        } else if (type == Byte.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendByte(walk.key, (Byte) value);
+                }
+            };
+        } else if (type == Boolean.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendBoolean(walk.key, (Boolean) value);
+                }
+            };
+        } else if (type == Float.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendFloat(walk.key, (Float) value);
+                }
+            };
+        } else if (type == Double.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendDouble(walk.key, (Double) value);
+                }
+            };
+        } else if (type == Character.class) {
+            return new ValueWriter() {
+                public void write(Object value, Walk walk) {
+                    SimpleKeys.appendCharacter(walk.key, (Character) value);
+                }
+            };
+        } else if (Enum.class.isAssignableFrom(type)) {
+            return new EnumWriter(type);
+        } else if (isToStringType(type)) {
+            return new ToStringWriter(type);
+        } else if (type.isArray()) {
+            return new ArrayWriter(type);
+        } else if (isJdkType(type) && Collection.class.isAssignableFrom(type)) {
+            return new CollectionWriter(type);
+        } else if (isJdkType(type) && Map.class.isAssignableFrom(type)) {
+            return new MapWriter(type);
+        } else {
+            try {
+                return new FieldsWriter(type);
+            } catch (RuntimeException exception) {
+                // fields can't be made accessible (JDK internals on newer JVMs,
+                // security managers, etc.). XStream is the best we can do
+                return new XStreamWriter();
+            }
+        }
+    }
+
+    private boolean isToStringType(Class<?> type) {
+        return TO_STRING_TYPES.contains(type) || Date.class.isAssignableFrom(type) && isJdkType(type)
+                    || TimeZone.class.isAssignableFrom(type) || Charset.class.isAssignableFrom(type)
+                    || type == Pattern.class;
+    }
+
+    private boolean isJdkType(Class<?> type) {
+        return type.getName().startsWith("java.") || type.getName().startsWith("javax.");
+    }
+
+    /**
+     * the state of writing one key: where it's written to, and
+     * which objects have already been written (for references)
+     */
+    private class Walk {
+        private final StringBuilder key;
+        private final Map<Object, Integer> seen = new IdentityHashMap<Object, Integer>();
+
+        private Walk(StringBuilder key) {
+            this.key = key;
+        }
+
+        private void write(Object value) {
+            if (value == null) {
+                key.append(NULL);
+            } else {
+                writerFor(value.getClass()).write(value, this);
+            }
+        }
+
+        /**
+         * @return true if the object was already written, in which case a
+         *         reference to it was written instead
+         */
+        private boolean writeReferenceIfSeen(Object value) {
+            Integer id = seen.get(value);
+
+            if (id != null) {
+                key.append("<ref id=\"").append(id).append("\"/>");
+                return true;
+            }
+
+            seen.put(value, seen.size());
+            return false;
+        }
+    }
+
+    /**
+     * writes values of one class. Built once per class, used for every key.
+     */
+    private interface ValueWriter {
+        void write(Object value, Walk walk);
+    }
+
+    /**
+     * base class for writers which wrap their value in an element named after its class
+     */
+    private abstract class ElementWriter implements ValueWriter {
+        private final String elementName;
+        private final boolean referenceable;
+
+        private ElementWriter(Class<?> type, boolean referenceable) {
+            this.elementName = SimpleKeys.toElementName(type.getName());
+            this.referenceable = referenceable;
+        }
+
+        public void write(Object value, Walk walk) {
+            if (referenceable && walk.writeReferenceIfSeen(value)) {
+                return;
+            }
+
+            walk.key.append('<').append(elementName).append('>');
+            writeContent(value, walk);
+            walk.key.append("</").append(elementName).append('>');
+        }
+
+        protected abstract void writeContent(Object value, Walk walk);
+    }
+
+    private class EnumWriter implements ValueWriter {
+        private final String elementName;
+
+        private EnumWriter(Class<?> type) {
+            // constants with a body are subclasses. XStream names them after the enum
+            Class<?> enumType = type.isEnum() ? type : type.getSuperclass();
+            this.elementName = SimpleKeys.toElementName(enumType.getName());
+        }
+
+        public void write(Object value, Walk walk) {
+            SimpleKeys.appendEnum(walk.key, elementName, (Enum<?>) value);
+        }
+    }
+
+    private class ToStringWriter extends ElementWriter {
+        private ToStringWriter(Class<?> type) {
+            super(type, false);
+        }
+
+        @Override
+        protected void writeContent(Object value, Walk walk) {
+            if (value instanceof Date) {
+                // Date#toString() drops the milliseconds
+                walk.key.append(((Date) value).getTime());
+                // java.sql.Timestamp keeps nanoseconds outside of getTime()
+                SimpleKeys.appendEscaped(walk.key, value.toString());
+            } else if (value instanceof Class<?>) {
+                walk.key.append(((Class<?>) value).getName());
+            } else if (value instanceof TimeZone) {
+                SimpleKeys.appendEscaped(walk.key, ((TimeZone) value).getID());
+            } else if (value instanceof Pattern) {
+                SimpleKeys.appendEscaped(walk.key, ((Pattern) value).pattern());
+                walk.key.append(' ').append(((Pattern) value).flags());
+            } else {
+                SimpleKeys.appendEscaped(walk.key, value.toString());
+            }
+        }
+    }
+
+    private class ArrayWriter extends ElementWriter {
+        private ArrayWriter(Class<?> type) {
+            super(type, true);
+        }
+
+        @Override
+        protected void writeContent(Object value, Walk walk) {
+            int length = Array.getLength(value);
+
+            for (int i = 0; i < length; i++) {
+                walk.write(Array.get(value, i));
+            }
+        }
+    }
+
+    private class CollectionWriter extends ElementWriter {
+        private CollectionWriter(Class<?> type) {
+            super(type, true);
+        }
+
+        @Override
+        protected void writeContent(Object value, Walk walk) {
+            if (value instanceof SortedSet<?>) {
+                writeComparator(((SortedSet<?>) value).comparator(), walk);
+            }
+
+            for (Object element : (Collection<?>) value) {
+                walk.write(element);
+            }
+        }
+    }
+
+    private class MapWriter extends ElementWriter {
+        private MapWriter(Class<?> type) {
+            super(type, true);
+        }
+
+        @Override
+        protected void writeContent(Object value, Walk walk) {
+            if (value instanceof SortedMap<?, ?>) {
+                writeComparator(((SortedMap<?, ?>) value).comparator(), walk);
+            }
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                walk.key.append("<entry>");
+                walk.write(entry.getKey());
+                walk.write(entry.getValue());
+                walk.key.append("</entry>");
+            }
+        }
+    }
+
+    private void writeComparator(Object comparator, Walk walk) {
+        if (comparator != null) {
+            walk.key.append("<comparator>");
+            walk.write(comparator);
+            walk.key.append("</comparator>");
+        }
+    }
+
+    private class FieldsWriter extends ElementWriter {
+        private final Field[] fields;
+        private final String[] fieldElementNames;
+        private final String[] fieldEndElementNames;
+
+        /**
+         * @throws RuntimeException if the fields can't be made accessible
+         */
+        private FieldsWriter(Class<?> type) {
+            super(type, true);
+
+            List<Field> fieldList = new ArrayList<Field>();
+            Set<String> fieldNames = new HashSet<String>();
+            List<String> elementNames = new ArrayList<String>();
+            List<String> endElementNames = new ArrayList<String>();
+
+            // subclass fields first, so hidden superclass fields are the ones qualified
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+
+                    field.setAccessible(true);
+                    fieldList.add(field);
+
+                    String elementName = SimpleKeys.toElementName(field.getName());
+                    endElementNames.add(elementName);
+                    if (fieldNames.add(field.getName())) {
+                        elementNames.add(elementName);
+                    } else {
+                        elementNames.add(elementName + " defined-in=\""
+                                    + SimpleKeys.toElementName(current.getName()) + "\"");
+                    }
+                }
+            }
+
+            this.fields = fieldList.toArray(new Field[fieldList.size()]);
+            this.fieldElementNames = elementNames.toArray(new String[elementNames.size()]);
+            this.fieldEndElementNames = endElementNames.toArray(new String[endElementNames.size()]);
+        }
+
+        @Override
+        protected void writeContent(Object value, Walk walk) {
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    Object fieldValue = fields[i].get(value);
+
+                    // like XStream, null fields are left out
+                    if (fieldValue != null) {
+                        walk.key.append('<').append(fieldElementNames[i]).append('>');
+                        writeField(fields[i], fieldValue, walk);
+                        walk.key.append("</").append(fieldEndElementNames[i]).append('>');
+                    }
+                }
+            } catch (IllegalAccessException exception) {
+                throw new RuntimeException("field was made accessible, so this should never happen", exception);
+            }
+        }
+
+        private void writeField(Field field, Object fieldValue, Walk walk) {
+            if (field.getType().isPrimitive()) {
+                // the field's type already says what it is, so just the value
+                if (field.getType() == char.class) {
+                    SimpleKeys.appendEscaped(walk.key, fieldValue.toString());
+                } else {
+                    walk.key.append(fieldValue);
+                }
+            } else {
+                walk.write(fieldValue);
+            }
+        }
+    }
+
+    private class XStreamWriter implements ValueWriter {
+        public void write(Object value, Walk walk) {
+            if (walk.writeReferenceIfSeen(value)) {
+                return;
+            }
+
+            CharArrayWriter charArrayWriter = new CharArrayWriter();
+            xstream.marshal(value, new CompactWriter(charArrayWriter));
+            walk.key.append(charArrayWriter.toString());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.keys;
+
+/**
+ * Builds the keys for one {@link com.googlecode.easiest.cache.ever.CacheReturnValue @CacheReturnValue}
+ * method, generated at compile time by {@link com.googlecode.easiest.cache.ever.processor.CacheKeyProcessor}.
+ * Generated builders know the parameter types up front, so unlike
+ * {@link DefaultKeyGenerator} they never use reflection.
+ * 
+ * @author Brad Cupit
+ */
+public interface GeneratedKeyBuilder {
+    /**
+     * the same key {@link KeyGenerator#generateMethodKey(com.googlecode.easiest.cache.ever.MethodCall)} returns
+     */
+    String methodKey();
+
+    /**
+     * same contract as {@link KeyGenerator#generateParameterKey(java.util.List)}
+     */
+    String parameterKey(Object[] arguments);
+}
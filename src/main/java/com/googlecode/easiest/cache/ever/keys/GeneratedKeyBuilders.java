@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.keys;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds the compile-time generated {@link GeneratedKeyBuilder} for a cached method,
+ * if there is one. The generated class is only looked up once per class.
+ * 
+ * @author Brad Cupit
+ */
+public class GeneratedKeyBuilders {
+    private static final GeneratedKeys NONE_GENERATED = new GeneratedKeys() {
+        public GeneratedKeyBuilder builderFor(String methodKey) {
+            return null;
+        }
+    };
+
+    private final ConcurrentMap<Class<?>, GeneratedKeys> generatedKeysByClass = new ConcurrentHashMap<Class<?>, GeneratedKeys>();
+
+    /**
+     * @param targetClass the concrete class whose method is being cached
+     * @param methodKey   the method key, as generated by {@link KeyGenerator#generateMethodKey(com.googlecode.easiest.cache.ever.MethodCall)}
+     * @return the generated builder, or null if the method should fall back to a runtime {@link KeyGenerator}
+     */
+    public GeneratedKeyBuilder find(Class<?> targetClass, String methodKey) {
+        GeneratedKeys generatedKeys = generatedKeysByClass.get(targetClass);
+
+        if (generatedKeys == null) {
+            generatedKeys = load(targetClass);
+            generatedKeysByClass.putIfAbsent(targetClass, generatedKeys);
+        }
+
+        return generatedKeys.builderFor(methodKey);
+    }
+
+    private GeneratedKeys load(Class<?> targetClass) {
+        final String generatedClassName = targetClass.getName() + GeneratedKeys.CLASS_NAME_SUFFIX;
+
+        try {
+            Class<?> generatedClass = Class.forName(generatedClassName, true, targetClass.getClassLoader());
+            return (GeneratedKeys) generatedClass.newInstance();
+        } catch (ClassNotFoundException exception) {
+            // the annotation processor didn't run on this class. Not a problem
+            return NONE_GENERATED;
+        } catch (InstantiationException exception) {
+            throw new RuntimeException("unable to instantiate generated class " + generatedClassName, exception);
+        } catch (IllegalAccessException exception) {
+            throw new RuntimeException("unable to instantiate generated class " + generatedClassName, exception);
+        }
+    }
+}
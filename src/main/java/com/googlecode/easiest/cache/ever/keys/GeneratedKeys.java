@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.keys;
+
+/**
+ * Implemented by the class {@link com.googlecode.easiest.cache.ever.processor.CacheKeyProcessor}
+ * generates for each class with cached methods. The generated class is named
+ * after the cached class plus {@link #CLASS_NAME_SUFFIX}, in the same package.
+ * 
+ * @author Brad Cupit
+ */
+public interface GeneratedKeys {
+    String CLASS_NAME_SUFFIX = "_CacheKeys";
+
+    /**
+     * @return the builder for the given method key, or null if no builder was generated for that
+     *         method (for example, it has parameters which can't be turned into keys without reflection)
+     */
+    GeneratedKeyBuilder builderFor(String methodKey);
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.keys;
+
+/**
+ * Writes parameter keys for simple types (primitives, their wrappers,
+ * {@link String}s and enums) without any reflection. Used by the key
+ * builders generated by {@link com.googlecode.easiest.cache.ever.processor.CacheKeyProcessor}.
+ * 
+ * The output is exactly what {@link DefaultKeyGenerator} produces
+ * with XStream for the same values, so both produce the same keys:
+ * <code>
+ * 	&lt;string&gt;hi&lt;/string&gt;
+ * 	&lt;object-array&gt;&lt;string&gt;hi&lt;/string&gt;&lt;int&gt;42&lt;/int&gt;&lt;/object-array&gt;
+ * </code>
+ * 
+ * @author Brad Cupit
+ */
+public class SimpleKeys {
+    private static final String NULL = "<null/>";
+    private static final String ARRAY_START = "<object-array>";
+    private static final String ARRAY_END = "</object-array>";
+
+    private SimpleKeys() {
+    }
+
+    public static void startArray(StringBuilder key) {
+        key.append(ARRAY_START);
+    }
+
+    public static void endArray(StringBuilder key) {
+        key.append(ARRAY_END);
+    }
+
+    public static void appendString(StringBuilder key, String value) {
+        if (value == null) {
+            key.append(NULL);
+        } else {
+            key.append("<string>");
+            appendEscaped(key, value);
+            key.append("</string>");
+        }
+    }
+
+    public static void appendInteger(StringBuilder key, Integer value) {
+        appendSingleValue(key, "int", value);
+    }
+
+    public static void appendLong(StringBuilder key, Long value) {
+        appendSingleValue(key, "long", value);
+    }
+
+    public static void appendShort(StringBuilder key, Short value) {
+        appendSingleValue(key, "short", value);
+    }
+
+    public static void appendByte(StringBuilder key, Byte value) {
+        appendSingleValue(key, "byte", value);
+    }
+
+    public static void appendBoolean(StringBuilder key, Boolean value) {
+        appendSingleValue(key, "boolean", value);
+    }
+
+    public static void appendFloat(StringBuilder key, Float value) {
+        appendSingleValue(key, "float", value);
+    }
+
+    public static void appendDouble(StringBuilder key, Double value) {
+        appendSingleValue(key, "double", value);
+    }
+
+    public static void appendCharacter(StringBuilder key, Character value) {
+        if (value == null) {
+            key.append(NULL);
+        } else {
+            key.append("<char>");
+            // XStream writes the null character as an empty element
+            if (value.charValue() != '\0') {
+                appendEscaped(key, value.charValue());
+            }
+            key.append("</char>");
+        }
+    }
+
+    /**
+     * @param elementName the enum's class name, already converted with {@link #toElementName(String)}
+     */
+    public static void appendEnum(StringBuilder key, String elementName, Enum<?> value) {
+        if (value == null) {
+            key.append(NULL);
+        } else {
+            key.append('<').append(elementName).append('>');
+            appendEscaped(key, value.name());
+            key.append("</").append(elementName).append('>');
+        }
+    }
+
+    /**
+     * converts a binary class name (com.foo.Outer$Inner) to the
+     * element name XStream uses for it (com.foo.Outer_-Inner)
+     */
+    public static String toElementName(String className) {
+        StringBuilder elementName = new StringBuilder(className.length() + 8);
+
+        for (int i = 0; i < className.length(); i++) {
+            char c = className.charAt(i);
+
+            if (c == '$') {
+                elementName.append("_-");
+            } else if (c == '_') {
+                elementName.append("__");
+            } else {
+                elementName.append(c);
+            }
+        }
+
+        return elementName.toString();
+    }
+
+    /**
+     * escapes text the same way XStream's CompactWriter does
+     */
+    public static void appendEscaped(StringBuilder key, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            appendEscaped(key, text.charAt(i));
+        }
+    }
+
+    private static void appendEscaped(StringBuilder key, char c) {
+        switch (c) {
+        case '\0':
+            key.append("&#x0;");
+            break;
+        case '&':
+            key.append("&amp;");
+            break;
+        case '<':
+            key.append("&lt;");
+            break;
+        case '>':
+            key.append("&gt;");
+            break;
+        case '"':
+            key.append("&quot;");
+            break;
+        case '\'':
+            key.append("&apos;");
+            break;
+        case '\r':
+            key.append("&#xd;");
+            break;
+        default:
+            key.append(c);
+        }
+    }
+
+    private static void appendSingleValue(StringBuilder key, String elementName, Object value) {
+        if (value == null) {
+            key.append(NULL);
+        } else {
+            key.append('<').append(elementName).append('>').append(value).append("</").append(elementName).append('>');
+        }
+    }
+}
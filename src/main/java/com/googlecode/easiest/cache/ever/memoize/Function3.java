@@ -0,0 +1,26 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.memoize;
+
+/**
+ * a function with three arguments, which can be memoized with
+ * {@link Memoizer#memoize(String, com.googlecode.easiest.cache.ever.CacheConfig, Function3)}
+ * 
+ * @author Brad Cupit
+ */
+public interface Function3<A, B, C, R> {
+    R apply(A a, B b, C c);
+}
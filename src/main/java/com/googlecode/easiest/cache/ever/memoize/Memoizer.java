@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.memoize;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.googlecode.easiest.cache.ever.BackgroundPopulator;
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CachingInvoker;
+import com.googlecode.easiest.cache.ever.CachingInvoker.Invocation;
+import com.googlecode.easiest.cache.ever.caches.CacheService;
+import com.googlecode.easiest.cache.ever.keys.KeyGenerator;
+import com.googlecode.easiest.cache.ever.trace.CacheMonitor;
+import com.googlecode.easiest.cache.ever.trace.TraceRecorder;
+
+/**
+ * Programmatic alternative to {@link com.googlecode.easiest.cache.ever.CacheReturnValue @CacheReturnValue}.
+ * Wraps a function in a memoized function with the same signature, backed by
+ * the same {@link CacheService} and {@link KeyGenerator} the aspect uses:
+ * <code>
+ * 	Function1&lt;String, User&gt; lookupUser = memoizer.memoize("users", config, new Function1&lt;String, User&gt;() {
+ * 	    public User apply(String userId) { ... }
+ * 	});
+ * </code>
+ * 
+ * No AOP is involved, so this works where proxies can't (a method calling
+ * itself, code Spring doesn't manage), and costs little beyond the cache
+ * lookup itself: the cache is created once by {@link #memoize}, and keys are built
+ * straight from the arguments, without the join point and reflection the aspect
+ * goes through (the arguments are still handed to the {@link KeyGenerator} as a List).
+ * 
+ * Each cacheId must be unique, the same as the method keys generated for the aspect.
+ * 
+ * {@link CacheConfig#isUnmodifiableCollections()} isn't supported: the aspect only
+ * hands out an unmodifiable view where the method's return type is a List, Set,
+ * Map or Collection, and a function's R can't be checked once it's erased.
+ * 
+ * @author Brad Cupit
+ */
+public class Memoizer {
+    private CacheService cacheService;
+    private KeyGenerator keyGenerator;
+    private CacheMonitor cacheMonitor;
+    private final CachingInvoker cachingInvoker = new CachingInvoker();
+
+    public void setCacheService(CacheService cacheService) {
+        this.cacheService = cacheService;
+        this.cachingInvoker.setCacheService(cacheService);
+    }
+
+    public void setKeyGenerator(KeyGenerator keyGenerator) {
+        this.keyGenerator = keyGenerator;
+    }
+
+    /**
+     * optional, see {@link com.googlecode.easiest.cache.ever.CacheAspect#setTraceRecorder(TraceRecorder)}
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.cachingInvoker.setTraceRecorder(traceRecorder);
+    }
+
+    /**
+     * optional, see {@link com.googlecode.easiest.cache.ever.CacheAspect#setCacheMonitor(CacheMonitor)}
+     */
+    public void setCacheMonitor(CacheMonitor cacheMonitor) {
+        this.cacheMonitor = cacheMonitor;
+        this.cachingInvoker.setCacheMonitor(cacheMonitor);
+    }
+
+    /**
+     * optional, see {@link com.googlecode.easiest.cache.ever.CacheAspect#setBackgroundPopulator(BackgroundPopulator)}
+     */
+    public void setBackgroundPopulator(BackgroundPopulator backgroundPopulator) {
+        this.cachingInvoker.setBackgroundPopulator(backgroundPopulator);
+    }
+
+    /**
+     * optional, see {@link com.googlecode.easiest.cache.ever.CacheAspect#setLoadWaitMillis(long)}
+     */
+    public void setLoadWaitMillis(long loadWaitMillis) {
+        this.cachingInvoker.setLoadWaitMillis(loadWaitMillis);
+    }
+
+    /**
+     * memoizes a function with no arguments. Like zero parameter methods
+     * with the aspect, only one value is ever cached, regardless of the maxSize.
+     */
+    public <R> Function0<R> memoize(final String cacheId, CacheConfig cacheConfig, final Function0<R> function) {
+        cacheService.createCacheIfNecessary(cacheId, onlyOneElement(checked(cacheConfig)));
+        final String noArgumentsKey = keyGenerator.generateParameterKey(Collections.emptyList());
+
+        return new Function0<R>() {
+            public R apply() {
+                return invoke(cacheId, noArgumentsKey, new Invocation() {
+                    public Object proceed() throws Throwable {
+                        return function.apply();
+                    }
+                });
+            }
+        };
+    }
+
+    public <A, R> Function1<A, R> memoize(final String cacheId, CacheConfig cacheConfig, final Function1<A, R> function) {
+        cacheService.createCacheIfNecessary(cacheId, checked(cacheConfig));
+
+        return new Function1<A, R>() {
+            public R apply(final A a) {
+                return invoke(cacheId, keyFor(cacheId, Collections.singletonList(a)), new Invocation() {
+                    public Object proceed() throws Throwable {
+                        return function.apply(a);
+                    }
+                });
+            }
+        };
+    }
+
+    public <A, B, R> Function2<A, B, R> memoize(final String cacheId, CacheConfig cacheConfig,
+                final Function2<A, B, R> function) {
+        cacheService.createCacheIfNecessary(cacheId, checked(cacheConfig));
+
+        return new Function2<A, B, R>() {
+            public R apply(final A a, final B b) {
+                return invoke(cacheId, keyFor(cacheId, Arrays.asList(a, b)), new Invocation() {
+                    public Object proceed() throws Throwable {
+                        return function.apply(a, b);
+                    }
+                });
+            }
+        };
+    }
+
+    public <A, B, C, R> Function3<A, B, C, R> memoize(final String cacheId, CacheConfig cacheConfig,
+                final Function3<A, B, C, R> function) {
+        cacheService.createCacheIfNecessary(cacheId, checked(cacheConfig));
+
+        return new Function3<A, B, C, R>() {
+            public R apply(final A a, final B b, final C c) {
+                return invoke(cacheId, keyFor(cacheId, Arrays.asList(a, b, c)), new Invocation() {
+                    public Object proceed() throws Throwable {
+                        return function.apply(a, b, c);
+                    }
+                });
+            }
+        };
+    }
+
+    private String keyFor(String cacheId, List<?> arguments) {
+        if (cacheMonitor == null) {
+            return keyGenerator.generateParameterKey(arguments);
+        }
+
+        final long start = System.nanoTime();
+        final String key = keyGenerator.generateParameterKey(arguments);
+        cacheMonitor.keyGenerated(cacheId, System.nanoTime() - start, key == null ? 0 : key.length());
+
+        return key;
+    }
+
+    /**
+     * the wrapped functions can't throw checked exceptions, so
+     * only unchecked exceptions ever come out of the invoker
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R invoke(String cacheId, String key, Invocation invocation) {
+        try {
+            return (R) cachingInvoker.invoke(cacheId, key, invocation);
+        } catch (RuntimeException exception) {
+            throw exception;
+        } catch (Error error) {
+            throw error;
+        } catch (Throwable throwable) {
+            throw new UndeclaredThrowableException(throwable);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the config asks for unmodifiable collections
+     */
+    private CacheConfig checked(CacheConfig cacheConfig) {
+        if (cacheConfig.isUnmodifiableCollections()) {
+            throw new IllegalArgumentException("memoized functions can't use unmodifiable collections: "
+                        + "the return type isn't known, so a view could break the caller's cast");
+        }
+
+        return cacheConfig;
+    }
+
+    private CacheConfig onlyOneElement(CacheConfig cacheConfig) {
+        return new CacheConfig(1, cacheConfig.getExpirationTime(), cacheConfig.getUnit(),
+                    cacheConfig.getNearCacheMaxSize(), cacheConfig.getNearCacheExpirationMillis(),
+                    cacheConfig.getCompressAboveBytes(), cacheConfig.isUnmodifiableCollections());
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import com.googlecode.easiest.cache.ever.CacheIgnore;
+import com.googlecode.easiest.cache.ever.CacheKey;
+import com.googlecode.easiest.cache.ever.CacheReturnValue;
+import com.googlecode.easiest.cache.ever.keys.GeneratedKeys;
+import com.googlecode.easiest.cache.ever.keys.SimpleKeys;
+
+/**
+ * Annotation processor which generates a key builder for every
+ * {@link CacheReturnValue @CacheReturnValue} method at compile time, so
+ * the aspect doesn't need to discover the parameters' structure with
+ * reflection on every call (and XStream doesn't need to introspect
+ * those classes at startup).
+ * 
+ * For each class with cached methods, a class named after it plus
+ * {@link GeneratedKeys#CLASS_NAME_SUFFIX} is generated in the same package.
+ * It holds the method key of every cached method as a constant, and a
+ * builder for the parameter key. Builders are only generated for methods
+ * whose key parameters (see {@link CacheKey @CacheKey} and
+ * {@link CacheIgnore @CacheIgnore}) are all primitives, wrappers,
+ * {@link String}s or enums, and which don't use a {@link CacheKey#value()}
+ * property path; every other method falls back to the runtime
+ * {@link com.googlecode.easiest.cache.ever.keys.KeyGenerator}.
+ * 
+ * To enable, put easiest-cache-ever on the compiler's processor path
+ * (it is picked up automatically from the classpath by javac).
+ * 
+ * @author Brad Cupit
+ */
+@SupportedAnnotationTypes("com.googlecode.easiest.cache.ever.CacheReturnValue")
+public class CacheKeyProcessor extends AbstractProcessor {
+    private static final String KEYS_PACKAGE = "com.googlecode.easiest.cache.ever.keys.";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        Map<TypeElement, List<ExecutableElement>> cachedMethodsByClass = new LinkedHashMap<TypeElement, List<ExecutableElement>>();
+
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(CacheReturnValue.class)) {
+            if (element.getKind() == ElementKind.METHOD) {
+                addIfCacheable(cachedMethodsByClass, (ExecutableElement) element);
+            } else if (element.getKind() == ElementKind.CLASS) {
+                // mirrors CacheAspect's pointcut for class annotations: public methods with a return value
+                for (ExecutableElement method : ElementFilter.methodsIn(element.getEnclosedElements())) {
+                    if (method.getModifiers().contains(Modifier.PUBLIC)
+                                && method.getAnnotation(CacheReturnValue.class) == null) {
+                        addIfCacheable(cachedMethodsByClass, method);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : cachedMethodsByClass.entrySet()) {
+            generate(entry.getKey(), entry.getValue());
+        }
+
+        // other processors are free to look at @CacheReturnValue too
+        return false;
+    }
+
+    private void addIfCacheable(Map<TypeElement, List<ExecutableElement>> cachedMethodsByClass, ExecutableElement method) {
+        TypeElement declaringClass = (TypeElement) method.getEnclosingElement();
+
+        boolean concreteClass = declaringClass.getKind() == ElementKind.CLASS
+                    && !declaringClass.getModifiers().contains(Modifier.ABSTRACT);
+        boolean instanceMethodWithReturnValue = !method.getModifiers().contains(Modifier.STATIC)
+                    && method.getReturnType().getKind() != TypeKind.VOID;
+
+        if (!concreteClass || !instanceMethodWithReturnValue || !allParametersSimple(method)) {
+            return;
+        }
+
+        List<ExecutableElement> cachedMethods = cachedMethodsByClass.get(declaringClass);
+
+        if (cachedMethods == null) {
+            cachedMethods = new ArrayList<ExecutableElement>();
+            cachedMethodsByClass.put(declaringClass, cachedMethods);
+        }
+
+        cachedMethods.add(method);
+    }
+
+    private boolean allParametersSimple(ExecutableElement method) {
+        List<Integer> keyParameterIndexes = keyParameterIndexes(method);
+
+        if (keyParameterIndexes == null) {
+            return false;
+        }
+
+        for (int index : keyParameterIndexes) {
+            if (appendMethodFor(method.getParameters().get(index).asType()) == null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * mirrors {@link com.googlecode.easiest.cache.ever.KeyParameters}
+     * 
+     * @return the indexes of the parameters in the key, or null if a
+     *         property path is used (which is left to the runtime)
+     */
+    private List<Integer> keyParameterIndexes(ExecutableElement method) {
+        List<Integer> keyIndexes = new ArrayList<Integer>();
+        List<Integer> notIgnoredIndexes = new ArrayList<Integer>();
+        List<? extends VariableElement> parameters = method.getParameters();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            CacheKey cacheKey = parameters.get(i).getAnnotation(CacheKey.class);
+
+            if (cacheKey != null) {
+                if (cacheKey.value().length() > 0) {
+                    return null;
+                }
+
+                keyIndexes.add(i);
+            }
+
+            if (parameters.get(i).getAnnotation(CacheIgnore.class) == null) {
+                notIgnoredIndexes.add(i);
+            }
+        }
+
+        return keyIndexes.isEmpty() ? notIgnoredIndexes : keyIndexes;
+    }
+
+    private void generate(TypeElement cachedClass, List<ExecutableElement> cachedMethods) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(cachedClass).toString();
+        String packageName = processingEnv.getElementUtils().getPackageOf(cachedClass).getQualifiedName().toString();
+        String generatedSimpleName = binaryName.substring(packageName.length() == 0 ? 0 : packageName.length() + 1)
+                    + GeneratedKeys.CLASS_NAME_SUFFIX;
+        String generatedName = packageName.length() == 0 ? generatedSimpleName : packageName + "." + generatedSimpleName;
+
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(generatedName, cachedClass);
+            PrintWriter out = new PrintWriter(sourceFile.openWriter());
+
+            try {
+                writeClass(out, packageName, generatedSimpleName, binaryName, cachedMethods);
+            } finally {
+                out.close();
+            }
+        } catch (IOException exception) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "unable to generate cache keys: " + exception.getMessage(), cachedClass);
+        }
+    }
+
+    private void writeClass(PrintWriter out, String packageName, String generatedSimpleName, String binaryName,
+                List<ExecutableElement> cachedMethods) {
+        if (packageName.length() > 0) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+
+        out.println("/**");
+        out.println(" * generated by " + CacheKeyProcessor.class.getName() + " for " + binaryName + ". Do not edit.");
+        out.println(" */");
+        out.println("public final class " + generatedSimpleName + " implements " + KEYS_PACKAGE + "GeneratedKeys {");
+
+        for (int i = 0; i < cachedMethods.size(); i++) {
+            out.println("    public static final String " + constantName(cachedMethods.get(i), i) + " = \""
+                        + escapeJava(methodKey(binaryName, cachedMethods.get(i))) + "\";");
+        }
+
+        out.println();
+        out.println("    private final java.util.Map<String, " + KEYS_PACKAGE + "GeneratedKeyBuilder> builders");
+        out.println("            = new java.util.HashMap<String, " + KEYS_PACKAGE + "GeneratedKeyBuilder>();");
+        out.println();
+        out.println("    public " + generatedSimpleName + "() {");
+
+        for (int i = 0; i < cachedMethods.size(); i++) {
+            writeBuilder(out, constantName(cachedMethods.get(i), i), cachedMethods.get(i));
+        }
+
+        out.println("    }");
+        out.println();
+        out.println("    public " + KEYS_PACKAGE + "GeneratedKeyBuilder builderFor(String methodKey) {");
+        out.println("        return builders.get(methodKey);");
+        out.println("    }");
+        out.println("}");
+    }
+
+    private void writeBuilder(PrintWriter out, String constantName, ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        List<Integer> keyParameterIndexes = keyParameterIndexes(method);
+
+        out.println("        builders.put(" + constantName + ", new " + KEYS_PACKAGE + "GeneratedKeyBuilder() {");
+        out.println("            public String methodKey() {");
+        out.println("                return " + constantName + ";");
+        out.println("            }");
+        out.println();
+        out.println("            public String parameterKey(Object[] arguments) {");
+
+        if (keyParameterIndexes.isEmpty()) {
+            out.println("                return null;");
+        } else {
+            out.println("                StringBuilder key = new StringBuilder();");
+
+            boolean array = keyParameterIndexes.size() > 1;
+            if (array) {
+                out.println("                " + KEYS_PACKAGE + "SimpleKeys.startArray(key);");
+            }
+
+            for (int index : keyParameterIndexes) {
+                out.println("                "
+                            + appendStatement(parameters.get(index).asType(), "arguments[" + index + "]"));
+            }
+
+            if (array) {
+                out.println("                " + KEYS_PACKAGE + "SimpleKeys.endArray(key);");
+            }
+
+            out.println("                return key.toString();");
+        }
+
+        out.println("            }");
+        out.println("        });");
+    }
+
+    private String appendStatement(TypeMirror type, String argument) {
+        String simpleKeys = KEYS_PACKAGE + "SimpleKeys.";
+
+        if (isEnum(type)) {
+            String enumName = processingEnv.getElementUtils().getBinaryName(
+                        (TypeElement) ((DeclaredType) type).asElement()).toString();
+            return simpleKeys + "appendEnum(key, \"" + escapeJava(SimpleKeys.toElementName(enumName)) + "\", (Enum<?>) "
+                        + argument + ");";
+        } else {
+            String[] appendMethod = appendMethodFor(type);
+            return simpleKeys + appendMethod[0] + "(key, (" + appendMethod[1] + ") " + argument + ");";
+        }
+    }
+
+    /**
+     * @return the {@link SimpleKeys} method name and the argument's (boxed) type,
+     *         or null if the type is not simple
+     */
+    private String[] appendMethodFor(TypeMirror type) {
+        switch (type.getKind()) {
+        case INT:
+            return new String[] { "appendInteger", "java.lang.Integer" };
+        case LONG:
+            return new String[] { "appendLong", "java.lang.Long" };
+        case SHORT:
+            return new String[] { "appendShort", "java.lang.Short" };
+        case BYTE:
+            return new String[] { "appendByte", "java.lang.Byte" };
+        case BOOLEAN:
+            return new String[] { "appendBoolean", "java.lang.Boolean" };
+        case FLOAT:
+            return new String[] { "appendFloat", "java.lang.Float" };
+        case DOUBLE:
+            return new String[] { "appendDouble", "java.lang.Double" };
+        case CHAR:
+            return new String[] { "appendCharacter", "java.lang.Character" };
+        case DECLARED:
+            if (isEnum(type)) {
+                return new String[] { "appendEnum", "java.lang.Enum<?>" };
+            }
+
+            String className = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+            String[] boxed = { "java.lang.Integer", "java.lang.Long", "java.lang.Short", "java.lang.Byte",
+                        "java.lang.Boolean", "java.lang.Float", "java.lang.Double", "java.lang.Character",
+                        "java.lang.String" };
+            String[] appendMethods = { "appendInteger", "appendLong", "appendShort", "appendByte", "appendBoolean",
+                        "appendFloat", "appendDouble", "appendCharacter", "appendString" };
+
+            for (int i = 0; i < boxed.length; i++) {
+                if (boxed[i].equals(className)) {
+                    return new String[] { appendMethods[i], boxed[i] };
+                }
+            }
+
+            return null;
+        default:
+            return null;
+        }
+    }
+
+    private boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    /**
+     * same format as {@link com.googlecode.easiest.cache.ever.MethodCall#getFullMethodNameWithParameters()}
+     */
+    private String methodKey(String binaryClassName, ExecutableElement method) {
+        StringBuilder methodKey = new StringBuilder(binaryClassName).append('.').append(method.getSimpleName());
+        List<? extends VariableElement> parameters = method.getParameters();
+
+        if (!parameters.isEmpty()) {
+            methodKey.append('(');
+
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    methodKey.append(',');
+                }
+
+                methodKey.append(runtimeClassName(parameters.get(i).asType()));
+            }
+
+            methodKey.append(')');
+        }
+
+        return methodKey.toString();
+    }
+
+    /**
+     * the name {@link Class#getName()} returns for the type's erasure. Type variables
+     * erase to their bound, and arrays are named by their descriptor ("[I", "[Ljava.lang.String;")
+     */
+    private String runtimeClassName(TypeMirror type) {
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+
+        if (erasure.getKind().isPrimitive()) {
+            return erasure.toString();
+        } else if (erasure.getKind() == TypeKind.ARRAY) {
+            return "[" + descriptor(((ArrayType) erasure).getComponentType());
+        } else {
+            return binaryName(erasure);
+        }
+    }
+
+    private String descriptor(TypeMirror type) {
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+
+        switch (erasure.getKind()) {
+        case BOOLEAN:
+            return "Z";
+        case BYTE:
+            return "B";
+        case CHAR:
+            return "C";
+        case SHORT:
+            return "S";
+        case INT:
+            return "I";
+        case LONG:
+            return "J";
+        case FLOAT:
+            return "F";
+        case DOUBLE:
+            return "D";
+        case ARRAY:
+            return "[" + descriptor(((ArrayType) erasure).getComponentType());
+        default:
+            return "L" + binaryName(erasure) + ";";
+        }
+    }
+
+    private String binaryName(TypeMirror erasure) {
+        return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) erasure).asElement())
+                    .toString();
+    }
+
+    private String constantName(ExecutableElement method, int index) {
+        StringBuilder constantName = new StringBuilder();
+        String methodName = method.getSimpleName().toString();
+
+        for (int i = 0; i < methodName.length(); i++) {
+            char c = methodName.charAt(i);
+
+            if (Character.isUpperCase(c) && i > 0) {
+                constantName.append('_');
+            }
+
+            constantName.append(Character.toUpperCase(c));
+        }
+
+        // suffix with the index so overloaded methods get unique constants
+        return constantName.append('_').append(index).toString();
+    }
+
+    private String escapeJava(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.spring;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import com.googlecode.easiest.cache.ever.CacheAspect;
+import com.googlecode.easiest.cache.ever.CacheReturnValue;
+
+/**
+ * Prepares every cached method of every Spring bean when the application
+ * context starts (see {@link CacheAspect#prepare(Class)}), so the first
+ * calls after a deploy don't pay for creating caches and looking at
+ * parameter and return types. Classes are prepared in parallel, and
+ * startup waits until they're done.
+ * 
+ * Beans are collected as Spring creates them, and prepared once the
+ * context is refreshed. A class which fails to prepare is logged and
+ * skipped; it will be handled on its first call, as usual.
+ * 
+ * @author Brad Cupit
+ */
+public class CacheWarmer implements BeanPostProcessor, ApplicationListener<ContextRefreshedEvent> {
+    private static final Logger logger = Logger.getLogger(CacheWarmer.class.getName());
+
+    private CacheAspect cacheAspect;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final Set<Class<?>> pendingClasses = new LinkedHashSet<Class<?>>();
+    private final Lock pendingClassesLock = new ReentrantLock();
+
+    public void setCacheAspect(CacheAspect cacheAspect) {
+        this.cacheAspect = cacheAspect;
+    }
+
+    /**
+     * number of threads preparing classes at startup. Defaults
+     * to the number of processors.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (hasCachedMethods(bean.getClass())) {
+            pendingClassesLock.lock();
+            try {
+                pendingClasses.add(bean.getClass());
+            } finally {
+                pendingClassesLock.unlock();
+            }
+        }
+
+        return bean;
+    }
+
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        warm();
+    }
+
+    /**
+     * prepares every class collected since the last call, and waits until they're done
+     */
+    public void warm() {
+        final List<Class<?>> classes;
+        pendingClassesLock.lock();
+        try {
+            classes = new ArrayList<Class<?>>(pendingClasses);
+            pendingClasses.clear();
+        } finally {
+            pendingClassesLock.unlock();
+        }
+
+        if (classes.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, classes.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+
+            for (final Class<?> targetClass : classes) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        cacheAspect.prepare(targetClass);
+                        return null;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException exception) {
+                    logger.log(Level.WARNING, "unable to prepare caches of " + classes.get(i).getName()
+                                + ", they'll be prepared on first use", exception.getCause());
+                }
+            }
+        } catch (InterruptedException exception) {
+            // startup is being cancelled, the rest will be prepared on first use
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean hasCachedMethods(Class<?> beanClass) {
+        for (Method method : beanClass.getMethods()) {
+            if (method.isAnnotationPresent(CacheReturnValue.class)
+                        || method.getDeclaringClass().isAnnotationPresent(CacheReturnValue.class)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
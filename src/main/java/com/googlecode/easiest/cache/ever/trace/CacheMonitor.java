@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+/**
+ * Told about each cache operation as it happens, with how long it took and
+ * roughly how big its value was, for instance to turn them into Java Flight
+ * Recorder events (see the README) or metrics.
+ * 
+ * Set on {@link com.googlecode.easiest.cache.ever.CacheAspect} (hits, misses,
+ * loads and key generation) and on
+ * {@link com.googlecode.easiest.cache.ever.caches.DefaultCacheService}
+ * (clones, evictions and expiries). Without one, nothing is measured at all.
+ * 
+ * Called on the thread doing the operation, so implementations
+ * must be fast and thread safe, and should never block.
+ * 
+ * Sizes are estimates in bytes, see {@link com.googlecode.easiest.cache.ever.caches.EntrySizes}.
+ * 
+ * @author Brad Cupit
+ */
+public interface CacheMonitor {
+    /**
+     * the value was found in the cache
+     * 
+     * @param lookupNanos how long the lookup took
+     */
+    void hit(String cacheId, long lookupNanos);
+
+    /**
+     * the value wasn't found in the cache
+     * 
+     * @param lookupNanos how long the lookup took
+     */
+    void miss(String cacheId, long lookupNanos);
+
+    /**
+     * after a miss, the method was called to compute the value
+     * 
+     * @param loadNanos how long the method took
+     */
+    void load(String cacheId, long loadNanos, long valueBytes);
+
+    /**
+     * a parameter key was generated from a call's arguments
+     */
+    void keyGenerated(String cacheId, long nanos, int keyLength);
+
+    /**
+     * a value was copied into or out of the cache
+     */
+    void cloned(String cacheId, long nanos, long valueBytes);
+
+    /**
+     * a value was evicted to make room
+     */
+    void evicted(String cacheId, long valueBytes);
+
+    /**
+     * a value was found to have expired, and was removed
+     */
+    void expired(String cacheId, long valueBytes);
+}
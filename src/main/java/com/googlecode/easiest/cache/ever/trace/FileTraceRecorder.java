@@ -0,0 +1,232 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link TraceRecorder} which writes to a compact binary file (see
+ * {@link TraceFile} for the format). Calling threads only put the event
+ * in a {@link TraceRing}; a background thread writes the file. When the
+ * background thread can't keep up, events are dropped rather than
+ * slowing down the application, and the number dropped is written too.
+ * 
+ * Keys are recorded as a 64 bit hash, never as the key itself.
+ * 
+ * Enable it in the Spring config:
+ * <pre>
+ * 	&lt;property name="traceRecorder"&gt;
+ * 		&lt;bean class="com.googlecode.easiest.cache.ever.trace.FileTraceRecorder" destroy-method="close"&gt;
+ * 			&lt;constructor-arg value="/tmp/cache.trace"/&gt;
+ * 		&lt;/bean&gt;
+ * 	&lt;/property&gt;
+ * </pre>
+ * 
+ * @author Brad Cupit
+ */
+public class FileTraceRecorder implements TraceRecorder {
+    private static final Logger logger = Logger.getLogger(FileTraceRecorder.class.getName());
+    private static final int DEFAULT_RING_SIZE = 64 * 1024;
+    private static final long IDLE_WAIT_NANOS = 1000 * 1000;
+
+    private final TraceRing ring;
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+    private final ConcurrentMap<String, Integer> cacheIds = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<Integer, String> cacheIdNames = new ConcurrentHashMap<Integer, String>();
+    private final AtomicInteger nextCacheId = new AtomicInteger();
+    private final Thread writerThread;
+    private volatile boolean measureValueSizes;
+    private volatile boolean closed;
+
+    public FileTraceRecorder(File file) throws IOException {
+        this(file, DEFAULT_RING_SIZE);
+    }
+
+    public FileTraceRecorder(File file, int ringSize) throws IOException {
+        this.ring = new TraceRing(ringSize);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+
+        out.writeInt(TraceFile.MAGIC);
+        out.writeInt(TraceFile.VERSION);
+        out.writeLong(System.currentTimeMillis());
+
+        this.writerThread = new Thread("easiest-cache-ever trace writer") {
+            @Override
+            public void run() {
+                writeUntilClosed();
+            }
+        };
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * When true, the size of each loaded value is measured by serializing it
+     * (values which aren't {@link Serializable} are recorded as unknown). Only
+     * done on misses, but still costly for big values. Defaults to false.
+     */
+    public void setMeasureValueSizes(boolean measureValueSizes) {
+        this.measureValueSizes = measureValueSizes;
+    }
+
+    public void recordHit(String cacheId, String key) {
+        ring.offer(cacheIdFor(cacheId), TraceFile.hashKey(key), System.nanoTime() - startNanos, -1,
+                    TraceFile.UNKNOWN_SIZE);
+    }
+
+    public void recordMiss(String cacheId, String key, long loadNanos, Object value) {
+        int size = measureValueSizes ? sizeOf(value) : TraceFile.UNKNOWN_SIZE;
+        ring.offer(cacheIdFor(cacheId), TraceFile.hashKey(key), System.nanoTime() - startNanos, loadNanos, size);
+    }
+
+    /**
+     * writes out everything recorded so far and closes the file
+     */
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writerThread);
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        out.close();
+    }
+
+    private int cacheIdFor(String cacheId) {
+        final Integer id = cacheIds.get(cacheId);
+
+        if (id != null) {
+            return id;
+        }
+
+        // the name goes in first, so the writer finds it as soon as the id is used
+        final Integer newId = nextCacheId.getAndIncrement();
+        cacheIdNames.put(newId, cacheId);
+        final Integer existingId = cacheIds.putIfAbsent(cacheId, newId);
+
+        if (existingId != null) {
+            cacheIdNames.remove(newId);
+            return existingId;
+        }
+
+        return newId;
+    }
+
+    private void writeUntilClosed() {
+        final List<Boolean> written = new ArrayList<Boolean>();
+        long droppedWritten = 0;
+
+        TraceRing.Handler handler = new TraceRing.Handler() {
+            public void handle(int cacheId, long keyHash, long timestamp, long loadNanos, int size) throws IOException {
+                while (written.size() <= cacheId) {
+                    written.add(Boolean.FALSE);
+                }
+
+                if (!written.get(cacheId)) {
+                    out.writeByte(TraceFile.CACHE_ID);
+                    out.writeInt(cacheId);
+                    out.writeUTF(cacheIdNames.get(cacheId));
+                    written.set(cacheId, Boolean.TRUE);
+                }
+
+                out.writeByte(loadNanos < 0 ? TraceFile.HIT : TraceFile.MISS);
+                out.writeInt(cacheId);
+                out.writeLong(keyHash);
+                out.writeLong(timestamp);
+
+                if (loadNanos >= 0) {
+                    out.writeLong(loadNanos);
+                    out.writeInt(size);
+                }
+            }
+        };
+
+        try {
+            while (true) {
+                // read closed before draining, so nothing recorded before close() is missed
+                boolean closing = closed;
+                int count = ring.drain(handler);
+
+                long dropped = ring.getDropped();
+                if (dropped > droppedWritten) {
+                    out.writeByte(TraceFile.DROPPED);
+                    out.writeLong(dropped - droppedWritten);
+                    droppedWritten = dropped;
+                }
+
+                if (closing) {
+                    out.flush();
+                    return;
+                } else if (count == 0) {
+                    out.flush();
+                    LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                }
+            }
+        } catch (IOException exception) {
+            logger.log(Level.WARNING, "unable to write cache trace, recording stopped", exception);
+        }
+    }
+
+    private int sizeOf(Object value) {
+        if (!(value instanceof Serializable)) {
+            return TraceFile.UNKNOWN_SIZE;
+        }
+
+        CountingOutputStream counter = new CountingOutputStream();
+        try {
+            ObjectOutputStream objectOut = new ObjectOutputStream(counter);
+            objectOut.writeObject(value);
+            objectOut.close();
+        } catch (IOException exception) {
+            return TraceFile.UNKNOWN_SIZE;
+        }
+
+        return counter.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Eviction policies {@link TraceSimulator} can replay a trace against.
+ * Each creates a cache which only tracks key hashes, not values.
+ * 
+ * @author Brad Cupit
+ */
+public enum SimulatedPolicy {
+    /**
+     * least recently used, what {@link com.googlecode.easiest.cache.ever.caches.DefaultCacheService} uses
+     */
+    LRU {
+        @Override
+        public SimulatedCache create(int maxSize) {
+            return new LinkedHashMapCache(maxSize, true);
+        }
+    },
+
+    /**
+     * first in, first out
+     */
+    FIFO {
+        @Override
+        public SimulatedCache create(int maxSize) {
+            return new LinkedHashMapCache(maxSize, false);
+        }
+    },
+
+    /**
+     * least frequently used (ties broken by least recently used)
+     */
+    LFU {
+        @Override
+        public SimulatedCache create(int maxSize) {
+            return new LfuCache(maxSize);
+        }
+    },
+
+    /**
+     * LRU which only admits a new entry if it has been accessed more often
+     * (recently) than the entry it would evict. See "TinyLFU: A Highly
+     * Efficient Cache Admission Policy" by Einziger, Friedman and Manes.
+     */
+    TINY_LFU {
+        @Override
+        public SimulatedCache create(int maxSize) {
+            return new TinyLfuCache(maxSize);
+        }
+    };
+
+    public abstract SimulatedCache create(int maxSize);
+
+    /**
+     * a cache of key hashes
+     */
+    public interface SimulatedCache {
+        /**
+         * looks up the key, adding it if it's missing (and the policy admits it)
+         * 
+         * @return true for a hit
+         */
+        boolean access(long keyHash);
+    }
+
+    private static class LinkedHashMapCache extends LinkedHashMap<Long, Boolean> implements SimulatedCache {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        private LinkedHashMapCache(int maxSize, boolean accessOrder) {
+            super(16, 0.75f, accessOrder);
+            this.maxSize = maxSize;
+        }
+
+        public boolean access(long keyHash) {
+            if (get(keyHash) != null) {
+                return true;
+            }
+
+            put(keyHash, Boolean.TRUE);
+            return false;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class LfuCache implements SimulatedCache {
+        private final int maxSize;
+        private final Map<Long, Integer> frequencies = new HashMap<Long, Integer>();
+        private final Map<Integer, LinkedHashSet<Long>> keysByFrequency = new HashMap<Integer, LinkedHashSet<Long>>();
+        private int minFrequency;
+
+        private LfuCache(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public boolean access(long keyHash) {
+            Integer frequency = frequencies.get(keyHash);
+
+            if (frequency != null) {
+                keysWithFrequency(frequency).remove(keyHash);
+                if (frequency == minFrequency && keysWithFrequency(frequency).isEmpty()) {
+                    minFrequency++;
+                }
+
+                frequencies.put(keyHash, frequency + 1);
+                keysWithFrequency(frequency + 1).add(keyHash);
+                return true;
+            }
+
+            if (maxSize <= 0) {
+                return false;
+            }
+
+            if (frequencies.size() >= maxSize) {
+                Iterator<Long> leastFrequent = keysWithFrequency(minFrequency).iterator();
+                frequencies.remove(leastFrequent.next());
+                leastFrequent.remove();
+            }
+
+            frequencies.put(keyHash, 1);
+            keysWithFrequency(1).add(keyHash);
+            minFrequency = 1;
+            return false;
+        }
+
+        private LinkedHashSet<Long> keysWithFrequency(int frequency) {
+            LinkedHashSet<Long> keys = keysByFrequency.get(frequency);
+
+            if (keys == null) {
+                keys = new LinkedHashSet<Long>();
+                keysByFrequency.put(frequency, keys);
+            }
+
+            return keys;
+        }
+    }
+
+    private static class TinyLfuCache implements SimulatedCache {
+        private final int maxSize;
+        private final LinkedHashMap<Long, Boolean> entries = new LinkedHashMap<Long, Boolean>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+
+        private TinyLfuCache(int maxSize) {
+            this.maxSize = maxSize;
+            this.sketch = new FrequencySketch(maxSize);
+        }
+
+        public boolean access(long keyHash) {
+            sketch.increment(keyHash);
+
+            if (entries.get(keyHash) != null) {
+                return true;
+            }
+
+            if (entries.size() < maxSize) {
+                entries.put(keyHash, Boolean.TRUE);
+            } else if (maxSize > 0) {
+                Long victim = entries.keySet().iterator().next();
+
+                if (sketch.frequency(keyHash) > sketch.frequency(victim)) {
+                    entries.remove(victim);
+                    entries.put(keyHash, Boolean.TRUE);
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * count-min sketch of 4 rows with 4 bit saturating counters (kept in bytes for
+     * simplicity), halved every 10 * maxSize increments so old popularity fades
+     */
+    private static class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+                    0xD6E8FEB86659FD93L };
+
+        private final byte[][] counters = new byte[SEEDS.length][];
+        private final int mask;
+        private final int sampleSize;
+        private int increments;
+
+        private FrequencySketch(int maxSize) {
+            int width = Integer.highestOneBit(Math.max(16, maxSize * 2 - 1)) << 1;
+
+            for (int row = 0; row < SEEDS.length; row++) {
+                counters[row] = new byte[width];
+            }
+
+            this.mask = width - 1;
+            this.sampleSize = Math.max(10, 10 * maxSize);
+        }
+
+        private void increment(long keyHash) {
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(keyHash, row);
+
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                }
+            }
+
+            if (++increments >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(long keyHash) {
+            int frequency = MAX_COUNT;
+
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, counters[row][index(keyHash, row)]);
+            }
+
+            return frequency;
+        }
+
+        private int index(long keyHash, int row) {
+            long hash = (keyHash ^ (keyHash >>> 32)) * SEEDS[row];
+            return (int) (hash >>> 32) & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+
+            increments /= 2;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+/**
+ * How one cache would have done with one policy and size, see {@link TraceSimulator}.
+ * 
+ * @author Brad Cupit
+ */
+public class SimulationResult {
+    private final String cacheId;
+    private final SimulatedPolicy policy;
+    private final int maxSize;
+    private final long hits;
+    private final long misses;
+    private final long missCostNanos;
+
+    public SimulationResult(String cacheId, SimulatedPolicy policy, int maxSize, long hits, long misses,
+                long missCostNanos) {
+        this.cacheId = cacheId;
+        this.policy = policy;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.missCostNanos = missCostNanos;
+    }
+
+    public String getCacheId() {
+        return cacheId;
+    }
+
+    public SimulatedPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * total time the misses would have spent loading values
+     */
+    public long getMissCostNanos() {
+        return missCostNanos;
+    }
+
+    public double getHitRatio() {
+        long accesses = hits + misses;
+        return accesses == 0 ? 0 : (double) hits / accesses;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+/**
+ * One recorded access, as read back by {@link TraceReader}.
+ * 
+ * @author Brad Cupit
+ */
+public class TraceEvent {
+    private final String cacheId;
+    private final long keyHash;
+    private final long timestampNanos;
+    private final boolean hit;
+    private final long loadNanos;
+    private final int valueSize;
+
+    public TraceEvent(String cacheId, long keyHash, long timestampNanos, boolean hit, long loadNanos, int valueSize) {
+        this.cacheId = cacheId;
+        this.keyHash = keyHash;
+        this.timestampNanos = timestampNanos;
+        this.hit = hit;
+        this.loadNanos = loadNanos;
+        this.valueSize = valueSize;
+    }
+
+    public String getCacheId() {
+        return cacheId;
+    }
+
+    /**
+     * hash of the parameter key. The key itself isn't recorded.
+     */
+    public long getKeyHash() {
+        return keyHash;
+    }
+
+    /**
+     * nanoseconds since recording started
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * whether the access was a hit when it was recorded
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    /**
+     * how long loading the value took, for misses. 0 for hits.
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * approximate size of the loaded value in bytes, or -1 if unknown
+     */
+    public int getValueSize() {
+        return valueSize;
+    }
+}
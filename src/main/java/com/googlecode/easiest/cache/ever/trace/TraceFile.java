@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import com.googlecode.easiest.cache.ever.caches.KeyHashes;
+
+/**
+ * The binary format written by {@link FileTraceRecorder} and read by {@link TraceReader}:
+ * 
+ * <pre>
+ * header:     int MAGIC, int VERSION, long wall clock millis when recording started
+ * records:    byte type, then
+ *   CACHE_ID: int id, UTF cache id (written once, before the id's first access)
+ *   HIT:      int cache id, long key hash, long nanos since recording started
+ *   MISS:     int cache id, long key hash, long nanos since recording started,
+ *             long load nanos, int value size (or -1 if not measured)
+ *   DROPPED:  long events dropped since the last DROPPED record
+ * </pre>
+ * 
+ * @author Brad Cupit
+ */
+final class TraceFile {
+    static final int MAGIC = 0x45434554;
+    static final int VERSION = 1;
+
+    static final byte CACHE_ID = 0;
+    static final byte HIT = 1;
+    static final byte MISS = 2;
+    static final byte DROPPED = 3;
+
+    static final int UNKNOWN_SIZE = -1;
+
+    private TraceFile() {
+    }
+
+    static long hashKey(String key) {
+        return KeyHashes.hash(key);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a trace written by {@link FileTraceRecorder}.
+ * 
+ * @author Brad Cupit
+ */
+public class TraceReader {
+    private long dropped;
+    private long startMillis;
+
+    /**
+     * reads every event in the file. A file cut short (the application
+     * stopped without closing the recorder) is read up to its last whole event.
+     */
+    public List<TraceEvent> read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+
+        try {
+            if (in.readInt() != TraceFile.MAGIC) {
+                throw new IOException(file + " is not a cache trace");
+            }
+
+            int version = in.readInt();
+            if (version != TraceFile.VERSION) {
+                throw new IOException("unsupported cache trace version " + version + " in " + file);
+            }
+
+            startMillis = in.readLong();
+            return readEvents(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the number of events the recorder dropped in the last trace read
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the wall clock time when the last trace read started recording
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    private List<TraceEvent> readEvents(DataInputStream in) throws IOException {
+        List<TraceEvent> events = new ArrayList<TraceEvent>();
+        Map<Integer, String> cacheIds = new HashMap<Integer, String>();
+        dropped = 0;
+
+        try {
+            while (true) {
+                byte type = in.readByte();
+
+                if (type == TraceFile.CACHE_ID) {
+                    int id = in.readInt();
+                    cacheIds.put(id, in.readUTF());
+                } else if (type == TraceFile.HIT) {
+                    String cacheId = cacheIds.get(in.readInt());
+                    long keyHash = in.readLong();
+                    long timestamp = in.readLong();
+
+                    events.add(new TraceEvent(cacheId, keyHash, timestamp, true, 0, TraceFile.UNKNOWN_SIZE));
+                } else if (type == TraceFile.MISS) {
+                    String cacheId = cacheIds.get(in.readInt());
+                    long keyHash = in.readLong();
+                    long timestamp = in.readLong();
+                    long loadNanos = in.readLong();
+                    int size = in.readInt();
+
+                    events.add(new TraceEvent(cacheId, keyHash, timestamp, false, loadNanos, size));
+                } else if (type == TraceFile.DROPPED) {
+                    dropped += in.readLong();
+                } else {
+                    throw new IOException("corrupt cache trace, unknown record type " + type);
+                }
+            }
+        } catch (EOFException exception) {
+            return events;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+/**
+ * Records every access to the caches, so the accesses can be replayed later
+ * (see {@link TraceSimulator}) to find out how big each cache should be.
+ * 
+ * Called on the thread making the cached call, so implementations
+ * must be fast and thread safe, and should never block.
+ * 
+ * @author Brad Cupit
+ */
+public interface TraceRecorder {
+    /**
+     * the value was found in the cache
+     */
+    void recordHit(String cacheId, String key);
+
+    /**
+     * the value wasn't found, and was loaded by calling the method
+     * 
+     * @param loadNanos how long the method took
+     * @param value     the value which was loaded (and cached)
+     */
+    void recordMiss(String cacheId, String key, long loadNanos, Object value);
+}
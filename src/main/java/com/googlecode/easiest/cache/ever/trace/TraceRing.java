@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size, lock-free ring buffer of trace events, written by any number of
+ * threads and read by one. Events are stored in parallel primitive arrays,
+ * so recording an event doesn't allocate.
+ * 
+ * Writers never wait: when the reader falls behind and the ring is full,
+ * the event is dropped and counted (see {@link #getDropped()}).
+ * 
+ * @author Brad Cupit
+ */
+public class TraceRing {
+    private static final long UNPUBLISHED = -1;
+
+    private final int mask;
+    private final int[] cacheIds;
+    private final long[] keyHashes;
+    private final long[] timestamps;
+    private final long[] loadNanos;
+    private final int[] sizes;
+
+    /**
+     * the sequence number each slot was last published with
+     */
+    private final AtomicLongArray published;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong readSequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public TraceRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.mask = size - 1;
+        this.cacheIds = new int[size];
+        this.keyHashes = new long[size];
+        this.timestamps = new long[size];
+        this.loadNanos = new long[size];
+        this.sizes = new int[size];
+        this.published = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            published.set(i, UNPUBLISHED);
+        }
+    }
+
+    /**
+     * @param loadNanos how long the load took, or a negative number for hits
+     * @return false if the ring was full and the event was dropped
+     */
+    public boolean offer(int cacheId, long keyHash, long timestamp, long loadNanos, int size) {
+        long sequence;
+
+        do {
+            sequence = nextSequence.get();
+
+            if (sequence - readSequence.get() >= cacheIds.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!nextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        this.cacheIds[slot] = cacheId;
+        this.keyHashes[slot] = keyHash;
+        this.timestamps[slot] = timestamp;
+        this.loadNanos[slot] = loadNanos;
+        this.sizes[slot] = size;
+
+        // the volatile write publishes the plain writes above to the reader
+        published.set(slot, sequence);
+        return true;
+    }
+
+    /**
+     * hands every published event to the handler, in order. Only one thread may drain.
+     * 
+     * @return the number of events handled
+     */
+    public int drain(Handler handler) throws IOException {
+        int count = 0;
+        long sequence = readSequence.get();
+
+        while (true) {
+            int slot = (int) sequence & mask;
+
+            // a writer may have claimed the slot but not published it yet
+            if (published.get(slot) != sequence) {
+                return count;
+            }
+
+            handler.handle(cacheIds[slot], keyHashes[slot], timestamps[slot], loadNanos[slot], sizes[slot]);
+
+            sequence++;
+            count++;
+            readSequence.set(sequence);
+        }
+    }
+
+    /**
+     * @return the number of events dropped because the ring was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * receives drained events
+     */
+    public interface Handler {
+        void handle(int cacheId, long keyHash, long timestamp, long loadNanos, int size) throws IOException;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.googlecode.easiest.cache.ever.trace.SimulatedPolicy.SimulatedCache;
+
+/**
+ * Replays a recorded trace (see {@link FileTraceRecorder}) against
+ * several eviction policies and sizes, giving the hit ratio and the time
+ * spent loading misses for every combination. Each cache id is simulated
+ * separately, since each has its own cache.
+ * 
+ * A miss costs as long as loading that key took on average while recording.
+ * Keys which were never loaded while recording (they were always hits)
+ * cost the average load time of their cache.
+ * 
+ * Run from the command line to print CSV:
+ * <pre>
+ * java com.googlecode.easiest.cache.ever.trace.TraceSimulator cache.trace [size,size,...]
+ * </pre>
+ * Without sizes, powers of two are simulated, up to the number of distinct keys.
+ * 
+ * @author Brad Cupit
+ */
+public class TraceSimulator {
+    public static void main(String[] arguments) throws IOException {
+        if (arguments.length == 0) {
+            System.err.println("usage: TraceSimulator <trace file> [size,size,...]");
+            System.exit(1);
+        }
+
+        TraceReader reader = new TraceReader();
+        List<TraceEvent> events = reader.read(new File(arguments[0]));
+
+        if (reader.getDropped() > 0) {
+            System.err.println(reader.getDropped() + " events were dropped while recording, results are approximate");
+        }
+
+        int[] sizes = arguments.length > 1 ? parseSizes(arguments[1]) : null;
+        List<SimulationResult> results = new TraceSimulator().simulate(events, SimulatedPolicy.values(), sizes);
+
+        print(results, System.out);
+    }
+
+    /**
+     * @param sizes the sizes to simulate, or null for powers of two up to each cache's number of distinct keys
+     */
+    public List<SimulationResult> simulate(List<TraceEvent> events, SimulatedPolicy[] policies, int[] sizes) {
+        List<SimulationResult> results = new ArrayList<SimulationResult>();
+
+        for (Map.Entry<String, List<TraceEvent>> entry : groupByCacheId(events).entrySet()) {
+            List<TraceEvent> cacheEvents = entry.getValue();
+            Map<Long, Long> loadCosts = averageLoadCosts(cacheEvents);
+            long defaultLoadCost = averageOf(loadCosts);
+            int[] cacheSizes = sizes != null ? sizes : powersOfTwoUpTo(distinctKeys(cacheEvents));
+
+            for (SimulatedPolicy policy : policies) {
+                for (int size : cacheSizes) {
+                    results.add(replay(entry.getKey(), cacheEvents, policy, size, loadCosts, defaultLoadCost));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private SimulationResult replay(String cacheId, List<TraceEvent> events, SimulatedPolicy policy, int size,
+                Map<Long, Long> loadCosts, long defaultLoadCost) {
+        SimulatedCache cache = policy.create(size);
+        long hits = 0;
+        long misses = 0;
+        long missCost = 0;
+
+        for (TraceEvent event : events) {
+            if (cache.access(event.getKeyHash())) {
+                hits++;
+            } else {
+                misses++;
+
+                Long loadCost = loadCosts.get(event.getKeyHash());
+                missCost += loadCost != null ? loadCost : defaultLoadCost;
+            }
+        }
+
+        return new SimulationResult(cacheId, policy, size, hits, misses, missCost);
+    }
+
+    private Map<String, List<TraceEvent>> groupByCacheId(List<TraceEvent> events) {
+        Map<String, List<TraceEvent>> eventsByCacheId = new LinkedHashMap<String, List<TraceEvent>>();
+
+        for (TraceEvent event : events) {
+            List<TraceEvent> cacheEvents = eventsByCacheId.get(event.getCacheId());
+
+            if (cacheEvents == null) {
+                cacheEvents = new ArrayList<TraceEvent>();
+                eventsByCacheId.put(event.getCacheId(), cacheEvents);
+            }
+
+            cacheEvents.add(event);
+        }
+
+        return eventsByCacheId;
+    }
+
+    private Map<Long, Long> averageLoadCosts(List<TraceEvent> events) {
+        Map<Long, long[]> totals = new HashMap<Long, long[]>();
+
+        for (TraceEvent event : events) {
+            if (!event.isHit()) {
+                long[] total = totals.get(event.getKeyHash());
+
+                if (total == null) {
+                    total = new long[2];
+                    totals.put(event.getKeyHash(), total);
+                }
+
+                total[0] += event.getLoadNanos();
+                total[1]++;
+            }
+        }
+
+        Map<Long, Long> averages = new HashMap<Long, Long>();
+        for (Map.Entry<Long, long[]> entry : totals.entrySet()) {
+            averages.put(entry.getKey(), entry.getValue()[0] / entry.getValue()[1]);
+        }
+
+        return averages;
+    }
+
+    private long averageOf(Map<Long, Long> loadCosts) {
+        if (loadCosts.isEmpty()) {
+            return 0;
+        }
+
+        long total = 0;
+        for (long loadCost : loadCosts.values()) {
+            total += loadCost;
+        }
+
+        return total / loadCosts.size();
+    }
+
+    private int distinctKeys(List<TraceEvent> events) {
+        Set<Long> keys = new HashSet<Long>();
+
+        for (TraceEvent event : events) {
+            keys.add(event.getKeyHash());
+        }
+
+        return keys.size();
+    }
+
+    private static int[] powersOfTwoUpTo(int max) {
+        List<Integer> sizes = new ArrayList<Integer>();
+
+        for (int size = 1; size < max; size *= 2) {
+            sizes.add(size);
+        }
+        sizes.add(Math.max(1, max));
+
+        int[] array = new int[sizes.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = sizes.get(i);
+        }
+
+        return array;
+    }
+
+    private static int[] parseSizes(String commaSeparated) {
+        String[] parts = commaSeparated.split(",");
+        int[] sizes = new int[parts.length];
+
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+
+        return sizes;
+    }
+
+    private static void print(List<SimulationResult> results, PrintStream out) {
+        out.println("cacheId,policy,maxSize,hits,misses,hitRatio,missCostMillis");
+
+        for (SimulationResult result : results) {
+            out.println("\"" + result.getCacheId().replace("\"", "\"\"") + "\"," + result.getPolicy() + ","
+                        + result.getMaxSize() + "," + result.getHits() + "," + result.getMisses() + ","
+                        + String.format("%.4f", result.getHitRatio()) + ","
+                        + TimeUnit.NANOSECONDS.toMillis(result.getMissCostNanos()));
+        }
+    }
+}
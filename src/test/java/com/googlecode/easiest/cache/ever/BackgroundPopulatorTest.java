@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CachingInvoker.Invocation;
+import com.googlecode.easiest.cache.ever.caches.DefaultCacheService;
+import com.rits.cloning.Cloner;
+
+/**
+ * unit test for {@link BackgroundPopulator}
+ * 
+ * @author Brad Cupit
+ */
+public class BackgroundPopulatorTest {
+    private final String cacheId = "cacheId";
+    private final String cacheKey = "cacheKey";
+    private final CacheManager ehcacheManager = new CacheManager();
+    private final GatedCacheService cacheService = new GatedCacheService();
+    private final BackgroundPopulator backgroundPopulator = new BackgroundPopulator();
+    private final CachingInvoker cachingInvoker = new CachingInvoker();
+    private final CountingInvocation invocation = new CountingInvocation();
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void before() {
+        cacheService.setCloner(new Cloner());
+        cacheService.setEhcacheManager(ehcacheManager);
+        cacheService.createCacheIfNecessary(cacheId, new CacheConfig(10, CacheConstants.NO_EXPIRATION, null));
+        cachingInvoker.setCacheService(cacheService);
+        cachingInvoker.setBackgroundPopulator(backgroundPopulator);
+    }
+
+    @After
+    public void after() {
+        cacheService.gate.countDown();
+        backgroundPopulator.close();
+        otherThread.shutdownNow();
+        ehcacheManager.shutdown();
+    }
+
+    @Test
+    public void missShouldReturnBeforeTheValueIsStored() throws Throwable {
+        assertEquals("value", cachingInvoker.invoke(cacheId, cacheKey, invocation));
+        assertFalse(cacheService.retrieve(cacheId, cacheKey).wasFound());
+
+        cacheService.gate.countDown();
+        backgroundPopulator.close();
+
+        assertEquals("value", cacheService.retrieve(cacheId, cacheKey).value());
+    }
+
+    @Test
+    public void otherCallersShouldWaitForTheValueToBeStoredInsteadOfComputingIt() throws Throwable {
+        cachingInvoker.invoke(cacheId, cacheKey, invocation);
+
+        Future<Object> otherCaller = otherThread.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                try {
+                    return cachingInvoker.invoke(cacheId, cacheKey, invocation);
+                } catch (Throwable throwable) {
+                    throw new Exception(throwable);
+                }
+            }
+        });
+
+        try {
+            otherCaller.get(100, TimeUnit.MILLISECONDS);
+            fail("the other caller should wait while the value is being stored");
+        } catch (TimeoutException expected) {
+        }
+
+        cacheService.gate.countDown();
+
+        assertEquals("value", otherCaller.get(5, TimeUnit.SECONDS));
+        assertEquals(1, invocation.calls.get());
+    }
+
+    @Test
+    public void otherCallersShouldComputeTheValueThemselvesWhenTheStoreTakesTooLong() throws Throwable {
+        cachingInvoker.setLoadWaitMillis(20);
+        cachingInvoker.invoke(cacheId, cacheKey, invocation);
+
+        Future<Object> otherCaller = otherThread.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                try {
+                    return cachingInvoker.invoke(cacheId, cacheKey, invocation);
+                } catch (Throwable throwable) {
+                    throw new Exception(throwable);
+                }
+            }
+        });
+
+        for (int attempt = 0; attempt < 500 && invocation.calls.get() < 2; attempt++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, invocation.calls.get());
+
+        // its own store waits for the gate too
+        cacheService.gate.countDown();
+        assertEquals("value", otherCaller.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void callersShouldBeFreeToChangeTheirValueOnceItsReturned() throws Throwable {
+        @SuppressWarnings("unchecked")
+        List<String> value = (List<String>) cachingInvoker.invoke(cacheId, cacheKey, new Invocation() {
+            public Object proceed() throws Throwable {
+                List<String> list = new ArrayList<String>();
+                list.add("original");
+                return list;
+            }
+        });
+        value.set(0, "changed");
+
+        cacheService.gate.countDown();
+        backgroundPopulator.close();
+
+        assertEquals("original", ((List<?>) cacheService.retrieve(cacheId, cacheKey).value()).get(0));
+    }
+
+    @Test
+    public void aStoreWhichFailsShouldNotStopTheOthers() throws Throwable {
+        final CountDownLatch stored = new CountDownLatch(1);
+
+        backgroundPopulator.submit(new Runnable() {
+            public void run() {
+                throw new AssertionError("failed store");
+            }
+        });
+        backgroundPopulator.submit(new Runnable() {
+            public void run() {
+                stored.countDown();
+            }
+        });
+
+        assertTrue(stored.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void valuesShouldBeStoredByTheCallerOnceClosed() throws Throwable {
+        cacheService.gate.countDown();
+        backgroundPopulator.close();
+
+        cachingInvoker.invoke(cacheId, cacheKey, invocation);
+
+        assertEquals("value", cacheService.retrieve(cacheId, cacheKey).value());
+    }
+
+    /**
+     * Helper class for unit tests
+     * 
+     * @author Brad Cupit
+     */
+    private static class GatedCacheService extends DefaultCacheService {
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void add(String cacheId, String key, Object value, long loadNanos, int timeToLiveSeconds) {
+            try {
+                gate.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+
+            super.add(cacheId, key, value, loadNanos, timeToLiveSeconds);
+        }
+    }
+
+    /**
+     * Helper class for unit tests
+     * 
+     * @author Brad Cupit
+     */
+    private static class CountingInvocation implements Invocation {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        public Object proceed() throws Throwable {
+            calls.incrementAndGet();
+            return "value";
+        }
+    }
+}
@@ -1,268 +1,799 @@
-/*
- * Copyright 2010 Brad Cupit
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * 
- *     http://www.apache.org/licenses/LICENSE-2.0
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.googlecode.easiest.cache.ever;
-
-import static org.hamcrest.Matchers.*;
-import static org.junit.Assert.*;
-import static org.mockito.Matchers.*;
-import static org.mockito.Mockito.*;
-
-import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.Signature;
-import org.aspectj.lang.reflect.MethodSignature;
-import org.junit.Before;
-import org.junit.Test;
-import org.mockito.ArgumentCaptor;
-
-import com.googlecode.easiest.cache.ever.caches.CacheService;
-import com.googlecode.easiest.cache.ever.caches.CachedValue;
-import com.googlecode.easiest.cache.ever.keys.DefaultKeyGenerator;
-import com.thoughtworks.xstream.XStream;
-
-/**
- * unit test for {@link CacheAspect}
- * 
- * @author Brad Cupit
- */
-public class CacheAspectTest {
-    private final String methodName = "methodName";
-    private final String fullMethodName = TestClass.class.getName() + "." + methodName;
-    private final Object[] zeroParams = new Object[0];
-    private final Class<?>[] zeroParamClasses = new Class<?>[0];
-    private final Object[] oneParams = new Object[] { "string" };
-    private final Class<?>[] oneParamClasses = new Class<?>[] { String.class };
-    private final CachedValue cachedValue = CachedValue.create(new Object());
-    private final ProceedingJoinPoint mockJoinPoint = mock(ProceedingJoinPoint.class);
-    private final MethodSignature mockMethodSignature = mock(MethodSignature.class);
-    private final CacheReturnValue mockCacheAnnotation = mock(CacheReturnValue.class);
-    private final CacheService mockCacheService = mock(CacheService.class);
-    private final CacheAspect cacheAspect = new CacheAspect();
-
-    @Before
-    public void before() {
-        DefaultKeyGenerator keyGenerator = new DefaultKeyGenerator();
-        keyGenerator.setXstream(new XStream());
-        cacheAspect.setKeyGenerator(keyGenerator);
-        cacheAspect.setCacheService(mockCacheService);
-    }
-
-    @Test
-    public void aroundAdviceForMethodAnnotationShouldInvokeMethodWhenReturnValueNotYetCached() throws Throwable {
-        setupMocksForZeroInputParamCacheMethod();
-        Object objectToCache = new Object();
-
-        when(mockJoinPoint.proceed()).thenReturn(objectToCache);
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-
-        verify(mockJoinPoint).proceed();
-    }
-
-    @Test
-    public void aroundAdviceForMethodAnnotationShouldCacheReturnValueWhenNotYetCached() throws Throwable {
-        setupMocksForZeroInputParamCacheMethod();
-        Object objectToCache = new Object();
-
-        when(mockJoinPoint.proceed()).thenReturn(objectToCache);
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-
-        verify(mockCacheService).add(fullMethodName, null, objectToCache);
-    }
-
-    @Test
-    public void aroundAdviceForMethodAnnotationShouldNotInvokeMethodWhenReturnValueAlreadyCached() throws Throwable {
-        setupMocksForZeroInputParamCacheMethod();
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-
-        verify(mockJoinPoint, never()).proceed();
-    }
-
-    @Test
-    public void aroundAdviceForMethodAnnotationShouldNotCacheReturnValueWhenAlreadyCached() throws Throwable {
-        setupMocksForZeroInputParamCacheMethod();
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-
-        verify(mockCacheService, never()).add(anyString(), anyString(), anyObject());
-    }
-
-    /**
-     * prove the users can set defaults via Spring xml config
-     */
-    @Test
-    public void setDefaultMaxSizeShouldShouldOverrideTheDefaultSetting() throws Throwable {
-        setupMocksForOneInputParamCacheMethod();
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
-        when(mockCacheAnnotation.maxSize()).thenReturn(CacheConstants.UNSET_MAX_SIZE);
-
-        int expectedMaxSize = 1200;
-        cacheAspect.setDefaultMaxSize(expectedMaxSize);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
-        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
-        assertThat(argument.getValue().getMaxSize(), is(expectedMaxSize));
-    }
-
-    /**
-     * prove the users can set defaults via Spring xml config
-     */
-    @Test
-    public void setDefaultExpirationTimeShouldShouldOverrideTheDefaultSetting() throws Throwable {
-        setupMocksForOneInputParamCacheMethod();
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
-        when(mockCacheAnnotation.expirationTime()).thenReturn(CacheConstants.UNSET_EXPIRATION_TIME);
-
-        int expectedExpirationTime = 52;
-        cacheAspect.setDefaultExpirationTime(expectedExpirationTime);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
-        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
-        assertThat(argument.getValue().getExpirationTime(), is(expectedExpirationTime));
-    }
-
-    /**
-     * prove the users can set defaults via Spring xml config
-     */
-    @Test
-    public void setDefaultUnitShouldShouldOverrideTheDefaultSetting() throws Throwable {
-        setupMocksForOneInputParamCacheMethod();
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
-        when(mockCacheAnnotation.unit()).thenReturn(Time.UNSET);
-
-        Time expectedUnit = Time.MICROSECONDS;
-        cacheAspect.setDefaultUnit(expectedUnit);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
-        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
-        assertThat(argument.getValue().getUnit(), is(expectedUnit));
-    }
-
-    /**
-     * This test ensures our cache names are unique and that two separate methods (which
-     * happen to implement the same interface) still get unique cache names (and therefore
-     * unique caches with separate settings). We accomplish with this pattern:
-     * fully.qualified.ConcreteClassName.methodName (we cannot use the fully qualified
-     * interface name).
-     * 
-     * {@link Signature#getDeclaringTypeName()} on a JDK proxy returns
-     * the interface name not the concrete class name, so we use {@link ProceedingJoinPoint#getTarget()}.getClass().getName()
-     * instead. A similar thing happens for {@link MethodSignature#getMethod()} with
-     * JDK proxies vs CGLIB proxies.
-     */
-    @Test
-    public void aroundAdviceForMethodAnnotationShouldGenerateCacheNameWithConcreteClassNameNotInterfaceName() throws Throwable {
-        setupMocksForZeroInputParamCacheMethod();
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
-
-        String fullMethodNameOnConcreteClass = TestClass.class.getName() + "." + methodName;
-        String fullMethodNameOnInterface = TestInterface.class.getName() + "." + methodName;
-
-        // setup AspectJ's MethodSignature to behave like it does in a real AOP setting
-        when(mockMethodSignature.getName()).thenReturn(methodName);
-        when(mockMethodSignature.getDeclaringTypeName()).thenReturn(fullMethodNameOnInterface);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-
-        verify(mockCacheService).retrieve(eq(fullMethodNameOnConcreteClass), anyString());
-        verify(mockCacheService, never()).retrieve(eq(fullMethodNameOnInterface), anyString());
-    }
-
-    /**
-     * test a small optimization. if the intercepted method takes no parameters,
-     * it will always return the same value, so maxSize will be 1, regardless
-     * of configuration.
-     */
-    @Test
-    public void aroundAdviceForMethodAnnotationShouldSetMaxSizeToOneForZeroParamMethods() throws Throwable {
-        setupMocksForZeroInputParamCacheMethod();
-
-        int one = 1;
-        int somethingOtherThanOne = 1000;
-
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
-        when(mockCacheAnnotation.maxSize()).thenReturn(somethingOtherThanOne);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
-        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
-        assertThat(argument.getValue().getMaxSize(), is(one));
-    }
-
-    /**
-     * {@link CacheService#retrieve(String, String)} used to
-     * return null when the value was not in cache AND when
-     * the value was cached but was null. So, cached 'null' was the same
-     * as an uncached value (and would incorrectly invoke the method again).
-     * This test proves that inefficiency is gone.
-     */
-    @Test
-    public void aroundAdviceForMethodAnnotationShouldNotInvokeMethodWhenNullWasCached() throws Throwable {
-        setupMocksForZeroInputParamCacheMethod();
-
-        CachedValue nullValue = CachedValue.create(null);
-        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(nullValue);
-
-        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
-
-        verify(mockJoinPoint, never()).proceed();
-    }
-
-    private void setupMocksForZeroInputParamCacheMethod() {
-        setupCommonMockInvocations();
-
-        when(mockJoinPoint.getArgs()).thenReturn(zeroParams);
-        when(mockMethodSignature.getParameterTypes()).thenReturn(zeroParamClasses);
-    }
-
-    private void setupMocksForOneInputParamCacheMethod() {
-        setupCommonMockInvocations();
-
-        when(mockJoinPoint.getArgs()).thenReturn(oneParams);
-        when(mockMethodSignature.getParameterTypes()).thenReturn(oneParamClasses);
-    }
-
-    private void setupCommonMockInvocations() {
-        when(mockJoinPoint.getTarget()).thenReturn(new TestClass());
-        when(mockJoinPoint.getSignature()).thenReturn(mockMethodSignature);
-
-        when(mockMethodSignature.getName()).thenReturn(methodName);
-    }
-
-    /**
-     * utility test class
-     * 
-     * @author Brad Cupit
-     */
-    public static class TestClass implements TestInterface {
-    }
-
-    /**
-     * utility test interface
-     * 
-     * @author Brad Cupit
-     */
-    public interface TestInterface {
-    }
-}
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.googlecode.easiest.cache.ever.caches.CacheService;
+import com.googlecode.easiest.cache.ever.caches.CachedException;
+import com.googlecode.easiest.cache.ever.caches.CachedValue;
+import com.googlecode.easiest.cache.ever.caches.EvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.TaggingCacheService;
+import com.googlecode.easiest.cache.ever.cluster.InvalidationBus;
+import com.googlecode.easiest.cache.ever.keys.DefaultKeyGenerator;
+import com.googlecode.easiest.cache.ever.trace.CacheMonitor;
+import com.googlecode.easiest.cache.ever.trace.TraceRecorder;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * unit test for {@link CacheAspect}
+ * 
+ * @author Brad Cupit
+ */
+public class CacheAspectTest {
+    private final String methodName = "methodName";
+    private final String fullMethodName = TestClass.class.getName() + "." + methodName;
+    private final Object[] zeroParams = new Object[0];
+    private final Class<?>[] zeroParamClasses = new Class<?>[0];
+    private final Object[] oneParams = new Object[] { "string" };
+    private final Class<?>[] oneParamClasses = new Class<?>[] { String.class };
+    private final CachedValue cachedValue = CachedValue.create(new Object());
+    private final ProceedingJoinPoint mockJoinPoint = mock(ProceedingJoinPoint.class);
+    private final MethodSignature mockMethodSignature = mock(MethodSignature.class);
+    private final CacheReturnValue mockCacheAnnotation = mock(CacheReturnValue.class);
+    private final EvictingCacheService mockCacheService = mock(EvictingCacheService.class);
+    private final CacheAspect cacheAspect = new CacheAspect();
+    private final DefaultKeyGenerator keyGenerator = new DefaultKeyGenerator();
+
+    @Before
+    public void before() {
+        keyGenerator.setXstream(new XStream());
+        cacheAspect.setKeyGenerator(keyGenerator);
+        cacheAspect.setCacheService(mockCacheService);
+    }
+
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldInvokeMethodWhenReturnValueNotYetCached() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        Object objectToCache = new Object();
+
+        when(mockJoinPoint.proceed()).thenReturn(objectToCache);
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockJoinPoint).proceed();
+    }
+
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldCacheReturnValueWhenNotYetCached() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        Object objectToCache = new Object();
+
+        when(mockJoinPoint.proceed()).thenReturn(objectToCache);
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockCacheService).add(fullMethodName, null, objectToCache);
+    }
+
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldNotInvokeMethodWhenReturnValueAlreadyCached() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockJoinPoint, never()).proceed();
+    }
+
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldNotCacheReturnValueWhenAlreadyCached() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockCacheService, never()).add(anyString(), anyString(), anyObject());
+    }
+
+    /**
+     * prove the users can set defaults via Spring xml config
+     */
+    @Test
+    public void setDefaultMaxSizeShouldShouldOverrideTheDefaultSetting() throws Throwable {
+        setupMocksForOneInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+        when(mockCacheAnnotation.maxSize()).thenReturn(CacheConstants.UNSET_MAX_SIZE);
+
+        int expectedMaxSize = 1200;
+        cacheAspect.setDefaultMaxSize(expectedMaxSize);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
+        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
+        assertThat(argument.getValue().getMaxSize(), is(expectedMaxSize));
+    }
+
+    /**
+     * prove the users can set defaults via Spring xml config
+     */
+    @Test
+    public void setDefaultExpirationTimeShouldShouldOverrideTheDefaultSetting() throws Throwable {
+        setupMocksForOneInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+        when(mockCacheAnnotation.expirationTime()).thenReturn(CacheConstants.UNSET_EXPIRATION_TIME);
+
+        int expectedExpirationTime = 52;
+        cacheAspect.setDefaultExpirationTime(expectedExpirationTime);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
+        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
+        assertThat(argument.getValue().getExpirationTime(), is(expectedExpirationTime));
+    }
+
+    /**
+     * prove the users can set defaults via Spring xml config
+     */
+    @Test
+    public void setDefaultUnitShouldShouldOverrideTheDefaultSetting() throws Throwable {
+        setupMocksForOneInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+        when(mockCacheAnnotation.unit()).thenReturn(Time.UNSET);
+
+        Time expectedUnit = Time.MICROSECONDS;
+        cacheAspect.setDefaultUnit(expectedUnit);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
+        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
+        assertThat(argument.getValue().getUnit(), is(expectedUnit));
+    }
+
+    /**
+     * This test ensures our cache names are unique and that two separate methods (which
+     * happen to implement the same interface) still get unique cache names (and therefore
+     * unique caches with separate settings). We accomplish with this pattern:
+     * fully.qualified.ConcreteClassName.methodName (we cannot use the fully qualified
+     * interface name).
+     * 
+     * {@link Signature#getDeclaringTypeName()} on a JDK proxy returns
+     * the interface name not the concrete class name, so we use {@link ProceedingJoinPoint#getTarget()}.getClass().getName()
+     * instead. A similar thing happens for {@link MethodSignature#getMethod()} with
+     * JDK proxies vs CGLIB proxies.
+     */
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldGenerateCacheNameWithConcreteClassNameNotInterfaceName() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+
+        String fullMethodNameOnConcreteClass = TestClass.class.getName() + "." + methodName;
+        String fullMethodNameOnInterface = TestInterface.class.getName() + "." + methodName;
+
+        // setup AspectJ's MethodSignature to behave like it does in a real AOP setting
+        when(mockMethodSignature.getName()).thenReturn(methodName);
+        when(mockMethodSignature.getDeclaringTypeName()).thenReturn(fullMethodNameOnInterface);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockCacheService).retrieve(eq(fullMethodNameOnConcreteClass), anyString());
+        verify(mockCacheService, never()).retrieve(eq(fullMethodNameOnInterface), anyString());
+    }
+
+    /**
+     * test a small optimization. if the intercepted method takes no parameters,
+     * it will always return the same value, so maxSize will be 1, regardless
+     * of configuration.
+     */
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldSetMaxSizeToOneForZeroParamMethods() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+
+        int one = 1;
+        int somethingOtherThanOne = 1000;
+
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+        when(mockCacheAnnotation.maxSize()).thenReturn(somethingOtherThanOne);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
+        verify(mockCacheService).createCacheIfNecessary(anyString(), argument.capture());
+        assertThat(argument.getValue().getMaxSize(), is(one));
+    }
+
+    /**
+     * {@link CacheService#retrieve(String, String)} used to
+     * return null when the value was not in cache AND when
+     * the value was cached but was null. So, cached 'null' was the same
+     * as an uncached value (and would incorrectly invoke the method again).
+     * This test proves that inefficiency is gone.
+     */
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldNotInvokeMethodWhenNullWasCached() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+
+        CachedValue nullValue = CachedValue.create(null);
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(nullValue);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockJoinPoint, never()).proceed();
+    }
+
+    /**
+     * two threads missing on the same entry at the same time should only
+     * invoke the method once. The second thread waits and reads what the first cached.
+     */
+    @Test
+    public void aroundAdviceForMethodAnnotationShouldInvokeMethodOnceForConcurrentMisses() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        final CountDownLatch firstThreadInsideMethod = new CountDownLatch(1);
+        final CountDownLatch secondThreadWaiting = new CountDownLatch(1);
+
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound(),
+                    CachedValue.notFound(), cachedValue);
+        when(mockJoinPoint.proceed()).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                firstThreadInsideMethod.countDown();
+                secondThreadWaiting.await();
+                return new Object();
+            }
+        });
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<Object> firstThread = executorService.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                try {
+                    return cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+                } catch (Throwable throwable) {
+                    throw new RuntimeException(throwable);
+                }
+            }
+        });
+
+        firstThreadInsideMethod.await();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException exception) {
+                    throw new RuntimeException(exception);
+                }
+                secondThreadWaiting.countDown();
+            }
+        };
+        waiter.start();
+        Object secondResult = cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        firstThread.get();
+        executorService.shutdown();
+
+        assertSame(cachedValue.value(), secondResult);
+        verify(mockJoinPoint, times(1)).proceed();
+    }
+
+    @Test
+    public void traceRecorderShouldRecordHitsAndMisses() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        TraceRecorder mockTraceRecorder = mock(TraceRecorder.class);
+        Object loaded = new Object();
+        cacheAspect.setTraceRecorder(mockTraceRecorder);
+
+        when(mockJoinPoint.proceed()).thenReturn(loaded);
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound(), cachedValue);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockTraceRecorder).recordMiss(eq(fullMethodName), anyString(), anyLong(), same(loaded));
+        verify(mockTraceRecorder).recordHit(eq(fullMethodName), anyString());
+    }
+
+    @Test
+    public void cacheMonitorShouldMeasureHitsMissesLoadsAndKeys() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        CacheMonitor mockCacheMonitor = mock(CacheMonitor.class);
+        cacheAspect.setCacheMonitor(mockCacheMonitor);
+
+        when(mockJoinPoint.proceed()).thenReturn("loaded");
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound(), cachedValue);
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockCacheMonitor).miss(eq(fullMethodName), anyLong());
+        verify(mockCacheMonitor).load(eq(fullMethodName), anyLong(), anyLong());
+        verify(mockCacheMonitor).hit(eq(fullMethodName), anyLong());
+        verify(mockCacheMonitor, times(2)).keyGenerated(eq(fullMethodName), anyLong(), eq(0));
+    }
+
+    @Test
+    public void adaptiveBypassShouldCallMethodsDirectlyWhenCachingDoesNotPayOff() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        cacheAspect.setAdaptiveBypass(true);
+        cacheAspect.setBypassMinSamples(1);
+
+        when(mockJoinPoint.proceed()).thenReturn(new Object());
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+
+        // 1 in 8 calls is measured
+        for (int i = 0; i < 8; i++) {
+            cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        }
+        assertThat(cacheAspect.getBypassedCacheIds(), hasItem(fullMethodName));
+
+        reset(mockCacheService);
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockJoinPoint, times(9)).proceed();
+        verifyZeroInteractions(mockCacheService);
+    }
+
+    @Test
+    public void expiryPolicyShouldBeAbleToSkipCachingAValue() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        doReturn(NotFoundExpiryPolicy.class).when(mockCacheAnnotation).expiryPolicy();
+
+        when(mockJoinPoint.proceed()).thenReturn(null, "found");
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        verify(mockCacheService, never()).add(anyString(), anyString(), any());
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        verify(mockCacheService).add(anyString(), anyString(), eq("found"));
+    }
+
+    @Test
+    public void cachedExceptionsShouldBeRethrownWithoutCallingTheMethod() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        doReturn(new Class<?>[] { IllegalStateException.class }).when(mockCacheAnnotation).cacheExceptions();
+        when(mockCacheAnnotation.exceptionExpirationSeconds()).thenReturn(5);
+        IllegalStateException exception = new IllegalStateException("backend down");
+
+        when(mockJoinPoint.proceed()).thenThrow(exception);
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound(),
+                    CachedValue.create(new CachedException(exception)));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+                fail("expected the exception to be thrown");
+            } catch (IllegalStateException thrown) {
+                assertSame(exception, thrown);
+            }
+        }
+
+        verify(mockJoinPoint, times(1)).proceed();
+        verify(mockCacheService).add(anyString(), anyString(), isA(CachedException.class));
+    }
+
+    @Test
+    public void exceptionsNotListedShouldNotBeCached() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        doReturn(new Class<?>[] { IllegalStateException.class }).when(mockCacheAnnotation).cacheExceptions();
+        when(mockCacheAnnotation.exceptionExpirationSeconds()).thenReturn(5);
+
+        when(mockJoinPoint.proceed()).thenThrow(new IllegalArgumentException());
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+
+        try {
+            cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+            fail("expected the exception to be thrown");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        verify(mockCacheService, never()).add(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void emptyResultExpirationSecondsShouldBeAbleToSkipCachingEmptyResults() throws Throwable {
+        setupMocksForZeroInputParamCacheMethod();
+        when(mockCacheAnnotation.emptyResultExpirationSeconds()).thenReturn(CacheConstants.DONT_CACHE);
+
+        when(mockJoinPoint.proceed()).thenReturn(Collections.emptyList(), Collections.singletonList("found"));
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        verify(mockCacheService, never()).add(anyString(), anyString(), any());
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        verify(mockCacheService).add(anyString(), anyString(), eq(Collections.singletonList("found")));
+    }
+
+    @Test
+    public void evictCacheShouldRemoveTheEntryForTheKeyArguments() throws Throwable {
+        setupMocksForChangingMethod("rename", String.class, String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1", "new name" });
+
+        String key = keyGenerator.generateParameterKey(Collections.singletonList("user1"));
+
+        cacheAspect.aroundAdviceForEvictCache(mockJoinPoint, annotationOf("rename", EvictCache.class));
+
+        verify(mockJoinPoint).proceed();
+        verify(mockCacheService).remove(ChangingClass.class.getName() + ".find(java.lang.String)", key);
+    }
+
+    @Test
+    public void evictCacheShouldRemoveAllEntriesWhenAsked() throws Throwable {
+        setupMocksForChangingMethod("clear");
+        when(mockJoinPoint.getArgs()).thenReturn(zeroParams);
+
+        cacheAspect.aroundAdviceForEvictCache(mockJoinPoint, annotationOf("clear", EvictCache.class));
+
+        verify(mockCacheService).removeAll(ChangingClass.class.getName() + ".find(java.lang.String)");
+    }
+
+    @Test
+    public void evictCacheShouldPublishTheEvictionToOtherNodes() throws Throwable {
+        InvalidationBus mockInvalidationBus = mock(InvalidationBus.class);
+        cacheAspect.setInvalidationBus(mockInvalidationBus);
+        setupMocksForChangingMethod("rename", String.class, String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1", "new name" });
+        String key = keyGenerator.generateParameterKey(Collections.singletonList("user1"));
+
+        cacheAspect.aroundAdviceForEvictCache(mockJoinPoint, annotationOf("rename", EvictCache.class));
+
+        verify(mockInvalidationBus).publish(ChangingClass.class.getName() + ".find(java.lang.String)", key);
+    }
+
+    @Test
+    public void evictCacheShouldNotEvictWhenTheMethodThrows() throws Throwable {
+        setupMocksForChangingMethod("rename", String.class, String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1", "new name" });
+        when(mockJoinPoint.proceed()).thenThrow(new IllegalStateException());
+
+        try {
+            cacheAspect.aroundAdviceForEvictCache(mockJoinPoint, annotationOf("rename", EvictCache.class));
+            fail("expected the exception to be thrown");
+        } catch (IllegalStateException expected) {
+        }
+
+        verify(mockCacheService, never()).remove(anyString(), anyString());
+    }
+
+    @Test
+    public void evictCacheShouldRejectACacheServiceWhichCantRemoveEntriesBeforeTheMethodRuns() throws Throwable {
+        cacheAspect.setCacheService(mock(CacheService.class));
+        setupMocksForChangingMethod("rename", String.class, String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1", "new name" });
+
+        try {
+            cacheAspect.aroundAdviceForEvictCache(mockJoinPoint, annotationOf("rename", EvictCache.class));
+            fail("expected the exception to be thrown");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        verify(mockJoinPoint, never()).proceed();
+    }
+
+    @Test
+    public void evictCacheShouldResolveAnInterfaceTypeToTheBeansClass() throws Throwable {
+        setupMocksForChangingMethod("renameThroughInterface", String.class, String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1", "new name" });
+        String key = keyGenerator.generateParameterKey(Collections.singletonList("user1"));
+
+        cacheAspect.aroundAdviceForEvictCache(mockJoinPoint, annotationOf("renameThroughInterface", EvictCache.class));
+
+        verify(mockCacheService).remove(ChangingClass.class.getName() + ".find(java.lang.String)", key);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evictCacheShouldRejectAnInterfaceOfAnotherBean() throws Throwable {
+        setupMocksForChangingMethod("renameElsewhere", String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1" });
+
+        cacheAspect.aroundAdviceForEvictCache(mockJoinPoint, annotationOf("renameElsewhere", EvictCache.class));
+    }
+
+    @Test
+    public void updateCacheShouldPutTheReturnValueInTheCachedMethodsCache() throws Throwable {
+        setupMocksForChangingMethod("save", String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1" });
+        when(mockJoinPoint.proceed()).thenReturn("saved");
+        String cacheId = ChangingClass.class.getName() + ".find(java.lang.String)";
+        String key = keyGenerator.generateParameterKey(Collections.singletonList("user1"));
+
+        cacheAspect.aroundAdviceForUpdateCache(mockJoinPoint, annotationOf("save", UpdateCache.class));
+
+        verify(mockCacheService).createCacheIfNecessary(eq(cacheId), isA(CacheConfig.class));
+        verify(mockCacheService).add(cacheId, key, "saved");
+    }
+
+    @Test
+    public void updateCacheShouldTagAndExpireWithTheCachedMethodsParameterPositions() throws Throwable {
+        TaggingCacheService taggingCacheService = mock(TaggingCacheService.class);
+        cacheAspect.setCacheService(taggingCacheService);
+        setupMocksForChangingMethod("saveTagged", String.class, String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1", "Brad" });
+        when(mockJoinPoint.proceed()).thenReturn("saved");
+        String cacheId = ChangingClass.class.getName() + ".findTagged(java.lang.String,java.lang.String,java.lang.String)";
+        String key = keyGenerator.generateParameterKey(Collections.singletonList("user1"));
+
+        cacheAspect.aroundAdviceForUpdateCache(mockJoinPoint, annotationOf("saveTagged", UpdateCache.class));
+
+        verify(taggingCacheService).add(cacheId, key, "saved", 0, 60, Arrays.asList("user:user1"));
+    }
+
+    @Test
+    public void updateCacheShouldRemoveTheOldValueWhenTheNewOneIsntCached() throws Throwable {
+        setupMocksForChangingMethod("saveTagged", String.class, String.class);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user2", "Brad" });
+        when(mockJoinPoint.proceed()).thenReturn("saved");
+        String cacheId = ChangingClass.class.getName() + ".findTagged(java.lang.String,java.lang.String,java.lang.String)";
+        String key = keyGenerator.generateParameterKey(Collections.singletonList("user2"));
+
+        cacheAspect.aroundAdviceForUpdateCache(mockJoinPoint, annotationOf("saveTagged", UpdateCache.class));
+
+        verify(mockCacheService, never()).add(anyString(), anyString(), any());
+        verify(mockCacheService).remove(cacheId, key);
+    }
+
+    @Test
+    public void prepareShouldCreateCachesForAnnotatedMethods() throws Exception {
+        cacheAspect.prepare(PreparedClass.class);
+
+        String className = PreparedClass.class.getName();
+        verify(mockCacheService).createCacheIfNecessary(eq(className + ".cached(java.lang.String)"),
+                    isA(CacheConfig.class));
+        verify(mockCacheService, never()).createCacheIfNecessary(eq(className + ".notCached(java.lang.String)"),
+                    isA(CacheConfig.class));
+        verify(mockCacheService, never()).createCacheIfNecessary(eq(className + ".noReturnValue"),
+                    isA(CacheConfig.class));
+    }
+
+    /**
+     * JDK proxies pass the interface's Method, whose parameters don't carry the class's annotations
+     */
+    @Test
+    public void aroundAdviceShouldUseTheClassesMethodWhenCalledThroughAnInterface() throws Throwable {
+        Method interfaceMethod = ChangingInterface.class.getMethod("findIn", String.class, String.class);
+        when(mockJoinPoint.getTarget()).thenReturn(new ChangingClass());
+        when(mockJoinPoint.getSignature()).thenReturn(mockMethodSignature);
+        when(mockJoinPoint.getArgs()).thenReturn(new Object[] { "user1", "en" });
+        when(mockMethodSignature.getMethod()).thenReturn(interfaceMethod);
+        when(mockMethodSignature.getName()).thenReturn("findIn");
+        when(mockMethodSignature.getParameterTypes()).thenReturn(interfaceMethod.getParameterTypes());
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+        cacheAspect.prepare(ChangingClass.class);
+        String key = keyGenerator.generateParameterKey(Collections.singletonList("user1"));
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockCacheService).retrieve(ChangingClass.class.getName() + ".findIn(java.lang.String,java.lang.String)",
+                    key);
+    }
+
+    @Test
+    public void prepareShouldCreateCachesForPublicMethodsOfAnnotatedClasses() throws Exception {
+        cacheAspect.prepare(PreparedAnnotatedClass.class);
+
+        verify(mockCacheService).createCacheIfNecessary(eq(PreparedAnnotatedClass.class.getName() + ".find(int)"),
+                    isA(CacheConfig.class));
+    }
+
+    @Test
+    public void invalidateNamespaceShouldChangeTheKeysOfTheClassesMethods() throws Throwable {
+        setupMocksForOneInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+        String key = keyGenerator.generateParameterKey(Arrays.asList(oneParams));
+
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+        cacheAspect.invalidateNamespace(TestClass.class);
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(mockCacheService, times(2)).retrieve(anyString(), keys.capture());
+        assertThat(keys.getAllValues().get(0), is(key));
+        assertThat(keys.getAllValues().get(1), is(not(key)));
+    }
+
+    @Test
+    public void invalidateNamespaceShouldNotChangeTheKeysOfOtherMethods() throws Throwable {
+        setupMocksForOneInputParamCacheMethod();
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(cachedValue);
+        String key = keyGenerator.generateParameterKey(Arrays.asList(oneParams));
+
+        cacheAspect.invalidateNamespace(TestClass.class, "otherMethodName");
+        cacheAspect.aroundAdviceForMethodAnnotation(mockJoinPoint, mockCacheAnnotation);
+
+        verify(mockCacheService).retrieve(anyString(), eq(key));
+    }
+
+    private void setupMocksForZeroInputParamCacheMethod() {
+        setupCommonMockInvocations();
+
+        when(mockJoinPoint.getArgs()).thenReturn(zeroParams);
+        when(mockMethodSignature.getParameterTypes()).thenReturn(zeroParamClasses);
+    }
+
+    private void setupMocksForOneInputParamCacheMethod() {
+        setupCommonMockInvocations();
+
+        when(mockJoinPoint.getArgs()).thenReturn(oneParams);
+        when(mockMethodSignature.getParameterTypes()).thenReturn(oneParamClasses);
+    }
+
+    private void setupMocksForChangingMethod(String name, Class<?>... parameterTypes) throws Exception {
+        Method method = ChangingClass.class.getMethod(name, parameterTypes);
+
+        when(mockJoinPoint.getTarget()).thenReturn(new ChangingClass());
+        when(mockJoinPoint.getSignature()).thenReturn(mockMethodSignature);
+        when(mockMethodSignature.getMethod()).thenReturn(method);
+        doReturn(method.getReturnType()).when(mockMethodSignature).getReturnType();
+    }
+
+    private <T extends Annotation> T annotationOf(String name, Class<T> annotationType) {
+        for (Method method : ChangingClass.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method.getAnnotation(annotationType);
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private void setupCommonMockInvocations() {
+        when(mockJoinPoint.getTarget()).thenReturn(new TestClass());
+        when(mockJoinPoint.getSignature()).thenReturn(mockMethodSignature);
+
+        when(mockMethodSignature.getName()).thenReturn(methodName);
+    }
+
+    /**
+     * utility test class
+     * 
+     * @author Brad Cupit
+     */
+    public static class TestClass implements TestInterface {
+    }
+
+    /**
+     * utility test class
+     * 
+     * @author Brad Cupit
+     */
+    public static class PreparedClass {
+        @CacheReturnValue
+        public String cached(String name) {
+            return name;
+        }
+
+        @CacheReturnValue
+        public void noReturnValue() {
+        }
+
+        public String notCached(String name) {
+            return name;
+        }
+    }
+
+    /**
+     * utility test class
+     * 
+     * @author Brad Cupit
+     */
+    @CacheReturnValue
+    public static class PreparedAnnotatedClass {
+        public String find(int id) {
+            return null;
+        }
+    }
+
+    /**
+     * utility test class
+     * 
+     * @author Brad Cupit
+     */
+    public static class UserIdExpiryPolicy implements ExpiryPolicy {
+        public int timeToLiveSeconds(Object returnValue, Object[] arguments) {
+            return "user1".equals(arguments[1]) ? 60 : CacheConstants.DONT_CACHE;
+        }
+    }
+
+    /**
+     * utility test class
+     * 
+     * @author Brad Cupit
+     */
+    public static class NotFoundExpiryPolicy implements ExpiryPolicy {
+        public int timeToLiveSeconds(Object returnValue, Object[] arguments) {
+            return returnValue == null ? CacheConstants.DONT_CACHE : CacheConstants.UNSET_EXPIRATION_TIME;
+        }
+    }
+
+    /**
+     * utility test class
+     * 
+     * @author Brad Cupit
+     */
+    public static class ChangingClass implements ChangingInterface {
+        @CacheReturnValue
+        public String find(String userId) {
+            return userId;
+        }
+
+        @CacheReturnValue
+        public String findIn(String userId, @CacheIgnore String locale) {
+            return userId;
+        }
+
+        @EvictCache(method = "find", type = ChangingInterface.class)
+        public void renameThroughInterface(@CacheKey String userId, @CacheIgnore String newName) {
+        }
+
+        @EvictCache(method = "find", type = TestInterface.class)
+        public void renameElsewhere(String userId) {
+        }
+
+        @EvictCache(method = "find")
+        public void rename(@CacheKey String userId, @CacheIgnore String newName) {
+        }
+
+        @EvictCache(method = "find", allEntries = true)
+        public void clear() {
+        }
+
+        @UpdateCache(method = "find")
+        public String save(String userId) {
+            return userId;
+        }
+
+        @CacheReturnValue(expiryPolicy = UserIdExpiryPolicy.class)
+        public String findTagged(@CacheIgnore String locale, @CacheTag("user") String userId,
+                    @CacheIgnore @CacheTag("region") String region) {
+            return userId;
+        }
+
+        @UpdateCache(method = "findTagged")
+        public String saveTagged(@CacheKey String userId, @CacheIgnore String newName) {
+            return newName;
+        }
+    }
+
+    /**
+     * utility test interface
+     * 
+     * @author Brad Cupit
+     */
+    public interface TestInterface {
+    }
+
+    /**
+     * utility test interface
+     * 
+     * @author Brad Cupit
+     */
+    public interface ChangingInterface {
+        String find(String userId);
+
+        String findIn(String userId, String locale);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link CacheBypass}
+ * 
+ * @author Brad Cupit
+ */
+public class CacheBypassTest {
+    @Test
+    public void shouldBypassWhenNothingIsEverFound() throws Exception {
+        CacheBypass cacheBypass = new CacheBypass("cacheId", 10, 60);
+
+        for (int i = 0; i < 10; i++) {
+            cacheBypass.record(false, 100, 1000);
+        }
+
+        assertTrue(cacheBypass.shouldBypass());
+        assertEquals(0, cacheBypass.getLastHitRatio(), 0);
+    }
+
+    /**
+     * caching takes longer than the method itself
+     */
+    @Test
+    public void shouldBypassWhenTheMethodIsCheaperThanCaching() throws Exception {
+        CacheBypass cacheBypass = new CacheBypass("cacheId", 10, 60);
+
+        for (int i = 0; i < 10; i++) {
+            cacheBypass.record(i % 2 == 0, 500, 100);
+        }
+
+        assertTrue(cacheBypass.shouldBypass());
+    }
+
+    @Test
+    public void shouldKeepCachingWhenItSavesTime() throws Exception {
+        CacheBypass cacheBypass = new CacheBypass("cacheId", 10, 60);
+
+        for (int i = 0; i < 10; i++) {
+            cacheBypass.record(i != 0, 100, 1000000);
+        }
+
+        assertFalse(cacheBypass.shouldBypass());
+        assertEquals(0.9, cacheBypass.getLastHitRatio(), 0.001);
+    }
+
+    @Test
+    public void shouldNotDecideBeforeEnoughSamples() throws Exception {
+        CacheBypass cacheBypass = new CacheBypass("cacheId", 10, 60);
+
+        for (int i = 0; i < 9; i++) {
+            cacheBypass.record(false, 100, 1);
+        }
+
+        assertFalse(cacheBypass.shouldBypass());
+    }
+
+    @Test
+    public void shouldTryCachingAgainAfterTheBypassTime() throws Exception {
+        CacheBypass cacheBypass = new CacheBypass("cacheId", 1, 0);
+
+        cacheBypass.record(false, 100, 1);
+        assertTrue(cacheBypass.isBypassing());
+
+        assertFalse(cacheBypass.shouldBypass());
+        assertFalse(cacheBypass.isBypassing());
+    }
+
+    @Test
+    public void shouldMeasureOneInEightCalls() throws Exception {
+        CacheBypass cacheBypass = new CacheBypass("cacheId", 10, 60);
+        int measured = 0;
+
+        for (int i = 0; i < 80; i++) {
+            if (cacheBypass.shouldMeasure()) {
+                measured++;
+            }
+        }
+
+        assertEquals(10, measured);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CacheNamespaces.Namespace;
+
+/**
+ * Unit test for {@link CacheNamespaces}
+ * 
+ * @author Brad Cupit
+ */
+public class CacheNamespacesTest {
+    private final CacheNamespaces namespaces = new CacheNamespaces();
+    private final String parameterKey = "<string>hi</string>";
+
+    @Test
+    public void keyShouldBeUnchangedUntilSomethingIsInvalidated() throws Exception {
+        assertEquals(parameterKey, namespaces.forMethod("com.Foo", "find").key(parameterKey));
+    }
+
+    @Test
+    public void invalidateClassShouldChangeTheKeysOfEveryMethod() throws Exception {
+        Namespace find = namespaces.forMethod("com.Foo", "find");
+        Namespace list = namespaces.forMethod("com.Foo", "list");
+        Namespace otherClass = namespaces.forMethod("com.Bar", "find");
+
+        namespaces.invalidateClass("com.Foo");
+
+        assertFalse(parameterKey.equals(find.key(parameterKey)));
+        assertFalse(parameterKey.equals(list.key(parameterKey)));
+        assertEquals(parameterKey, otherClass.key(parameterKey));
+    }
+
+    @Test
+    public void invalidateMethodShouldOnlyChangeTheKeysOfThatMethod() throws Exception {
+        Namespace find = namespaces.forMethod("com.Foo", "find");
+        Namespace list = namespaces.forMethod("com.Foo", "list");
+
+        namespaces.invalidateMethod("com.Foo", "find");
+
+        assertFalse(parameterKey.equals(find.key(parameterKey)));
+        assertEquals(parameterKey, list.key(parameterKey));
+    }
+
+    @Test
+    public void everyInvalidationShouldProduceANewKey() throws Exception {
+        Namespace find = namespaces.forMethod("com.Foo", "find");
+
+        namespaces.invalidateMethod("com.Foo", "find");
+        String firstKey = find.key(parameterKey);
+        namespaces.invalidateClass("com.Foo");
+        String secondKey = find.key(parameterKey);
+
+        assertFalse(firstKey.equals(secondKey));
+    }
+}
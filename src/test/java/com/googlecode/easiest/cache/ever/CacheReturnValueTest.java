@@ -1,48 +1,48 @@
-/*
- * Copyright 2010 Brad Cupit
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * 
- *     http://www.apache.org/licenses/LICENSE-2.0
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.googlecode.easiest.cache.ever;
-
-import static org.junit.Assert.*;
-
-import org.junit.Test;
-
-/**
- * Unit test for {@link CacheReturnValue} annotation
- * 
- * @author Brad Cupit
- */
-public class CacheReturnValueTest {
-    @Test
-    public void annotationOnMethodShouldBeQueryableViaReflection() throws Exception {
-        class TestClass {
-            @CacheReturnValue
-            @SuppressWarnings("unused")
-            public void method() {
-            }
-        }
-
-        assertTrue(TestClass.class.getMethod("method").isAnnotationPresent(CacheReturnValue.class));
-    }
-
-    @Test
-    public void annotationOnClassShouldBeQueryableViaReflection() throws Exception {
-        @CacheReturnValue
-        class TestClass {
-        }
-
-        assertTrue(TestClass.class.isAnnotationPresent(CacheReturnValue.class));
-    }
-}
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CacheReturnValue} annotation
+ * 
+ * @author Brad Cupit
+ */
+public class CacheReturnValueTest {
+    @Test
+    public void annotationOnMethodShouldBeQueryableViaReflection() throws Exception {
+        class TestClass {
+            @CacheReturnValue
+            @SuppressWarnings("unused")
+            public void method() {
+            }
+        }
+
+        assertTrue(TestClass.class.getMethod("method").isAnnotationPresent(CacheReturnValue.class));
+    }
+
+    @Test
+    public void annotationOnClassShouldBeQueryableViaReflection() throws Exception {
+        @CacheReturnValue
+        class TestClass {
+        }
+
+        assertTrue(TestClass.class.isAnnotationPresent(CacheReturnValue.class));
+    }
+}
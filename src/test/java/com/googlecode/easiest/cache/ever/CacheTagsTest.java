@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CacheTags}
+ * 
+ * @author Brad Cupit
+ */
+public class CacheTagsTest {
+    @Test
+    public void forMethodShouldReturnNullWhenThereAreNoTags() throws Exception {
+        assertNull(CacheTags.forMethod(TaggedMethods.class.getMethod("untagged", long.class), null));
+    }
+
+    @Test
+    public void tagsForShouldTagWithAnnotatedArguments() throws Exception {
+        CacheTags cacheTags = CacheTags.forMethod(TaggedMethods.class.getMethod("tagged", long.class, String.class,
+                    long.class), null);
+
+        Collection<String> tags = cacheTags.tagsFor("return value", new Object[] { 42L, "ignored", 7L });
+
+        assertEquals(Arrays.asList("customer:42", "order:7"), tags);
+    }
+
+    @Test
+    public void tagsForShouldAddTheExtractedTags() throws Exception {
+        CacheTags cacheTags = CacheTags.forMethod(TaggedMethods.class.getMethod("untagged", long.class),
+                    new TagExtractor() {
+                        public Collection<String> tags(Object returnValue, Object[] arguments) {
+                            return Arrays.asList(CacheTags.tag("value", returnValue));
+                        }
+                    });
+
+        assertEquals(Arrays.asList("value:returned"), cacheTags.tagsFor("returned", new Object[] { 42L }));
+    }
+
+    /**
+     * Helper class for unit tests
+     * 
+     * @author Brad Cupit
+     */
+    public static class TaggedMethods {
+        public String untagged(long customerId) {
+            return null;
+        }
+
+        public String tagged(@CacheTag("customer") long customerId, String ignored, @CacheTag("order") long orderId) {
+            return null;
+        }
+    }
+}
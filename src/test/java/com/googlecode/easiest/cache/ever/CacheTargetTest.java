@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.keys.DefaultKeyGenerator;
+import com.googlecode.easiest.cache.ever.keys.GeneratedKeyBuilder;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * unit test for {@link CacheTarget}
+ * 
+ * @author Brad Cupit
+ */
+public class CacheTargetTest {
+    private final DefaultKeyGenerator keyGenerator = new DefaultKeyGenerator();
+    private final GeneratedKeyBuilder mockGeneratedKeyBuilder = mock(GeneratedKeyBuilder.class);
+
+    @Before
+    public void before() {
+        keyGenerator.setXstream(new XStream());
+    }
+
+    @Test
+    public void generateParameterKeyShouldUseTheRuntimeKeyGeneratorWithoutAGeneratedBuilder() throws Exception {
+        CacheTarget cacheTarget = new CacheTarget(cachedMethod(null), KeyParameters.forMethod(method("rename")));
+
+        assertEquals(keyGenerator.generateParameterKey(Collections.singletonList("user1")), cacheTarget
+                    .generateParameterKey(new Object[] { "user1", "new name" }));
+    }
+
+    @Test
+    public void generateParameterKeyShouldUseTheCachedMethodsGeneratedBuilder() throws Exception {
+        when(mockGeneratedKeyBuilder.parameterKey(new Object[] { null, "user1" })).thenReturn("generated key");
+        CacheTarget cacheTarget = new CacheTarget(cachedMethod(mockGeneratedKeyBuilder), KeyParameters
+                    .forMethod(method("rename")));
+
+        assertEquals("generated key", cacheTarget.generateParameterKey(new Object[] { "user1", "new name" }));
+    }
+
+    private CachedMethod cachedMethod(GeneratedKeyBuilder generatedKeyBuilder) throws Exception {
+        return new CachedMethod("cacheId", new CacheConfig(100, 1, Time.HOURS), KeyParameters
+                    .forMethod(method("find")), generatedKeyBuilder, keyGenerator, null, null, null, null, null);
+    }
+
+    private Method method(String name) {
+        for (Method method : Methods.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    /**
+     * Helper class for unit tests
+     * 
+     * @author Brad Cupit
+     */
+    public static class Methods {
+        public String find(@CacheIgnore String trace, String userId) {
+            return userId;
+        }
+
+        public void rename(@CacheKey String userId, @CacheIgnore String newName) {
+        }
+    }
+}
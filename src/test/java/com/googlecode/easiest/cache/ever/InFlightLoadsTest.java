@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.InFlightLoads.InFlightLoad;
+
+/**
+ * unit test for {@link InFlightLoads}
+ * 
+ * @author Brad Cupit
+ */
+public class InFlightLoadsTest {
+    private final InFlightLoads inFlightLoads = new InFlightLoads();
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+
+    @After
+    public void after() {
+        otherThread.shutdownNow();
+    }
+
+    @Test
+    public void beginShouldMakeFirstCallerTheOwner() throws Exception {
+        assertTrue(inFlightLoads.begin("cacheId", "key").isOwner());
+    }
+
+    @Test
+    public void beginShouldNotMakeSecondCallerTheOwnerWhileLoadIsInFlight() throws Exception {
+        inFlightLoads.begin("cacheId", "key");
+
+        assertFalse(inFlightLoads.begin("cacheId", "key").isOwner());
+    }
+
+    @Test
+    public void beginShouldTreatDifferentKeysAndNullKeysSeparately() throws Exception {
+        inFlightLoads.begin("cacheId", "key");
+
+        assertTrue(inFlightLoads.begin("cacheId", "other key").isOwner());
+        assertTrue(inFlightLoads.begin("cacheId", null).isOwner());
+        assertTrue(inFlightLoads.begin("other cacheId", "key").isOwner());
+    }
+
+    @Test
+    public void beginShouldMakeNextCallerTheOwnerOnceLoadCompletes() throws Exception {
+        inFlightLoads.begin("cacheId", "key").complete();
+
+        assertTrue(inFlightLoads.begin("cacheId", "key").isOwner());
+    }
+
+    @Test
+    public void awaitCompletionShouldBlockUntilOwnerCompletes() throws Exception {
+        InFlightLoad owner = inFlightLoads.begin("cacheId", "key");
+        final InFlightLoad waiter = inFlightLoads.begin("cacheId", "key");
+        final CountDownLatch waiting = new CountDownLatch(1);
+
+        Future<Boolean> result = otherThread.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                waiting.countDown();
+                return waiter.awaitCompletion(5000);
+            }
+        });
+
+        waiting.await();
+        Thread.sleep(50);
+        assertFalse(result.isDone());
+
+        owner.complete();
+        assertTrue(result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitCompletionShouldGiveUpWhenTheTimeIsUp() throws Exception {
+        inFlightLoads.begin("cacheId", "key");
+        InFlightLoad waiter = inFlightLoads.begin("cacheId", "key");
+
+        assertFalse(waiter.awaitCompletion(20));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void completeShouldThrowWhenNotOwner() throws Exception {
+        inFlightLoads.begin("cacheId", "key");
+        inFlightLoads.begin("cacheId", "key").complete();
+    }
+}
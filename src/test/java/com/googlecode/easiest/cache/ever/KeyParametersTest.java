@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link KeyParameters}
+ * 
+ * @author Brad Cupit
+ */
+public class KeyParametersTest {
+    @Test
+    public void unannotatedParametersShouldAllBeInTheKey() throws Exception {
+        KeyParameters keyParameters = KeyParameters.forMethod(method("unannotated"));
+        Object[] arguments = { "a", 1 };
+
+        assertTrue(keyParameters.isAllArguments());
+        assertArrayEquals(arguments, keyParameters.select(arguments));
+    }
+
+    @Test
+    public void ignoredParametersShouldBeLeftOut() throws Exception {
+        KeyParameters keyParameters = KeyParameters.forMethod(method("ignoring"));
+
+        assertEquals(1, keyParameters.count(2));
+        assertArrayEquals(new Object[] { "a" }, keyParameters.select(new Object[] { "a", new Object() }));
+    }
+
+    @Test
+    public void onlyCacheKeyParametersShouldBeInTheKey() throws Exception {
+        KeyParameters keyParameters = KeyParameters.forMethod(method("selecting"));
+
+        assertArrayEquals(new Object[] { 2 }, keyParameters.select(new Object[] { "a", 2, "c" }));
+    }
+
+    @Test
+    public void placeShouldPutTheKeyValuesBackInTheirArgumentPositions() throws Exception {
+        KeyParameters keyParameters = KeyParameters.forMethod(method("selecting"));
+
+        assertArrayEquals(new Object[] { null, 2, null }, keyParameters.place(new Object[] { 2 }));
+    }
+
+    @Test
+    public void propertyPathsShouldReadGettersAndFields() throws Exception {
+        KeyParameters keyParameters = KeyParameters.forMethod(method("paths"));
+        Account account = new Account(new Customer("bob"), 7);
+
+        assertArrayEquals(new Object[] { "bob", 7 }, keyParameters.select(new Object[] { account, account }));
+    }
+
+    @Test
+    public void nullAlongThePathShouldSelectNull() throws Exception {
+        KeyParameters keyParameters = KeyParameters.forMethod(method("paths"));
+        Account account = new Account(null, 7);
+
+        assertArrayEquals(new Object[] { null, 7 }, keyParameters.select(new Object[] { account, account }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cacheKeyAndCacheIgnoreOnTheSameParameterShouldFail() throws Exception {
+        KeyParameters.forMethod(method("both"));
+    }
+
+    @Test
+    public void nullMethodShouldKeepAllArguments() throws Exception {
+        assertTrue(KeyParameters.forMethod(null).isAllArguments());
+    }
+
+    private Method method(String name) {
+        for (Method method : Methods.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    /**
+     * methods used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Methods {
+        public String unannotated(String a, int b) {
+            return null;
+        }
+
+        public String ignoring(String a, @CacheIgnore Object context) {
+            return null;
+        }
+
+        public String selecting(String a, @CacheKey int b, String c) {
+            return null;
+        }
+
+        public String paths(@CacheKey("customer.name") Account a, @CacheKey("number") Account b) {
+            return null;
+        }
+
+        public String both(@CacheKey @CacheIgnore String a) {
+            return null;
+        }
+    }
+
+    /**
+     * class used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Account {
+        private final Customer customer;
+        private final int number;
+
+        public Account(Customer customer, int number) {
+            this.customer = customer;
+            this.number = number;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+    }
+
+    /**
+     * class used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Customer {
+        private final String name;
+
+        public Customer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+
+/**
+ * unit test for {@link AutoSizingCacheService}
+ * 
+ * @author Brad Cupit
+ */
+public class AutoSizingCacheServiceTest {
+    private final ResizableCacheService mockCacheService = mock(ResizableCacheService.class);
+    private final AutoSizingCacheService cacheService = new AutoSizingCacheService();
+
+    @Before
+    public void before() {
+        cacheService.setCacheService(mockCacheService);
+        cacheService.setSampleRate(1);
+        cacheService.setTuningIntervalSeconds(0);
+
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+    }
+
+    @Test
+    public void underlyingCacheShouldBeCreatedAtTheLargestSize() throws Exception {
+        cacheService.setMaxScale(4);
+        cacheService.createCacheIfNecessary("cache", config(100));
+
+        ArgumentCaptor<CacheConfig> argument = ArgumentCaptor.forClass(CacheConfig.class);
+        verify(mockCacheService).createCacheIfNecessary(eq("cache"), argument.capture());
+        assertThat(argument.getValue().getMaxSize(), is(400));
+        verify(mockCacheService).resize("cache", 100);
+        assertThat(cacheService.getSize("cache"), is(100));
+    }
+
+    /**
+     * a cache looping over more keys than it holds gains a lot from growing,
+     * a cache with one hot key loses nothing by shrinking
+     */
+    @Test
+    public void tuneShouldMoveEntriesToTheCacheWhichGainsTheMost() throws Exception {
+        cacheService.createCacheIfNecessary("looping", config(100));
+        cacheService.createCacheIfNecessary("hot", config(100));
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 150; i++) {
+                access("looping", "key" + i);
+            }
+            for (int i = 0; i < 150; i++) {
+                access("hot", "key");
+            }
+        }
+
+        cacheService.tune();
+
+        assertThat(cacheService.getSize("looping"), greaterThan(100));
+        assertThat(cacheService.getSize("hot"), lessThan(100));
+        assertThat(cacheService.getSize("looping") + cacheService.getSize("hot"), lessThanOrEqualTo(200));
+    }
+
+    /**
+     * the costly cache would get fewer extra hits from growing, but each one saves far more
+     */
+    @Test
+    public void tuneShouldWeighHitsByTheLoadTimesPassedToAdd() throws Exception {
+        cacheService.createCacheIfNecessary("cheap", config(100));
+        cacheService.createCacheIfNecessary("costly", config(100));
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 150; i++) {
+                access("cheap", "key" + i, 1);
+            }
+        }
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 150; i++) {
+                access("costly", "key" + i, 1000000);
+            }
+        }
+
+        cacheService.tune();
+
+        assertThat(cacheService.getSize("costly"), greaterThan(100));
+        assertThat(cacheService.getSize("cheap"), lessThan(100));
+    }
+
+    @Test
+    public void tuneShouldStayWithinBounds() throws Exception {
+        cacheService.setMinScale(0.5);
+        cacheService.setMaxScale(1.5);
+        cacheService.createCacheIfNecessary("looping", config(100));
+        cacheService.createCacheIfNecessary("idle", config(100));
+
+        for (int tuning = 0; tuning < 5; tuning++) {
+            for (int i = 0; i < 1000; i++) {
+                access("looping", "key" + (i % 180));
+            }
+            cacheService.tune();
+        }
+
+        assertThat(cacheService.getSize("looping"), is(150));
+        assertThat(cacheService.getSize("idle"), is(50));
+    }
+
+    @Test
+    public void tuneShouldLeaveSizesAloneWithoutTraffic() throws Exception {
+        cacheService.createCacheIfNecessary("cache", config(100));
+
+        cacheService.tune();
+
+        assertThat(cacheService.getSize("cache"), is(100));
+        verify(mockCacheService, times(1)).resize(anyString(), anyInt());
+    }
+
+    private void access(String cacheId, String key) {
+        access(cacheId, key, 1000);
+    }
+
+    private void access(String cacheId, String key, long loadNanos) {
+        if (!cacheService.retrieve(cacheId, key).wasFound()) {
+            cacheService.add(cacheId, key, "value", loadNanos);
+        }
+    }
+
+    private CacheConfig config(int maxSize) {
+        return new CacheConfig(maxSize, CacheConstants.NO_EXPIRATION, null);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link EntrySizes}
+ * 
+ * @author Brad Cupit
+ */
+public class EntrySizesTest {
+    @Test
+    public void collectionsShouldBeMeasuredByTheirElements() {
+        char[] big = new char[1000];
+        Arrays.fill(big, 'x');
+        List<String> bigStrings = Collections.nCopies(100, new String(big));
+        List<String> smallStrings = Collections.nCopies(100, "x");
+
+        assertThat(EntrySizes.estimate(bigStrings), greaterThan(100L * 2000));
+        assertThat(EntrySizes.estimate(smallStrings), lessThan(100L * 100));
+    }
+
+    @Test
+    public void nestingShouldOnlyBeWalkedAFewLevelsDown() {
+        List<Object> nested = new ArrayList<Object>();
+        List<Object> innermost = nested;
+        for (int i = 0; i < 10000; i++) {
+            List<Object> inner = new ArrayList<Object>();
+            innermost.add(inner);
+            innermost = inner;
+        }
+
+        assertThat(EntrySizes.estimate(nested), greaterThan(0L));
+        assertThat(EntrySizes.estimate(new Object[] { new Object[] { new Object[] { "x" } } }), greaterThan(0L));
+    }
+
+    @Test
+    public void hugeCollectionsShouldNotOverflow() {
+        List<String> huge = new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return "element";
+            }
+
+            @Override
+            public int size() {
+                return Integer.MAX_VALUE;
+            }
+        };
+
+        assertThat(EntrySizes.estimate(huge), greaterThan((long) Integer.MAX_VALUE));
+    }
+}
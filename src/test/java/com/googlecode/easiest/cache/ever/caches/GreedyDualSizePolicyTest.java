@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link GreedyDualSizePolicy}
+ * 
+ * @author Brad Cupit
+ */
+public class GreedyDualSizePolicyTest {
+    private final GreedyDualSizePolicy policy = new GreedyDualSizePolicy();
+
+    @Test
+    public void selectedBasedOnPolicyShouldPickTheCheapestEntry() throws Exception {
+        Element expensive = policy.newElement("expensive", "value", 20000);
+        Element cheap = policy.newElement("cheap", "value", 2);
+        Element justAdded = policy.newElement("justAdded", "value", 1);
+
+        assertThat(policy.selectedBasedOnPolicy(new Element[] { expensive, cheap, justAdded }, justAdded),
+                    is(sameInstance(cheap)));
+    }
+
+    @Test
+    public void selectedBasedOnPolicyShouldPickTheBulkiestEntryWhenCostsAreEqual() throws Exception {
+        Element small = policy.newElement("small", "value", 1000);
+        Element bulky = policy.newElement("bulky", new byte[100000], 1000);
+
+        assertThat(policy.selectedBasedOnPolicy(new Element[] { small, bulky }, null), is(sameInstance(bulky)));
+    }
+
+    @Test
+    public void selectedBasedOnPolicyShouldPreferEntriesWithoutACost() throws Exception {
+        Element costed = policy.newElement("costed", "value", 1);
+        Element plain = new Element("plain", "value");
+
+        assertThat(policy.selectedBasedOnPolicy(new Element[] { costed, plain }, null), is(sameInstance(plain)));
+    }
+
+    @Test
+    public void selectedBasedOnPolicyShouldSkipNullsAndTheElementJustAdded() throws Exception {
+        Element justAdded = policy.newElement("justAdded", "value", 1);
+
+        assertNull(policy.selectedBasedOnPolicy(new Element[] { null, justAdded }, justAdded));
+    }
+
+    @Test
+    public void evictingShouldAgeEntriesWhichArentUsed() throws Exception {
+        Element old = policy.newElement("old", "value", 1000);
+        Element evicted = policy.newElement("evicted", "value", 500);
+        policy.selectedBasedOnPolicy(new Element[] { old, evicted }, null);
+
+        assertThat(policy.getInflation(), is(policy.priorityOf(evicted)));
+
+        // a cheaper entry which is used after the eviction outranks the stale, more expensive one
+        Element recent = policy.newElement("recent", "value", 600);
+        assertThat(policy.selectedBasedOnPolicy(new Element[] { old, recent }, null), is(sameInstance(old)));
+    }
+
+    @Test
+    public void touchShouldRaiseThePriorityOfUsedEntries() throws Exception {
+        Element element = policy.newElement("key", "value", 1000);
+        policy.selectedBasedOnPolicy(new Element[] { policy.newElement("other", "value", 5000) }, null);
+        double before = policy.priorityOf(element);
+
+        policy.touch(element);
+
+        assertThat(policy.priorityOf(element), is(greaterThan(before)));
+    }
+}
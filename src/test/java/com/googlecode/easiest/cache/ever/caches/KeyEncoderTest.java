@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link KeyEncoder}
+ * 
+ * @author Brad Cupit
+ */
+public class KeyEncoderTest {
+    private static final String KEY = "<object-array><com.example.orders.OrderQuery><customer>42</customer>"
+                + "<status>SHIPPED</status></com.example.orders.OrderQuery><string>EUR</string></object-array>";
+
+    private final KeyEncoder keyEncoder = new KeyEncoder();
+
+    @Test
+    public void keysShouldDecodeToWhatWasEncoded() {
+        assertEquals(KEY, keyEncoder.decode(keyEncoder.encode(KEY)));
+        assertEquals("", keyEncoder.decode(keyEncoder.encode("")));
+        assertEquals("<ref id=\"1\"/><null/>", keyEncoder.decode(keyEncoder.encode("<ref id=\"1\"/><null/>")));
+    }
+
+    @Test
+    public void anyCharactersShouldSurviveTheRoundTrip() {
+        String key = "<string>caf\u00e9 \u20ac \ud83d\ude00 \ud800 \u00ff\u0000</string>";
+
+        assertEquals(key, keyEncoder.decode(keyEncoder.encode(key)));
+    }
+
+    @Test
+    public void sameKeysShouldBeEqual() {
+        KeyEncoder.CompactKey first = keyEncoder.encode(KEY);
+        KeyEncoder.CompactKey second = keyEncoder.encode(new String(KEY));
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertFalse(first.equals(keyEncoder.encode(KEY.replace("42", "43"))));
+    }
+
+    @Test
+    public void elementNamesShouldBeWrittenAsNumbers() {
+        KeyEncoder.CompactKey compactKey = keyEncoder.encode(KEY);
+
+        // object-array, OrderQuery, customer, status and string
+        assertEquals(5, keyEncoder.size());
+        assertThat(compactKey.size(), lessThan(KEY.length() / 2));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.rits.cloning.Cloner;
+
+/**
+ * unit test for {@link NearCacheService}
+ * 
+ * @author Brad Cupit
+ */
+public class NearCacheServiceTest {
+    private static final int DONT_CARE_ABOUT_SIZE = 1000;
+    private static final int LONG_EXPIRATION_MILLIS = 60 * 1000;
+
+    private final String cacheId = "cacheId";
+    private final String cacheKey = "cacheKey";
+    private final CacheConfig nearCacheConfig = new CacheConfig(DONT_CARE_ABOUT_SIZE, CacheConstants.NO_EXPIRATION,
+                null, 10, LONG_EXPIRATION_MILLIS);
+    private final EvictingCacheService mockCacheService = mock(EvictingCacheService.class);
+    private final NearCacheService nearCacheService = new NearCacheService();
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void before() {
+        nearCacheService.setCacheService(mockCacheService);
+        nearCacheService.setCloner(new Cloner());
+        when(mockCacheService.retrieve(cacheId, cacheKey)).thenReturn(CachedValue.create("value"));
+    }
+
+    @After
+    public void after() {
+        otherThread.shutdown();
+    }
+
+    @Test
+    public void retrieveShouldNotHitSharedCacheTwiceForTheSameKeyOnTheSameThread() throws Exception {
+        nearCacheService.createCacheIfNecessary(cacheId, nearCacheConfig);
+
+        nearCacheService.retrieve(cacheId, cacheKey);
+        CachedValue cachedValue = nearCacheService.retrieve(cacheId, cacheKey);
+
+        assertTrue(cachedValue.wasFound());
+        assertEquals("value", cachedValue.value());
+        verify(mockCacheService, times(1)).retrieve(cacheId, cacheKey);
+    }
+
+    @Test
+    public void nearCacheEntriesShouldNotOutliveTheSharedEntry() throws Exception {
+        nearCacheService.createCacheIfNecessary(cacheId, nearCacheConfig);
+        // expires within the second
+        when(mockCacheService.retrieve(cacheId, cacheKey)).thenReturn(CachedValue.create("value", 0));
+
+        nearCacheService.retrieve(cacheId, cacheKey);
+        nearCacheService.retrieve(cacheId, cacheKey);
+
+        verify(mockCacheService, times(2)).retrieve(cacheId, cacheKey);
+    }
+
+    @Test
+    public void nearHitsShouldShareOneUnmodifiableViewWhenConfigured() throws Exception {
+        nearCacheService.createCacheIfNecessary(cacheId, new CacheConfig(DONT_CARE_ABOUT_SIZE,
+                    CacheConstants.NO_EXPIRATION, null, 10, LONG_EXPIRATION_MILLIS, CacheConstants.NO_COMPRESSION,
+                    true));
+        when(mockCacheService.retrieve(cacheId, cacheKey)).thenReturn(
+                    CachedValue.create(new ArrayList<String>(Arrays.asList("a", "b"))));
+
+        Object first = nearCacheService.retrieve(cacheId, cacheKey).value();
+        Object second = nearCacheService.retrieve(cacheId, cacheKey).value();
+
+        assertSame(first, second);
+        assertEquals(Arrays.asList("a", "b"), first);
+    }
+
+    @Test
+    public void retrieveShouldAlwaysHitSharedCacheWhenNearCacheIsDisabled() throws Exception {
+        CacheConfig noNearCache = new CacheConfig(DONT_CARE_ABOUT_SIZE, CacheConstants.NO_EXPIRATION, null);
+        nearCacheService.createCacheIfNecessary(cacheId, noNearCache);
+
+        nearCacheService.retrieve(cacheId, cacheKey);
+        nearCacheService.retrieve(cacheId, cacheKey);
+
+        verify(mockCacheService, times(2)).retrieve(cacheId, cacheKey);
+    }
+
+    @Test
+    public void addShouldInvalidateNearCacheEntriesOfOtherThreads() throws Exception {
+        nearCacheService.createCacheIfNecessary(cacheId, nearCacheConfig);
+        nearCacheService.retrieve(cacheId, cacheKey);
+
+        otherThread.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                nearCacheService.add(cacheId, cacheKey, "new value");
+                return null;
+            }
+        }).get();
+
+        nearCacheService.retrieve(cacheId, cacheKey);
+
+        verify(mockCacheService, times(2)).retrieve(cacheId, cacheKey);
+    }
+
+    @Test
+    public void removeAllShouldInvalidateEveryNearCacheEntry() throws Exception {
+        nearCacheService.createCacheIfNecessary(cacheId, nearCacheConfig);
+        nearCacheService.retrieve(cacheId, cacheKey);
+
+        nearCacheService.removeAll(cacheId);
+        nearCacheService.retrieve(cacheId, cacheKey);
+
+        verify(mockCacheService).removeAll(cacheId);
+        verify(mockCacheService, times(2)).retrieve(cacheId, cacheKey);
+    }
+
+    @Test
+    public void retrieveShouldGoBackToSharedCacheAfterNearCacheEntryExpires() throws Exception {
+        int expirationMillis = 1;
+        CacheConfig shortNearCache = new CacheConfig(DONT_CARE_ABOUT_SIZE, CacheConstants.NO_EXPIRATION, null, 10,
+                    expirationMillis);
+        nearCacheService.createCacheIfNecessary(cacheId, shortNearCache);
+
+        nearCacheService.retrieve(cacheId, cacheKey);
+        Thread.sleep(expirationMillis + 5);
+        nearCacheService.retrieve(cacheId, cacheKey);
+
+        verify(mockCacheService, times(2)).retrieve(cacheId, cacheKey);
+    }
+
+    /**
+     * same thread-safety guarantee as {@link DefaultCacheService}: callers can
+     * modify what they get back without changing what is cached
+     */
+    @Test
+    public void retrieveShouldReturnClonedObjectFromNearCache() throws Exception {
+        StringBuilder original = new StringBuilder("initial value");
+        when(mockCacheService.retrieve(cacheId, cacheKey)).thenReturn(CachedValue.create(original));
+        nearCacheService.createCacheIfNecessary(cacheId, nearCacheConfig);
+
+        StringBuilder firstRetrieved = (StringBuilder) nearCacheService.retrieve(cacheId, cacheKey).value();
+        firstRetrieved.append(" changed");
+        StringBuilder secondRetrieved = (StringBuilder) nearCacheService.retrieve(cacheId, cacheKey).value();
+
+        assertNotSame(firstRetrieved, secondRetrieved);
+        assertEquals("initial value", secondRetrieved.toString());
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+
+/**
+ * unit test for {@link SharedMemoryCacheService}
+ * 
+ * @author Brad Cupit
+ */
+public class SharedMemoryCacheServiceTest {
+    private final String cacheId = "cacheId";
+    private final String cacheKey = "cacheKey";
+    private final String expectedValue = "expected value";
+    private final CacheConfig cacheConfig = new CacheConfig(1000, CacheConstants.NO_EXPIRATION, null);
+    private final EvictingCacheService mockCacheService = mock(EvictingCacheService.class);
+    private File file;
+    private SharedMemoryCacheService cacheService;
+    private SharedMemoryCacheService otherProcessesCacheService;
+
+    @Before
+    public void before() throws Exception {
+        file = File.createTempFile("shared-cache", ".bin");
+        file.delete();
+
+        when(mockCacheService.retrieve(anyString(), anyString())).thenReturn(CachedValue.notFound());
+        cacheService = newCacheService();
+        otherProcessesCacheService = newCacheService();
+    }
+
+    @After
+    public void after() throws Exception {
+        cacheService.close();
+        otherProcessesCacheService.close();
+        file.delete();
+    }
+
+    @Test
+    public void retrieveShouldFindValuesAddedByAnotherProcess() throws Exception {
+        cacheService.add(cacheId, cacheKey, expectedValue);
+        cacheService.add(cacheId, null, "null key's value");
+
+        assertThat(otherProcessesCacheService.retrieve(cacheId, cacheKey).value(), is((Object) expectedValue));
+        assertThat(otherProcessesCacheService.retrieve(cacheId, null).value(), is((Object) "null key's value"));
+        assertFalse(otherProcessesCacheService.retrieve(cacheId, "otherKey").wasFound());
+    }
+
+    @Test
+    public void valuesShouldSurviveARestart() throws Exception {
+        cacheService.add(cacheId, cacheKey, expectedValue);
+        cacheService.close();
+        otherProcessesCacheService.close();
+
+        cacheService = newCacheService();
+
+        assertThat(cacheService.retrieve(cacheId, cacheKey).value(), is((Object) expectedValue));
+    }
+
+    @Test
+    public void addShouldReplaceTheKeysValue() throws Exception {
+        cacheService.add(cacheId, cacheKey, "old value");
+        otherProcessesCacheService.add(cacheId, cacheKey, expectedValue);
+
+        assertThat(cacheService.retrieve(cacheId, cacheKey).value(), is((Object) expectedValue));
+    }
+
+    @Test
+    public void removeShouldRemoveTheValueForEveryProcess() throws Exception {
+        cacheService.add(cacheId, cacheKey, expectedValue);
+
+        otherProcessesCacheService.remove(cacheId, cacheKey);
+
+        assertFalse(cacheService.retrieve(cacheId, cacheKey).wasFound());
+    }
+
+    @Test
+    public void removeAllShouldOnlyRemoveTheCachesValues() throws Exception {
+        cacheService.add(cacheId, cacheKey, expectedValue);
+        cacheService.add("otherCacheId", cacheKey, expectedValue);
+
+        cacheService.removeAll(cacheId);
+
+        assertFalse(cacheService.retrieve(cacheId, cacheKey).wasFound());
+        assertTrue(cacheService.retrieve("otherCacheId", cacheKey).wasFound());
+    }
+
+    @Test
+    public void valuesWhichDontFitShouldBeCachedLocally() throws Exception {
+        char[] big = new char[2000];
+        Arrays.fill(big, 'x');
+        String bigValue = new String(big);
+
+        cacheService.add(cacheId, cacheKey, bigValue);
+
+        verify(mockCacheService).add(cacheId, cacheKey, bigValue);
+        assertFalse(otherProcessesCacheService.retrieve(cacheId, cacheKey).wasFound());
+    }
+
+    @Test
+    public void replacingASharedValueWithOneWhichDoesntFitShouldRemoveTheSharedValue() throws Exception {
+        char[] big = new char[2000];
+        Arrays.fill(big, 'x');
+        String bigValue = new String(big);
+        cacheService.add(cacheId, cacheKey, "small value");
+        when(mockCacheService.retrieve(cacheId, cacheKey)).thenReturn(CachedValue.create(bigValue));
+
+        cacheService.add(cacheId, cacheKey, bigValue);
+
+        verify(mockCacheService).add(cacheId, cacheKey, bigValue);
+        assertThat(cacheService.retrieve(cacheId, cacheKey).value(), is((Object) bigValue));
+    }
+
+    @Test
+    public void sharingAValueShouldRemoveTheKeysLocalValue() throws Exception {
+        cacheService.add(cacheId, cacheKey, expectedValue);
+
+        verify(mockCacheService).remove(cacheId, cacheKey);
+    }
+
+    @Test
+    public void addShouldReplaceTheValueExpiringSoonestWhenTheKeysSlotsAreFull() throws Exception {
+        cacheService.close();
+        otherProcessesCacheService.close();
+        file.delete();
+        // every key can use every slot
+        cacheService = newCacheService(SharedMemoryCacheService.PROBES);
+        otherProcessesCacheService = newCacheService(SharedMemoryCacheService.PROBES);
+
+        cacheService.add(cacheId, "expiresSoonest", expectedValue, 0, 100);
+        for (int i = 0; i < SharedMemoryCacheService.PROBES; i++) {
+            cacheService.add(cacheId, "key" + i, expectedValue, 0, CacheConstants.NO_EXPIRATION);
+        }
+
+        assertFalse(cacheService.retrieve(cacheId, "expiresSoonest").wasFound());
+        for (int i = 0; i < SharedMemoryCacheService.PROBES; i++) {
+            assertTrue(cacheService.retrieve(cacheId, "key" + i).wasFound());
+        }
+    }
+
+    @Test
+    public void shouldRejectSlotsTakingMoreThanOneMappedFileCanHold() throws Exception {
+        SharedMemoryCacheService tooBigCacheService = new SharedMemoryCacheService();
+        tooBigCacheService.setCacheService(mockCacheService);
+        tooBigCacheService.setFile(file);
+        tooBigCacheService.setSlotCount(4 * 1024 * 1024);
+        tooBigCacheService.setSlotSize(1024);
+
+        try {
+            tooBigCacheService.add(cacheId, cacheKey, expectedValue);
+            fail("expected the slots to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertFalse(file.exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setSlotSizeShouldRejectSlotsTooSmallForTheirHeader() throws Exception {
+        new SharedMemoryCacheService().setSlotSize(8);
+    }
+
+    private SharedMemoryCacheService newCacheService() {
+        return newCacheService(64);
+    }
+
+    private SharedMemoryCacheService newCacheService(int slotCount) {
+        SharedMemoryCacheService newCacheService = new SharedMemoryCacheService();
+        newCacheService.setCacheService(mockCacheService);
+        newCacheService.setFile(file);
+        newCacheService.setSlotCount(slotCount);
+        newCacheService.setSlotSize(256);
+        newCacheService.createCacheIfNecessary(cacheId, cacheConfig);
+        newCacheService.createCacheIfNecessary("otherCacheId", cacheConfig);
+        return newCacheService;
+    }
+}
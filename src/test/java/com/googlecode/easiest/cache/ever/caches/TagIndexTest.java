@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link TagIndex}
+ * 
+ * @author Brad Cupit
+ */
+public class TagIndexTest {
+    private final TagIndex tagIndex = new TagIndex();
+
+    @Test
+    public void keysForShouldFindEveryKeyWithTheTag() throws Exception {
+        tagIndex.add("cacheId", new Element("key", "value"), Arrays.asList("tag", "other"));
+        tagIndex.add("otherCacheId", new Element("key", "value"), Arrays.asList("tag"));
+
+        assertEquals(2, tagIndex.keysFor("tag").size());
+        assertEquals(1, tagIndex.keysFor("other").size());
+        assertEquals(0, tagIndex.keysFor("unknown").size());
+    }
+
+    @Test
+    public void removedShouldForgetTheElementsTags() throws Exception {
+        Element element = new Element("key", "value");
+        tagIndex.add("cacheId", element, Arrays.asList("tag"));
+
+        tagIndex.removed("cacheId", element);
+
+        assertEquals(0, tagIndex.keysFor("tag").size());
+        assertEquals(0, tagIndex.size());
+    }
+
+    @Test
+    public void removedShouldIgnoreElementsWhichHaveBeenReplaced() throws Exception {
+        Element oldElement = new Element("key", "old value");
+        tagIndex.add("cacheId", oldElement, Arrays.asList("tag"));
+        tagIndex.add("cacheId", new Element("key", "new value"), Arrays.asList("tag"));
+
+        tagIndex.removed("cacheId", oldElement);
+
+        assertEquals(1, tagIndex.keysFor("tag").size());
+    }
+
+    @Test
+    public void addShouldReplaceTheTagsOfTheKey() throws Exception {
+        tagIndex.add("cacheId", new Element("key", "old value"), Arrays.asList("old tag"));
+        tagIndex.add("cacheId", new Element("key", "new value"), Arrays.asList("new tag"));
+
+        assertEquals(0, tagIndex.keysFor("old tag").size());
+        assertEquals(1, tagIndex.keysFor("new tag").size());
+    }
+
+    @Test
+    public void replacedShouldForgetTheTagsOfADifferentElement() throws Exception {
+        Element taggedElement = new Element("key", "old value");
+        tagIndex.add("cacheId", taggedElement, Arrays.asList("tag"));
+
+        tagIndex.replaced("cacheId", taggedElement);
+        assertEquals(1, tagIndex.keysFor("tag").size());
+
+        tagIndex.replaced("cacheId", new Element("key", "untagged value"));
+        assertEquals(0, tagIndex.keysFor("tag").size());
+    }
+
+    @Test
+    public void removedAllShouldOnlyForgetTheCachesElements() throws Exception {
+        tagIndex.add("cacheId", new Element("key", "value"), Arrays.asList("tag"));
+        tagIndex.add("otherCacheId", new Element("key", "value"), Arrays.asList("tag"));
+
+        tagIndex.removedAll("cacheId");
+
+        assertEquals(1, tagIndex.keysFor("tag").size());
+        assertEquals("otherCacheId", tagIndex.keysFor("tag").get(0).cacheId);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.caches;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.ehcache.CacheManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.caches.TieredCacheService.TierStatistics;
+import com.rits.cloning.Cloner;
+
+/**
+ * unit test for {@link TieredCacheService}
+ * 
+ * @author Brad Cupit
+ */
+public class TieredCacheServiceTest {
+    private final String cacheId = "cacheId";
+    private final CacheManager firstEhcacheManager = new CacheManager();
+    private final CacheManager secondEhcacheManager = new CacheManager();
+    private DefaultCacheService firstTier;
+    private DefaultCacheService secondTier;
+    private TieredCacheService cacheService;
+
+    @Before
+    public void before() {
+        firstTier = newTier(firstEhcacheManager);
+        secondTier = newTier(secondEhcacheManager);
+
+        cacheService = new TieredCacheService();
+        cacheService.setTiers(Arrays.asList(firstTier, secondTier));
+        cacheService.createCacheIfNecessary(cacheId, new CacheConfig(2, CacheConstants.NO_EXPIRATION, null));
+    }
+
+    @After
+    public void after() {
+        firstEhcacheManager.shutdown();
+        secondEhcacheManager.shutdown();
+    }
+
+    @Test
+    public void lowerTiersShouldBeBiggerByTheGrowthFactor() {
+        assertEquals(2, firstEhcacheManager.getEhcache(cacheId).getCacheConfiguration().getMaxElementsInMemory());
+        assertEquals(16, secondEhcacheManager.getEhcache(cacheId).getCacheConfiguration().getMaxElementsInMemory());
+    }
+
+    @Test
+    public void evictedValuesShouldMoveDownATier() {
+        cacheService.add(cacheId, "1", "one");
+        cacheService.add(cacheId, "2", "two");
+        cacheService.add(cacheId, "3", "three");
+
+        assertFalse(firstTier.retrieve(cacheId, "1").wasFound());
+        assertEquals("one", secondTier.retrieve(cacheId, "1").value());
+        assertEquals(1, cacheService.getStatistics().get(1).getDemotions());
+    }
+
+    @Test
+    public void valuesFoundInALowerTierShouldMoveUp() {
+        cacheService.add(cacheId, "1", "one");
+        cacheService.add(cacheId, "2", "two");
+        cacheService.add(cacheId, "3", "three");
+
+        assertEquals("one", cacheService.retrieve(cacheId, "1").value());
+
+        assertEquals("one", firstTier.retrieve(cacheId, "1").value());
+        // moved, not copied
+        assertFalse(secondTier.retrieve(cacheId, "1").wasFound());
+
+        List<TierStatistics> statistics = cacheService.getStatistics();
+        assertEquals(1, statistics.get(1).getHits());
+        assertEquals(1, statistics.get(1).getPromotions());
+        assertEquals(2, statistics.get(1).getDemotions());
+    }
+
+    @Test
+    public void promotedValuesShouldKeepWhatWasLeftOfTheirTimeToLive() {
+        cacheService.add(cacheId, "1", "one", 0, 100);
+        cacheService.add(cacheId, "2", "two");
+        cacheService.add(cacheId, "3", "three");
+        assertTrue(secondTier.retrieve(cacheId, "1").wasFound());
+
+        cacheService.retrieve(cacheId, "1");
+
+        int timeToLiveSeconds = firstTier.retrieve(cacheId, "1").timeToLiveSeconds();
+        assertTrue(timeToLiveSeconds > 90 && timeToLiveSeconds <= 100);
+    }
+
+    @Test
+    public void addingShouldReplaceStaleValuesInLowerTiers() {
+        cacheService.add(cacheId, "1", "one");
+        cacheService.add(cacheId, "2", "two");
+        cacheService.add(cacheId, "3", "three");
+        cacheService.add(cacheId, "1", "uno");
+
+        assertFalse(secondTier.retrieve(cacheId, "1").wasFound());
+        assertEquals("uno", cacheService.retrieve(cacheId, "1").value());
+    }
+
+    @Test
+    public void removeAllShouldEmptyEveryTier() {
+        cacheService.add(cacheId, "1", "one");
+        cacheService.add(cacheId, "2", "two");
+        cacheService.add(cacheId, "3", "three");
+
+        cacheService.removeAll(cacheId);
+
+        assertFalse(cacheService.retrieve(cacheId, "1").wasFound());
+        assertFalse(cacheService.retrieve(cacheId, "3").wasFound());
+        assertEquals(2, cacheService.getMisses());
+    }
+
+    private DefaultCacheService newTier(CacheManager ehcacheManager) {
+        DefaultCacheService tier = new DefaultCacheService();
+        tier.setCloner(new Cloner());
+        tier.setEhcacheManager(ehcacheManager);
+        return tier;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link CacheProtocol}
+ * 
+ * @author Brad Cupit
+ */
+public class CacheProtocolTest {
+    @Test
+    public void framesShouldSurviveTheRoundTrip() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        CacheProtocol.writeString(CacheProtocol.startFrame(body, 7, CacheProtocol.GET), "cacheId");
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        CacheProtocol.writeFrame(new DataOutputStream(wire), body);
+
+        DataInputStream frame = CacheProtocol.readFrame(input(wire.toByteArray()));
+
+        assertEquals(7, frame.readInt());
+        assertEquals(CacheProtocol.GET, frame.readByte());
+        assertEquals("cacheId", CacheProtocol.readString(frame));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrameShouldRejectFramesOverTheLimit() throws Exception {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        new DataOutputStream(wire).writeInt(CacheProtocol.MAX_FRAME_BYTES + 1);
+
+        CacheProtocol.readFrame(input(wire.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrameShouldRejectNegativeLengths() throws Exception {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        new DataOutputStream(wire).writeInt(-2);
+
+        CacheProtocol.readFrame(input(wire.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void readBytesShouldRejectLengthsPastTheEndOfTheFrame() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        new DataOutputStream(body).writeInt(Integer.MAX_VALUE);
+
+        CacheProtocol.readBytes(input(body.toByteArray()));
+    }
+
+    private DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link ConsistentHashRing}
+ * 
+ * @author Brad Cupit
+ */
+public class ConsistentHashRingTest {
+    private static final int KEYS = 10000;
+
+    private final List<String> nodes = Arrays.asList("host1:4000", "host2:4000", "host3:4000", "host4:4000");
+
+    @Test
+    public void nodeForShouldAlwaysPickTheSameNode() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, 160);
+        ConsistentHashRing otherRing = new ConsistentHashRing(Arrays.asList("host4:4000", "host3:4000", "host2:4000",
+                    "host1:4000"), 160);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(otherRing.nodeFor("cacheId", "key" + i), is(ring.nodeFor("cacheId", "key" + i)));
+        }
+    }
+
+    @Test
+    public void nodeForShouldSpreadKeysEvenly() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, 160);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        for (int i = 0; i < KEYS; i++) {
+            String node = ring.nodeFor("cacheId", "key" + i);
+            counts.put(node, counts.containsKey(node) ? counts.get(node) + 1 : 1);
+        }
+
+        for (String node : nodes) {
+            assertThat(counts.get(node), is(greaterThan(KEYS / nodes.size() * 3 / 4)));
+        }
+    }
+
+    @Test
+    public void removingANodeShouldOnlyMoveItsKeys() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, 160);
+        ConsistentHashRing smallerRing = new ConsistentHashRing(nodes.subList(0, 3), 160);
+
+        for (int i = 0; i < KEYS; i++) {
+            String node = ring.nodeFor("cacheId", "key" + i);
+
+            if (!node.equals("host4:4000")) {
+                assertThat(smallerRing.nodeFor("cacheId", "key" + i), is(node));
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.caches.KeyHashEvictingCacheService;
+import com.googlecode.easiest.cache.ever.caches.KeyHashes;
+
+/**
+ * unit test for {@link InvalidationBus}
+ * 
+ * @author Brad Cupit
+ */
+public class InvalidationBusTest {
+    private final LoopbackTransport.Network network = new LoopbackTransport.Network();
+    private final KeyHashEvictingCacheService mockLocalCacheService = mock(KeyHashEvictingCacheService.class);
+    private final KeyHashEvictingCacheService mockRemoteCacheService = mock(KeyHashEvictingCacheService.class);
+    private InvalidationBus localBus;
+    private InvalidationBus remoteBus;
+
+    @Before
+    public void before() throws Exception {
+        localBus = new InvalidationBus(new LoopbackTransport(network), mockLocalCacheService, 3);
+        remoteBus = new InvalidationBus(new LoopbackTransport(network), mockRemoteCacheService, 3);
+    }
+
+    @After
+    public void after() {
+        localBus.close();
+        remoteBus.close();
+    }
+
+    @Test
+    public void publishShouldRemoveTheKeyOnOtherNodes() throws Exception {
+        localBus.publish("cacheId", "key");
+        flushBoth();
+
+        verify(mockRemoteCacheService).removeKeyHashes("cacheId", Collections.singleton(KeyHashes.hash("key")));
+        verify(mockLocalCacheService, never()).removeKeyHashes(anyString(), anySetOf(Long.class));
+    }
+
+    /**
+     * namespaces are local to each node
+     */
+    @Test
+    public void publishShouldSendTheKeyWithoutItsNamespace() throws Exception {
+        localBus.publish("cacheId", "#1.0#key");
+        flushBoth();
+
+        verify(mockRemoteCacheService).removeKeyHashes("cacheId", Collections.singleton(KeyHashes.hash("key")));
+    }
+
+    @Test
+    public void publishAllShouldRemoveEveryKeyOnOtherNodes() throws Exception {
+        localBus.publishAll("cacheId");
+        flushBoth();
+
+        verify(mockRemoteCacheService).removeAll("cacheId");
+    }
+
+    @Test
+    public void publishShouldCoalesceTheSameKey() throws Exception {
+        localBus.publish("cacheId", "key");
+        localBus.publish("cacheId", "key");
+        localBus.publish("cacheId", "otherKey");
+        flushBoth();
+
+        Set<Long> keyHashes = new HashSet<Long>();
+        keyHashes.add(KeyHashes.hash("key"));
+        keyHashes.add(KeyHashes.hash("otherKey"));
+        verify(mockRemoteCacheService).removeKeyHashes("cacheId", keyHashes);
+    }
+
+    @Test
+    public void publishShouldInvalidateTheWholeCacheWhenTooManyKeysArePending() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            localBus.publish("cacheId", "key" + i);
+        }
+        flushBoth();
+
+        verify(mockRemoteCacheService).removeAll("cacheId");
+        verify(mockRemoteCacheService, never()).removeKeyHashes(anyString(), anySetOf(Long.class));
+    }
+
+    private void flushBoth() {
+        localBus.flush();
+        remoteBus.flush();
+    }
+}
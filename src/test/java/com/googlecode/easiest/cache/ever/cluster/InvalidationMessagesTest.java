@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link InvalidationMessages}
+ * 
+ * @author Brad Cupit
+ */
+public class InvalidationMessagesTest {
+    private final Map<String, Set<Long>> invalidations = new LinkedHashMap<String, Set<Long>>();
+
+    @Test
+    public void decodeShouldReadWhatEncodeWrote() throws Exception {
+        invalidations.put("cacheId", keyHashes(1, 2, 3));
+        invalidations.put("otherCacheId", null);
+
+        PendingInvalidations pending = new PendingInvalidations(100);
+        for (byte[] message : InvalidationMessages.encode(1, invalidations, 1400)) {
+            assertTrue(InvalidationMessages.decode(message, 2, pending));
+        }
+
+        assertThat(pending.drain(), is(invalidations));
+    }
+
+    @Test
+    public void encodeShouldSplitKeysAcrossMessagesWhichFit() throws Exception {
+        invalidations.put("cacheId", keyHashes(1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+
+        int maxMessageBytes = 64;
+        List<byte[]> messages = InvalidationMessages.encode(1, invalidations, maxMessageBytes);
+
+        PendingInvalidations pending = new PendingInvalidations(100);
+        for (byte[] message : messages) {
+            assertThat(message.length, is(lessThanOrEqualTo(maxMessageBytes)));
+            InvalidationMessages.decode(message, 2, pending);
+        }
+
+        assertThat(messages.size(), is(greaterThan(1)));
+        assertThat(pending.drain(), is(invalidations));
+    }
+
+    @Test
+    public void decodeShouldIgnoreItsOwnMessages() throws Exception {
+        invalidations.put("cacheId", null);
+
+        PendingInvalidations pending = new PendingInvalidations(100);
+        byte[] message = InvalidationMessages.encode(1, invalidations, 1400).get(0);
+
+        assertFalse(InvalidationMessages.decode(message, 1, pending));
+        assertTrue(pending.isEmpty());
+    }
+
+    private Set<Long> keyHashes(long... hashes) {
+        Set<Long> keyHashes = new HashSet<Long>();
+
+        for (long hash : hashes) {
+            keyHashes.add(hash);
+        }
+
+        return keyHashes;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.cluster;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.ehcache.CacheManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.caches.CachedValue;
+import com.googlecode.easiest.cache.ever.caches.DefaultCacheService;
+import com.rits.cloning.Cloner;
+
+/**
+ * unit test for {@link PartitionedCacheService}, with several nodes in one JVM
+ * 
+ * @author Brad Cupit
+ */
+public class PartitionedCacheServiceTest {
+    private static final int NODES = 3;
+    private static final int KEYS = 30;
+
+    private final String cacheId = "cacheId";
+    private final CacheConfig cacheConfig = new CacheConfig(1000, CacheConstants.NO_EXPIRATION, null);
+    private final List<CacheManager> cacheManagers = new ArrayList<CacheManager>();
+    private final List<DefaultCacheService> localCacheServices = new ArrayList<DefaultCacheService>();
+    private final List<CacheServer> cacheServers = new ArrayList<CacheServer>();
+    private final List<PartitionedCacheService> cacheServices = new ArrayList<PartitionedCacheService>();
+    private final List<String> nodes = new ArrayList<String>();
+
+    @Before
+    public void before() throws Exception {
+        for (int i = 0; i < NODES; i++) {
+            CacheManager cacheManager = new CacheManager();
+            DefaultCacheService localCacheService = new DefaultCacheService();
+            localCacheService.setCloner(new Cloner());
+            localCacheService.setEhcacheManager(cacheManager);
+
+            CacheServer cacheServer = new CacheServer(localCacheService, InetAddress.getByName("127.0.0.1"), 0);
+            cacheServer.setAllowedClasses(Collections.singleton(Allowed.class.getName()));
+
+            cacheManagers.add(cacheManager);
+            localCacheServices.add(localCacheService);
+            cacheServers.add(cacheServer);
+            nodes.add("127.0.0.1:" + cacheServer.getPort());
+        }
+
+        for (int i = 0; i < NODES; i++) {
+            PartitionedCacheService cacheService = new PartitionedCacheService();
+            cacheService.setCacheService(localCacheServices.get(i));
+            cacheService.setNodes(nodes);
+            cacheService.setLocalNode(nodes.get(i));
+            cacheService.setTimeoutMillis(1000);
+            cacheService.setAllowedClasses(Collections.singleton(Allowed.class.getName()));
+            cacheService.createCacheIfNecessary(cacheId, cacheConfig);
+            cacheServices.add(cacheService);
+        }
+    }
+
+    @After
+    public void after() {
+        for (int i = 0; i < NODES; i++) {
+            cacheServices.get(i).close();
+            cacheServers.get(i).close();
+            cacheManagers.get(i).shutdown();
+        }
+    }
+
+    @Test
+    public void valuesAddedOnOneNodeShouldBeFoundOnEveryNode() throws Exception {
+        for (int i = 0; i < KEYS; i++) {
+            cacheServices.get(0).add(cacheId, "key" + i, "value" + i);
+        }
+
+        for (PartitionedCacheService cacheService : cacheServices) {
+            for (int i = 0; i < KEYS; i++) {
+                assertThat(awaitFound(cacheService, "key" + i).value(), is((Object) ("value" + i)));
+            }
+        }
+    }
+
+    @Test
+    public void eachValueShouldOnlyBeStoredByItsOwner() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, 160);
+
+        for (int i = 0; i < KEYS; i++) {
+            cacheServices.get(0).add(cacheId, "key" + i, "value" + i);
+            awaitFound(cacheServices.get(0), "key" + i);
+        }
+
+        for (int i = 0; i < KEYS; i++) {
+            for (int node = 0; node < NODES; node++) {
+                boolean owner = ring.nodeFor(cacheId, "key" + i).equals(nodes.get(node));
+                assertThat(localCacheServices.get(node).retrieve(cacheId, "key" + i).wasFound(), is(owner));
+            }
+        }
+    }
+
+    @Test
+    public void valuesShouldBeKeptLocallyWhenTheOwnerIsDown() throws Exception {
+        cacheServers.get(2).close();
+        String key = keyOwnedBy(nodes.get(2));
+
+        assertFalse(cacheServices.get(0).retrieve(cacheId, key).wasFound());
+
+        cacheServices.get(0).add(cacheId, key, "value");
+
+        assertThat(cacheServices.get(0).retrieve(cacheId, key).value(), is((Object) "value"));
+    }
+
+    @Test
+    public void valuesWhichArentSerializableShouldBeKeptLocally() throws Exception {
+        String key = keyOwnedBy(nodes.get(1));
+        Object value = new NotSerializable();
+
+        cacheServices.get(0).add(cacheId, key, value);
+
+        assertThat(cacheServices.get(0).retrieve(cacheId, key).value(), is(instanceOf(NotSerializable.class)));
+        assertFalse(localCacheServices.get(1).retrieve(cacheId, key).wasFound());
+    }
+
+    @Test
+    public void removeAllShouldRemoveTheValuesFromEveryNode() throws Exception {
+        for (int i = 0; i < KEYS; i++) {
+            cacheServices.get(0).add(cacheId, "key" + i, "value" + i);
+            awaitFound(cacheServices.get(0), "key" + i);
+        }
+
+        cacheServices.get(1).removeAll(cacheId);
+
+        for (int i = 0; i < KEYS; i++) {
+            assertFalse(awaitNotFound(cacheServices.get(1), "key" + i).wasFound());
+        }
+    }
+
+    @Test
+    public void valuesOfAllowedClassesShouldBeShared() throws Exception {
+        String key = keyOwnedBy(nodes.get(1));
+
+        cacheServices.get(0).add(cacheId, key, new Allowed[] { new Allowed() });
+
+        assertThat(awaitFound(cacheServices.get(2), key).value(), is(instanceOf(Allowed[].class)));
+    }
+
+    @Test
+    public void valuesOfOtherClassesShouldntBeReadFromTheNetwork() throws Exception {
+        String key = keyOwnedBy(nodes.get(1));
+
+        cacheServices.get(0).add(cacheId, key, new NotAllowed());
+        // the put is followed by a request on the same connection
+        awaitFound(cacheServices.get(0), key);
+
+        assertFalse(localCacheServices.get(1).retrieve(cacheId, key).wasFound());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cacheServerShouldRequireABindAddress() throws Exception {
+        new CacheServer(localCacheServices.get(0), null, 0);
+    }
+
+    private String keyOwnedBy(String node) {
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, 160);
+
+        for (int i = 0;; i++) {
+            if (ring.nodeFor(cacheId, "key" + i).equals(node)) {
+                return "key" + i;
+            }
+        }
+    }
+
+    /**
+     * puts and removes aren't waited for, so another connection may get there first
+     */
+    private CachedValue awaitFound(PartitionedCacheService cacheService, String key) throws InterruptedException {
+        CachedValue cachedValue = cacheService.retrieve(cacheId, key);
+
+        for (int attempt = 0; attempt < 100 && !cachedValue.wasFound(); attempt++) {
+            Thread.sleep(10);
+            cachedValue = cacheService.retrieve(cacheId, key);
+        }
+
+        return cachedValue;
+    }
+
+    private CachedValue awaitNotFound(PartitionedCacheService cacheService, String key) throws InterruptedException {
+        CachedValue cachedValue = cacheService.retrieve(cacheId, key);
+
+        for (int attempt = 0; attempt < 100 && cachedValue.wasFound(); attempt++) {
+            Thread.sleep(10);
+            cachedValue = cacheService.retrieve(cacheId, key);
+        }
+
+        return cachedValue;
+    }
+
+    /**
+     * Helper class for unit tests
+     * 
+     * @author Brad Cupit
+     */
+    private static class NotSerializable {
+    }
+
+    /**
+     * Helper class for unit tests
+     * 
+     * @author Brad Cupit
+     */
+    private static class Allowed implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Helper class for unit tests
+     * 
+     * @author Brad Cupit
+     */
+    private static class NotAllowed implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.keys;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * unit test for {@link FieldWalkers}
+ * 
+ * @author Brad Cupit
+ */
+public class FieldWalkersTest {
+    private final FieldWalkers fieldWalkers = new FieldWalkers(new XStream());
+
+    @Test
+    public void equalObjectsShouldHaveEqualKeys() throws Exception {
+        assertEquals(keyFor(new Person("Bob", 42)), keyFor(new Person("Bob", 42)));
+    }
+
+    @Test
+    public void differentFieldValuesShouldHaveDifferentKeys() throws Exception {
+        assertThat(keyFor(new Person("Bob", 42)), not(equalTo(keyFor(new Person("Bob", 43)))));
+        assertThat(keyFor(new Person("Bob", 42)), not(equalTo(keyFor(new Person("Rob", 42)))));
+    }
+
+    @Test
+    public void differentClassesWithSameFieldsShouldHaveDifferentKeys() throws Exception {
+        assertThat(keyFor(new Person("Bob", 42)), not(equalTo(keyFor(new Employee("Bob", 42, null)))));
+    }
+
+    /**
+     * like XStream, null fields are left out of the key
+     */
+    @Test
+    public void nullFieldsShouldBeOmitted() throws Exception {
+        String key = keyFor(new Person(null, 42));
+
+        assertThat(key, not(containsString("name")));
+        assertThat(key, containsString("<age>42</age>"));
+    }
+
+    @Test
+    public void superclassFieldsShouldBeIncluded() throws Exception {
+        String key = keyFor(new Employee("Bob", 42, "engineering"));
+
+        assertThat(key, containsString("Bob"));
+        assertThat(key, containsString("42"));
+        assertThat(key, containsString("engineering"));
+    }
+
+    /**
+     * a subclass field hiding a superclass field of the same name mustn't
+     * let the two fields swap values without changing the key
+     */
+    @Test
+    public void hiddenFieldsShouldBeDistinguished() throws Exception {
+        assertThat(keyFor(new Shadowing("a", "b")), not(equalTo(keyFor(new Shadowing("b", "a")))));
+    }
+
+    @Test
+    public void cyclesShouldNotOverflowTheStack() throws Exception {
+        Node first = new Node();
+        Node second = new Node();
+        first.next = second;
+        second.next = first;
+
+        assertThat(keyFor(first), containsString("<ref id="));
+    }
+
+    /**
+     * the same object twice is different than two equal objects, same as XStream
+     */
+    @Test
+    public void sharedReferencesShouldDifferFromEqualCopies() throws Exception {
+        Person bob = new Person("Bob", 42);
+        String sharedKey = keyForAll(Arrays.asList(bob, bob));
+        String copiesKey = keyForAll(Arrays.asList(bob, new Person("Bob", 42)));
+
+        assertThat(sharedKey, not(equalTo(copiesKey)));
+    }
+
+    @Test
+    public void collectionsAndMapsShouldIncludeTheirContents() throws Exception {
+        List<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("one", 1);
+
+        assertThat(keyFor(list), not(equalTo(keyFor(new ArrayList<String>(Arrays.asList("a", "c"))))));
+        assertThat(keyFor(map), containsString("<string>one</string><int>1</int>"));
+    }
+
+    @Test
+    public void simpleValuesShouldMatchXStream() throws Exception {
+        assertEquals("<string>hi</string>", keyFor("hi"));
+        assertEquals("<object-array><string>hi</string><int>42</int><null/></object-array>",
+                    keyForAll(Arrays.asList("hi", 42, null)));
+    }
+
+    private String keyFor(Object value) {
+        StringBuilder key = new StringBuilder();
+        fieldWalkers.write(value, key);
+
+        return key.toString();
+    }
+
+    private String keyForAll(List<?> values) {
+        StringBuilder key = new StringBuilder();
+        fieldWalkers.writeAll(values, key);
+
+        return key.toString();
+    }
+
+    /**
+     * class used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Person {
+        private static int instances;
+        private final String name;
+        private final int age;
+        private transient String nickname = "ignored" + instances++;
+
+        public Person(String name, int age) {
+            this.name = name;
+            this.age = age;
+        }
+    }
+
+    /**
+     * class used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Employee extends Person {
+        private final String department;
+
+        public Employee(String name, int age, String department) {
+            super(name, age);
+            this.department = department;
+        }
+    }
+
+    /**
+     * class used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Hidden {
+        protected String value;
+    }
+
+    /**
+     * class used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Shadowing extends Hidden {
+        private final String value;
+
+        public Shadowing(String superValue, String value) {
+            super.value = superValue;
+            this.value = value;
+        }
+    }
+
+    /**
+     * class used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class Node {
+        private Node next;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.keys;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * unit test for {@link SimpleKeys}. The generated keys must match
+ * {@link DefaultKeyGenerator}'s, so every test compares the two.
+ * 
+ * @author Brad Cupit
+ */
+public class SimpleKeysTest {
+    private final DefaultKeyGenerator keyGenerator = buildDefaultKeyGenerator();
+
+    @Test
+    public void appendStringShouldMatchDefaultKeyGenerator() throws Exception {
+        StringBuilder key = new StringBuilder();
+        SimpleKeys.appendString(key, "hi");
+
+        assertEquals(keyGenerator.generateParameterKey(Arrays.asList("hi")), key.toString());
+    }
+
+    @Test
+    public void appendStringShouldEscapeLikeDefaultKeyGenerator() throws Exception {
+        String text = "a&<>\"'\r\n\t\0x";
+        StringBuilder key = new StringBuilder();
+        SimpleKeys.appendString(key, text);
+
+        assertEquals(keyGenerator.generateParameterKey(Arrays.asList(text)), key.toString());
+    }
+
+    @Test
+    public void appendNullShouldMatchDefaultKeyGenerator() throws Exception {
+        StringBuilder key = new StringBuilder();
+        SimpleKeys.appendString(key, null);
+
+        assertEquals(keyGenerator.generateParameterKey(Arrays.asList((Object) null)), key.toString());
+    }
+
+    @Test
+    public void appendPrimitivesShouldMatchDefaultKeyGenerator() throws Exception {
+        StringBuilder key = new StringBuilder();
+        SimpleKeys.startArray(key);
+        SimpleKeys.appendInteger(key, 1);
+        SimpleKeys.appendLong(key, 2L);
+        SimpleKeys.appendShort(key, (short) 3);
+        SimpleKeys.appendByte(key, (byte) 4);
+        SimpleKeys.appendBoolean(key, true);
+        SimpleKeys.appendFloat(key, 1.5f);
+        SimpleKeys.appendDouble(key, 1e20);
+        SimpleKeys.appendCharacter(key, 'c');
+        SimpleKeys.appendCharacter(key, '\0');
+        SimpleKeys.endArray(key);
+
+        String expected = keyGenerator.generateParameterKey(Arrays.<Object> asList(1, 2L, (short) 3, (byte) 4, true,
+                    1.5f, 1e20, 'c', '\0'));
+        assertEquals(expected, key.toString());
+    }
+
+    @Test
+    public void appendEnumShouldMatchDefaultKeyGenerator() throws Exception {
+        StringBuilder key = new StringBuilder();
+        SimpleKeys.startArray(key);
+        SimpleKeys.appendEnum(key, SimpleKeys.toElementName(TimeUnit.class.getName()), TimeUnit.SECONDS);
+        SimpleKeys.appendEnum(key, SimpleKeys.toElementName(Nested_Enum.class.getName()), Nested_Enum.WITH_BODY);
+        SimpleKeys.endArray(key);
+
+        String expected = keyGenerator.generateParameterKey(Arrays.<Object> asList(TimeUnit.SECONDS,
+                    Nested_Enum.WITH_BODY));
+        assertEquals(expected, key.toString());
+    }
+
+    private DefaultKeyGenerator buildDefaultKeyGenerator() {
+        DefaultKeyGenerator defaultKeyGenerator = new DefaultKeyGenerator();
+        defaultKeyGenerator.setXstream(new XStream());
+
+        return defaultKeyGenerator;
+    }
+
+    /**
+     * enum with an underscore in its name (which XStream escapes)
+     * and a constant with a body (which has its own class)
+     * 
+     * @author Brad Cupit
+     */
+    public enum Nested_Enum {
+        PLAIN,
+        WITH_BODY {
+            @Override
+            public String toString() {
+                return "body";
+            }
+        }
+    }
+}
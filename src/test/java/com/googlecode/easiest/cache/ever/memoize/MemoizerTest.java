@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.memoize;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CacheConfig;
+import com.googlecode.easiest.cache.ever.CacheConstants;
+import com.googlecode.easiest.cache.ever.caches.DefaultCacheService;
+import com.googlecode.easiest.cache.ever.keys.DefaultKeyGenerator;
+import com.googlecode.easiest.cache.ever.trace.CacheMonitor;
+import com.rits.cloning.Cloner;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * unit test for {@link Memoizer}
+ * 
+ * @author Brad Cupit
+ */
+public class MemoizerTest {
+    private static final int DONT_CARE_ABOUT_SIZE = 1000;
+
+    private final CacheConfig cacheConfig = new CacheConfig(DONT_CARE_ABOUT_SIZE, CacheConstants.NO_EXPIRATION, null);
+    private final CacheManager ehCacheManager = new CacheManager();
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final Memoizer memoizer = new Memoizer();
+
+    @Before
+    public void before() {
+        DefaultCacheService cacheService = new DefaultCacheService();
+        cacheService.setCloner(new Cloner());
+        cacheService.setEhcacheManager(ehCacheManager);
+
+        DefaultKeyGenerator keyGenerator = new DefaultKeyGenerator();
+        keyGenerator.setXstream(new XStream());
+
+        memoizer.setCacheService(cacheService);
+        memoizer.setKeyGenerator(keyGenerator);
+    }
+
+    @After
+    public void after() {
+        ehCacheManager.shutdown();
+    }
+
+    @Test
+    public void memoizedFunction0ShouldOnlyInvokeFunctionOnce() throws Exception {
+        Function0<String> memoized = memoizer.memoize("function0", cacheConfig, new Function0<String>() {
+            public String apply() {
+                invocations.incrementAndGet();
+                return "result";
+            }
+        });
+
+        assertEquals("result", memoized.apply());
+        assertEquals("result", memoized.apply());
+        assertEquals(1, invocations.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void memoizeShouldRejectUnmodifiableCollections() throws Exception {
+        CacheConfig unmodifiableConfig = new CacheConfig(DONT_CARE_ABOUT_SIZE, CacheConstants.NO_EXPIRATION, null,
+                    CacheConstants.NO_NEAR_CACHE, CacheConstants.DEFAULT_NEAR_CACHE_EXPIRATION_MILLIS,
+                    CacheConstants.NO_COMPRESSION, true);
+
+        memoizer.memoize("function1", unmodifiableConfig, new Function1<String, String>() {
+            public String apply(String name) {
+                return name;
+            }
+        });
+    }
+
+    @Test
+    public void memoizedFunction1ShouldCacheByArgument() throws Exception {
+        Function1<String, String> memoized = memoizer.memoize("function1", cacheConfig, new Function1<String, String>() {
+            public String apply(String name) {
+                invocations.incrementAndGet();
+                return "hello " + name;
+            }
+        });
+
+        assertEquals("hello Elmo", memoized.apply("Elmo"));
+        assertEquals("hello Elmo", memoized.apply("Elmo"));
+        assertEquals("hello Grover", memoized.apply("Grover"));
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void memoizedFunction1ShouldCacheNullArgumentsAndResults() throws Exception {
+        Function1<String, String> memoized = memoizer.memoize("function1", cacheConfig, new Function1<String, String>() {
+            public String apply(String name) {
+                invocations.incrementAndGet();
+                return null;
+            }
+        });
+
+        assertNull(memoized.apply(null));
+        assertNull(memoized.apply(null));
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void memoizedFunction2ShouldCacheByBothArguments() throws Exception {
+        Function2<String, Integer, String> memoized = memoizer.memoize("function2", cacheConfig,
+                    new Function2<String, Integer, String>() {
+                        public String apply(String name, Integer count) {
+                            invocations.incrementAndGet();
+                            return name + count;
+                        }
+                    });
+
+        assertEquals("a1", memoized.apply("a", 1));
+        assertEquals("a1", memoized.apply("a", 1));
+        assertEquals("a2", memoized.apply("a", 2));
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void memoizedFunction3ShouldCacheByAllArguments() throws Exception {
+        Function3<Integer, Integer, Integer, Integer> memoized = memoizer.memoize("function3", cacheConfig,
+                    new Function3<Integer, Integer, Integer, Integer>() {
+                        public Integer apply(Integer a, Integer b, Integer c) {
+                            invocations.incrementAndGet();
+                            return a + b + c;
+                        }
+                    });
+
+        assertEquals(Integer.valueOf(6), memoized.apply(1, 2, 3));
+        assertEquals(Integer.valueOf(6), memoized.apply(1, 2, 3));
+        assertEquals(Integer.valueOf(6), memoized.apply(3, 2, 1));
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void cacheMonitorShouldMeasureHitsMissesLoadsAndKeys() throws Exception {
+        CacheMonitor mockCacheMonitor = mock(CacheMonitor.class);
+        memoizer.setCacheMonitor(mockCacheMonitor);
+        Function1<String, String> memoized = memoizer.memoize("function1", cacheConfig, new Function1<String, String>() {
+            public String apply(String name) {
+                return "hello " + name;
+            }
+        });
+
+        memoized.apply("Elmo");
+        memoized.apply("Elmo");
+
+        verify(mockCacheMonitor).miss(eq("function1"), anyLong());
+        verify(mockCacheMonitor).load(eq("function1"), anyLong(), anyLong());
+        verify(mockCacheMonitor).hit(eq("function1"), anyLong());
+        verify(mockCacheMonitor, times(2)).keyGenerated(eq("function1"), anyLong(), anyInt());
+    }
+
+    @Test
+    public void memoizedFunctionShouldNotCacheWhenFunctionThrows() throws Exception {
+        Function0<String> memoized = memoizer.memoize("throws", cacheConfig, new Function0<String>() {
+            public String apply() {
+                invocations.incrementAndGet();
+                throw new IllegalStateException();
+            }
+        });
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                memoized.apply();
+                fail("expected exception to propagate");
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        assertEquals(2, invocations.get());
+    }
+}
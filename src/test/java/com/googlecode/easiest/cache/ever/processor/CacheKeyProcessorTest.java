@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.processor;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.keys.DefaultKeyGenerator;
+import com.googlecode.easiest.cache.ever.keys.GeneratedKeyBuilder;
+import com.googlecode.easiest.cache.ever.keys.GeneratedKeyBuilders;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * unit test for {@link CacheKeyProcessor}. Compiles a small class with
+ * the processor and checks the generated keys against {@link DefaultKeyGenerator}.
+ * 
+ * @author Brad Cupit
+ */
+public class CacheKeyProcessorTest {
+    private static final String SOURCE = "package test;\n"
+                + "import com.googlecode.easiest.cache.ever.CacheReturnValue;\n"
+                + "public class Service {\n"
+                + "    public enum Color { RED, GREEN }\n"
+                + "    @CacheReturnValue public String noParams() { return null; }\n"
+                + "    @CacheReturnValue public String simple(String name, int count, Color color) { return null; }\n"
+                + "    @CacheReturnValue public String complex(java.util.Date date) { return null; }\n"
+                + "    @CacheReturnValue public String ignoring(@com.googlecode.easiest.cache.ever.CacheIgnore java.util.Date date,\n"
+                + "            String name) { return null; }\n"
+                + "    @CacheReturnValue public String arrays(@com.googlecode.easiest.cache.ever.CacheKey int id,\n"
+                + "            @com.googlecode.easiest.cache.ever.CacheIgnore String[] trace,\n"
+                + "            @com.googlecode.easiest.cache.ever.CacheIgnore int[][] grid) { return null; }\n"
+                + "    @CacheReturnValue public <T extends Number> String generic(String name,\n"
+                + "            @com.googlecode.easiest.cache.ever.CacheIgnore T number,\n"
+                + "            @com.googlecode.easiest.cache.ever.CacheIgnore T[] numbers) { return null; }\n"
+                + "    public String notCached(String name) { return null; }\n"
+                + "}\n";
+
+    private File directory;
+    private DefaultKeyGenerator keyGenerator;
+    private Class<?> serviceClass;
+
+    @Before
+    public void before() throws Exception {
+        directory = File.createTempFile("cache-key-processor", "");
+        directory.delete();
+        new File(directory, "test").mkdirs();
+
+        keyGenerator = new DefaultKeyGenerator();
+        keyGenerator.setXstream(new XStream());
+
+        serviceClass = compile();
+    }
+
+    @After
+    public void after() {
+        delete(directory);
+    }
+
+    @Test
+    public void generatedBuilderShouldReturnNullKeyForZeroParamMethods() throws Exception {
+        GeneratedKeyBuilder builder = new GeneratedKeyBuilders().find(serviceClass, "test.Service.noParams");
+
+        assertNotNull(builder);
+        assertEquals("test.Service.noParams", builder.methodKey());
+        assertNull(builder.parameterKey(new Object[0]));
+    }
+
+    @Test
+    public void generatedBuilderShouldMatchDefaultKeyGenerator() throws Exception {
+        String methodKey = "test.Service.simple(java.lang.String,int,test.Service$Color)";
+        GeneratedKeyBuilder builder = new GeneratedKeyBuilders().find(serviceClass, methodKey);
+        Object red = serviceClass.getClassLoader().loadClass("test.Service$Color").getEnumConstants()[0];
+        Object[] arguments = { "a<b", 42, red };
+
+        assertNotNull(builder);
+        assertEquals(methodKey, builder.methodKey());
+        assertEquals(keyGenerator.generateParameterKey(Arrays.asList(arguments)), builder.parameterKey(arguments));
+    }
+
+    @Test
+    public void generatedBuilderShouldMatchDefaultKeyGeneratorForNulls() throws Exception {
+        String methodKey = "test.Service.simple(java.lang.String,int,test.Service$Color)";
+        GeneratedKeyBuilder builder = new GeneratedKeyBuilders().find(serviceClass, methodKey);
+        Object[] arguments = { null, 42, null };
+
+        assertEquals(keyGenerator.generateParameterKey(Arrays.asList(arguments)), builder.parameterKey(arguments));
+    }
+
+    /**
+     * parameters which aren't simple types need reflection, so they're
+     * left to the runtime key generator
+     */
+    @Test
+    public void findShouldReturnNullForMethodsWithComplexParameters() throws Exception {
+        assertNull(new GeneratedKeyBuilders().find(serviceClass, "test.Service.complex(java.util.Date)"));
+    }
+
+    /**
+     * ignored parameters don't need to be simple, since they aren't part of the key
+     */
+    @Test
+    public void generatedBuilderShouldLeaveOutIgnoredParameters() throws Exception {
+        String methodKey = "test.Service.ignoring(java.util.Date,java.lang.String)";
+        GeneratedKeyBuilder builder = new GeneratedKeyBuilders().find(serviceClass, methodKey);
+
+        assertNotNull(builder);
+        assertEquals("<string>hi</string>", builder.parameterKey(new Object[] { new Date(), "hi" }));
+    }
+
+    /**
+     * the method key has to name array parameters the way {@link Class#getName()} does
+     */
+    @Test
+    public void generatedBuilderShouldNameIgnoredArrayParametersLikeTheRuntime() throws Exception {
+        String methodKey = "test.Service.arrays(int,[Ljava.lang.String;,[[I)";
+        GeneratedKeyBuilder builder = new GeneratedKeyBuilders().find(serviceClass, methodKey);
+
+        assertNotNull(builder);
+        assertEquals(methodKey, builder.methodKey());
+        assertEquals(methodKey, runtimeMethodKey("arrays"));
+        assertEquals("<int>7</int>", builder.parameterKey(new Object[] { 7, new String[0], new int[0][] }));
+    }
+
+    /**
+     * type variables are named by their erasure
+     */
+    @Test
+    public void generatedBuilderShouldNameTypeVariablesByTheirBound() throws Exception {
+        String methodKey = "test.Service.generic(java.lang.String,java.lang.Number,[Ljava.lang.Number;)";
+        GeneratedKeyBuilder builder = new GeneratedKeyBuilders().find(serviceClass, methodKey);
+
+        assertNotNull(builder);
+        assertEquals(methodKey, runtimeMethodKey("generic"));
+    }
+
+    @Test
+    public void findShouldReturnNullForClassesWithoutGeneratedKeys() throws Exception {
+        assertNull(new GeneratedKeyBuilders().find(String.class, "java.lang.String.toString"));
+    }
+
+    private String runtimeMethodKey(String methodName) {
+        for (Method method : serviceClass.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                StringBuilder key = new StringBuilder(serviceClass.getName()).append('.').append(methodName).append('(');
+
+                for (Class<?> parameterType : method.getParameterTypes()) {
+                    if (key.charAt(key.length() - 1) != '(') {
+                        key.append(',');
+                    }
+
+                    key.append(parameterType.getName());
+                }
+
+                return key.append(')').toString();
+            }
+        }
+
+        throw new AssertionError("no method named " + methodName);
+    }
+
+    private Class<?> compile() throws IOException, ClassNotFoundException {
+        File sourceFile = new File(directory, "test/Service.java");
+        FileWriter writer = new FileWriter(sourceFile);
+        writer.write(SOURCE);
+        writer.close();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null, "-classpath", System.getProperty("java.class.path"), "-processor",
+                    CacheKeyProcessor.class.getName(), "-d", directory.getPath(), "-s", directory.getPath(),
+                    sourceFile.getPath());
+        assertEquals("compilation failed", 0, result);
+
+        URLClassLoader classLoader = new URLClassLoader(new URL[] { directory.toURI().toURL() }, getClass()
+                    .getClassLoader());
+        return classLoader.loadClass("test.Service");
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.spring;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.easiest.cache.ever.CacheAspect;
+import com.googlecode.easiest.cache.ever.CacheReturnValue;
+
+/**
+ * unit test for {@link CacheWarmer}
+ * 
+ * @author Brad Cupit
+ */
+public class CacheWarmerTest {
+    private final CacheAspect mockCacheAspect = mock(CacheAspect.class);
+    private final CacheWarmer cacheWarmer = new CacheWarmer();
+
+    @Before
+    public void before() {
+        cacheWarmer.setCacheAspect(mockCacheAspect);
+        cacheWarmer.setThreads(2);
+    }
+
+    @Test
+    public void warmShouldPrepareBeansWithCachedMethods() throws Exception {
+        cacheWarmer.postProcessBeforeInitialization(new CachedBean(), "cachedBean");
+        cacheWarmer.postProcessBeforeInitialization(new AnnotatedBean(), "annotatedBean");
+
+        cacheWarmer.warm();
+
+        verify(mockCacheAspect).prepare(CachedBean.class);
+        verify(mockCacheAspect).prepare(AnnotatedBean.class);
+    }
+
+    @Test
+    public void warmShouldIgnoreBeansWithoutCachedMethods() throws Exception {
+        cacheWarmer.postProcessBeforeInitialization(new Object(), "plainBean");
+
+        cacheWarmer.warm();
+
+        verifyZeroInteractions(mockCacheAspect);
+    }
+
+    @Test
+    public void warmShouldOnlyPrepareEachBeanOnce() throws Exception {
+        cacheWarmer.postProcessBeforeInitialization(new CachedBean(), "cachedBean");
+
+        cacheWarmer.warm();
+        cacheWarmer.warm();
+
+        verify(mockCacheAspect, times(1)).prepare(CachedBean.class);
+    }
+
+    /**
+     * failing to prepare one class shouldn't stop startup or the other classes
+     */
+    @Test
+    public void warmShouldContinuePastFailures() throws Exception {
+        doThrow(new RuntimeException("expected by test")).when(mockCacheAspect).prepare(CachedBean.class);
+        cacheWarmer.postProcessBeforeInitialization(new CachedBean(), "cachedBean");
+        cacheWarmer.postProcessBeforeInitialization(new AnnotatedBean(), "annotatedBean");
+
+        cacheWarmer.warm();
+
+        verify(mockCacheAspect).prepare(AnnotatedBean.class);
+    }
+
+    @Test
+    public void postProcessorsShouldReturnTheSameBean() throws Exception {
+        Object bean = new CachedBean();
+
+        assertSame(bean, cacheWarmer.postProcessBeforeInitialization(bean, "cachedBean"));
+        assertSame(bean, cacheWarmer.postProcessAfterInitialization(bean, "cachedBean"));
+    }
+
+    /**
+     * bean used for testing
+     * 
+     * @author Brad Cupit
+     */
+    public static class CachedBean {
+        @CacheReturnValue
+        public String find(String name) {
+            return name;
+        }
+    }
+
+    /**
+     * bean used for testing
+     * 
+     * @author Brad Cupit
+     */
+    @CacheReturnValue
+    public static class AnnotatedBean {
+        public String find(String name) {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * unit test for {@link FileTraceRecorder} and {@link TraceReader}
+ * 
+ * @author Brad Cupit
+ */
+public class FileTraceRecorderTest {
+    private File file;
+
+    @Before
+    public void before() throws Exception {
+        file = File.createTempFile("cache", ".trace");
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    @Test
+    public void recordedEventsShouldBeReadBack() throws Exception {
+        FileTraceRecorder recorder = new FileTraceRecorder(file);
+        recorder.setMeasureValueSizes(true);
+
+        recorder.recordMiss("cache1", "key1", 500, "value");
+        recorder.recordHit("cache1", "key1");
+        recorder.recordHit("cache2", null);
+        recorder.close();
+
+        List<TraceEvent> events = new TraceReader().read(file);
+
+        assertEquals(3, events.size());
+
+        TraceEvent miss = events.get(0);
+        assertEquals("cache1", miss.getCacheId());
+        assertFalse(miss.isHit());
+        assertEquals(500, miss.getLoadNanos());
+        assertThat(miss.getValueSize(), greaterThan(0));
+
+        TraceEvent hit = events.get(1);
+        assertTrue(hit.isHit());
+        assertEquals(miss.getKeyHash(), hit.getKeyHash());
+        assertThat(hit.getTimestampNanos(), greaterThanOrEqualTo(miss.getTimestampNanos()));
+
+        assertEquals("cache2", events.get(2).getCacheId());
+    }
+
+    @Test
+    public void valueSizesShouldBeUnknownByDefault() throws Exception {
+        FileTraceRecorder recorder = new FileTraceRecorder(file);
+
+        recorder.recordMiss("cache", "key", 1, "value");
+        recorder.close();
+
+        assertEquals(-1, new TraceReader().read(file).get(0).getValueSize());
+    }
+
+    @Test
+    public void differentKeysShouldHaveDifferentHashes() throws Exception {
+        FileTraceRecorder recorder = new FileTraceRecorder(file);
+
+        recorder.recordHit("cache", "<string>a</string>");
+        recorder.recordHit("cache", "<string>b</string>");
+        recorder.close();
+
+        List<TraceEvent> events = new TraceReader().read(file);
+        assertThat(events.get(0).getKeyHash(), not(equalTo(events.get(1).getKeyHash())));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link TraceRing}
+ * 
+ * @author Brad Cupit
+ */
+public class TraceRingTest {
+    private final List<Long> drained = new ArrayList<Long>();
+    private final TraceRing.Handler handler = new TraceRing.Handler() {
+        public void handle(int cacheId, long keyHash, long timestamp, long loadNanos, int size) {
+            drained.add(keyHash);
+        }
+    };
+
+    @Test
+    public void drainShouldReturnEventsInOrder() throws Exception {
+        TraceRing ring = new TraceRing(8);
+
+        ring.offer(0, 1, 0, -1, -1);
+        ring.offer(0, 2, 0, -1, -1);
+        ring.offer(0, 3, 0, -1, -1);
+
+        assertEquals(3, ring.drain(handler));
+        assertEquals(3, drained.size());
+        assertEquals(Long.valueOf(1), drained.get(0));
+        assertEquals(Long.valueOf(3), drained.get(2));
+    }
+
+    /**
+     * writers must never wait for the reader
+     */
+    @Test
+    public void offerShouldDropEventsWhenFull() throws Exception {
+        TraceRing ring = new TraceRing(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(0, i, 0, -1, -1));
+        }
+
+        assertFalse(ring.offer(0, 4, 0, -1, -1));
+        assertEquals(1, ring.getDropped());
+
+        ring.drain(handler);
+        assertTrue(ring.offer(0, 5, 0, -1, -1));
+    }
+
+    @Test
+    public void concurrentWritersShouldNotLoseEvents() throws Exception {
+        final TraceRing ring = new TraceRing(64 * 1024);
+        final int threads = 4;
+        final int eventsPerThread = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        ring.offer(0, i, 0, -1, -1);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        done.await();
+        ring.drain(handler);
+
+        assertEquals(threads * eventsPerThread, drained.size());
+        assertEquals(0, ring.getDropped());
+    }
+
+    @Test(expected = IOException.class)
+    public void drainShouldPassOnHandlerExceptions() throws Exception {
+        TraceRing ring = new TraceRing(4);
+        ring.offer(0, 1, 0, -1, -1);
+
+        ring.drain(new TraceRing.Handler() {
+            public void handle(int cacheId, long keyHash, long timestamp, long loadNanos, int size) throws IOException {
+                throw new IOException("expected by test");
+            }
+        });
+    }
+}
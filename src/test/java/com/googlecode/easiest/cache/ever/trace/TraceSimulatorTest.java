@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Brad Cupit
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.easiest.cache.ever.trace;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * unit test for {@link TraceSimulator}
+ * 
+ * @author Brad Cupit
+ */
+public class TraceSimulatorTest {
+    private final TraceSimulator simulator = new TraceSimulator();
+
+    @Test
+    public void cacheAsBigAsTheKeysShouldOnlyMissOncePerKey() throws Exception {
+        List<TraceEvent> events = accesses("cache", 1, 2, 3, 1, 2, 3, 1, 2, 3);
+
+        for (SimulatedPolicy policy : SimulatedPolicy.values()) {
+            SimulationResult result = simulateOne(events, policy, 3);
+
+            assertEquals(policy.name(), 3, result.getMisses());
+            assertEquals(policy.name(), 6, result.getHits());
+        }
+    }
+
+    @Test
+    public void lruShouldMissEveryTimeOnALoopBiggerThanTheCache() throws Exception {
+        SimulationResult result = simulateOne(accesses("cache", 1, 2, 3, 1, 2, 3), SimulatedPolicy.LRU, 2);
+
+        assertEquals(0, result.getHits());
+    }
+
+    /**
+     * a scan of one-off keys shouldn't push out a popular key
+     */
+    @Test
+    public void tinyLfuShouldKeepPopularKeysThroughAScan() throws Exception {
+        List<TraceEvent> events = accesses("cache", 1, 1, 1, 1);
+        events.addAll(accesses("cache", 100, 101, 102, 103, 104, 105));
+        events.addAll(accesses("cache", 1));
+
+        SimulationResult lru = simulateOne(events, SimulatedPolicy.LRU, 2);
+        SimulationResult tinyLfu = simulateOne(events, SimulatedPolicy.TINY_LFU, 2);
+
+        assertThat(tinyLfu.getHits(), greaterThan(lru.getHits()));
+    }
+
+    @Test
+    public void missCostShouldUseRecordedLoadTimes() throws Exception {
+        List<TraceEvent> events = new ArrayList<TraceEvent>();
+        events.add(new TraceEvent("cache", 1, 0, false, 100, -1));
+        events.add(new TraceEvent("cache", 2, 0, false, 300, -1));
+        events.add(new TraceEvent("cache", 1, 0, true, 0, -1));
+
+        SimulationResult result = simulateOne(events, SimulatedPolicy.LRU, 1);
+
+        assertEquals(3, result.getMisses());
+        assertEquals(100 + 300 + 100, result.getMissCostNanos());
+    }
+
+    @Test
+    public void cachesShouldBeSimulatedSeparately() throws Exception {
+        List<TraceEvent> events = accesses("cache1", 1, 1);
+        events.addAll(accesses("cache2", 1, 1));
+
+        List<SimulationResult> results = simulator.simulate(events, new SimulatedPolicy[] { SimulatedPolicy.LRU },
+                    new int[] { 1 });
+
+        assertEquals(2, results.size());
+        assertEquals("cache1", results.get(0).getCacheId());
+        assertEquals(1, results.get(0).getHits());
+        assertEquals("cache2", results.get(1).getCacheId());
+        assertEquals(1, results.get(1).getHits());
+    }
+
+    @Test
+    public void defaultSizesShouldGoUpToTheNumberOfKeys() throws Exception {
+        List<SimulationResult> results = simulator.simulate(accesses("cache", 1, 2, 3, 4, 5),
+                    new SimulatedPolicy[] { SimulatedPolicy.LRU }, null);
+
+        assertEquals(5, results.get(results.size() - 1).getMaxSize());
+    }
+
+    private SimulationResult simulateOne(List<TraceEvent> events, SimulatedPolicy policy, int size) {
+        return simulator.simulate(events, new SimulatedPolicy[] { policy }, new int[] { size }).get(0);
+    }
+
+    private List<TraceEvent> accesses(String cacheId, long... keyHashes) {
+        List<TraceEvent> events = new ArrayList<TraceEvent>();
+
+        for (long keyHash : keyHashes) {
+            events.add(new TraceEvent(cacheId, keyHash, 0, false, 10, -1));
+        }
+
+        return events;
+    }
+}